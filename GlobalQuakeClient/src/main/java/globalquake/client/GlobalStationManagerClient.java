@@ -6,6 +6,7 @@ import globalquake.client.data.ClientStation;
 import globalquake.core.database.StationDatabaseManager;
 import globalquake.core.station.AbstractStation;
 import globalquake.core.station.GlobalStationManager;
+import globalquake.core.station.StationRegistry;
 import globalquake.events.specific.StationCreateEvent;
 import gqserver.api.Packet;
 import gqserver.api.data.station.StationInfoData;
@@ -18,13 +19,15 @@ import org.tinylog.Logger;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class GlobalStationManagerClient extends GlobalStationManager {
 
+    // stations by id, filled incrementally as the info packets arrive
+    private volatile AbstractStation[] byId = new AbstractStation[0];
 
-    private final Map<Integer, ClientStation> stationsIdMap = new ConcurrentHashMap<>();
+    // the registry is rebuilt on the first lookup after the stations changed, not after every info packet
+    private volatile boolean registryDirty = false;
 
     public GlobalStationManagerClient(){
         stations = new CopyOnWriteArrayList<>();
@@ -46,8 +49,7 @@ public class GlobalStationManagerClient extends GlobalStationManager {
     }
 
     private void processDataRecordPacket(DataRecordPacket dataRecordPacket) {
-        ClientStation station = stationsIdMap.get(dataRecordPacket.stationIndex());
-        if(station == null){
+        if(!(getStationById(dataRecordPacket.stationIndex()) instanceof ClientStation station)){
             Logger.warn("Received data record but for unkown station!");
             return;
         }
@@ -66,8 +68,7 @@ public class GlobalStationManagerClient extends GlobalStationManager {
             resetIndexing(socket, stationsIntensityPacket.stationsIndexing());
         }
         for(StationIntensityData stationIntensityData : stationsIntensityPacket.intensities()){
-            ClientStation clientStation = stationsIdMap.get(stationIntensityData.index());
-            if(clientStation != null){
+            if(getStationById(stationIntensityData.index()) instanceof ClientStation clientStation){
                 clientStation.setIntensity(stationIntensityData.maxIntensity(), stationsIntensityPacket.time(), stationIntensityData.eventMode());
             }
         }
@@ -77,9 +78,9 @@ public class GlobalStationManagerClient extends GlobalStationManager {
         if(getIndexing() == null || !getIndexing().equals(stationsInfoPacket.stationsIndexing())){
             resetIndexing(socket, stationsInfoPacket.stationsIndexing());
         }
-        List<AbstractStation> list = new ArrayList<>();
+        List<ClientStation> list = new ArrayList<>();
         for(StationInfoData infoData : stationsInfoPacket.stationInfoDataList()) {
-            if(!stationsIdMap.containsKey(infoData.index())) {
+            if(getStationById(infoData.index()) == null) {
                 ClientStation station;
                 list.add(station = new ClientStation(
                         infoData.network(),
@@ -91,12 +92,13 @@ public class GlobalStationManagerClient extends GlobalStationManager {
                         infoData.index(),
                         infoData.sensorType()));
                 station.setIntensity(infoData.maxIntensity(), infoData.time(), infoData.eventMode());
-                stationsIdMap.put(infoData.index(), station);
-                GlobalQuakeLocal.instance.getLocalEventHandler().fireEvent(new StationCreateEvent(station));
             }
         }
 
+        addById(list);
         getStations().addAll(list);
+        registryDirty = true;
+        list.forEach(station -> GlobalQuakeLocal.instance.getLocalEventHandler().fireEvent(new StationCreateEvent(station)));
     }
 
     private void resetIndexing(ClientSocket socket, UUID uuid) {
@@ -111,6 +113,45 @@ public class GlobalStationManagerClient extends GlobalStationManager {
 
         super.indexing = uuid;
         stations.clear();
-        stationsIdMap.clear();
+        byId = new AbstractStation[0];
+        registryDirty = true;
+    }
+
+    private void addById(List<ClientStation> list) {
+        AbstractStation[] result = byId;
+        for (ClientStation station : list) {
+            if (station.getId() < 0) {
+                continue;
+            }
+            if (station.getId() >= result.length) {
+                result = Arrays.copyOf(result, Math.max(station.getId() + 1, result.length * 2));
+            }
+            result[station.getId()] = station;
+        }
+        byId = result;
+    }
+
+    @Override
+    public StationRegistry getRegistry() {
+        if (registryDirty) {
+            synchronized (this) {
+                if (registryDirty) {
+                    registryDirty = false;
+                    updateRegistry();
+                }
+            }
+        }
+        return super.getRegistry();
+    }
+
+    @Override
+    public AbstractStation getStationByIdentifier(String identifier) {
+        return getRegistry().getByIdentifier(identifier);
+    }
+
+    @Override
+    public AbstractStation getStationById(int id) {
+        AbstractStation[] byId = this.byId;
+        return id >= 0 && id < byId.length ? byId[id] : null;
     }
 }
@@ -11,6 +11,7 @@ import org.tinylog.Logger;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.Objects;
 
 public class Main {
@@ -61,6 +62,7 @@ public class Main {
 
         MainFrame mainFrame = new MainFrame();
         mainFrame.setVisible(true);
+        Logger.info("Started in %,d ms since JVM start".formatted(ManagementFactory.getRuntimeMXBean().getUptime()));
     }
 
     private static void initMainDirectory() {
@@ -54,6 +54,7 @@ public class GlobalStationManagerPlayground extends GlobalStationManager {
         this.stations.forEach(AbstractStation::clear);
         this.stations.clear();
         this.stations.addAll(list);
+        updateRegistry();
         createListOfClosestStations(this.stations);
     }
 
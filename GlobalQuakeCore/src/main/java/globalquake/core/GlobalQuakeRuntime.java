@@ -1,49 +1,70 @@
 package globalquake.core;
 
+import globalquake.core.analysis.AnalysisStateTable;
 import globalquake.core.station.AbstractStation;
+import globalquake.core.station.GlobalStation;
+import globalquake.core.station.StationAnalysisScheduler;
 import globalquake.utils.NamedThreadFactory;
 import org.tinylog.Logger;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @SuppressWarnings("unused")
 public class GlobalQuakeRuntime {
 
+    private static final long ANALYSIS_STATS_INTERVAL = 60 * 1000;
+
+    // how often the columnar analysis evaluates the event trigger of all stations
+    private static final long TRIGGER_SCAN_INTERVAL = 100;
+
     private long lastSecond;
     private long lastAnalysis;
     private long lastGC;
     private long clusterAnalysisT;
     private long lastQuakesT;
-    private ScheduledExecutorService execAnalysis;
+    private long lastAnalysisStats;
+    private volatile StationAnalysisScheduler analysisScheduler;
     private ScheduledExecutorService exec1Sec;
     private ScheduledExecutorService execQuake;
+    private ScheduledExecutorService execTrigger;
+    private final LongAdder triggerScans = new LongAdder();
+    private final LongAdder triggeredEvents = new LongAdder();
 
     public void runThreads() {
-        execAnalysis = Executors
-                .newSingleThreadScheduledExecutor(new NamedThreadFactory("Station Analysis Thread"));
         exec1Sec = Executors
                 .newSingleThreadScheduledExecutor(new NamedThreadFactory("1-Second Loop Thread"));
         execQuake = Executors
-                .newSingleThreadScheduledExecutor(new NamedThreadFactory("Hypocenter Location Thread"));
+                .newSingleThreadScheduledExecutor(new NamedThreadFactory("Cluster Analysis Thread"));
 
-        execAnalysis.scheduleAtFixedRate(() -> {
-            try {
-                long a = System.currentTimeMillis();
-                GlobalQuake.instance.getStationManager().getStations().parallelStream().forEach(AbstractStation::analyse);
-                lastAnalysis = System.currentTimeMillis() - a;
-            } catch (Exception e) {
-                Logger.error("Exception occurred in station analysis");
-                GlobalQuake.getErrorHandler().handleException(e);
-            }
-        }, 0, 100, TimeUnit.MILLISECONDS);
+        analysisScheduler = new StationAnalysisScheduler();
+        // stations that received data before the scheduler existed
+        scheduleStationsWithPendingData();
+
+        AnalysisStateTable table = AnalysisStateTable.getShared();
+        if (table != null) {
+            execTrigger = Executors
+                    .newSingleThreadScheduledExecutor(new NamedThreadFactory("Trigger Scan Thread"));
+            execTrigger.scheduleAtFixedRate(() -> {
+                try {
+                    triggeredEvents.add(table.triggerEvents());
+                    triggerScans.increment();
+                } catch (Exception e) {
+                    Logger.error("Exception occurred in trigger scan");
+                    GlobalQuake.getErrorHandler().handleException(e);
+                }
+            }, 0, TRIGGER_SCAN_INTERVAL, TimeUnit.MILLISECONDS);
+        }
 
         exec1Sec.scheduleAtFixedRate(() -> {
             try {
                 long a = System.currentTimeMillis();
-                GlobalQuake.instance.getStationManager().getStations().parallelStream().forEach(
-                        station -> station.second(GlobalQuake.instance.currentTimeMillis()));
+                StagePool.ANALYSIS.invoke(() -> GlobalQuake.instance.getStationManager().getStations().parallelStream().forEach(
+                        station -> station.second(GlobalQuake.instance.currentTimeMillis())));
+                scheduleStationsWithPendingData();
+                logAnalysisStats();
                 if (GlobalQuake.instance.getEarthquakeAnalysis() != null) {
                     GlobalQuake.instance.getEarthquakeAnalysis().second();
                 }
@@ -57,8 +78,9 @@ public class GlobalQuakeRuntime {
         execQuake.scheduleAtFixedRate(() -> {
             try {
                 long a = System.currentTimeMillis();
-                GlobalQuake.instance.getClusterAnalysis().run();
-                GlobalQuake.instance.getEarthquakeAnalysis().run();
+                StagePool.CLUSTERING.invoke(GlobalQuake.instance.getClusterAnalysis()::run);
+                // clusters are located independently, so that one slow search doesn't hold back the others
+                GlobalQuake.instance.getEarthquakeAnalysis().submit(StagePool.LOCATION);
                 lastQuakesT = System.currentTimeMillis() - a;
             } catch (Exception e) {
                 Logger.error("Exception occurred in hypocenter location loop");
@@ -67,9 +89,51 @@ public class GlobalQuakeRuntime {
         }, 0, HypocsSettings.getOrDefaultInt("hypocsLoopTime", 300), TimeUnit.MILLISECONDS);
     }
 
+    private void scheduleStationsWithPendingData() {
+        for (AbstractStation station : GlobalQuake.instance.getStationManager().getStations()) {
+            if (station instanceof GlobalStation globalStation) {
+                analysisScheduler.scheduleIfPending(globalStation);
+            }
+        }
+    }
+
+    private void logAnalysisStats() {
+        long now = System.currentTimeMillis();
+        if (now - lastAnalysisStats < ANALYSIS_STATS_INTERVAL) {
+            return;
+        }
+
+        lastAnalysisStats = now;
+        StationAnalysisScheduler.Stats stats = analysisScheduler.getStatsAndReset();
+        lastAnalysis = (long) (stats.maxAnalysisMicros() / 1000.0);
+        Logger.debug("Station analysis: %d stations analysed, queue depth %d (max %d), analysis %.1f us (max %.1f us), sample delay %.0f ms (max %d ms)"
+                .formatted(stats.analysedStations(), stats.queueDepth(), stats.maxQueueDepth(), stats.avgAnalysisMicros(),
+                        stats.maxAnalysisMicros(), stats.avgDelayMs(), stats.maxDelayMs()));
+
+        if (execTrigger != null) {
+            Logger.debug("Columnar analysis: %d trigger scans, %d events triggered"
+                    .formatted(triggerScans.sumThenReset(), triggeredEvents.sumThenReset()));
+        }
+
+        for (StagePool stage : StagePool.getStages()) {
+            StagePool.Stats poolStats = stage.getStatsAndReset();
+            Logger.debug("%s pool: %d threads, %d tasks, %d queued, utilisation %.1f%%, queue latency %.1f ms (max %.1f ms)"
+                    .formatted(poolStats.name(), poolStats.threads(), poolStats.tasks(), poolStats.queuedTasks(),
+                            poolStats.utilisation() * 100.0, poolStats.avgQueueMs(), poolStats.maxQueueMs()));
+        }
+    }
+
+    public StationAnalysisScheduler getAnalysisScheduler() {
+        return analysisScheduler;
+    }
+
     public void stop() {
         GlobalQuake.instance.stopService(execQuake);
-        GlobalQuake.instance.stopService(execAnalysis);
+        if (analysisScheduler != null) {
+            analysisScheduler.stop();
+        }
         GlobalQuake.instance.stopService(exec1Sec);
+        GlobalQuake.instance.stopService(execTrigger);
+        StagePool.getStages().forEach(StagePool::stop);
     }
 }
@@ -1,5 +1,6 @@
 package globalquake.core;
 
+import globalquake.core.analysis.WaveformStorage;
 import globalquake.core.earthquake.data.Cluster;
 import globalquake.core.earthquake.quality.QualityClass;
 import globalquake.core.exception.RuntimeApplicationException;
@@ -102,10 +103,16 @@ public final class Settings {
     public static Boolean cinemaModeReenable;
 
     public static Integer logsStoreTimeMinutes;
+    public static Integer waveformStorageIndex;
+    // waveforms stored outside the java heap can be kept for longer
+    public static final int logsStoreTimeMinutesMaxHeap = 60;
+    public static final int logsStoreTimeMinutesMax = 24 * 60;
     public static Integer maxEvents;
     public static final int maxEventsDefault = 60;
     public static Boolean displayCoreWaves;
     public static Boolean recalibrateOnLaunch;
+    public static Boolean columnarAnalysis;
+    public static Boolean incrementalClustering;
     public static Double stationsSizeMul;
     public static Integer selectedEventColorIndex;
 
@@ -274,11 +281,14 @@ public final class Settings {
         loadProperty("selectedEventColorIndex", "0", o -> validateInt(0, 2, (Integer) o));
         loadProperty("stationsSizeMul", "1.0", o -> validateDouble(0, 10, (Double) o));
         loadProperty("recalibrateOnLaunch", "true");
+        loadProperty("columnarAnalysis", "false");
+        loadProperty("incrementalClustering", "false");
 
         loadProperty("displayCoreWaves", "false");
         loadProperty("maxEvents", String.valueOf(maxEventsDefault));
 
-        loadProperty("logsStoreTimeMinutes", "5", o -> validateInt(1, 60, (Integer) o));
+        loadProperty("waveformStorageIndex", "0", o -> validateInt(0, WaveformStorage.Type.values().length - 1, (Integer) o));
+        loadProperty("logsStoreTimeMinutes", "5", o -> validateInt(1, getMaxLogsStoreTimeMinutes(), (Integer) o));
 
         loadProperty("cinemaModeOnStartup", "true");
         loadProperty("cinemaModeReenable", "true");
@@ -400,6 +410,10 @@ public final class Settings {
         return DistanceUnit.values()[Math.max(0, Math.min(DistanceUnit.values().length - 1, distanceUnitsIndex))];
     }
 
+    public static int getMaxLogsStoreTimeMinutes() {
+        return waveformStorageIndex == WaveformStorage.Type.HEAP.ordinal() ? logsStoreTimeMinutesMaxHeap : logsStoreTimeMinutesMax;
+    }
+
     public static boolean validateDouble(double min, double max, double v) {
         return !Double.isInfinite(v) && !Double.isNaN(v) && !(v < min) && !(v > max);
     }
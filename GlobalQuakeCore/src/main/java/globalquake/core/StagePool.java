@@ -0,0 +1,213 @@
+package globalquake.core;
+
+import org.tinylog.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Named and sized {@link ForkJoinPool} of one stage of the pipeline. Parallel streams and fork/join tasks
+ * started by a task of the pool stay in the pool, so a busy stage doesn't starve the others in the common pool.
+ * The real-time stages run with a higher thread priority.
+ * <p>
+ * The size is read from the hypocs setting of the stage when the pool is first used. By default the location
+ * and confidence stages together get about three quarters of the cores, so that the station analysis always has
+ * cores left. The station analysis pool runs the analysis of new records scheduled by
+ * {@link globalquake.core.station.StationAnalysisScheduler} and the station updates once a second.
+ */
+public final class StagePool implements Executor {
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    public static final StagePool ANALYSIS = new StagePool("Station Analysis", "analysisThreads", CPUS, Thread.NORM_PRIORITY + 2);
+    public static final StagePool CLUSTERING = new StagePool("Cluster Analysis", "clusteringThreads", 1, Thread.NORM_PRIORITY + 1);
+    public static final StagePool LOCATION = new StagePool("Hypocenter Location", "locationThreads", Math.max(2, CPUS / 2), Thread.NORM_PRIORITY);
+    public static final StagePool CONFIDENCE = new StagePool("Hypocenter Confidence", "confidenceThreads", Math.max(1, CPUS / 4), Thread.NORM_PRIORITY - 1);
+
+    private static final List<StagePool> STAGES = List.of(ANALYSIS, CLUSTERING, LOCATION, CONFIDENCE);
+
+    public record Stats(String name, int threads, long tasks, long queuedTasks, double utilisation,
+                        double avgQueueMs, double maxQueueMs) {
+    }
+
+    private final String name;
+    private final String setting;
+    private final int defaultThreads;
+    private final int priority;
+
+    private volatile ForkJoinPool pool;
+
+    // thread id -> CPU time at the last statistics
+    private final Map<Long, Long> workerCpuTimes = new ConcurrentHashMap<>();
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private long lastStats = System.nanoTime();
+
+    private StagePool(String name, String setting, int defaultThreads, int priority) {
+        this.name = name;
+        this.setting = setting;
+        this.defaultThreads = defaultThreads;
+        this.priority = priority;
+    }
+
+    public static List<StagePool> getStages() {
+        return STAGES;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private ForkJoinPool getPool() {
+        ForkJoinPool result = pool;
+        if (result != null) {
+            return result;
+        }
+
+        synchronized (this) {
+            if (pool == null) {
+                int threads = Math.max(1, HypocsSettings.getOrDefaultInt(setting, defaultThreads));
+                pool = new ForkJoinPool(threads, this::newThread, (thread, throwable) -> {
+                    Logger.error("Exception occurred in %s".formatted(name));
+                    if (GlobalQuake.getErrorHandler() != null) {
+                        GlobalQuake.getErrorHandler().handleException(throwable);
+                    } else {
+                        Logger.error(throwable);
+                    }
+                }, false);
+                Logger.debug("%s pool created with %d threads".formatted(name, threads));
+            }
+            return pool;
+        }
+    }
+
+    private ForkJoinWorkerThread newThread(ForkJoinPool forkJoinPool) {
+        ForkJoinWorkerThread thread = new ForkJoinWorkerThread(forkJoinPool) {
+            @Override
+            protected void onTermination(Throwable exception) {
+                workerCpuTimes.remove(getId());
+                super.onTermination(exception);
+            }
+        };
+        thread.setName("%s Thread #%d".formatted(name, thread.getPoolIndex()));
+        thread.setPriority(priority);
+        thread.setDaemon(true);
+        workerCpuTimes.put(thread.getId(), 0L);
+        return thread;
+    }
+
+    private boolean isCurrentPool() {
+        ForkJoinPool current = ForkJoinTask.getPool();
+        return current != null && current == pool;
+    }
+
+    private Runnable measure(Runnable runnable) {
+        long submitted = System.nanoTime();
+        return () -> {
+            long nanos = System.nanoTime() - submitted;
+            tasks.increment();
+            queueNanos.add(nanos);
+            maxQueueNanos.accumulateAndGet(nanos, Math::max);
+            runnable.run();
+        };
+    }
+
+    /**
+     * Runs the task in the pool and returns immediately
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        getPool().execute(measure(runnable));
+    }
+
+    /**
+     * Runs the task in the pool and waits for it, directly if already called from the pool
+     */
+    public <T> T invoke(Supplier<T> supplier) {
+        if (isCurrentPool()) {
+            return supplier.get();
+        }
+
+        Object[] result = new Object[1];
+        getPool().submit(measure(() -> result[0] = supplier.get())).join();
+
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    public void invoke(Runnable runnable) {
+        invoke(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return statistics since the last call, the utilisation is the CPU time of the workers
+     * over the time they could have used, or -1 if CPU time isn't supported
+     */
+    public synchronized Stats getStatsAndReset() {
+        long now = System.nanoTime();
+        long elapsed = now - lastStats;
+        lastStats = now;
+
+        ForkJoinPool current = pool;
+        int threads = current == null ? 0 : current.getParallelism();
+
+        double utilisation = -1;
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled()) {
+            long cpu = 0;
+            for (Map.Entry<Long, Long> entry : workerCpuTimes.entrySet()) {
+                long time = threadMXBean.getThreadCpuTime(entry.getKey());
+                if (time >= 0) {
+                    cpu += time - entry.getValue();
+                    entry.setValue(time);
+                }
+            }
+            utilisation = threads == 0 || elapsed <= 0 ? 0 : cpu / ((double) elapsed * threads);
+        }
+
+        long count = tasks.sumThenReset();
+        long queued = current == null ? 0 : current.getQueuedSubmissionCount() + current.getQueuedTaskCount();
+        double avgQueueMs = count == 0 ? 0 : queueNanos.sumThenReset() / (count * 1e6);
+        if (count == 0) {
+            queueNanos.reset();
+        }
+
+        return new Stats(name, threads, count, queued, utilisation, avgQueueMs, maxQueueNanos.getAndSet(0) / 1e6);
+    }
+
+    /**
+     * Shuts the pool down, it will be created again when used
+     */
+    public synchronized void stop() {
+        ForkJoinPool current = pool;
+        pool = null;
+        if (current == null) {
+            return;
+        }
+
+        current.shutdown();
+        try {
+            if (!current.awaitTermination(1, TimeUnit.SECONDS)) {
+                current.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Logger.error("Thread interrupted while shutting down %s!".formatted(name));
+        }
+    }
+}
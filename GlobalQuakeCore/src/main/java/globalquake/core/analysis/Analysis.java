@@ -3,11 +3,13 @@ package globalquake.core.analysis;
 import globalquake.core.GlobalQuake;
 import globalquake.core.Settings;
 import globalquake.core.station.AbstractStation;
+import edu.sc.seis.seisFile.mseed.Blockette1000;
 import edu.sc.seis.seisFile.mseed.DataRecord;
 import org.tinylog.Logger;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public abstract class Analysis {
     private long lastRecord;
@@ -23,6 +25,12 @@ public abstract class Analysis {
 
     private WaveformBuffer waveformBuffer = null;
 
+    // notified whenever the P wave of one of the detected events changes
+    private volatile Consumer<Event> pickListener;
+
+    // reused between records to avoid allocating a new array for every record
+    private int[] sampleBuffer = new int[512];
+
     public Analysis(AbstractStation station) {
         this.station = station;
         this.sampleRate = -1;
@@ -59,31 +67,78 @@ public abstract class Analysis {
         if (gap > getGapThreshold()) {
             reset();
         }
-        int[] data;
         try {
             if (!dataRecord.isDecompressable()) {
                 Logger.debug("Not Decompressable!");
                 return;
             }
-            data = dataRecord.decompress().getAsInt();
-            if (data == null) {
+
+            int count = decompress(dataRecord);
+            if (count < 0) {
                 Logger.debug("Decompressed array is null!");
                 return;
             }
 
-            int i = 0;
-
-            for (int v : data) {
-                long time = startTime + (long) (i * (1000.0 / dataRecord.getSampleRate()));
-                nextSample(v, time, GlobalQuake.instance.currentTimeMillis());
-                i++;
-            }
+            nextSamples(sampleBuffer, count, startTime, dataRecord.getSampleRate());
         } catch (Exception e) {
             Logger.trace(e);
             Logger.warn("There was a problem with data processing on station %s: %s".formatted(getStation().getStationCode(), e.getMessage()));
         }
     }
 
+    /**
+     * Decompresses the record into {@link #sampleBuffer}, Steim records are decoded without allocation
+     *
+     * @return number of samples or -1 if there is no data
+     */
+    private int decompress(DataRecord dataRecord) throws Exception {
+        int numSamples = dataRecord.getHeader().getNumSamples();
+        if (sampleBuffer.length < numSamples) {
+            sampleBuffer = new int[numSamples];
+        }
+
+        Blockette1000 b1000 = (Blockette1000) dataRecord.getUniqueBlockette(1000);
+        if (b1000 != null && SteimDecoder.isSupported(b1000.getEncodingFormat())) {
+            return SteimDecoder.decode(b1000.getEncodingFormat(), dataRecord.getData(), numSamples, b1000.isLittleEndian(), sampleBuffer);
+        }
+
+        int[] data = dataRecord.decompress().getAsInt();
+        if (data == null) {
+            return -1;
+        }
+
+        if (sampleBuffer.length < data.length) {
+            sampleBuffer = new int[data.length];
+        }
+        System.arraycopy(data, 0, sampleBuffer, 0, data.length);
+        return data.length;
+    }
+
+    /**
+     * Feeds a block of consecutive samples into the analysis. The clock is read only once for the whole block.
+     *
+     * @param buf       samples
+     * @param len       number of valid samples in buf
+     * @param startTime time of the first sample
+     * @param sps       sample rate
+     */
+    public void nextSamples(int[] buf, int len, long startTime, double sps) {
+        long currentTime = GlobalQuake.instance.currentTimeMillis();
+        double step = 1000.0 / sps;
+        long stepMillis = (long) step;
+        if (stepMillis == step) {
+            long time = startTime;
+            for (int i = 0; i < len; i++) {
+                nextSample(buf[i], time, currentTime);
+                time += stepMillis;
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                nextSample(buf[i], startTime + (long) (i * step), currentTime);
+            }
+        }
+    }
+
     public abstract void nextSample(int v, long time, long currentTime);
 
     @SuppressWarnings("SameReturnValue")
@@ -108,6 +163,17 @@ public abstract class Analysis {
         return detectedEvents;
     }
 
+    public void setPickListener(Consumer<Event> pickListener) {
+        this.pickListener = pickListener;
+    }
+
+    void pickUpdated(Event event) {
+        Consumer<Event> listener = pickListener;
+        if (listener != null) {
+            listener.accept(event);
+        }
+    }
+
     public Event getLatestEvent() {
         var maybeEvent = detectedEvents.stream().findFirst();
         return maybeEvent.orElse(null);
@@ -127,7 +193,12 @@ public abstract class Analysis {
 
     public void setSampleRate(double sampleRate) {
         this.sampleRate = sampleRate;
-        waveformBuffer = new WaveformBuffer(getSampleRate(), Settings.logsStoreTimeMinutes * 60, GlobalQuake.getInstance().limitedWaveformBuffers());
+        if (waveformBuffer != null) {
+            // events still log into their views, which must not depend on the replaced buffer
+            waveformBuffer.detachAllViews();
+        }
+        waveformBuffer = new WaveformBuffer(getSampleRate(), Settings.logsStoreTimeMinutes * 60, GlobalQuake.getInstance().limitedWaveformBuffers(),
+                WaveformStorage.Type.values()[Settings.waveformStorageIndex]);
     }
 
     public WaveformBuffer getWaveformBuffer() {
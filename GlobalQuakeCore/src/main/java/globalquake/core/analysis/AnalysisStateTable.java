@@ -0,0 +1,144 @@
+package globalquake.core.analysis;
+
+import java.util.Arrays;
+
+/**
+ * STA/LTA state of {@link BetterAnalysis} stored as primitive arrays, one slot per station.
+ * <p>
+ * In columnar mode all stations share {@link #getShared()} and use their station id as the slot, so the running
+ * averages of the whole network lie next to each other. The analyses check the trigger condition after every
+ * sample, but only write down the time of the first sample that met it. The events of all stations are then
+ * created in one loop by {@link #triggerEvents()}. Until that happens the analysis keeps what the event would
+ * have recorded in the trigger columns: the largest ratio and velocities and whether the event has already ended.
+ * Otherwise each analysis owns a table with a single slot and creates the event right at the sample.
+ * <p>
+ * A slot is only written by the thread analysing its station, with the analysis locked. The shared table is sized
+ * once when the stations are created and never grows, stations with an id outside of it get a private table.
+ */
+public class AnalysisStateTable {
+
+    public static final long NO_TRIGGER = Long.MIN_VALUE;
+
+    private static volatile AnalysisStateTable shared = null;
+
+    final double[] shortAverage;
+    final double[] mediumAverage;
+    final double[] longAverage;
+    final double[] specialAverage;
+    final double[] thirdAverage;
+    final long[] eventTimer;
+
+    // first sample that met the trigger condition and has no event yet, or NO_TRIGGER
+    final long[] triggerTime;
+
+    // time the pending event ended, 0 while it lasts
+    final long[] triggerEnd;
+    final boolean[] triggerEndedBadly;
+
+    final double[] triggerMaxRatio;
+    final double[] triggerMaxVelocity;
+    final double[] triggerMaxVelocityLowFreq;
+    final double[] triggerMaxVelocityUltraLowFreq;
+
+    private final BetterAnalysis[] analyses;
+
+    public AnalysisStateTable(int capacity) {
+        shortAverage = new double[capacity];
+        mediumAverage = new double[capacity];
+        longAverage = new double[capacity];
+        specialAverage = new double[capacity];
+        thirdAverage = new double[capacity];
+        eventTimer = new long[capacity];
+        triggerTime = new long[capacity];
+        Arrays.fill(triggerTime, NO_TRIGGER);
+        triggerEnd = new long[capacity];
+        triggerEndedBadly = new boolean[capacity];
+        triggerMaxRatio = new double[capacity];
+        triggerMaxVelocity = new double[capacity];
+        triggerMaxVelocityLowFreq = new double[capacity];
+        triggerMaxVelocityUltraLowFreq = new double[capacity];
+        analyses = new BetterAnalysis[capacity];
+    }
+
+    /**
+     * @return the table of all stations in columnar mode, otherwise null
+     */
+    public static AnalysisStateTable getShared() {
+        return shared;
+    }
+
+    public static boolean isColumnar() {
+        return shared != null;
+    }
+
+    /**
+     * Replaces the shared table with an empty one, has to be called before the stations are created.
+     * Analyses created afterwards use it.
+     *
+     * @param capacity number of stations, or 0 to turn the columnar mode off
+     */
+    public static void initShared(int capacity) {
+        shared = capacity > 0 ? new AnalysisStateTable(capacity) : null;
+    }
+
+    public int getCapacity() {
+        return shortAverage.length;
+    }
+
+    void register(int slot, BetterAnalysis analysis) {
+        analyses[slot] = analysis;
+    }
+
+    /**
+     * The event trigger condition of {@link BetterAnalysis}, without the checks of the analysis status
+     */
+    public static boolean isTriggered(double shortAverage, double longAverage, double thirdAverage, long time, long eventTimer) {
+        double ratio = shortAverage / longAverage;
+        boolean cond1 = ratio >= BetterAnalysis.EVENT_THRESHOLD * 1.3 && time - eventTimer > 200;
+        boolean cond2 = ratio >= BetterAnalysis.EVENT_THRESHOLD * 2.05 && time - eventTimer > 100;
+        boolean condMain = shortAverage / thirdAverage > 3.0;
+        return condMain && (cond1 || cond2);
+    }
+
+    /**
+     * @return true if the slot has a trigger waiting for its event
+     */
+    public boolean isPending(int slot) {
+        return triggerTime[slot] != NO_TRIGGER;
+    }
+
+    void startTrigger(int slot, long time) {
+        triggerTime[slot] = time;
+        triggerEnd[slot] = 0;
+        triggerEndedBadly[slot] = false;
+        triggerMaxRatio[slot] = 0;
+        triggerMaxVelocity[slot] = 0;
+        triggerMaxVelocityLowFreq[slot] = 0;
+        triggerMaxVelocityUltraLowFreq[slot] = 0;
+    }
+
+    void clearTrigger(int slot) {
+        triggerTime[slot] = NO_TRIGGER;
+    }
+
+    /**
+     * Creates the events of all pending triggers in one loop. The column is read without locking,
+     * each analysis checks its trigger again before the event is created.
+     *
+     * @return number of triggered events
+     */
+    public int triggerEvents() {
+        long[] triggerTime = this.triggerTime;
+
+        int triggered = 0;
+        for (int slot = 0; slot < triggerTime.length; slot++) {
+            if (triggerTime[slot] != NO_TRIGGER) {
+                BetterAnalysis analysis = analyses[slot];
+                if (analysis != null && analysis.triggerFromTable()) {
+                    triggered++;
+                }
+            }
+        }
+        return triggered;
+    }
+}
@@ -1,5 +1,6 @@
 package globalquake.core.analysis;
 
+import globalquake.core.GlobalQuake;
 import globalquake.core.Settings;
 import globalquake.core.station.AbstractStation;
 import globalquake.core.station.StationState;
@@ -23,12 +24,13 @@ public class BetterAnalysis extends Analysis {
     private int initialOffsetCnt;
     private double initialRatioSum;
     private int initialRatioCnt;
-    private double longAverage;
-    private double mediumAverage;
-    private double shortAverage;
-    private double specialAverage;
-    private double thirdAverage;
-    private long eventTimer;
+
+    // running averages and event timer, either in a private table or in the shared columnar table
+    private final AnalysisStateTable state;
+    private final int slot;
+
+    // events are created by AnalysisStateTable.triggerEvents instead of right at the triggering sample
+    private final boolean columnar;
 
     // in seconds
     public static final double EVENT_END_DURATION = 7.0;
@@ -38,11 +40,12 @@ public class BetterAnalysis extends Analysis {
 
     private double initialOffset;
 
-    private WaveformTransformator waveformDefault;
-
-    private WaveformTransformator waveformLowFreq;
-
-    private WaveformTransformator waveformUltraLowFreq;
+    // default, low frequency and ultra low frequency bands
+    private WaveformFilterBank filterBank;
+    private static final int DEFAULT = 0;
+    private static final int LOW_FREQ = 1;
+    private static final int ULTRA_LOW_FREQ = 2;
+    private long resetCount;
     public static final double minFreqDefault = 2.0;
     public static final double maxFreqDefault = 5.0;
 
@@ -55,15 +58,68 @@ public class BetterAnalysis extends Analysis {
 
     public BetterAnalysis(AbstractStation station) {
         super(station);
+        AnalysisStateTable shared = AnalysisStateTable.getShared();
+        columnar = shared != null && station.getId() >= 0 && station.getId() < shared.getCapacity();
+        if (columnar) {
+            state = shared;
+            slot = station.getId();
+            state.register(slot, this);
+        } else {
+            state = new AnalysisStateTable(1);
+            slot = 0;
+        }
     }
 
-
     @Override
     public synchronized void nextSample(int v, long time, long currentTime) {
-        if (waveformDefault == null) {
+        processSample(v, time, currentTime);
+    }
+
+    @Override
+    public synchronized void nextSamples(int[] buf, int len, long startTime, double sps) {
+        long currentTime = GlobalQuake.instance.currentTimeMillis();
+        double step = 1000.0 / sps;
+
+        int i = 0;
+        while (i < len) {
+            if (filterBank == null || getStatus() == AnalysisStatus.INIT) {
+                processSample(buf[i], startTime + (long) (i * step), currentTime);
+                i++;
+                continue;
+            }
+
+            // the offset is constant outside INIT, so the whole rest of the block can be filtered at once
+            int from = i;
+            long resets = resetCount;
+            filterBank.processBlock(buf, from, len, initialOffset);
+            for (; i < len; i++) {
+                long time = startTime + (long) (i * step);
+                if (!checkSample(time)) {
+                    i++;
+                    break;
+                }
+
+                int index = i - from;
+                evaluate(buf[i], time, currentTime, filterBank.getBlockValue(DEFAULT, index), filterBank.getBlockVelocity(DEFAULT, index),
+                        filterBank.getBlockVelocity(LOW_FREQ, index), filterBank.getBlockVelocity(ULTRA_LOW_FREQ, index));
+
+                if (resetCount != resets) {
+                    // filters were reset, the rest has to be processed from the start of INIT
+                    i++;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the sample cannot be analysed and the analysis was reset
+     */
+    private boolean checkSample(long time) {
+        if (filterBank == null) {
             reset();// initial reset;
             getStation().reportState(StationState.INACTIVE, time);
-            return;
+            return false;
         }
 
 
@@ -71,10 +127,17 @@ public class BetterAnalysis extends Analysis {
             //System.err.println("BACKWARDS TIME IN ANALYSIS (" + getStation().getStationCode() + ")");
             reset();
             getStation().reportState(StationState.INACTIVE, time);
-            return;
+            return false;
         }
 
         latestLogTime = time;
+        return true;
+    }
+
+    private void processSample(int v, long time, long currentTime) {
+        if (!checkSample(time)) {
+            return;
+        }
 
         if (getStatus() == AnalysisStatus.INIT) {
             if (initProgress <= INIT_OFFSET_CALCULATION * 0.001 * getSampleRate()) {
@@ -83,32 +146,29 @@ public class BetterAnalysis extends Analysis {
                 if (initProgress >= INIT_OFFSET_CALCULATION * 0.001 * getSampleRate() * 0.25) {
                     double _initialOffset = initialOffsetSum / initialOffsetCnt;
 
-                    waveformDefault.accept(v - _initialOffset);
-                    waveformLowFreq.accept(v - _initialOffset);
-                    waveformUltraLowFreq.accept(v - _initialOffset);
+                    filterBank.accept(v - _initialOffset);
 
-                    double filteredV = waveformDefault.getCurrentValue();
+                    double filteredV = filterBank.getCurrentValue(DEFAULT);
                     initialRatioSum += Math.abs(filteredV);
                     initialRatioCnt++;
-                    longAverage = initialRatioSum / initialRatioCnt;
+                    state.longAverage[slot] = initialRatioSum / initialRatioCnt;
                 }
             } else if (initProgress <= (INIT_AVERAGE_RATIO + INIT_OFFSET_CALCULATION) * 0.001 * getSampleRate()) {
                 double _initialOffset = initialOffsetSum / initialOffsetCnt;
-                waveformDefault.accept(v - _initialOffset);
-                waveformLowFreq.accept(v - _initialOffset);
-                waveformUltraLowFreq.accept(v - _initialOffset);
+                filterBank.accept(v - _initialOffset);
 
-                double filteredV = waveformDefault.getCurrentValue();
-                longAverage -= (longAverage - Math.abs(filteredV)) / (getSampleRate() * 6.0);
+                double filteredV = filterBank.getCurrentValue(DEFAULT);
+                state.longAverage[slot] -= (state.longAverage[slot] - Math.abs(filteredV)) / (getSampleRate() * 6.0);
             } else {
                 initialOffset = initialOffsetSum / initialOffsetCnt;
 
-                shortAverage = longAverage;
-                mediumAverage = longAverage;
-                specialAverage = longAverage * 2.5;
-                thirdAverage = longAverage;
+                double longAverage = state.longAverage[slot];
+                state.shortAverage[slot] = longAverage;
+                state.mediumAverage[slot] = longAverage;
+                state.specialAverage[slot] = longAverage * 2.5;
+                state.thirdAverage[slot] = longAverage;
 
-                longAverage *= 0.75;
+                state.longAverage[slot] = longAverage * 0.75;
                 setStatus(AnalysisStatus.IDLE);
             }
             initProgress++;
@@ -116,11 +176,73 @@ public class BetterAnalysis extends Analysis {
             return;
         }
 
-        waveformDefault.accept(v - initialOffset);
-        waveformLowFreq.accept(v - initialOffset);
-        waveformUltraLowFreq.accept(v - initialOffset);
+        filterBank.accept(v - initialOffset);
+
+        evaluate(v, time, currentTime, filterBank.getCurrentValue(DEFAULT), filterBank.getVelocity(DEFAULT),
+                filterBank.getVelocity(LOW_FREQ), filterBank.getVelocity(ULTRA_LOW_FREQ));
+    }
+
+    private boolean canTrigger() {
+        return getStatus() == AnalysisStatus.IDLE && !getWaveformBuffer().isEmpty() && !getStation().disabled;
+    }
+
+    private void trigger(long time) {
+        WaveformView view = getWaveformBuffer().createView(time - EVENT_EXTENSION_TIME * 1000);
+        if (!view.isEmpty()) {
+            setStatus(AnalysisStatus.EVENT);
+            Event event = new Event(this, time, view, !getStation().isSensitivityValid());
+            getDetectedEvents().add(0, event);
+        }
+    }
+
+    /**
+     * Called by {@link AnalysisStateTable#triggerEvents()} for a slot with a pending trigger
+     *
+     * @return true if the event was triggered
+     */
+    synchronized boolean triggerFromTable() {
+        return state.isPending(slot) && createPendingEvent();
+    }
+
+    /**
+     * Creates the event of the pending trigger as if it was triggered at the sample that met the condition
+     * and gives it what it would have recorded since then
+     */
+    private boolean createPendingEvent() {
+        long start = state.triggerTime[slot];
+        state.clearTrigger(slot);
+        if (!canTrigger()) {
+            return false;
+        }
+
+        trigger(start);
+        if (getStatus() != AnalysisStatus.EVENT) {
+            return false;
+        }
+
+        // the P wave is recalculated once for every threshold the ratio has reached, as it would have been sample by sample
+        Event event = getDetectedEvents().get(0);
+        while (event.isValid() && event.update(state.triggerMaxRatio[slot], state.triggerMaxVelocity[slot],
+                state.triggerMaxVelocityLowFreq[slot], state.triggerMaxVelocityUltraLowFreq[slot])) {
+        }
+        if (state.triggerEnd[slot] != 0) {
+            setStatus(AnalysisStatus.IDLE);
+            event.end(state.triggerEnd[slot]);
+        }
+        if (state.triggerEndedBadly[slot]) {
+            setStatus(AnalysisStatus.IDLE);
+            event.endBadly();
+        }
+        return true;
+    }
 
-        double filteredV = waveformDefault.getCurrentValue();
+    private void evaluate(int v, long time, long currentTime, double filteredV, double filteredVelocity,
+                          double filteredVelocityLowFreq, double filteredVelocityUltraLowFreq) {
+        double shortAverage = state.shortAverage[slot];
+        double mediumAverage = state.mediumAverage[slot];
+        double longAverage = state.longAverage[slot];
+        double specialAverage = state.specialAverage[slot];
+        double thirdAverage = state.thirdAverage[slot];
 
         double absFilteredV = Math.abs(filteredV);
         shortAverage -= (shortAverage - absFilteredV) / (getSampleRate() * 0.5);
@@ -136,22 +258,39 @@ public class BetterAnalysis extends Analysis {
         if (shortAverage / longAverage < 4.0) {
             longAverage -= (longAverage - absFilteredV) / (getSampleRate() * 200.0);
         }
+
+        state.shortAverage[slot] = shortAverage;
+        state.mediumAverage[slot] = mediumAverage;
+        state.longAverage[slot] = longAverage;
+        state.specialAverage[slot] = specialAverage;
+        state.thirdAverage[slot] = thirdAverage;
+
         double ratio = shortAverage / longAverage;
-        if (getStatus() == AnalysisStatus.IDLE && !getWaveformBuffer().isEmpty() && !getStation().disabled) {
-            boolean cond1 = shortAverage / longAverage >= EVENT_THRESHOLD * 1.3 && time - eventTimer > 200;
-            boolean cond2 = shortAverage / longAverage >= EVENT_THRESHOLD * 2.05 && time - eventTimer > 100;
-            boolean condMain = shortAverage / thirdAverage > 3.0;
-            if (condMain && (cond1 || cond2)) {
-                WaveformBuffer buffer = getWaveformBuffer().extract(time - EVENT_EXTENSION_TIME * 1000, time);
-                if (!buffer.isEmpty()) {
-                    setStatus(AnalysisStatus.EVENT);
-                    Event event = new Event(this, time, buffer, !getStation().isSensitivityValid());
-                    getDetectedEvents().add(0, event);
-                }
+        if (canTrigger() && AnalysisStateTable.isTriggered(shortAverage, longAverage, thirdAverage, time, state.eventTimer[slot])) {
+            if (!columnar) {
+                trigger(time);
+            } else if (!state.isPending(slot)) {
+                state.startTrigger(slot, time);
+            } else if (state.triggerEnd[slot] != 0 || state.triggerEndedBadly[slot]) {
+                // the pending event is over before the scan got to it, so it is created now to make room for the next one
+                createPendingEvent();
+                state.startTrigger(slot, time);
             }
         }
         if (shortAverage / longAverage < EVENT_THRESHOLD) {
-            eventTimer = time;
+            state.eventTimer[slot] = time;
+        }
+
+        boolean pending = columnar && state.isPending(slot);
+        if (pending && state.triggerEnd[slot] == 0 && !state.triggerEndedBadly[slot]) {
+            // the same checks as for the event below
+            long timeFromStart = time - state.triggerTime[slot];
+            if (timeFromStart >= EVENT_END_DURATION * 1000 && mediumAverage < thirdAverage * 0.95) {
+                state.triggerEnd[slot] = time;
+            }
+            if (timeFromStart >= 1000 && (timeFromStart < 7.5 * 1000 && shortAverage < longAverage * 1.25 || shortAverage < mediumAverage * 0.12)) {
+                state.triggerEndedBadly[slot] = true;
+            }
         }
 
         Event latestEvent = getLatestEvent();
@@ -176,9 +315,9 @@ public class BetterAnalysis extends Analysis {
         }
 
 
-        double velocity = Math.abs(waveformDefault.getVelocity());
-        double velocityLowFreq = Math.abs(waveformLowFreq.getVelocity());
-        double velocityUltraLowFreq = Math.abs(waveformUltraLowFreq.getVelocity());
+        double velocity = Math.abs(filteredVelocity);
+        double velocityLowFreq = Math.abs(filteredVelocityLowFreq);
+        double velocityUltraLowFreq = Math.abs(filteredVelocityUltraLowFreq);
 
         if (velocity > _maxVelocity) {
             _maxVelocity = velocity;
@@ -213,6 +352,13 @@ public class BetterAnalysis extends Analysis {
                             (float) longAverage, (float) specialAverage, ratio, velocity, velocityLowFreq, velocityUltraLowFreq);
                 }
             }
+
+            if (pending && !state.triggerEndedBadly[slot]) {
+                state.triggerMaxRatio[slot] = Math.max(state.triggerMaxRatio[slot], ratio);
+                state.triggerMaxVelocity[slot] = Math.max(state.triggerMaxVelocity[slot], velocity);
+                state.triggerMaxVelocityLowFreq[slot] = Math.max(state.triggerMaxVelocityLowFreq[slot], velocityLowFreq);
+                state.triggerMaxVelocityUltraLowFreq[slot] = Math.max(state.triggerMaxVelocityUltraLowFreq[slot], velocityUltraLowFreq);
+            }
         }
         getStation().reportState(StationState.ACTIVE, time);
     }
@@ -243,14 +389,16 @@ public class BetterAnalysis extends Analysis {
         numRecords = 0;
         latestLogTime = 0;
 
-        if(waveformDefault == null) {
-            waveformDefault = new WaveformTransformator(minFreqDefault, maxFreqDefault, getStation().getSensitivity(), getSampleRate(), getStation().getInputType());
-            waveformLowFreq = new WaveformTransformator(minFreqLow, maxFreqLow, getStation().getSensitivity(), getSampleRate(), getStation().getInputType());
-            waveformUltraLowFreq = new WaveformTransformator(minFreqUltraLow, maxFreqUltraLow, getStation().getSensitivity(), getSampleRate(), getStation().getInputType());
+        resetCount++;
+        // an event that was not created yet would be ended badly below
+        state.clearTrigger(slot);
+
+        if(filterBank == null) {
+            filterBank = new WaveformFilterBank(new double[]{minFreqDefault, minFreqLow, minFreqUltraLow},
+                    new double[]{maxFreqDefault, maxFreqLow, maxFreqUltraLow},
+                    getStation().getSensitivity(), getSampleRate(), getStation().getInputType());
         }
-        waveformDefault.reset();
-        waveformLowFreq.reset();
-        waveformUltraLowFreq.reset();
+        filterBank.reset();
 
         // from latest event to the oldest event
         // it has to be synced because there is the 1-second thread
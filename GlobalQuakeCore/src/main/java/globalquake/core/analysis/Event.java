@@ -6,9 +6,6 @@ import globalquake.core.report.StationReport;
 
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -44,18 +41,18 @@ public class Event implements Serializable {
 
     private boolean isSWave;
 
-    private WaveformBuffer waveformBuffer;
+    private WaveformView waveformView;
 
     private double maxVelocity;
     private double maxVelocityLowFreq;
     private double maxVelocityUltraLowFreq;
     private double velocityUltraLowFreqStepped;
 
-    public Event(Analysis analysis, long start, WaveformBuffer waveformBuffer, boolean usingRatio) {
-        this(analysis, waveformBuffer.getReadLock(), waveformBuffer.getWriteLock());
+    public Event(Analysis analysis, long start, WaveformView waveformView, boolean usingRatio) {
+        this(analysis, waveformView.getStationBuffer().getReadLock(), waveformView.getStationBuffer().getWriteLock());
         this.start = start;
-        this.waveformBuffer = waveformBuffer;
-        this.firstLogTime = waveformBuffer.getTime(waveformBuffer.getOldestDataSlot());
+        this.waveformView = waveformView;
+        this.firstLogTime = waveformView.getTime(waveformView.getStartSeq());
         this.valid = true;
         this.usingRatio = usingRatio;
     }
@@ -92,11 +89,15 @@ public class Event implements Serializable {
     }
 
     public void setpWave(long pWave) {
-        if (this.pWave != pWave) {
+        boolean changed = this.pWave != pWave;
+        if (changed) {
             this.updatesCount++;
         }
         this.pWave = pWave;
         checkValidity();
+        if (changed) {
+            analysis.pickUpdated(this);
+        }
     }
 
     private void checkValidity() {
@@ -174,13 +175,22 @@ public class Event implements Serializable {
                     float specialAverage, double ratio, double velocity, double velocityLowFreq, double velocityUltraLowFreq) {
         try {
             writeLock.lock();
-            if (waveformBuffer == null) {
+            if (waveformView == null) {
                 return;
             }
-            waveformBuffer.log(time, rawValue, filteredV, shortAverage, mediumAverage, longAverage, specialAverage, true);
+            waveformView.log(time, rawValue, filteredV, shortAverage, mediumAverage, longAverage, specialAverage);
         } finally {
             writeLock.unlock();
         }
+        update(ratio, velocity, velocityLowFreq, velocityUltraLowFreq);
+    }
+
+    /**
+     * Updates the maximal ratio and velocities and recalculates the P wave when the ratio reaches the next threshold
+     *
+     * @return true if the P wave was recalculated
+     */
+    boolean update(double ratio, double velocity, double velocityLowFreq, double velocityUltraLowFreq) {
         if (ratio > this.maxRatio) {
             this.maxRatio = ratio;
         }
@@ -211,15 +221,17 @@ public class Event implements Serializable {
                     nextPWaveCalc++;
                     try {
                         readLock.lock();
-                        if (waveformBuffer != null) {
+                        if (waveformView != null) {
                             findPWaveMethod1();
                         }
                     } finally {
                         readLock.unlock();
                     }
+                    return true;
                 }
             }
         }
+        return false;
     }
 
     // T-30sec
@@ -227,81 +239,17 @@ public class Event implements Serializable {
     private void findPWaveMethod1() {
         // 0 - when first detected
         // 1 - first upgrade etc...
-        if (waveformBuffer.isEmpty()) {
+        if (waveformView.isEmpty()) {
             return;
         }
-        int strenghtLevel = nextPWaveCalc;
-        long lookBack = (getStart() - (long) ((60.0 / strenghtLevel) * 1000));
-
-        List<Double> slows = new ArrayList<>();
-
-        double maxSpecial = -Double.MAX_VALUE;
-        double minSpecial = Double.MAX_VALUE;
-
-        int indexLookBack = getWaveformBuffer().getClosestIndex(lookBack);
-        long lookBackTime = getWaveformBuffer().getTime(indexLookBack);
-
-        while (indexLookBack != getWaveformBuffer().getNextSlot() && lookBackTime <= getStart()) {
-            slows.add(waveformBuffer.getMediumRatio(indexLookBack));
-            double spec = waveformBuffer.getSpecialRatio(indexLookBack);
-            if (spec > 0) {
-                if (spec > maxSpecial) {
-                    maxSpecial = spec;
-                }
-                if (spec < minSpecial) {
-                    minSpecial = spec;
-                }
-            }
-
-            indexLookBack = (indexLookBack + 1) % getWaveformBuffer().getSize();
-            lookBackTime = getWaveformBuffer().getTime(indexLookBack);
-        }
-
-        maxSpecial = Math.max(minSpecial * 5.0, maxSpecial);
-
-        Collections.sort(slows);
-
-        double slow15Pct = slows.get((int) ((slows.size() - 1) * 0.175));
-
-        double mul = SPECIAL_PERCENTILE[strenghtLevel] * 1.1;
-        double specialThreshold = maxSpecial * mul + (1 - mul) * minSpecial;
-
-        double slowThresholdMultiplier = SLOW_THRESHOLD_MULTIPLIERS[strenghtLevel];
-
-        long pWave = -1;
-
-        // going backwards!
-        int index = waveformBuffer.getClosestIndex(getStart());
-        long time = waveformBuffer.getTime(index);
-        while (index != waveformBuffer.getOldestDataSlot() && time >= lookBack) {
-
-            boolean ratioOK = waveformBuffer.getRatio(index) <= slow15Pct * (slowThresholdMultiplier * 1.25);
-            boolean specialOK = waveformBuffer.getSpecialRatio(index) <= specialThreshold;
-            if (time <= getStart()) {
-                if (ratioOK && specialOK) {
-                    pWave = time;
-                    break;
-                }
-            }
-
-            index -= 1;
-            if (index < 0) {
-                index = waveformBuffer.getSize() - 1;
-            }
-            time = waveformBuffer.getTime(index);
-        }
 
-        setpWave(pWave);
+        setpWave(PWavePicker.get().pick(waveformView, getStart(), nextPWaveCalc));
     }
 
     public int getUpdatesCount() {
         return updatesCount;
     }
 
-    private WaveformBuffer getWaveformBuffer() {
-        return waveformBuffer;
-    }
-
     public double getMaxVelocity() {
         return maxVelocity;
     }
@@ -321,7 +269,10 @@ public class Event implements Serializable {
     public void removeBuffer() {
         try {
             writeLock.lock();
-            this.waveformBuffer = null;
+            if (waveformView != null) {
+                waveformView.release();
+            }
+            this.waveformView = null;
         } finally {
             writeLock.unlock();
         }
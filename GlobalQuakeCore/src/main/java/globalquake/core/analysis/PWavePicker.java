@@ -0,0 +1,90 @@
+package globalquake.core.analysis;
+
+import globalquake.utils.QuickSelect;
+
+import java.util.Arrays;
+
+/**
+ * P wave picker of {@link Event}. The medium ratios of the look back window are collected into a reused array
+ * and their 17.5th percentile is found by quickselect, so a pick does not allocate once the array is large enough.
+ * <p>
+ * Not thread safe, every analysis thread uses its own instance.
+ */
+public class PWavePicker {
+
+    private static final ThreadLocal<PWavePicker> threadPicker = ThreadLocal.withInitial(PWavePicker::new);
+
+    private double[] slows = new double[1024];
+
+    public static PWavePicker get() {
+        return threadPicker.get();
+    }
+
+    /**
+     * @param strengthLevel index into {@link Event#SPECIAL_PERCENTILE} and {@link Event#SLOW_THRESHOLD_MULTIPLIERS}
+     * @return time of the P wave or -1 if none was found
+     */
+    public long pick(WaveformView view, long start, int strengthLevel) {
+        long lookBack = (start - (long) ((60.0 / strengthLevel) * 1000));
+
+        int count = 0;
+
+        double maxSpecial = -Double.MAX_VALUE;
+        double minSpecial = Double.MAX_VALUE;
+
+        long endSeq = view.getEndSeq();
+        long seqLookBack = view.getClosestSeq(lookBack);
+        long lookBackTime = view.getTime(seqLookBack);
+
+        while (seqLookBack != endSeq && lookBackTime <= start) {
+            if (count == slows.length) {
+                slows = Arrays.copyOf(slows, count * 2);
+            }
+            slows[count++] = view.getMediumRatio(seqLookBack);
+            double spec = view.getSpecialRatio(seqLookBack);
+            if (spec > 0) {
+                if (spec > maxSpecial) {
+                    maxSpecial = spec;
+                }
+                if (spec < minSpecial) {
+                    minSpecial = spec;
+                }
+            }
+
+            seqLookBack++;
+            lookBackTime = view.getTime(seqLookBack);
+        }
+
+        if (count == 0) {
+            return -1;
+        }
+
+        maxSpecial = Math.max(minSpecial * 5.0, maxSpecial);
+
+        double slow15Pct = QuickSelect.select(slows, count, (int) ((count - 1) * 0.175));
+
+        double mul = Event.SPECIAL_PERCENTILE[strengthLevel] * 1.1;
+        double specialThreshold = maxSpecial * mul + (1 - mul) * minSpecial;
+
+        double slowThresholdMultiplier = Event.SLOW_THRESHOLD_MULTIPLIERS[strengthLevel];
+
+        // going backwards!
+        long seq = view.getClosestSeq(start);
+        long time = view.getTime(seq);
+        while (seq != view.getStartSeq() && time >= lookBack) {
+
+            boolean ratioOK = view.getRatio(seq) <= slow15Pct * (slowThresholdMultiplier * 1.25);
+            boolean specialOK = view.getSpecialRatio(seq) <= specialThreshold;
+            if (time <= start) {
+                if (ratioOK && specialOK) {
+                    return time;
+                }
+            }
+
+            seq--;
+            time = view.getTime(seq);
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,150 @@
+package globalquake.core.analysis;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.SteimException;
+
+/**
+ * Decodes Steim1 and Steim2 compressed data directly into a caller provided array, without any allocation.
+ * Produces the same samples as {@link edu.iris.dmc.seedcodec.Steim1} and {@link edu.iris.dmc.seedcodec.Steim2}.
+ */
+public final class SteimDecoder {
+
+    private static final int FRAME_SIZE = 64;
+    private static final int WORDS_PER_FRAME = 16;
+
+    private SteimDecoder() {
+    }
+
+    public static boolean isSupported(int encoding) {
+        return encoding == B1000Types.STEIM1 || encoding == B1000Types.STEIM2;
+    }
+
+    /**
+     * @param encoding     {@link B1000Types#STEIM1} or {@link B1000Types#STEIM2}
+     * @param data         compressed data, a whole number of 64 byte frames
+     * @param numSamples   number of samples in the record
+     * @param littleEndian word order of the data
+     * @param out          output buffer, at least numSamples long
+     * @return number of decoded samples
+     */
+    public static int decode(int encoding, byte[] data, int numSamples, boolean littleEndian, int[] out) throws SteimException {
+        if (numSamples == 0) {
+            return 0;
+        }
+        if (out.length < numSamples) {
+            throw new IllegalArgumentException("Output buffer too small: %d < %d".formatted(out.length, numSamples));
+        }
+
+        boolean steim2 = encoding == B1000Types.STEIM2;
+        int frames = data.length / FRAME_SIZE;
+        if (frames == 0) {
+            throw new SteimException("No Steim frames in data");
+        }
+
+        int x0 = readWord(data, 4, littleEndian);
+
+        // the first difference belongs to the previous record, so it is skipped and x0 is used instead
+        out[0] = x0;
+        int count = 0;
+        boolean first = true;
+
+        for (int frame = 0; frame < frames && count < numSamples; frame++) {
+            int frameOffset = frame * FRAME_SIZE;
+            int nibbles = readWord(data, frameOffset, littleEndian);
+
+            for (int w = frame == 0 ? 3 : 1; w < WORDS_PER_FRAME && count < numSamples; w++) {
+                int nibble = (nibbles >>> (30 - 2 * w)) & 0x03;
+                if (nibble == 0) {
+                    continue;
+                }
+
+                int offset = frameOffset + w * 4;
+                int word;
+                if (nibble == 1) {
+                    // single byte differences are stored in memory order regardless of the word order
+                    word = readWord(data, offset, false);
+                } else if (!steim2 && nibble == 2 && littleEndian) {
+                    // two separately swapped 16-bit differences
+                    word = (data[offset + 1] << 24) | (data[offset] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 8 | (data[offset + 2] & 0xFF);
+                } else {
+                    word = readWord(data, offset, littleEndian);
+                }
+
+                int diffCount;
+                int shift;
+                int bits;
+
+                if (nibble == 1) {
+                    diffCount = 4;
+                    bits = 8;
+                    shift = 0;
+                } else if (!steim2) {
+                    if (nibble == 2) {
+                        diffCount = 2;
+                        bits = 16;
+                    } else {
+                        diffCount = 1;
+                        bits = 32;
+                    }
+                    shift = 0;
+                } else {
+                    int dnib = word >>> 30;
+                    if (nibble == 2) {
+                        switch (dnib) {
+                            case 1 -> {
+                                diffCount = 1;
+                                bits = 30;
+                            }
+                            case 2 -> {
+                                diffCount = 2;
+                                bits = 15;
+                            }
+                            case 3 -> {
+                                diffCount = 3;
+                                bits = 10;
+                            }
+                            default -> throw new SteimException("Invalid Steim2 dnib %d for nibble 2".formatted(dnib));
+                        }
+                    } else {
+                        switch (dnib) {
+                            case 0 -> {
+                                diffCount = 5;
+                                bits = 6;
+                            }
+                            case 1 -> {
+                                diffCount = 6;
+                                bits = 5;
+                            }
+                            case 2 -> {
+                                diffCount = 7;
+                                bits = 4;
+                            }
+                            default -> throw new SteimException("Invalid Steim2 dnib %d for nibble 3".formatted(dnib));
+                        }
+                    }
+                    shift = 32 - diffCount * bits;
+                }
+
+                for (int i = 0; i < diffCount && count < numSamples; i++) {
+                    int diff = (word << (shift + i * bits)) >> (32 - bits);
+                    if (first) {
+                        first = false;
+                        count = 1;
+                    } else {
+                        out[count] = out[count - 1] + diff;
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private static int readWord(byte[] data, int offset, boolean littleEndian) {
+        if (littleEndian) {
+            return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | data[offset + 3] << 24;
+        }
+        return data[offset] << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+}
@@ -1,5 +1,7 @@
 package globalquake.core.analysis;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -11,23 +13,38 @@ public class WaveformBuffer {
     public static final int MEDIUM_RATIO = 1;
     public static final int SPECIAL_RATIO = 2;
     public static final int FILTERED_VALUE = 3;
-    private static final int TIME_REF_LIMIT = 2_000_000_000;
     private final double sps;
     private final Lock readLock;
     private final Lock writeLock;
     private final boolean server;
     private int size;
     private long lastLog;
-    private int[] rawValues;
-    private int[] times;
-    private float[][] computed;
+    private final WaveformStorage.Type storageType;
+    private WaveformStorage storage;
+
+    // storage columns, the computed values of type t are in column COMPUTED_COLUMN + t
+    private static final int COMPUTED_COLUMN = 0;
+    private final int rawColumn;
 
     private int nextFreeSlot;
     private int oldestDataSlot;
-    private long timeReference = Long.MIN_VALUE;
+
+    // every logged sample has a sequence number, the times are implied by them
+    private final WaveformTimeIndex timeIndex;
+    private long nextSeq;
+    private long oldestSeq;
+
+    // views of events into this buffer, the ring must not overwrite their samples
+    private final List<WaveformView> views = new ArrayList<>();
+    private long minViewSeq = Long.MAX_VALUE;
 
     public WaveformBuffer(double sps, int seconds, boolean server) {
+        this(sps, seconds, server, WaveformStorage.Type.HEAP);
+    }
+
+    public WaveformBuffer(double sps, int seconds, boolean server, WaveformStorage.Type storageType) {
         this.server = server;
+        this.storageType = storageType;
         this.sps = sps;
         this.size = (int) Math.ceil(seconds * sps);
 
@@ -35,12 +52,9 @@ public class WaveformBuffer {
             throw new IllegalArgumentException("Wavefor buffer size must be positive!");
         }
 
-        if(!isServer()) {
-            rawValues = new int[size];
-        }
-
-        times = new int[size];
-        computed = new float[getComputedCount()][size];
+        rawColumn = COMPUTED_COLUMN + getComputedCount();
+        storage = createStorage(size);
+        timeIndex = new WaveformTimeIndex(sps);
         this.lastLog = Long.MIN_VALUE;
         this.nextFreeSlot = 0;
         this.oldestDataSlot = 0;
@@ -58,50 +72,31 @@ public class WaveformBuffer {
             _resize(size * 2);
         }
 
-        if(!isServer()){
-            rawValues[nextFreeSlot] = rawValue;
-            computed[FILTERED_VALUE][nextFreeSlot] = filteredV;
+        if(oldestSeq >= minViewSeq && nextFreeSlot == oldestDataSlot && !isEmpty()){
+            detachViews(oldestSeq + 1);
         }
 
-        if(timeReference == Long.MIN_VALUE){
-            timeReference = time;
-        }
-
-        int deltaT = (int)(time - timeReference);
-
-        if(deltaT > TIME_REF_LIMIT){
-            changeReference();
-            deltaT = (int) (time - timeReference);
+        if(!isServer()){
+            storage.putInt(rawColumn, nextFreeSlot, rawValue);
+            storage.putFloat(COMPUTED_COLUMN + FILTERED_VALUE, nextFreeSlot, filteredV);
         }
 
-        times[nextFreeSlot] = deltaT;
+        timeIndex.append(nextSeq, time);
 
-        computed[RATIO][nextFreeSlot] = ratio;
-        computed[MEDIUM_RATIO][nextFreeSlot] = mediumRatio;
-        computed[SPECIAL_RATIO][nextFreeSlot] = specialRatio;
+        storage.putFloat(COMPUTED_COLUMN + RATIO, nextFreeSlot, ratio);
+        storage.putFloat(COMPUTED_COLUMN + MEDIUM_RATIO, nextFreeSlot, mediumRatio);
+        storage.putFloat(COMPUTED_COLUMN + SPECIAL_RATIO, nextFreeSlot, specialRatio);
 
         if (nextFreeSlot == oldestDataSlot && !isEmpty()) {
             oldestDataSlot = (oldestDataSlot + 1) % size;
+            oldestSeq++;
+            timeIndex.prune(oldestSeq);
         }
         nextFreeSlot = (nextFreeSlot + 1) % size;
+        nextSeq++;
         lastLog = time;
     }
 
-    private void changeReference() {
-        if(isEmpty()) {
-            return;
-        }
-        long oldestTime = getTime(getOldestDataSlot());
-
-        int index = getOldestDataSlot();
-        while(index != getNextSlot()) {
-            times[index] = (int) (getTime(index) - oldestTime);
-            index = (index + 1) % size;
-        }
-
-        timeReference = oldestTime;
-    }
-
     public void log(long time, int rawValue, float filteredV, float shortAverage, float mediumAverage, float longAverage,
                     float specialAverage, boolean expand){
         log(time, rawValue, filteredV, shortAverage / longAverage, mediumAverage / longAverage, specialAverage / longAverage, expand);
@@ -113,10 +108,11 @@ public class WaveformBuffer {
     }
 
     private void _resize(int new_size) {
-        boolean server = isServer();
-        int[] new_times = new int[new_size];
-        int[] new_rawValues = server ? null : new int[new_size];
-        float[][] new_computed = new float[getComputedCount()][new_size];
+        if(nextSeq - Math.min(size, new_size) > minViewSeq){
+            detachViews(nextSeq - Math.min(size, new_size));
+        }
+
+        WaveformStorage new_storage = createStorage(new_size);
 
         int i2 = 0;
         for(int step = 0; step < Math.min(size, new_size); step++){
@@ -130,26 +126,24 @@ public class WaveformBuffer {
                 nextFreeSlot = size - 1;
             }
 
-            new_times[i2] = times[nextFreeSlot];
-
-            if(!server){
-                new_rawValues[i2] = rawValues[nextFreeSlot];
-            }
-
-            for(int i = 0; i < getComputedCount(); i++) {
-                new_computed[i][i2] = computed[i][nextFreeSlot];
+            for(int column = 0; column < storage.getColumns(); column++) {
+                new_storage.putInt(column, i2, storage.getInt(column, nextFreeSlot));
             }
         }
 
-        this.rawValues = new_rawValues;
-        this.computed = new_computed;
-        this.times = new_times;
+        this.storage = new_storage;
 
+        this.oldestSeq = nextSeq - Math.min(size, new_size);
+        timeIndex.prune(oldestSeq);
         this.oldestDataSlot = i2;
         this.nextFreeSlot = 0;
         this.size = new_size;
     }
 
+    private WaveformStorage createStorage(int capacity) {
+        return WaveformStorage.create(storageType, rawColumn + (isServer() ? 0 : 1), capacity);
+    }
+
     private int getComputedCount() {
         return isServer() ? COMPUTED_COUNT_SERVER : COMPUTED_COUNT_CLIENT;
     }
@@ -170,16 +164,32 @@ public class WaveformBuffer {
         return oldestDataSlot;
     }
 
+    private long getSeq(int index) {
+        int offset = index - oldestDataSlot;
+        return oldestSeq + (offset >= 0 ? offset : offset + size);
+    }
+
+    private int getIndex(long seq) {
+        return (int) ((oldestDataSlot + (seq - oldestSeq)) % size);
+    }
+
     public long getTime(int index){
-        return timeReference + times[index];
+        return timeIndex.getTime(getSeq(index));
+    }
+
+    /**
+     * @return number of contiguous runs of evenly spaced samples in the time index
+     */
+    public int getTimeSegmentCount() {
+        return timeIndex.getSegmentCount();
     }
 
     public int getRaw(int index){
-        return rawValues[index];
+        return storage.getInt(rawColumn, index);
     }
 
     public float getComputed(int type, int index){
-        return computed[type][index];
+        return storage.getFloat(COMPUTED_COLUMN + type, index);
     }
 
     public double getMediumRatio(int index){
@@ -202,11 +212,11 @@ public class WaveformBuffer {
         }
         return new Log(
                 getTime(index),
-                isServer() ? 0 : rawValues[index],
-                isServer() ? 0 : computed[FILTERED_VALUE][index],
-                computed[RATIO][index],
-                computed[MEDIUM_RATIO][index],
-                computed[SPECIAL_RATIO][index]);
+                getRaw(index),
+                getComputed(FILTERED_VALUE, index),
+                getComputed(RATIO, index),
+                getComputed(MEDIUM_RATIO, index),
+                getComputed(SPECIAL_RATIO, index));
     }
 
     public Lock getReadLock() {
@@ -263,27 +273,131 @@ public class WaveformBuffer {
             throw new IllegalStateException("There is no closest log since the buffer is empty!");
         }
 
-        int low = getOldestDataSlot();
-        int high = getNewestDataSlot();
-        if(low > high){
-            high += size;
+        return getIndex(getClosestSeq(time, oldestSeq));
+    }
+
+    /**
+     * @return first sample after the first one from fromSeq that is newer than the given time, or the newest sample
+     */
+    long getClosestSeq(long time, long fromSeq) {
+        long first = Math.max(fromSeq, oldestSeq);
+        long newestSeq = nextSeq - 1;
+        long seq = timeIndex.firstAfter(time, nextSeq);
+        return Math.max(Math.min(first + 1, newestSeq), Math.min(seq, newestSeq));
+    }
+
+    long getNextSeq() {
+        return nextSeq;
+    }
+
+    long getTimeAt(long seq) {
+        return timeIndex.getTime(seq);
+    }
+
+    float getComputedAt(int type, long seq) {
+        return storage.getFloat(COMPUTED_COLUMN + type, getIndex(seq));
+    }
+
+    /**
+     * Creates a view of the samples from the closest one to start up to the newest one, including samples logged later.
+     * The samples stay in this buffer until they are about to be overwritten, then the view gets its own copy.
+     * The view has to be released once it is not needed.
+     */
+    public WaveformView createView(long start) {
+        writeLock.lock();
+        try {
+            WaveformView view = new WaveformView(this, isEmpty() ? nextSeq : getClosestSeq(start, oldestSeq));
+            if(!view.isEmpty()) {
+                views.add(view);
+                minViewSeq = Math.min(minViewSeq, view.getStartSeq());
+            }
+            return view;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void release(WaveformView view) {
+        writeLock.lock();
+        try {
+            if(views.remove(view)) {
+                updateMinViewSeq();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int getViewCount() {
+        return views.size();
+    }
+
+    private void updateMinViewSeq() {
+        long min = Long.MAX_VALUE;
+        for(WaveformView view : views) {
+            min = Math.min(min, view.getStartSeq());
+        }
+        minViewSeq = min;
+    }
+
+    /**
+     * Gives every view its own copy of the samples, so the events keep their samples after this buffer is replaced
+     */
+    void detachAllViews() {
+        writeLock.lock();
+        try {
+            detachViews(Long.MAX_VALUE);
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        while(high - low > 1){
-            int mid = (low + high) / 2;
-            if(getTime(mid % size) > time){
-                high = mid;
-            } else{
-                low = mid;
+    /**
+     * Gives every view that starts before oldestSeq its own copy of the samples
+     */
+    private void detachViews(long oldestSeq) {
+        views.removeIf(view -> {
+            if(view.getStartSeq() >= oldestSeq) {
+                return false;
             }
+            view.detach(copy(view.getStartSeq()));
+            return true;
+        });
+        updateMinViewSeq();
+    }
+
+    private WaveformBuffer copy(long fromSeq) {
+        long count = nextSeq - fromSeq;
+        WaveformBuffer result = new WaveformBuffer(sps, (int) Math.ceil(count * 1.4 / sps) + 1, server);
+        for(long seq = fromSeq; seq < nextSeq; seq++) {
+            int index = getIndex(seq);
+            result.log(
+                    getTimeAt(seq),
+                    isServer() ? 0 : getRaw(index),
+                    isServer() ? 0 : getComputed(FILTERED_VALUE, index),
+                    getComputed(RATIO, index),
+                    getComputed(MEDIUM_RATIO, index),
+                    getComputed(SPECIAL_RATIO, index),
+                    true);
         }
-        return high % size;
+        return result;
     }
 
     public boolean isServer() {
         return server;
     }
 
+    public WaveformStorage.Type getStorageType() {
+        return storageType;
+    }
+
+    /**
+     * @return number of bytes used by the samples on the java heap, zero for off-heap storage
+     */
+    public long getHeapBytes() {
+        return storage.getHeapBytes();
+    }
+
     public void checkSize(int seconds) {
         int _size = (int) Math.ceil(seconds * sps);
         if(_size != size){
@@ -0,0 +1,170 @@
+package globalquake.core.analysis;
+
+import gqserver.api.packets.station.InputType;
+import org.tinylog.Logger;
+import uk.me.berndporr.iirj.Biquad;
+import uk.me.berndporr.iirj.Butterworth;
+
+import java.util.Arrays;
+
+/**
+ * Several Butterworth band-pass filters fed with the same input, evaluated together as flat arrays of second order
+ * sections. The coefficients are taken from iirj and the arithmetic follows its direct form II, so every band
+ * produces the same output as a {@link WaveformTransformator} with the same parameters.
+ */
+public class WaveformFilterBank {
+
+    public static final int ORDER = 3;
+
+    private final int bands;
+    private final int sections;
+    private final double sampleRate;
+    private final InputType inputType;
+    private final double velocityScale;
+
+    // second order sections, index = band * sections + section
+    private final double[] b0;
+    private final double[] b1;
+    private final double[] b2;
+    private final double[] a1;
+    private final double[] a2;
+    private final double[] v1;
+    private final double[] v2;
+
+    private final double[] lastValue;
+    private final double[] currentValue;
+    private final double[] valueIntegrated;
+    private final double[] valueDerived;
+
+    // per sample output of the last processed block, index = band * blockCapacity + sample
+    private double[] blockValues = new double[0];
+    private double[] blockVelocities = new double[0];
+    private int blockCapacity;
+
+    public WaveformFilterBank(double[] minFreqs, double[] maxFreqs, double sensitivity, double sampleRate, InputType inputType) {
+        if (sensitivity < 10) {
+            Logger.warn("Defaulting sensitivity from %.1f to %.1f!".formatted(sensitivity, WaveformTransformator.DEFAULT_SENSITIVITY));
+            sensitivity = WaveformTransformator.DEFAULT_SENSITIVITY;
+        }
+
+        this.bands = minFreqs.length;
+        this.sampleRate = sampleRate;
+        this.inputType = inputType;
+        this.velocityScale = WaveformTransformator.DEFAULT_SENSITIVITY / sensitivity;
+
+        Butterworth[] filters = new Butterworth[bands];
+        for (int band = 0; band < bands; band++) {
+            filters[band] = new Butterworth();
+            filters[band].bandPass(ORDER, sampleRate, (minFreqs[band] + maxFreqs[band]) * 0.5, (maxFreqs[band] - minFreqs[band]));
+        }
+
+        this.sections = filters[0].getNumBiquads();
+
+        b0 = new double[bands * sections];
+        b1 = new double[bands * sections];
+        b2 = new double[bands * sections];
+        a1 = new double[bands * sections];
+        a2 = new double[bands * sections];
+        v1 = new double[bands * sections];
+        v2 = new double[bands * sections];
+
+        for (int band = 0; band < bands; band++) {
+            for (int section = 0; section < sections; section++) {
+                Biquad biquad = filters[band].getBiquad(section);
+                int index = band * sections + section;
+                // iirj stores the coefficients divided by a0, which is always 1 for Butterworth designs
+                double a0 = biquad.getA0();
+                b0[index] = biquad.getB0() / a0;
+                b1[index] = biquad.getB1() / a0;
+                b2[index] = biquad.getB2() / a0;
+                a1[index] = biquad.getA1() / a0;
+                a2[index] = biquad.getA2() / a0;
+            }
+        }
+
+        lastValue = new double[bands];
+        currentValue = new double[bands];
+        valueIntegrated = new double[bands];
+        valueDerived = new double[bands];
+    }
+
+    public void accept(double in) {
+        for (int band = 0; band < bands; band++) {
+            filterBand(band, in);
+        }
+    }
+
+    private void filterBand(int band, double in) {
+        double x = in;
+        int end = (band + 1) * sections;
+        for (int i = band * sections; i < end; i++) {
+            double w = x - a1[i] * v1[i] - a2[i] * v2[i];
+            x = b0[i] * w + b1[i] * v1[i] + b2[i] * v2[i];
+            v2[i] = v1[i];
+            v1[i] = w;
+        }
+
+        lastValue[band] = currentValue[band];
+        currentValue[band] = x;
+
+        valueIntegrated[band] += x / sampleRate;
+        valueIntegrated[band] *= 0.999;
+        valueDerived[band] = (x - lastValue[band]) * sampleRate;
+    }
+
+    /**
+     * Filters buf[from, to) minus the offset through all bands. Outputs are available through
+     * {@link #getBlockValue(int, int)} and {@link #getBlockVelocity(int, int)} with sample index relative to from.
+     */
+    public void processBlock(int[] buf, int from, int to, double offset) {
+        int len = to - from;
+        if (blockCapacity < len) {
+            blockCapacity = len;
+            blockValues = new double[bands * len];
+            blockVelocities = new double[bands * len];
+        }
+
+        // band by band, so that the state of one cascade stays in registers for the whole block
+        for (int band = 0; band < bands; band++) {
+            int outOffset = band * blockCapacity;
+            for (int i = 0; i < len; i++) {
+                filterBand(band, buf[from + i] - offset);
+                blockValues[outOffset + i] = currentValue[band];
+                blockVelocities[outOffset + i] = getVelocity(band);
+            }
+        }
+    }
+
+    public double getBlockValue(int band, int index) {
+        return blockValues[band * blockCapacity + index];
+    }
+
+    public double getBlockVelocity(int band, int index) {
+        return blockVelocities[band * blockCapacity + index];
+    }
+
+    public double getCurrentValue(int band) {
+        return currentValue[band];
+    }
+
+    public double getVelocity(int band) {
+        return switch (inputType) {
+            case ACCELERATION -> valueIntegrated[band] * velocityScale;
+            case DISPLACEMENT -> valueDerived[band] * velocityScale;
+            default -> currentValue[band] * velocityScale;
+        };
+    }
+
+    public void reset() {
+        Arrays.fill(v1, 0.0);
+        Arrays.fill(v2, 0.0);
+        Arrays.fill(lastValue, 0.0);
+        Arrays.fill(currentValue, 0.0);
+        Arrays.fill(valueIntegrated, 0.0);
+        Arrays.fill(valueDerived, 0.0);
+    }
+
+    public int getBands() {
+        return bands;
+    }
+}
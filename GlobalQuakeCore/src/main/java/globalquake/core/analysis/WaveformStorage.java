@@ -0,0 +1,191 @@
+package globalquake.core.analysis;
+
+import globalquake.core.GlobalQuake;
+import org.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Backing store of a {@link WaveformBuffer}: a fixed number of columns of 4-byte cells, each column as long as
+ * the capacity of the buffer. Floats are stored as their raw int bits.
+ */
+public abstract class WaveformStorage {
+
+    public enum Type {
+        HEAP("Java heap"),
+        OFF_HEAP("Off-heap memory"),
+        MAPPED("Memory mapped file");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    protected final int columns;
+    protected final int capacity;
+
+    protected WaveformStorage(int columns, int capacity) {
+        this.columns = columns;
+        this.capacity = capacity;
+    }
+
+    public static WaveformStorage create(Type type, int columns, int capacity) {
+        return switch (type) {
+            case HEAP -> new Heap(columns, capacity);
+            case OFF_HEAP -> new Direct(ByteBuffer.allocateDirect(getBytes(columns, capacity)), columns, capacity, type);
+            case MAPPED -> new Direct(map(getBytes(columns, capacity)), columns, capacity, type);
+        };
+    }
+
+    /**
+     * @return size of the cells in bytes
+     * @throws IllegalArgumentException if they don't fit into a single byte buffer
+     */
+    static int getBytes(int columns, int capacity) {
+        long bytes;
+        try {
+            bytes = Math.multiplyExact(Math.multiplyExact((long) columns, capacity), Integer.BYTES);
+        } catch (ArithmeticException e) {
+            bytes = Long.MAX_VALUE;
+        }
+
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Waveform buffer of %d x %d cells is larger than 2 GB, reduce the storage time or use the Java heap"
+                    .formatted(columns, capacity));
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Memory mapped files are created in the GlobalQuake folder, the temporary folder is often kept in memory
+     */
+    static File getMappedFolder() {
+        return new File(GlobalQuake.mainFolder, "volume/waveforms/");
+    }
+
+    private static ByteBuffer map(int bytes) {
+        try {
+            Path folder = Files.createDirectories(getMappedFolder().toPath());
+            Path file = Files.createTempFile(folder, "gq_waveform", ".bin");
+            // the file is removed once the channel is closed, the mapping stays valid until it is garbage collected
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        } catch (IOException e) {
+            Logger.error(e);
+            throw new UncheckedIOException("Unable to create memory mapped waveform buffer", e);
+        }
+    }
+
+    public abstract Type getType();
+
+    public abstract int getInt(int column, int index);
+
+    public abstract void putInt(int column, int index, int value);
+
+    public float getFloat(int column, int index) {
+        return Float.intBitsToFloat(getInt(column, index));
+    }
+
+    public void putFloat(int column, int index, float value) {
+        putInt(column, index, Float.floatToRawIntBits(value));
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of bytes held on the java heap by the cells of this storage
+     */
+    public abstract long getHeapBytes();
+
+    private static final class Heap extends WaveformStorage {
+
+        private final int[][] data;
+
+        Heap(int columns, int capacity) {
+            super(columns, capacity);
+            data = new int[columns][capacity];
+        }
+
+        @Override
+        public Type getType() {
+            return Type.HEAP;
+        }
+
+        @Override
+        public int getInt(int column, int index) {
+            return data[column][index];
+        }
+
+        @Override
+        public void putInt(int column, int index, int value) {
+            data[column][index] = value;
+        }
+
+        @Override
+        public long getHeapBytes() {
+            return (long) columns * capacity * Integer.BYTES;
+        }
+    }
+
+    private static final class Direct extends WaveformStorage {
+
+        private final ByteBuffer buffer;
+        private final Type type;
+
+        Direct(ByteBuffer buffer, int columns, int capacity, Type type) {
+            super(columns, capacity);
+            this.buffer = buffer.order(ByteOrder.nativeOrder());
+            this.type = type;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        private int offset(int column, int index) {
+            if (index < 0 || index >= capacity) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (column * capacity + index) * Integer.BYTES;
+        }
+
+        @Override
+        public int getInt(int column, int index) {
+            return buffer.getInt(offset(column, index));
+        }
+
+        @Override
+        public void putInt(int column, int index, int value) {
+            buffer.putInt(offset(column, index), value);
+        }
+
+        @Override
+        public long getHeapBytes() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package globalquake.core.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Timestamps of a {@link WaveformBuffer} stored as contiguous runs of evenly spaced samples. A segment is
+ * the sequence number of its first sample and the time of that sample, the time of every following sample is implied
+ * by the sample rate. A new segment starts whenever a sample does not arrive at the implied time.
+ * <p>
+ * Not thread safe, guarded by the locks of the buffer. The cached segment is only a hint, so lookups from
+ * several readers at once are fine.
+ */
+class WaveformTimeIndex {
+
+    private final double step;
+
+    private long[] segmentSeq = new long[8];
+    private long[] segmentTime = new long[8];
+    private int head;
+    private int count;
+
+    private int lastSegment;
+
+    WaveformTimeIndex(double sps) {
+        this.step = 1000.0 / sps;
+    }
+
+    private long timeIn(int segment, long seq) {
+        return segmentTime[segment] + (long) ((seq - segmentSeq[segment]) * step);
+    }
+
+    /**
+     * Registers the time of sample seq, which has to follow the last registered sample
+     */
+    void append(long seq, long time) {
+        if (count > 0 && timeIn(head + count - 1, seq) == time) {
+            return;
+        }
+
+        if (head + count == segmentSeq.length) {
+            if (count * 2 <= segmentSeq.length) {
+                System.arraycopy(segmentSeq, head, segmentSeq, 0, count);
+                System.arraycopy(segmentTime, head, segmentTime, 0, count);
+            } else {
+                long[] newSeq = new long[segmentSeq.length * 2];
+                long[] newTime = new long[segmentSeq.length * 2];
+                System.arraycopy(segmentSeq, head, newSeq, 0, count);
+                System.arraycopy(segmentTime, head, newTime, 0, count);
+                segmentSeq = newSeq;
+                segmentTime = newTime;
+            }
+            head = 0;
+            lastSegment = 0;
+        }
+
+        segmentSeq[head + count] = seq;
+        segmentTime[head + count] = time;
+        count++;
+    }
+
+    /**
+     * Drops segments that end before the given sample
+     */
+    void prune(long oldestSeq) {
+        while (count > 1 && segmentSeq[head + 1] <= oldestSeq) {
+            head++;
+            count--;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(segmentSeq, 0);
+        Arrays.fill(segmentTime, 0);
+        head = 0;
+        count = 0;
+        lastSegment = 0;
+    }
+
+    int getSegmentCount() {
+        return count;
+    }
+
+    private int findSegment(long seq) {
+        int end = head + count;
+        int cached = lastSegment;
+        if (cached >= head && cached < end && segmentSeq[cached] <= seq && (cached + 1 == end || segmentSeq[cached + 1] > seq)) {
+            return cached;
+        }
+
+        int low = head;
+        int high = end - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segmentSeq[mid] <= seq) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        lastSegment = low;
+        return low;
+    }
+
+    long getTime(long seq) {
+        if (count == 0) {
+            return Long.MIN_VALUE;
+        }
+        return timeIn(findSegment(seq), seq);
+    }
+
+    /**
+     * @return sequence number of the first sample logged after the given time, or the number following the last sample
+     * of the last segment if there is none
+     */
+    long firstAfter(long time, long endSeq) {
+        int end = head + count;
+        if (count == 0 || segmentTime[head] > time) {
+            return count == 0 ? endSeq : segmentSeq[head];
+        }
+
+        int low = head;
+        int high = end - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segmentTime[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        long nextSeq = low + 1 < end ? segmentSeq[low + 1] : endSeq;
+        long k = Math.max(0, (long) ((time - segmentTime[low]) / step));
+        long seq = segmentSeq[low] + k;
+        while (seq < nextSeq && timeIn(low, seq) <= time) {
+            seq++;
+        }
+        while (seq > segmentSeq[low] && timeIn(low, seq - 1) > time) {
+            seq--;
+        }
+
+        return Math.min(seq, nextSeq);
+    }
+}
@@ -0,0 +1,88 @@
+package globalquake.core.analysis;
+
+/**
+ * Window of samples of a station {@link WaveformBuffer} used by an {@link Event}. Samples are addressed by their
+ * sequence number in the station buffer, from {@link #getStartSeq()} up to {@link #getEndSeq()} exclusive.
+ * <p>
+ * While attached the view reads the station buffer directly and grows together with it. When the ring of the station
+ * buffer is about to overwrite the window, the view is detached with its own copy and samples have to be appended
+ * through {@link #log}. Guarded by the locks of the station buffer.
+ */
+public class WaveformView {
+
+    private final WaveformBuffer stationBuffer;
+    private final long startSeq;
+
+    // own copy once detached, its first sample is startSeq
+    private WaveformBuffer copy;
+
+    WaveformView(WaveformBuffer stationBuffer, long startSeq) {
+        this.stationBuffer = stationBuffer;
+        this.startSeq = startSeq;
+    }
+
+    void detach(WaveformBuffer copy) {
+        this.copy = copy;
+    }
+
+    public boolean isDetached() {
+        return copy != null;
+    }
+
+    public WaveformBuffer getStationBuffer() {
+        return stationBuffer;
+    }
+
+    public long getStartSeq() {
+        return startSeq;
+    }
+
+    public long getEndSeq() {
+        return copy != null ? startSeq + copy.getNextSeq() : stationBuffer.getNextSeq();
+    }
+
+    public boolean isEmpty() {
+        return getEndSeq() <= startSeq;
+    }
+
+    public long getTime(long seq) {
+        return copy != null ? copy.getTimeAt(seq - startSeq) : stationBuffer.getTimeAt(seq);
+    }
+
+    public float getComputed(int type, long seq) {
+        return copy != null ? copy.getComputedAt(type, seq - startSeq) : stationBuffer.getComputedAt(type, seq);
+    }
+
+    public double getRatio(long seq) {
+        return getComputed(WaveformBuffer.RATIO, seq);
+    }
+
+    public double getMediumRatio(long seq) {
+        return getComputed(WaveformBuffer.MEDIUM_RATIO, seq);
+    }
+
+    public double getSpecialRatio(long seq) {
+        return getComputed(WaveformBuffer.SPECIAL_RATIO, seq);
+    }
+
+    /**
+     * Same as {@link WaveformBuffer#getClosestIndex(long)} limited to this window
+     */
+    public long getClosestSeq(long time) {
+        return copy != null ? startSeq + copy.getClosestSeq(time, 0) : stationBuffer.getClosestSeq(time, startSeq);
+    }
+
+    /**
+     * Appends a sample to the copy of a detached view, attached views already see it in the station buffer
+     */
+    public void log(long time, int rawValue, float filteredV, float shortAverage, float mediumAverage, float longAverage,
+                    float specialAverage) {
+        if (copy != null) {
+            copy.log(time, rawValue, filteredV, shortAverage, mediumAverage, longAverage, specialAverage, true);
+        }
+    }
+
+    public void release() {
+        stationBuffer.release(this);
+    }
+}
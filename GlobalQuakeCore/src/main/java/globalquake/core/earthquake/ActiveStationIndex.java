@@ -0,0 +1,178 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.analysis.Event;
+import globalquake.core.station.AbstractStation;
+import globalquake.core.station.NearbyStationDistanceInfo;
+import globalquake.utils.monitorable.Monitorable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps track of the stations {@link ClusterAnalysis} has to look at, so that it does not scan every station
+ * on every pass.
+ * <p>
+ * Active stations are the stations that have received a P wave pick and still have detected events. Events without
+ * a pick can't be clustered, marked as S waves or stolen, so only active stations matter for those passes.
+ * <p>
+ * Dirty stations are the stations where a new cluster could have become possible since the last pass: an event of
+ * the station or of one of its nearby stations got a new pick, stopped being an S wave or was removed from its cluster.
+ * Any other event that failed to start a cluster before would fail again.
+ * <p>
+ * Both sets are kept in the iteration order of the station collection, so that the passes visit the stations in the
+ * same order as a full scan would.
+ */
+class ActiveStationIndex {
+
+    private final Collection<AbstractStation> stations;
+
+    private final Queue<Event> pickQueue = new ConcurrentLinkedQueue<>();
+
+    private Map<AbstractStation, Integer> order = new IdentityHashMap<>();
+    private AbstractStation[] byOrder = new AbstractStation[0];
+    private int[][] reverseNeighbours = new int[0][];
+
+    private final BitSet active = new BitSet();
+    private final BitSet dirty = new BitSet();
+    private final BitSet notified = new BitSet();
+
+    private int lastMonitorState = -1;
+
+    ActiveStationIndex(Collection<AbstractStation> stations) {
+        this.stations = stations;
+    }
+
+    /**
+     * Called by the analysis threads whenever the P wave of an event changes
+     */
+    void onPick(Event event) {
+        pickQueue.offer(event);
+    }
+
+    /**
+     * Applies all queued picks, must be called at the start of each pass with the clusters locked
+     */
+    void update() {
+        if (stationsChanged()) {
+            rebuild();
+        }
+
+        notified.clear();
+        Event event;
+        while ((event = pickQueue.poll()) != null) {
+            Integer index = order.get(event.getAnalysis().getStation());
+            if (index == null) {
+                // the list of stations has changed
+                rebuild();
+                continue;
+            }
+            active.set(index);
+            notified.set(index);
+            markChanged(index);
+        }
+
+        // stations without events are dropped until they get a new pick
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            if (!notified.get(i) && byOrder[i].getAnalysis().getDetectedEvents().isEmpty()) {
+                active.clear(i);
+            }
+        }
+    }
+
+    private boolean stationsChanged() {
+        // size() of a concurrent queue walks the whole queue
+        if (stations instanceof Monitorable monitorable) {
+            int state = monitorable.getMonitorState();
+            if (state == lastMonitorState) {
+                return false;
+            }
+            lastMonitorState = state;
+        }
+        return stations.size() != byOrder.length;
+    }
+
+    private void rebuild() {
+        pickQueue.clear();
+        order = new IdentityHashMap<>();
+        byOrder = stations.toArray(new AbstractStation[0]);
+        for (int i = 0; i < byOrder.length; i++) {
+            order.put(byOrder[i], i);
+        }
+
+        List<List<Integer>> reverse = new ArrayList<>(byOrder.length);
+        for (int i = 0; i < byOrder.length; i++) {
+            reverse.add(new ArrayList<>());
+        }
+        for (int i = 0; i < byOrder.length; i++) {
+            Collection<NearbyStationDistanceInfo> nearbyStations = byOrder[i].getNearbyStations();
+            if (nearbyStations == null) {
+                continue;
+            }
+            for (NearbyStationDistanceInfo info : nearbyStations) {
+                Integer neighbour = order.get(info.station());
+                if (neighbour != null) {
+                    reverse.get(neighbour).add(i);
+                }
+            }
+        }
+
+        reverseNeighbours = new int[byOrder.length][];
+        for (int i = 0; i < byOrder.length; i++) {
+            reverseNeighbours[i] = reverse.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // nothing is known about the new stations, so everything is looked at once
+        active.clear();
+        dirty.clear();
+        for (int i = 0; i < byOrder.length; i++) {
+            byOrder[i].getAnalysis().setPickListener(this::onPick);
+            if (!byOrder[i].getAnalysis().getDetectedEvents().isEmpty()) {
+                active.set(i);
+            }
+        }
+        dirty.set(0, byOrder.length);
+    }
+
+    /**
+     * Marks the station of the event and all stations that have it as a nearby station
+     */
+    void markChanged(Event event) {
+        Integer index = order.get(event.getAnalysis().getStation());
+        if (index != null) {
+            markChanged(index);
+        }
+    }
+
+    private void markChanged(int index) {
+        dirty.set(index);
+        for (int station : reverseNeighbours[index]) {
+            dirty.set(station);
+        }
+    }
+
+    List<AbstractStation> getActiveStations() {
+        List<AbstractStation> result = new ArrayList<>(active.cardinality());
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            result.add(byOrder[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the dirty stations, which are no longer dirty afterwards
+     */
+    List<AbstractStation> takeDirtyStations() {
+        List<AbstractStation> result = new ArrayList<>(dirty.cardinality());
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            result.add(byOrder[i]);
+        }
+        dirty.clear();
+        return result;
+    }
+}
@@ -19,39 +19,63 @@ import org.tinylog.Logger;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Groups picks into clusters. Passes don't block the hypocenter search, each change of a cluster is made
+ * with the lock of that cluster held, see {@link Cluster#getLock()}.
+ */
 public class ClusterAnalysis {
 
-    private final ReadWriteLock clustersLock = new ReentrantReadWriteLock();
-
-    private final Lock clustersReadLock = clustersLock.readLock();
-    private final Lock clustersWriteLock = clustersLock.writeLock();
+    // only one pass at a time
+    private final Lock runLock = new ReentrantLock();
 
     protected final Collection<Cluster> clusters;
     private final Collection<Earthquake> earthquakes;
     private final Collection<AbstractStation> stations;
 
+    // null if every pass scans all stations
+    private final ActiveStationIndex activeStationIndex;
+
+    // stations visited by the passes of the current run
+    private Collection<AbstractStation> scannedStations;
+
+    // picks of the scanned stations, built when first needed in each run
+    private final PickIndex pickIndex = new PickIndex();
+    private boolean pickIndexValid;
+
     private static final double MERGE_THRESHOLD = 0.54;
 
     public ClusterAnalysis(List<Earthquake> earthquakes, Collection<AbstractStation> stations) {
+        this(earthquakes, stations, false);
+    }
+
+    /**
+     * @param incremental only look at the stations with picks and start new clusters only where picks have changed,
+     *                    see {@link ActiveStationIndex}
+     */
+    public ClusterAnalysis(List<Earthquake> earthquakes, Collection<AbstractStation> stations, boolean incremental) {
         this.earthquakes = earthquakes;
         this.stations = stations;
+        this.scannedStations = stations;
+        this.activeStationIndex = incremental ? new ActiveStationIndex(stations) : null;
         clusters = new MonitorableConcurrentLinkedQueue<>();
     }
 
     public ClusterAnalysis() {
-        this(GlobalQuake.instance.getEarthquakeAnalysis().getEarthquakes(), GlobalQuake.instance.getStationManager().getStations());
-    }
-
-    public Lock getClustersReadLock() {
-        return clustersReadLock;
+        this(GlobalQuake.instance.getEarthquakeAnalysis().getEarthquakes(), GlobalQuake.instance.getStationManager().getStations(),
+                Boolean.TRUE.equals(Settings.incrementalClustering));
     }
 
     public void run() {
-        clustersWriteLock.lock();
+        runLock.lock();
         try {
+            if (activeStationIndex != null) {
+                activeStationIndex.update();
+                scannedStations = activeStationIndex.getActiveStations();
+            }
+            pickIndexValid = false;
+
             clearSWaves();
             markSWaves();
             //assignEventsToExistingEarthquakeClusters(); VERY CONTROVERSIAL
@@ -61,7 +85,7 @@ public class ClusterAnalysis {
             mergeClusters();
             updateClusters();
         } finally {
-            clustersWriteLock.unlock();
+            runLock.unlock();
         }
     }
 
@@ -79,15 +103,16 @@ public class ClusterAnalysis {
     private void stealEvents() {
         java.util.Map<Event, EventIntensityInfo> map = new HashMap<>();
         for(Cluster cluster : clusters) {
-            if (cluster.getEarthquake() == null) {
+            Hypocenter hypocenter = getHypocenter(cluster);
+            if (hypocenter == null) {
                 continue;
             }
 
-            for (AbstractStation station : stations) {
+            for (AbstractStation station : scannedStations) {
                 for (Event event : station.getAnalysis().getDetectedEvents()) {
-                    if (event.isValid() && event.isSWave() && !couldBeArrival(event, cluster.getEarthquake(), true, false, true)) {
-                        double distGC = GeoUtils.greatCircleDistance(event.getLatFromStation(), event.getLonFromStation(), cluster.getEarthquake().getLat(), cluster.getEarthquake().getLon());
-                        double expectedIntensity = IntensityTable.getIntensity(cluster.getEarthquake().getMag(), GeoUtils.gcdToGeo(distGC));
+                    if (event.isValid() && event.isSWave() && !couldBeArrival(event, hypocenter, true, false, true)) {
+                        double distGC = GeoUtils.greatCircleDistance(event.getLatFromStation(), event.getLonFromStation(), hypocenter.lat, hypocenter.lon);
+                        double expectedIntensity = IntensityTable.getIntensity(hypocenter.magnitude, GeoUtils.gcdToGeo(distGC));
                         EventIntensityInfo eventIntensityInfo = new EventIntensityInfo(cluster, station, expectedIntensity);
                         EventIntensityInfo old = map.putIfAbsent(event, eventIntensityInfo);
                         if(old != null && eventIntensityInfo.expectedIntensity > old.expectedIntensity){
@@ -104,28 +129,58 @@ public class ClusterAnalysis {
             AbstractStation station = entry.getValue().station();
             Cluster cluster = entry.getValue().cluster();
 
-            if(!cluster.getAssignedEvents().containsKey(station)){
-                if(event.assignedCluster != null){
-                    event.assignedCluster.getAssignedEvents().remove(station);
-                }
+            Cluster previous = event.assignedCluster;
+            lockBoth(cluster, previous);
+            try {
+                if (!cluster.getAssignedEvents().containsKey(station)) {
+                    if (previous != null) {
+                        previous.getAssignedEvents().remove(station);
+                    }
 
-                event.assignedCluster = cluster;
-                cluster.getAssignedEvents().put(station, event);
+                    event.assignedCluster = cluster;
+                    cluster.getAssignedEvents().put(station, event);
+                }
+            } finally {
+                unlockBoth(cluster, previous);
             }
         }
     }
 
+    /**
+     * Locks two clusters in the order of their ids, the second one may be null or the same cluster
+     */
+    private static void lockBoth(Cluster a, Cluster b) {
+        if (b == null || b == a) {
+            a.getLock().lock();
+        } else if (a.id < b.id) {
+            a.getLock().lock();
+            b.getLock().lock();
+        } else {
+            b.getLock().lock();
+            a.getLock().lock();
+        }
+    }
+
+    private static void unlockBoth(Cluster a, Cluster b) {
+        a.getLock().unlock();
+        if (b != null && b != a) {
+            b.getLock().unlock();
+        }
+    }
+
     private void clearSWaves() {
         for(Cluster cluster : clusters) {
-            if(cluster.getEarthquake() == null){
+            Hypocenter hypocenter = getHypocenter(cluster);
+            if(hypocenter == null){
                 continue;
             }
 
-            for (AbstractStation station : stations) {
+            for (AbstractStation station : scannedStations) {
                 for (Event event : station.getAnalysis().getDetectedEvents()) {
-                    if (event.isValid() && event.isSWave() && (!couldBeSArrival(event, cluster.getEarthquake())
-                            || couldBeArrival(event, cluster.getEarthquake(), true, false, true))) {
+                    if (event.isValid() && event.isSWave() && (!couldBeSArrival(event, hypocenter)
+                            || couldBeArrival(event, hypocenter, true, false, true))) {
                         event.setAsSWave(false);
+                        markChanged(event);
                     }
                 }
             }
@@ -133,10 +188,15 @@ public class ClusterAnalysis {
     }
 
     private void markPossibleSWaves(Cluster cluster) {
-        for (AbstractStation station : stations) {
+        Hypocenter hypocenter = getHypocenter(cluster);
+        if (hypocenter == null) {
+            return;
+        }
+
+        for (AbstractStation station : scannedStations) {
             for (Event event : station.getAnalysis().getDetectedEvents()) {
-                if (event.isValid() && !event.isSWave() && (couldBeSArrival(event, cluster.getEarthquake())
-                        && !couldBeArrival(event,cluster.getEarthquake(), true, false, true))) {
+                if (event.isValid() && !event.isSWave() && (couldBeSArrival(event, hypocenter)
+                        && !couldBeArrival(event, hypocenter, true, false, true))) {
                     event.setAsSWave(true);
                 }
             }
@@ -146,6 +206,10 @@ public class ClusterAnalysis {
 
     private void mergeClusters() {
         for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getCluster().isRemoved()) {
+                continue;
+            }
+
             List<Cluster> toMerge = null;
 
             for (Cluster cluster : clusters) {
@@ -170,17 +234,26 @@ public class ClusterAnalysis {
     private void merge(Earthquake earthquake, List<Cluster> toMerge) {
         Cluster target = earthquake.getCluster();
         for (Cluster cluster : toMerge) {
-            for (Entry<AbstractStation, Event> entry : cluster.getAssignedEvents().entrySet()) {
-                if (target.getAssignedEvents().putIfAbsent(entry.getKey(), entry.getValue()) == null) {
-                    entry.getValue().assignedCluster = target;
+            lockBoth(target, cluster);
+            try {
+                for (Entry<AbstractStation, Event> entry : cluster.getAssignedEvents().entrySet()) {
+                    if (target.getAssignedEvents().putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                        entry.getValue().assignedCluster = target;
+                    }
                 }
-            }
 
-            Earthquake earthquake1 = cluster.getEarthquake();
+                Earthquake earthquake1 = cluster.getEarthquake();
+
+                if (earthquake1 != null) {
+                    earthquakes.remove(earthquake1);
+                    if (GlobalQuake.instance != null) {
+                        GlobalQuake.instance.getEventHandler().fireEvent(new QuakeRemoveEvent(earthquake1));
+                    }
+                }
 
-            if (earthquake1 != null) {
-                earthquakes.remove(earthquake1);
-                GlobalQuake.instance.getEventHandler().fireEvent(new QuakeRemoveEvent(earthquake1));
+                cluster.markRemoved();
+            } finally {
+                unlockBoth(target, cluster);
             }
         }
 
@@ -188,9 +261,16 @@ public class ClusterAnalysis {
     }
 
     private boolean canMerge(Earthquake earthquake, Cluster cluster) {
-        if(cluster.getEarthquake() != null && cluster.getPreviousHypocenter() != null){
-            int thatCorrect = cluster.getPreviousHypocenter().correctEvents;
-            double dist = GeoUtils.greatCircleDistance(earthquake.getLat(), earthquake.getLon(), cluster.getEarthquake().getLat(), cluster.getEarthquake().getLon());
+        Hypocenter hypocenter = earthquake.getLastValidHypocenter();
+        if (hypocenter == null) {
+            return false;
+        }
+
+        Hypocenter thatHypocenter = getHypocenter(cluster);
+        Hypocenter previousHypocenter = cluster.getPreviousHypocenter();
+        if(thatHypocenter != null && previousHypocenter != null){
+            int thatCorrect = previousHypocenter.correctEvents;
+            double dist = GeoUtils.greatCircleDistance(hypocenter.lat, hypocenter.lon, thatHypocenter.lat, thatHypocenter.lon);
             double maxDist = 6000 / (1 + thatCorrect * 0.2);
             if(dist > maxDist){
                 return false;
@@ -198,7 +278,7 @@ public class ClusterAnalysis {
         }
         int correct = 0;
         for (Event event : cluster.getAssignedEvents().values()) {
-            if (couldBeArrival(event, earthquake, true, true, true)) {
+            if (couldBeArrival(event, hypocenter, true, true, true)) {
                 correct++;
             }
         }
@@ -208,9 +288,44 @@ public class ClusterAnalysis {
         return pct > MERGE_THRESHOLD;
     }
 
+    private PickIndex getPickIndex() {
+        if (!pickIndexValid) {
+            pickIndex.clear();
+            for (AbstractStation station : scannedStations) {
+                for (Event event : station.getAnalysis().getDetectedEvents()) {
+                    pickIndex.add(event);
+                }
+            }
+            pickIndexValid = true;
+        }
+        return pickIndex;
+    }
+
+    /**
+     * @return stations with picks that could be arrivals of the earthquake, see {@link PickIndex}
+     */
+    private Set<AbstractStation> findCandidateStations(Hypocenter hypocenter, boolean pWaveOnly) {
+        Set<AbstractStation> result = new HashSet<>();
+        if (hypocenter == null) {
+            return result;
+        }
+
+        getPickIndex().forEachCandidate(hypocenter.lat, hypocenter.lon, hypocenter.depth, hypocenter.origin,
+                pWaveOnly, PickIndex.INCREASING_P_WINDOW, event -> result.add(event.getAnalysis().getStation()));
+        return result;
+    }
+
     @SuppressWarnings("unused")
     private void assignEventsToExistingEarthquakeClusters() {
-        for (AbstractStation station : stations) {
+        Set<AbstractStation> candidates = new HashSet<>();
+        for (Earthquake earthquake : earthquakes) {
+            candidates.addAll(findCandidateStations(earthquake.getLastValidHypocenter(), false));
+        }
+
+        for (AbstractStation station : scannedStations) {
+            if (!candidates.contains(station)) {
+                continue;
+            }
             for (Event event : station.getAnalysis().getDetectedEvents()) {
                 if (event.isValid() && !event.isSWave() && event.getpWave() > 0 && event.assignedCluster == null) {
                     HashMap<Earthquake, Event> map = new HashMap<>();
@@ -237,20 +352,20 @@ public class ClusterAnalysis {
     }
 
     @SuppressWarnings("RedundantIfStatement")
-    private boolean couldBeSArrival(Event event, Earthquake earthquake){
-        if (!event.isValid() || earthquake == null) {
+    private boolean couldBeSArrival(Event event, Hypocenter hypocenter){
+        if (!event.isValid() || hypocenter == null) {
             return false;
         }
-        long actualTravel = event.getpWave() - earthquake.getOrigin();
+        long actualTravel = event.getpWave() - hypocenter.origin;
 
-        double distGC = GeoUtils.greatCircleDistance(earthquake.getLat(), earthquake.getLon(),
+        double distGC = GeoUtils.greatCircleDistance(hypocenter.lat, hypocenter.lon,
                 event.getLatFromStation(), event.getLonFromStation());
         double angle = TauPTravelTimeCalculator.toAngle(distGC);
-        double expectedTravelSRaw = TauPTravelTimeCalculator.getSWaveTravelTime(earthquake.getDepth(),
+        double expectedTravelSRaw = TauPTravelTimeCalculator.getSWaveTravelTime(hypocenter.depth,
                 angle);
 
 
-        double expectedIntensity = IntensityTable.getIntensity(earthquake.getMag(), GeoUtils.gcdToGeo(distGC));
+        double expectedIntensity = IntensityTable.getIntensity(hypocenter.magnitude, GeoUtils.gcdToGeo(distGC));
         if (expectedIntensity < 3.0) {
             return false;
         }
@@ -285,15 +400,32 @@ public class ClusterAnalysis {
 
     public static boolean couldBeArrival(Event event, Earthquake earthquake,
                                          boolean considerIntensity, boolean increasingPWindow, boolean pWaveOnly) {
-        if (event == null || !event.isValid() || event.isSWave() || earthquake == null) {
+        return earthquake != null && couldBeArrival(event, earthquake.getLastValidHypocenter(), considerIntensity, increasingPWindow, pWaveOnly);
+    }
+
+    /**
+     * Same as {@link #couldBeArrival(Event, Earthquake, boolean, boolean, boolean)} with a single revision of the hypocenter,
+     * which location threads may replace at any time
+     */
+    public static boolean couldBeArrival(Event event, Hypocenter hypocenter,
+                                         boolean considerIntensity, boolean increasingPWindow, boolean pWaveOnly) {
+        if (event == null || !event.isValid() || event.isSWave() || hypocenter == null) {
             return false;
         }
 
         return couldBeArrival(event.getLatFromStation(), event.getLonFromStation(), event.getElevationFromStation(), event.getpWave(),
-                earthquake.getLat(), earthquake.getLon(), earthquake.getDepth(), earthquake.getOrigin(), earthquake.getMag(),
+                hypocenter.lat, hypocenter.lon, hypocenter.depth, hypocenter.origin, hypocenter.magnitude,
                 considerIntensity, increasingPWindow, pWaveOnly);
     }
 
+    /**
+     * The hypocenter of the earthquake of the cluster, read once so that all fields come from the same revision
+     */
+    private static Hypocenter getHypocenter(Cluster cluster) {
+        Earthquake earthquake = cluster.getEarthquake();
+        return earthquake == null ? null : earthquake.getLastValidHypocenter();
+    }
+
     public static boolean couldBeArrival(PickedEvent event, Hypocenter earthquake,
                                          boolean considerIntensity, boolean increasingPWindow, boolean pWaveOnly) {
         if (event == null || earthquake == null) {
@@ -365,6 +497,15 @@ public class ClusterAnalysis {
     }
 
     private void expandCluster(Cluster cluster) {
+        cluster.getLock().lock();
+        try {
+            expandClusterLocked(cluster);
+        } finally {
+            cluster.getLock().unlock();
+        }
+    }
+
+    private void expandClusterLocked(Cluster cluster) {
         if (cluster.getEarthquake() != null && cluster.getPreviousHypocenter() != null) {
             if(cluster.getPreviousHypocenter().correctEvents > 7) {
                 expandPWaves(cluster);
@@ -401,12 +542,13 @@ public class ClusterAnalysis {
     }
 
     private void expandPWaves(Cluster cluster) {
+        Hypocenter hypocenter = getHypocenter(cluster);
         mainLoop:
-        for (AbstractStation station : stations) {
+        for (AbstractStation station : findCandidateStations(hypocenter, false)) {
             for (Event event : station.getAnalysis().getDetectedEvents()) {
                 if (event.isValid() && !event.isSWave() &&
                         !cluster.containsStation(station) &&
-                        couldBeArrival(event, cluster.getEarthquake(), true, true, false)) {
+                        couldBeArrival(event, hypocenter, true, true, false)) {
                     if (cluster.getAssignedEvents().putIfAbsent(station, event) == null) {
                         event.assignedCluster = cluster;
                     }
@@ -441,8 +583,15 @@ public class ClusterAnalysis {
         return false;
     }
 
+    private void markChanged(Event event) {
+        if (activeStationIndex != null) {
+            activeStationIndex.markChanged(event);
+        }
+    }
+
     private void createNewClusters() {
-        for (AbstractStation station : stations) {
+        Collection<AbstractStation> candidates = activeStationIndex == null ? stations : activeStationIndex.takeDirtyStations();
+        for (AbstractStation station : candidates) {
             for (Event event : station.getAnalysis().getDetectedEvents()) {
                 if (event.isValid() && !event.isSWave() && event.getpWave() > 0 && event.assignedCluster == null) {
                     // so we have eligible event
@@ -483,49 +632,66 @@ public class ClusterAnalysis {
         List<Cluster> toBeRemovedBadly = new ArrayList<>();
         while (it.hasNext()) {
             Cluster cluster = it.next();
-            int numberOfActiveEvents = 0;
-            int minimum = (int) Math.max(2, cluster.getAssignedEvents().size() * 0.12);
-            for (Iterator<Event> iterator = cluster.getAssignedEvents().values().iterator(); iterator.hasNext(); ) {
-                Event event = iterator.next();
-                if (!event.isValid() || event.isSWave()) {
-                    event.assignedCluster = null;
-                    iterator.remove();
-                } else if (!event.hasEnded()) {
-                    numberOfActiveEvents++;
-                }
+            cluster.getLock().lock();
+            try {
+                updateCluster(cluster, toBeRemoved, toBeRemovedBadly);
+            } finally {
+                cluster.getLock().unlock();
             }
+        }
 
+        for(Cluster cluster : toBeRemovedBadly){
             Earthquake earthquake = cluster.getEarthquake();
-
-            boolean notEnoughEvents = cluster.getAssignedEvents().size() < HypocsSettings.getOrDefaultInt("clusterMinSize", 4);
-            boolean eqRemoved = earthquake != null && EarthquakeAnalysis.shouldRemove(earthquake, 0);
-            boolean tooOld = earthquake == null && numberOfActiveEvents < minimum && GlobalQuake.instance.currentTimeMillis() - cluster.getLastUpdate() > 2 * 60 * 1000;
-
-            if ( notEnoughEvents || eqRemoved || tooOld) {
-                Logger.tag("Hypocs").debug("Cluster #%d marked for removal (%s || %s || %s)".formatted(cluster.id, notEnoughEvents, eqRemoved, tooOld));
-                toBeRemoved.add(cluster);
-                if(notEnoughEvents){
-                    toBeRemovedBadly.add(cluster);
-                }
-            } else {
-                cluster.tick();
-                // if level changes or if it got updated (root location)
-                if(cluster.getLevel() != cluster.lastLevel || cluster.lastLastUpdate != cluster.getLastUpdate()){
-                    GlobalQuake.instance.getEventHandler().fireEvent(new ClusterLevelUpEvent(cluster));
-                    cluster.lastLevel = cluster.getLevel();
-                    cluster.lastLastUpdate = cluster.getLastUpdate();
+            if(earthquake != null){
+                earthquakes.remove(earthquake);
+                if (GlobalQuake.instance != null) {
+                    GlobalQuake.instance.getEventHandler().fireEvent(new QuakeRemoveEvent(earthquake));
                 }
             }
         }
 
-        for(Cluster cluster : toBeRemovedBadly){
-            if(cluster.getEarthquake() != null){
-                earthquakes.remove(cluster.getEarthquake());
-                GlobalQuake.instance.getEventHandler().fireEvent(new QuakeRemoveEvent(cluster.getEarthquake()));
+        clusters.removeAll(toBeRemoved);
+    }
+
+    private void updateCluster(Cluster cluster, List<Cluster> toBeRemoved, List<Cluster> toBeRemovedBadly) {
+        int numberOfActiveEvents = 0;
+        int minimum = (int) Math.max(2, cluster.getAssignedEvents().size() * 0.12);
+        for (Iterator<Event> iterator = cluster.getAssignedEvents().values().iterator(); iterator.hasNext(); ) {
+            Event event = iterator.next();
+            if (!event.isValid() || event.isSWave()) {
+                event.assignedCluster = null;
+                iterator.remove();
+                markChanged(event);
+            } else if (!event.hasEnded()) {
+                numberOfActiveEvents++;
             }
         }
 
-        clusters.removeAll(toBeRemoved);
+        Earthquake earthquake = cluster.getEarthquake();
+
+        boolean notEnoughEvents = cluster.getAssignedEvents().size() < HypocsSettings.getOrDefaultInt("clusterMinSize", 4);
+        boolean eqRemoved = earthquake != null && EarthquakeAnalysis.shouldRemove(earthquake, 0);
+        long now = GlobalQuake.instance == null ? System.currentTimeMillis() : GlobalQuake.instance.currentTimeMillis();
+        boolean tooOld = earthquake == null && numberOfActiveEvents < minimum && now - cluster.getLastUpdate() > 2 * 60 * 1000;
+
+        if ( notEnoughEvents || eqRemoved || tooOld) {
+            Logger.tag("Hypocs").debug("Cluster #%d marked for removal (%s || %s || %s)".formatted(cluster.id, notEnoughEvents, eqRemoved, tooOld));
+            cluster.markRemoved();
+            toBeRemoved.add(cluster);
+            if(notEnoughEvents){
+                toBeRemovedBadly.add(cluster);
+            }
+        } else {
+            cluster.tick();
+            // if level changes or if it got updated (root location)
+            if(cluster.getLevel() != cluster.lastLevel || cluster.lastLastUpdate != cluster.getLastUpdate()){
+                if(GlobalQuake.instance != null) {
+                    GlobalQuake.instance.getEventHandler().fireEvent(new ClusterLevelUpEvent(cluster));
+                }
+                cluster.lastLevel = cluster.getLevel();
+                cluster.lastLastUpdate = cluster.getLastUpdate();
+            }
+        }
     }
 
     private Cluster createCluster(ArrayList<Event> validEvents) {
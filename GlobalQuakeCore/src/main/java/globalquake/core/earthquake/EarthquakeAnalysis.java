@@ -3,6 +3,7 @@ package globalquake.core.earthquake;
 import globalquake.core.GlobalQuake;
 import globalquake.core.HypocsSettings;
 import globalquake.core.Settings;
+import globalquake.core.StagePool;
 import globalquake.core.analysis.BetterAnalysis;
 import globalquake.core.analysis.Event;
 import globalquake.core.earthquake.data.*;
@@ -17,11 +18,17 @@ import globalquake.core.station.AbstractStation;
 import globalquake.core.station.StationState;
 import globalquake.utils.GeoUtils;
 import globalquake.utils.Point2DGQ;
+import globalquake.utils.QuickSelect;
 import globalquake.utils.monitorable.MonitorableCopyOnWriteArrayList;
 import gqserver.api.packets.station.InputType;
 import org.tinylog.Logger;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -50,10 +57,36 @@ public class EarthquakeAnalysis {
 
     public static boolean DEPTH_FIX_ALLOWED = true;
 
+    /**
+     * Search the hypocenter by a coarse-to-fine beam search, see {@link #scanAreaAdaptive}, instead of the fixed number of points of every phase
+     */
+    public static boolean ADAPTIVE_SEARCH = HypocsSettings.getOrDefaultInt("adaptiveSearch", 0) != 0;
+
+    /**
+     * Without CUDA, search the hypocenter with {@link JavaHypocs}, the port of the CUDA search, instead of {@link #scanArea}
+     */
+    public static boolean JAVA_HYPOCS = HypocsSettings.getOrDefaultInt("javaHypocs", 0) != 0;
+
+    /**
+     * Revise a well-constrained hypocenter by {@link GeigerRelocation} from the previous one and search the area
+     * only when the new picks don't fit it
+     */
+    public static boolean INCREMENTAL_RELOCATION = HypocsSettings.getOrDefaultInt("incrementalRelocation", 0) != 0;
+
+    // fastest change of P wave travel time when the hypocenter moves horizontally, 1 / 5 km/s is slower than any crust
+    private static final double MAX_P_SLOWNESS = 1.0 / 5.0;
+    private static final double ADAPTIVE_MIN_RADIUS = 2.0;
+    private static final double ADAPTIVE_STOP_RADIUS = 50.0;
+    private static final double ADAPTIVE_TOLERANCE = 0.01;
+    private static final int ADAPTIVE_STABLE_ROUNDS = 2;
+
     private final List<Earthquake> earthquakes;
 
     private ClusterAnalysis clusterAnalysis;
 
+    // clusters with a location task submitted and not finished yet
+    private final Set<Cluster> locating = ConcurrentHashMap.newKeySet();
+
     public boolean testing = false;
 
     public EarthquakeAnalysis() {
@@ -69,23 +102,79 @@ public class EarthquakeAnalysis {
         return earthquakes;
     }
 
+    private ClusterAnalysis getClusterAnalysis() {
+        if (clusterAnalysis == null && GlobalQuake.instance != null) {
+            clusterAnalysis = GlobalQuake.instance.getClusterAnalysis();
+        }
+        return clusterAnalysis;
+    }
+
+    /**
+     * Locates all clusters that aren't being located already and waits for the results
+     */
     public void run() {
-        if (clusterAnalysis == null) {
-            if (GlobalQuake.instance == null) {
-                return;
-            } else {
-                clusterAnalysis = GlobalQuake.instance.getClusterAnalysis();
+        if (getClusterAnalysis() == null) {
+            return;
+        }
+
+        StagePool.LOCATION.invoke(() -> clusterAnalysis.getClusters().parallelStream().forEach(cluster -> {
+            if (locating.add(cluster)) {
+                try {
+                    locate(cluster);
+                } finally {
+                    locating.remove(cluster);
+                }
             }
+        }));
+    }
+
+    /**
+     * Submits the location of every cluster that isn't being located already and returns immediately,
+     * so a slow search of one cluster delays neither the clustering nor the location of the other clusters.
+     * Exceptions are left to the uncaught exception handler of the executing thread.
+     */
+    public void submit(Executor executor) {
+        if (getClusterAnalysis() == null) {
+            return;
         }
-        clusterAnalysis.getClustersReadLock().lock();
-        try {
-            clusterAnalysis.getClusters().parallelStream().forEach(cluster -> processCluster(cluster, createListOfPickedEvents(cluster), true));
-        } finally {
-            clusterAnalysis.getClustersReadLock().unlock();
+
+        for (Cluster cluster : clusterAnalysis.getClusters()) {
+            if (cluster.isRemoved() || !locating.add(cluster)) {
+                continue;
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        locate(cluster);
+                    } finally {
+                        locating.remove(cluster);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                locating.remove(cluster);
+            }
+        }
+    }
+
+    /**
+     * Searches for the hypocenter of a snapshot of the cluster without holding any lock,
+     * the result is applied only if the cluster still exists
+     */
+    private void locate(Cluster cluster) {
+        ClusterSnapshot snapshot = cluster.createSnapshot();
+        if (snapshot != null) {
+            processCluster(snapshot, true);
         }
     }
 
     public void processCluster(Cluster cluster, List<PickedEvent> pickedEvents, boolean useCUDA) {
+        processCluster(new ClusterSnapshot(cluster, cluster.updateCount, pickedEvents), useCUDA);
+    }
+
+    public void processCluster(ClusterSnapshot snapshot, boolean useCUDA) {
+        Cluster cluster = snapshot.cluster();
+        List<PickedEvent> pickedEvents = new ArrayList<>(snapshot.pickedEvents());
         if (pickedEvents.isEmpty()) {
             return;
         }
@@ -102,11 +191,11 @@ public class EarthquakeAnalysis {
             }
         }
 
-        if (cluster.lastEpicenterUpdate * (Settings.reduceRevisions ? 1.1 : 1.0) >= cluster.updateCount) {
+        if (cluster.lastEpicenterUpdate * (Settings.reduceRevisions ? 1.1 : 1.0) >= snapshot.version()) {
             return;
         }
 
-        cluster.lastEpicenterUpdate = cluster.updateCount;
+        cluster.lastEpicenterUpdate = snapshot.version();
 
         preprocess(cluster, pickedEvents, useCUDA);
     }
@@ -139,7 +228,7 @@ public class EarthquakeAnalysis {
         selectedEvents.add(pickedEvents.get(0));
 
         // Selects picked events in a way that they are spaced away as much as possible
-        findGoodEvents(pickedEvents, selectedEvents);
+        findGoodEvents(pickedEvents, selectedEvents, Settings.maxEvents);
 
         findHypocenter(selectedEvents, cluster, finderSettings);
     }
@@ -149,50 +238,75 @@ public class EarthquakeAnalysis {
                 Settings.hypocenterDetectionResolution, Settings.hypocenterDetectionResolutionGPU, Settings.minimumStationsForEEW, useCUDA);
     }
 
-    private List<PickedEvent> createListOfPickedEvents(Cluster cluster) {
-        List<PickedEvent> result = new ArrayList<>();
-        for (Event event : cluster.getAssignedEvents().values()) {
-            if (event.isValid() && !event.isSWave()) {
-                result.add(new PickedEvent(event.getpWave(), event.getLatFromStation(), event.getLonFromStation(), event.getElevationFromStation(), event.maxRatio));
-            }
-        }
-
-        return result;
-    }
-
-    private void findGoodEvents(List<PickedEvent> events, List<PickedEvent> selectedEvents) {
-        while (selectedEvents.size() < Settings.maxEvents) {
-            double maxDist = 0;
-            PickedEvent furthest = null;
-            for (PickedEvent event : events) {
-                if (!selectedEvents.contains(event)) {
-                    double closest = Double.MAX_VALUE;
-                    for (PickedEvent event2 : selectedEvents) {
-                        double dist = GeoUtils.greatCircleDistance(event.lat(), event.lon(),
-                                event2.lat(), event2.lon());
-                        if (dist < closest) {
-                            closest = dist;
-                        }
-                    }
-                    if (closest > maxDist) {
-                        maxDist = closest;
-                        furthest = event;
-                    }
+    /**
+     * Adds events furthest from all the already selected events until there are maxEvents of them.
+     * The closest selected event of every event is kept as the largest dot product of their unit vectors
+     * and only updated with the newly selected event. Events at the location of a selected event are never selected,
+     * their dot product equals their own squared length.
+     */
+    static void findGoodEvents(List<PickedEvent> events, List<PickedEvent> selectedEvents, int maxEvents) {
+        int count = events.size();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] zs = new double[count];
+        double[] norms = new double[count];
+        double[] closestDots = new double[count];
+        double[] vector = new double[3];
+
+        for (int i = 0; i < count; i++) {
+            PickedEvent event = events.get(i);
+            toUnitVector(event.lat(), event.lon(), vector);
+            xs[i] = vector[0];
+            ys[i] = vector[1];
+            zs[i] = vector[2];
+            norms[i] = xs[i] * xs[i] + ys[i] * ys[i] + zs[i] * zs[i];
+            closestDots[i] = Double.NEGATIVE_INFINITY;
+        }
+
+        for (PickedEvent selected : selectedEvents) {
+            toUnitVector(selected.lat(), selected.lon(), vector);
+            updateClosestDots(xs, ys, zs, closestDots, vector[0], vector[1], vector[2]);
+        }
+
+        while (selectedEvents.size() < maxEvents) {
+            int furthest = -1;
+            for (int i = 0; i < count; i++) {
+                if (closestDots[i] < norms[i] && (furthest == -1 || closestDots[i] < closestDots[furthest])) {
+                    furthest = i;
                 }
             }
 
-            if (furthest == null) {
+            if (furthest == -1) {
                 break;
             }
 
-            selectedEvents.add(furthest);
+            selectedEvents.add(events.get(furthest));
+            updateClosestDots(xs, ys, zs, closestDots, xs[furthest], ys[furthest], zs[furthest]);
 
-            if (selectedEvents.size() == events.size()) {
+            if (selectedEvents.size() == count) {
                 break;
             }
         }
     }
 
+    private static void toUnitVector(double lat, double lon, double[] result) {
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        double cosLat = Math.cos(latRad);
+        result[0] = cosLat * Math.cos(lonRad);
+        result[1] = cosLat * Math.sin(lonRad);
+        result[2] = Math.sin(latRad);
+    }
+
+    private static void updateClosestDots(double[] xs, double[] ys, double[] zs, double[] closestDots, double x, double y, double z) {
+        for (int i = 0; i < closestDots.length; i++) {
+            double dot = xs[i] * x + ys[i] * y + zs[i] * z;
+            if (dot > closestDots[i]) {
+                closestDots[i] = dot;
+            }
+        }
+    }
+
     private boolean checkDeltaP(Cluster cluster, Hypocenter bestHypocenter, List<PickedEvent> events) {
         events.sort(Comparator.comparing(PickedEvent::pWave));
 
@@ -215,6 +329,18 @@ public class EarthquakeAnalysis {
 
     public PreliminaryHypocenter runHypocenterFinder(List<PickedEvent> selectedEvents, Cluster cluster, HypocenterFinderSettings finderSettings,
                                                      boolean far) {
+        return runHypocenterFinder(selectedEvents, cluster, finderSettings, far, null);
+    }
+
+    /**
+     * @param samples if not null, it is cleared and gets the points of the last phases of the CPU search
+     */
+    private PreliminaryHypocenter runHypocenterFinder(List<PickedEvent> selectedEvents, Cluster cluster, HypocenterFinderSettings finderSettings,
+                                                      boolean far, MisfitSamples samples) {
+        if (samples != null) {
+            samples.clear();
+        }
+
         if (selectedEvents.isEmpty()) {
             return null;
         }
@@ -231,6 +357,16 @@ public class EarthquakeAnalysis {
             Logger.tag("Hypocs").warn("Fallback to CPU!");
         }
 
+        if (JAVA_HYPOCS) {
+            var result = JavaHypocs.findHypocenter(selectedEvents, cluster, 0, finderSettings);
+
+            if (result != null) {
+                return result;
+            }
+
+            Logger.tag("Hypocs").warn("Java hypocenter search has failed, fallback to scanning the area!");
+        }
+
         Logger.tag("Hypocs").debug("==== Searching hypocenter of cluster #" + cluster.getUuid() + " ====");
 
         double maxDepth = TauPTravelTimeCalculator.MAX_DEPTH;
@@ -245,12 +381,45 @@ public class EarthquakeAnalysis {
 
         long timeMillis = System.currentTimeMillis();
 
-        PreliminaryHypocenter bestHypocenter = null;
+        PreliminaryHypocenter bestHypocenter;
         Hypocenter previousHypocenter = cluster.getPreviousHypocenter();
 
         double _lat = cluster.getAnchorLat();
         double _lon = cluster.getAnchorLon();
 
+        if (ADAPTIVE_SEARCH) {
+            // one coarse-to-fine search replaces phases 1 to 3
+            boolean certain = previousHypocenter != null && previousHypocenter.correctEvents >= 42 && previousHypocenter.getCorrectness() >= 0.9;
+            double maxDist = far && (previousHypocenter == null || previousHypocenter.correctEvents < 24 || previousHypocenter.getCorrectness() < 0.8)
+                    ? 90.0 / 360.0 * GeoUtils.EARTH_CIRCUMFERENCE : certain ? 1000.0 : 2500.0;
+            bestHypocenter = scanAreaAdaptive(selectedEvents, maxDist, _lat, _lon, 7 + iterationsDifference, maxDepth,
+                    ADAPTIVE_MIN_RADIUS / universalMultiplier, finderSettings);
+            Logger.tag("Hypocs").debug("ADAPTIVE: " + (System.currentTimeMillis() - timeMillis));
+            Logger.tag("Hypocs").debug(bestHypocenter.correctStations + " / " + bestHypocenter.err);
+        } else {
+            bestHypocenter = runFixedPhases(selectedEvents, finderSettings, far, previousHypocenter, _lat, _lon, iterationsDifference, pointMultiplier, maxDepth, samples);
+        }
+
+        // phase 4 find exact depth
+        timeMillis = System.currentTimeMillis();
+        _lat = bestHypocenter.lat;
+        _lon = bestHypocenter.lon;
+        PreliminaryHypocenter hyp = scanArea(selectedEvents, 10.0, (int) (4000 * pointMultiplier), _lat, _lon, 10 + iterationsDifference, maxDepth, finderSettings, samples);
+        bestHypocenter = selectBetterHypocenter(hyp, bestHypocenter);
+        Logger.tag("Hypocs").debug("DEPTH: " + (System.currentTimeMillis() - timeMillis));
+        Logger.tag("Hypocs").debug(bestHypocenter.correctStations + " / " + bestHypocenter.err);
+
+        Logger.tag("Hypocs").trace(bestHypocenter);
+
+        return bestHypocenter;
+    }
+
+    private PreliminaryHypocenter runFixedPhases(List<PickedEvent> selectedEvents, HypocenterFinderSettings finderSettings, boolean far,
+                                                 Hypocenter previousHypocenter, double _lat, double _lon, int iterationsDifference,
+                                                 double pointMultiplier, double maxDepth, MisfitSamples samples) {
+        long timeMillis = System.currentTimeMillis();
+        PreliminaryHypocenter bestHypocenter = null;
+
         if (far && (previousHypocenter == null || previousHypocenter.correctEvents < 24 || previousHypocenter.getCorrectness() < 0.8)) {
             // phase 1 search far from ANCHOR (it's not very certain)
             bestHypocenter = scanArea(selectedEvents, 90.0 / 360.0 * GeoUtils.EARTH_CIRCUMFERENCE, (int) (40000 * pointMultiplier), _lat, _lon, 6 + iterationsDifference, maxDepth, finderSettings);
@@ -282,22 +451,11 @@ public class EarthquakeAnalysis {
 
         // phase 3 find exact area
         timeMillis = System.currentTimeMillis();
-        PreliminaryHypocenter hyp = scanArea(selectedEvents, 100.0, (int) (4000 * pointMultiplier), _lat, _lon, 8 + iterationsDifference, maxDepth, finderSettings);
+        PreliminaryHypocenter hyp = scanArea(selectedEvents, 100.0, (int) (4000 * pointMultiplier), _lat, _lon, 8 + iterationsDifference, maxDepth, finderSettings, samples);
         bestHypocenter = selectBetterHypocenter(hyp, bestHypocenter);
         Logger.tag("Hypocs").debug("EXACT: " + (System.currentTimeMillis() - timeMillis));
         Logger.tag("Hypocs").debug(bestHypocenter.correctStations + " / " + bestHypocenter.err);
 
-        // phase 4 find exact depth
-        timeMillis = System.currentTimeMillis();
-        _lat = bestHypocenter.lat;
-        _lon = bestHypocenter.lon;
-        hyp = scanArea(selectedEvents, 10.0, (int) (4000 * pointMultiplier), _lat, _lon, 10 + iterationsDifference, maxDepth, finderSettings);
-        bestHypocenter = selectBetterHypocenter(hyp, bestHypocenter);
-        Logger.tag("Hypocs").debug("DEPTH: " + (System.currentTimeMillis() - timeMillis));
-        Logger.tag("Hypocs").debug(bestHypocenter.correctStations + " / " + bestHypocenter.err);
-
-        Logger.tag("Hypocs").trace(bestHypocenter);
-
         return bestHypocenter;
     }
 
@@ -306,7 +464,16 @@ public class EarthquakeAnalysis {
 
         List<PickedEvent> correctSelectedEvents = new ArrayList<>(selectedEvents);
 
-        PreliminaryHypocenter bestHypocenter = runHypocenterFinder(correctSelectedEvents, cluster, finderSettings, true);
+        // the points of the last search, for the confidence intervals
+        MisfitSamples samples = new MisfitSamples();
+
+        PreliminaryHypocenter bestHypocenter = relocateIncrementally(correctSelectedEvents, cluster.getPreviousHypocenter(), finderSettings);
+        boolean incremental = bestHypocenter != null;
+        if (!incremental) {
+            bestHypocenter = runHypocenterFinder(correctSelectedEvents, cluster, finderSettings, true, samples);
+        }
+
+        long searchTime = System.currentTimeMillis() - startTime;
 
         if (bestHypocenter == null) {
             return;
@@ -335,7 +502,14 @@ public class EarthquakeAnalysis {
 
                 correctSelectedEvents = list.stream().map(Map.Entry::getKey).collect(Collectors.toList());
 
-                bestHypocenter2 = runHypocenterFinder(correctSelectedEvents, cluster, finderSettings, false);
+                bestHypocenter2 = incremental ? GeigerRelocation.relocate(correctSelectedEvents, bestHypocenter,
+                        bestHypocenter.correctStations / (double) selectedEvents.size(), finderSettings) : null;
+                if (bestHypocenter2 == null) {
+                    bestHypocenter2 = runHypocenterFinder(correctSelectedEvents, cluster, finderSettings, false, samples);
+                } else {
+                    // the samples of an earlier search don't belong to these events
+                    samples.clear();
+                }
             }
         }
 
@@ -343,7 +517,33 @@ public class EarthquakeAnalysis {
             return;
         }
 
-        postProcess(selectedEvents, correctSelectedEvents, cluster, bestHypocenter2, finderSettings, startTime);
+        Logger.tag("Hypocs").debug("SEARCH: %d ms, REDUCE: %d ms".formatted(searchTime, System.currentTimeMillis() - startTime - searchTime));
+
+        postProcess(selectedEvents, correctSelectedEvents, cluster, bestHypocenter2, finderSettings, startTime, samples);
+    }
+
+    /**
+     * @return the previous hypocenter relocated with the current picks, or null if the area has to be searched
+     */
+    private PreliminaryHypocenter relocateIncrementally(List<PickedEvent> selectedEvents, Hypocenter previousHypocenter,
+                                                        HypocenterFinderSettings finderSettings) {
+        // the same hypocenters that are certain enough for phase 2B
+        if (!INCREMENTAL_RELOCATION || previousHypocenter == null || previousHypocenter.correctEvents < 42 || previousHypocenter.getCorrectness() < 0.9) {
+            return null;
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        PreliminaryHypocenter result = GeigerRelocation.relocate(selectedEvents, toPreliminary(previousHypocenter),
+                previousHypocenter.getCorrectness(), finderSettings);
+
+        if (result == null) {
+            Logger.tag("Hypocs").debug("GEIGER: residuals jumped, fallback to the grid search");
+        } else {
+            Logger.tag("Hypocs").debug("GEIGER: " + (System.currentTimeMillis() - timeMillis));
+            Logger.tag("Hypocs").debug(result.correctStations + " / " + result.err);
+        }
+
+        return result;
     }
 
     private Map<PickedEvent, Long> calculateResiduals(PreliminaryHypocenter hypocenter, List<PickedEvent> events) {
@@ -366,27 +566,121 @@ public class EarthquakeAnalysis {
         return result;
     }
 
+    /**
+     * The shallowest and the deepest depth with the heuristic within the confidence level, on the same depths
+     * as a sweep in steps of the resolution, see {@link #findDepthInterval}.
+     */
     private DepthConfidenceInterval calculateDepthConfidenceInterval(List<PickedEvent> selectedEvents, PreliminaryHypocenter bestHypocenter, HypocenterFinderSettings finderSettings) {
-        double upperBound = bestHypocenter.depth;
-        double lowerBound = bestHypocenter.depth;
-
-        PreliminaryHypocenter hypocenterA = new PreliminaryHypocenter();
         HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(selectedEvents.size());
-        List<ExactPickedEvent> pickedEvents = createListOfExactPickedEvents(selectedEvents);
-        calculateDistances(pickedEvents, bestHypocenter.lat, bestHypocenter.lon);
+        ExactPickedEvents pickedEvents = new ExactPickedEvents(selectedEvents);
+        pickedEvents.calculateAngles(bestHypocenter.lat, bestHypocenter.lon);
+
+        double step = 1.0 / getUniversalResolutionMultiplier(finderSettings);
+        double limit = calculateHeuristic(bestHypocenter) / CONFIDENCE_LEVEL;
+        DepthProfile profile = new DepthProfile(bestHypocenter, step, limit, pickedEvents, finderSettings, threadData);
 
-        for (double depth = 0; depth < TauPTravelTimeCalculator.MAX_DEPTH; depth += 1.0 / getUniversalResolutionMultiplier(finderSettings)) {
-            analyseHypocenter(hypocenterA, bestHypocenter.lat, bestHypocenter.lon, depth, pickedEvents, finderSettings, threadData);
-            if (calculateHeuristic(hypocenterA) > calculateHeuristic(bestHypocenter) / CONFIDENCE_LEVEL && depth < bestHypocenter.depth && depth < upperBound) {
-                upperBound = depth;
+        // the depths are index * step, the best depth counts as inside the interval
+        int last = (int) Math.ceil(TauPTravelTimeCalculator.MAX_DEPTH / step) - 1;
+        int aboveBest = Math.min(last, (int) Math.ceil(bestHypocenter.depth / step) - 1);
+        int belowBest = (int) Math.floor(bestHypocenter.depth / step) + 1;
+
+        int[] bounds = findDepthInterval(profile::isInside, last, aboveBest, belowBest);
+        double upperBound = bounds[0] <= aboveBest ? bounds[0] * step : bestHypocenter.depth;
+        double lowerBound = bounds[1] >= belowBest ? bounds[1] * step : bestHypocenter.depth;
+
+        Logger.tag("Hypocs").debug("Depth interval evaluated %d of %d depths".formatted(profile.evaluated, last + 1));
+
+        return new DepthConfidenceInterval(upperBound, lowerBound);
+    }
+
+    private static final int DEPTH_INTERVAL_COARSE = 8;
+
+    /**
+     * Only every {@link #DEPTH_INTERVAL_COARSE}th depth is evaluated from the ends of the range towards the best depth,
+     * up to the outermost one inside. The depths between it and the coarse depth before it are then evaluated one by one,
+     * or, if no coarse depth is inside, the depths between the best depth and the last coarse depth. So a second
+     * minimum with a band inside the interval at least as wide as the coarse step is always found, and within it the
+     * bound is the same as with a sweep. A narrower band beyond the outermost coarse depth inside can still be missed.
+     *
+     * @param last       index of the deepest depth
+     * @param aboveBest  index of the deepest depth above the best depth, or -1
+     * @param belowBest  index of the shallowest depth below the best depth
+     * @return index of the shallowest depth inside, or aboveBest + 1 if none above the best depth is,
+     * and of the deepest depth inside, or belowBest - 1 if none below the best depth is
+     */
+    static int[] findDepthInterval(IntPredicate inside, int last, int aboveBest, int belowBest) {
+        int upper = aboveBest + 1;
+        if (aboveBest >= 0) {
+            int outside = -1;
+            for (int index = 0; index <= aboveBest; index += DEPTH_INTERVAL_COARSE) {
+                if (inside.test(index)) {
+                    upper = index;
+                    break;
+                }
+                outside = index;
             }
 
-            if (calculateHeuristic(hypocenterA) > calculateHeuristic(bestHypocenter) / CONFIDENCE_LEVEL && depth > bestHypocenter.depth) {
-                lowerBound = depth;
+            for (int index = outside + 1; index < upper; index++) {
+                if (inside.test(index)) {
+                    upper = index;
+                    break;
+                }
             }
         }
 
-        return new DepthConfidenceInterval(upperBound, lowerBound);
+        int lower = belowBest - 1;
+        if (belowBest <= last) {
+            int outside = last + 1;
+            for (int index = last; index >= belowBest; index -= DEPTH_INTERVAL_COARSE) {
+                if (inside.test(index)) {
+                    lower = index;
+                    break;
+                }
+                outside = index;
+            }
+
+            for (int index = outside - 1; index > lower; index--) {
+                if (inside.test(index)) {
+                    lower = index;
+                    break;
+                }
+            }
+        }
+
+        return new int[]{upper, lower};
+    }
+
+    /**
+     * Whether the heuristic at the depths of the interval sweep is within the confidence level, each depth evaluated once
+     */
+    private static final class DepthProfile {
+
+        private final PreliminaryHypocenter bestHypocenter;
+        private final double step;
+        private final double limit;
+        private final ExactPickedEvents pickedEvents;
+        private final HypocenterFinderSettings finderSettings;
+        private final HypocenterFinderThreadData threadData;
+        private final Map<Integer, Boolean> inside = new HashMap<>();
+        private int evaluated = 0;
+
+        DepthProfile(PreliminaryHypocenter bestHypocenter, double step, double limit, ExactPickedEvents pickedEvents,
+                     HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
+            this.bestHypocenter = bestHypocenter;
+            this.step = step;
+            this.limit = limit;
+            this.pickedEvents = pickedEvents;
+            this.finderSettings = finderSettings;
+            this.threadData = threadData;
+        }
+
+        boolean isInside(int index) {
+            return inside.computeIfAbsent(index, i -> {
+                evaluated++;
+                analyseHypocenter(threadData.hypocenterA, bestHypocenter.lat, bestHypocenter.lon, i * step, pickedEvents, finderSettings, threadData);
+                return calculateHeuristic(threadData.hypocenterA) > limit;
+            });
+        }
     }
 
     private static final int CONFIDENCE_POLYGON_EDGES = 64;
@@ -410,65 +704,106 @@ public class EarthquakeAnalysis {
     record PolygonConfidenceResult(double dist, long minOrigin, long maxOrigin) {
     }
 
-    private PolygonConfidenceInterval calculatePolygonConfidenceInterval(List<PickedEvent> selectedEvents,
-                                                                         PreliminaryHypocenter bestHypocenter, HypocenterFinderSettings finderSettings, double confidenceThreshold) {
-        List<Integer> integerList = IntStream.range(0, CONFIDENCE_POLYGON_EDGES).boxed().toList();
-        List<PolygonConfidenceResult> results = (Settings.parallelHypocenterLocations ? integerList.parallelStream() : integerList.stream()).map(ray -> {
-            double ang = CONFIDENCE_POLYGON_OFFSET + (ray / (double) CONFIDENCE_POLYGON_EDGES) * 360.0;
-            double dist = CONFIDENCE_POLYGON_STEP;
-            double step = CONFIDENCE_POLYGON_STEP;
+    /**
+     * Distance of the edge of the polygon of every threshold on one ray. The crossing of each threshold is
+     * first looked up in the samples of the search in the sector of the ray, then refined exactly on the ray between
+     * the last sample inside and the first sample outside. Beyond the samples, the ray is followed further out
+     * in steps like without any samples. Every point evaluated on the ray is added to its samples for the next threshold.
+     */
+    private PolygonConfidenceResult[] calculatePolygonRay(List<PickedEvent> selectedEvents, PreliminaryHypocenter bestHypocenter,
+                                                          HypocenterFinderSettings finderSettings, int ray, MisfitSamples.Ray samples,
+                                                          double[] confidenceThresholds, LongAdder evaluated) {
+        double ang = CONFIDENCE_POLYGON_OFFSET + (ray / (double) CONFIDENCE_POLYGON_EDGES) * 360.0;
+        double bestHeuristic = calculateHeuristic(bestHypocenter);
+
+        ExactPickedEvents pickedEvents = new ExactPickedEvents(selectedEvents);
+        HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
+
+        PolygonConfidenceResult[] results = new PolygonConfidenceResult[confidenceThresholds.length];
+        for (int i = 0; i < confidenceThresholds.length; i++) {
+            double limit = bestHeuristic / confidenceThresholds[i];
 
             long minOrigin = Long.MAX_VALUE;
             long maxOrigin = Long.MIN_VALUE;
 
-            List<ExactPickedEvent> pickedEvents = createListOfExactPickedEvents(selectedEvents);
-            HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
-            while (step > CONFIDENCE_POLYGON_MIN_STEP && dist < CONFIDENCE_POLYGON_MAX_DIST) {
-                double[] latLon = GeoUtils.moveOnGlobe(bestHypocenter.lat, bestHypocenter.lon, dist, ang);
-                double lat = latLon[0];
-                double lon = latLon[1];
-
-                // reset
-                threadData.bestHypocenter.err = Double.MAX_VALUE;
-                threadData.bestHypocenter.correctStations = 0;
-
-                calculateDistances(pickedEvents, lat, lon);
-                getBestAtDepth(DEPTH_ITERS_POLYGONS, TauPTravelTimeCalculator.MAX_DEPTH, finderSettings, 0, lat, lon, pickedEvents, threadData);
-
-                double h1 = calculateHeuristic(threadData.bestHypocenter);
-                double h2 = calculateHeuristic(bestHypocenter);
-                boolean stillValid = h1 > h2 / confidenceThreshold;
-                if (stillValid) {
-                    dist += step;
-                    if (threadData.bestHypocenter.origin > maxOrigin) {
-                        maxOrigin = threadData.bestHypocenter.origin;
+            double lastInside = 0;
+            double firstOutside = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < samples.size(); j++) {
+                if (samples.getHeuristic(j) > limit) {
+                    lastInside = samples.getDistance(j);
+                    minOrigin = Math.min(minOrigin, samples.getOrigin(j));
+                    maxOrigin = Math.max(maxOrigin, samples.getOrigin(j));
+                } else {
+                    firstOutside = samples.getDistance(j);
+                    break;
+                }
+            }
+
+            double dist;
+            if (firstOutside == Double.POSITIVE_INFINITY) {
+                dist = lastInside + CONFIDENCE_POLYGON_STEP;
+                double step = CONFIDENCE_POLYGON_STEP;
+                while (step > CONFIDENCE_POLYGON_MIN_STEP && dist < CONFIDENCE_POLYGON_MAX_DIST) {
+                    PreliminaryHypocenter hypocenter = evaluatePolygonPoint(bestHypocenter, dist, ang, pickedEvents, finderSettings, threadData);
+                    double heuristic = calculateHeuristic(hypocenter);
+                    samples.insert(dist, heuristic, hypocenter.origin);
+                    evaluated.increment();
+
+                    if (heuristic > limit) {
+                        minOrigin = Math.min(minOrigin, hypocenter.origin);
+                        maxOrigin = Math.max(maxOrigin, hypocenter.origin);
+                        dist += step;
+                    } else {
+                        step /= 2.0;
+                        dist -= step;
                     }
-                    if (threadData.bestHypocenter.origin < minOrigin) {
-                        minOrigin = threadData.bestHypocenter.origin;
+                }
+            } else {
+                while (firstOutside - lastInside > 2 * CONFIDENCE_POLYGON_MIN_STEP) {
+                    double middle = (lastInside + firstOutside) / 2.0;
+                    PreliminaryHypocenter hypocenter = evaluatePolygonPoint(bestHypocenter, middle, ang, pickedEvents, finderSettings, threadData);
+                    double heuristic = calculateHeuristic(hypocenter);
+                    samples.insert(middle, heuristic, hypocenter.origin);
+                    evaluated.increment();
+
+                    if (heuristic > limit) {
+                        minOrigin = Math.min(minOrigin, hypocenter.origin);
+                        maxOrigin = Math.max(maxOrigin, hypocenter.origin);
+                        lastInside = middle;
+                    } else {
+                        firstOutside = middle;
                     }
-                } else {
-                    step /= 2.0;
-                    dist -= step;
                 }
+                dist = (lastInside + firstOutside) / 2.0;
             }
 
-            return new PolygonConfidenceResult(dist, minOrigin, maxOrigin);
-        }).toList();
+            results[i] = new PolygonConfidenceResult(dist, minOrigin, maxOrigin);
+        }
 
-        List<Double> lengths = results.stream().map(polygonConfidenceResult -> polygonConfidenceResult.dist).toList();
+        return results;
+    }
 
-        long minOrigin = results.stream().map(polygonConfidenceResult -> polygonConfidenceResult.minOrigin).min(Long::compareTo).orElse(0L);
-        long maxOrigin = results.stream().map(polygonConfidenceResult -> polygonConfidenceResult.maxOrigin).max(Long::compareTo).orElse(0L);
+    private PreliminaryHypocenter evaluatePolygonPoint(PreliminaryHypocenter bestHypocenter, double dist, double ang, ExactPickedEvents pickedEvents,
+                                                       HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
+        double[] latLon = GeoUtils.moveOnGlobe(bestHypocenter.lat, bestHypocenter.lon, dist, ang);
+        double lat = latLon[0];
+        double lon = latLon[1];
 
-        return new PolygonConfidenceInterval(CONFIDENCE_POLYGON_EDGES, CONFIDENCE_POLYGON_OFFSET, lengths, minOrigin, maxOrigin);
+        // reset
+        threadData.bestHypocenter.err = Double.MAX_VALUE;
+        threadData.bestHypocenter.correctStations = 0;
+
+        pickedEvents.calculateAngles(lat, lon);
+        getBestAtDepth(DEPTH_ITERS_POLYGONS, TauPTravelTimeCalculator.MAX_DEPTH, finderSettings, 0, lat, lon, pickedEvents, threadData);
+        return threadData.bestHypocenter;
     }
 
 
     // calculate correct stations and err
     private void postProcess(List<PickedEvent> selectedEvents, PreliminaryHypocenter bestHypocenterPrelim, HypocenterFinderSettings finderSettings) {
-        List<ExactPickedEvent> pickedEvents = createListOfExactPickedEvents(selectedEvents);
+        ExactPickedEvents pickedEvents = new ExactPickedEvents(selectedEvents);
         HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
-        calculateDistances(pickedEvents, bestHypocenterPrelim.lat, bestHypocenterPrelim.lon);
+        pickedEvents.calculateAngles(bestHypocenterPrelim.lat, bestHypocenterPrelim.lon);
         getBestAtDepth(DEPTH_ITERS_POLYGONS, TauPTravelTimeCalculator.MAX_DEPTH, finderSettings, 0,
                 bestHypocenterPrelim.lat, bestHypocenterPrelim.lon, pickedEvents, threadData);
 
@@ -476,11 +811,22 @@ public class EarthquakeAnalysis {
         bestHypocenterPrelim.err = threadData.bestHypocenter.err;
     }
 
-    private void postProcess(List<PickedEvent> selectedEvents, List<PickedEvent> correctSelectedEvents, Cluster cluster, PreliminaryHypocenter bestHypocenterPrelim, HypocenterFinderSettings finderSettings, long startTime) {
+    private void postProcess(List<PickedEvent> selectedEvents, List<PickedEvent> correctSelectedEvents, Cluster cluster, PreliminaryHypocenter bestHypocenterPrelim,
+                             HypocenterFinderSettings finderSettings, long startTime, MisfitSamples samples) {
+        long timeMillis = System.currentTimeMillis();
         postProcess(correctSelectedEvents, bestHypocenterPrelim, finderSettings);
-        Hypocenter bestHypocenter = bestHypocenterPrelim.finish(
-                calculateDepthConfidenceInterval(correctSelectedEvents, bestHypocenterPrelim, finderSettings),
-                calculatePolygonConfidenceIntervals(correctSelectedEvents, bestHypocenterPrelim, finderSettings));
+        long postProcessTime = System.currentTimeMillis() - timeMillis;
+
+        timeMillis = System.currentTimeMillis();
+        DepthConfidenceInterval depthConfidenceInterval = calculateDepthConfidenceInterval(correctSelectedEvents, bestHypocenterPrelim, finderSettings);
+        long depthTime = System.currentTimeMillis() - timeMillis;
+
+        timeMillis = System.currentTimeMillis();
+        List<PolygonConfidenceInterval> polygonConfidenceIntervals = calculatePolygonConfidenceIntervals(correctSelectedEvents, bestHypocenterPrelim, finderSettings, samples);
+        Logger.tag("Hypocs").debug("POST PROCESS: %d ms, DEPTH INTERVAL: %d ms, POLYGONS: %d ms".formatted(
+                postProcessTime, depthTime, System.currentTimeMillis() - timeMillis));
+
+        Hypocenter bestHypocenter = bestHypocenterPrelim.finish(depthConfidenceInterval, polygonConfidenceIntervals);
 
         if (bestHypocenter.correctEvents == 0 || bestHypocenter.totalErr == Double.MAX_VALUE) {
             Logger.tag("Hypocs").debug("Absurd!");
@@ -505,6 +851,23 @@ public class EarthquakeAnalysis {
             return;
         }
 
+        cluster.getLock().lock();
+        try {
+            if (cluster.isRemoved()) {
+                Logger.tag("Hypocs").debug("Cluster #%d was removed during the search".formatted(cluster.id));
+                return;
+            }
+
+            applyHypocenter(selectedEvents, correctSelectedEvents, cluster, bestHypocenter, finderSettings);
+        } finally {
+            cluster.getLock().unlock();
+        }
+
+        Logger.tag("Hypocs").trace("Hypocenter finding finished in: %d ms".formatted(System.currentTimeMillis() - startTime));
+    }
+
+    private void applyHypocenter(List<PickedEvent> selectedEvents, List<PickedEvent> correctSelectedEvents, Cluster cluster,
+                                 Hypocenter bestHypocenter, HypocenterFinderSettings finderSettings) {
         if (bestHypocenter.depth > TauPTravelTimeCalculator.MAX_DEPTH - 5.0) {
             Logger.tag("Hypocs").debug("Ignoring too deep quake, it's probably a core wave! %.1fkm".formatted(bestHypocenter.depth));
 
@@ -565,8 +928,6 @@ public class EarthquakeAnalysis {
                 Logger.tag("Hypocs").error("Fatal error: %s".formatted(result));
             }
         }
-
-        Logger.tag("Hypocs").trace("Hypocenter finding finished in: %d ms".formatted(System.currentTimeMillis() - startTime));
     }
 
     private void removeQuake(Cluster cluster, Earthquake earthquake1) {
@@ -675,15 +1036,30 @@ public class EarthquakeAnalysis {
         Logger.tag("Hypocs").debug("Origin time recalculated");
     }
 
-    private List<PolygonConfidenceInterval> calculatePolygonConfidenceIntervals(List<PickedEvent> selectedEvents, PreliminaryHypocenter bestHypocenterPrelim, HypocenterFinderSettings finderSettings) {
+    private List<PolygonConfidenceInterval> calculatePolygonConfidenceIntervals(List<PickedEvent> selectedEvents, PreliminaryHypocenter bestHypocenterPrelim,
+                                                                                HypocenterFinderSettings finderSettings, MisfitSamples samples) {
+        double mul = 80.0 / (selectedEvents.size() * selectedEvents.size() + 8.0) + 0.9;
+        double[] confidenceThresholds = new double[]{3.0 * mul, 2.0 * mul, 1.5 * mul, 1.25 * mul};
+
+        MisfitSamples.Ray[] rays = samples.toRays(bestHypocenterPrelim.lat, bestHypocenterPrelim.lon, CONFIDENCE_POLYGON_EDGES, CONFIDENCE_POLYGON_OFFSET);
+        LongAdder evaluated = new LongAdder();
+
+        List<Integer> integerList = IntStream.range(0, CONFIDENCE_POLYGON_EDGES).boxed().toList();
+        List<PolygonConfidenceResult[]> results = StagePool.CONFIDENCE.invoke(() -> (Settings.parallelHypocenterLocations ? integerList.parallelStream() : integerList.stream()).map(
+                ray -> calculatePolygonRay(selectedEvents, bestHypocenterPrelim, finderSettings, ray, rays[ray], confidenceThresholds, evaluated)).toList());
+
+        Logger.tag("Hypocs").debug("Polygons took %d points from the search and evaluated %d".formatted(samples.size(), evaluated.sum()));
+
         List<PolygonConfidenceInterval> result = new ArrayList<>();
+        for (int i = 0; i < confidenceThresholds.length; i++) {
+            int threshold = i;
+            List<Double> lengths = results.stream().map(rayResults -> rayResults[threshold].dist()).toList();
 
-        double mul = 80.0 / (selectedEvents.size() * selectedEvents.size() + 8.0) + 0.9;
+            long minOrigin = results.stream().map(rayResults -> rayResults[threshold].minOrigin()).min(Long::compareTo).orElse(0L);
+            long maxOrigin = results.stream().map(rayResults -> rayResults[threshold].maxOrigin()).max(Long::compareTo).orElse(0L);
 
-        result.add(calculatePolygonConfidenceInterval(selectedEvents, bestHypocenterPrelim, finderSettings, 3.0 * mul));
-        result.add(calculatePolygonConfidenceInterval(selectedEvents, bestHypocenterPrelim, finderSettings, 2.0 * mul));
-        result.add(calculatePolygonConfidenceInterval(selectedEvents, bestHypocenterPrelim, finderSettings, 1.5 * mul));
-        result.add(calculatePolygonConfidenceInterval(selectedEvents, bestHypocenterPrelim, finderSettings, 1.25 * mul));
+            result.add(new PolygonConfidenceInterval(CONFIDENCE_POLYGON_EDGES, CONFIDENCE_POLYGON_OFFSET, lengths, minOrigin, maxOrigin));
+        }
 
         return result;
     }
@@ -746,15 +1122,24 @@ public class EarthquakeAnalysis {
 
     private PreliminaryHypocenter scanArea(List<PickedEvent> events, double maxDist, int points, double _lat, double _lon, int depthIterations,
                                            double maxDepth, HypocenterFinderSettings finderSettings) {
+        return scanArea(events, maxDist, points, _lat, _lon, depthIterations, maxDepth, finderSettings, null);
+    }
+
+    /**
+     * @param samples if not null, the best depth of every point is added to it
+     */
+    private PreliminaryHypocenter scanArea(List<PickedEvent> events, double maxDist, int points, double _lat, double _lon, int depthIterations,
+                                           double maxDepth, HypocenterFinderSettings finderSettings, MisfitSamples samples) {
         int CPUS = Runtime.getRuntime().availableProcessors();
         double c = maxDist / Math.sqrt(points);
         double one = points / (double) CPUS;
 
         List<Integer> integerList = IntStream.range(0, CPUS).boxed().toList();
-        return (Settings.parallelHypocenterLocations ? integerList.parallelStream() : integerList.stream()).map(
+        return StagePool.LOCATION.invoke(() -> (Settings.parallelHypocenterLocations ? integerList.parallelStream() : integerList.stream()).map(
                 cpu -> {
-                    List<ExactPickedEvent> pickedEvents = createListOfExactPickedEvents(events);
+                    ExactPickedEvents pickedEvents = new ExactPickedEvents(events);
                     HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
+                    MisfitSamples threadSamples = samples == null ? null : new MisfitSamples();
 
                     int start = (int) (cpu * one);
                     int end = (int) ((cpu + 1) * one);
@@ -767,12 +1152,193 @@ public class EarthquakeAnalysis {
                         double lat = latLon[0];
                         double lon = latLon[1];
 
-                        calculateDistances(pickedEvents, lat, lon);
+                        pickedEvents.calculateAngles(lat, lon);
                         getBestAtDepth(depthIterations, maxDepth, finderSettings, 0, lat, lon, pickedEvents, threadData);
+
+                        if (threadSamples != null) {
+                            threadSamples.add(lat, lon, calculateHeuristic(threadData.pointBest), threadData.pointBest.origin);
+                        }
+                    }
+
+                    if (threadSamples != null) {
+                        samples.addAll(threadSamples);
                     }
                     return threadData.bestHypocenter;
                 }
-        ).reduce(EarthquakeAnalysis::selectBetterHypocenter).orElse(null);
+        ).reduce(EarthquakeAnalysis::selectBetterHypocenter).orElse(null));
+    }
+
+    /**
+     * A point of the adaptive search standing for the disk of the given radius around it
+     *
+     * @param residuals distance of the origin derived from each pick from the median origin at the best depth of the point,
+     *                  -1 where the pick has no P arrival
+     */
+    private record SearchCell(PreliminaryHypocenter hypocenter, long[] residuals, double radius) {
+
+        SearchCell withRadius(double radius) {
+            return new SearchCell(hypocenter, residuals, radius);
+        }
+
+        /**
+         * Moving the hypocenter by the radius changes every travel time and so the median origin by at most
+         * radius * {@link #MAX_P_SLOWNESS}, each residual by twice that. Reducing all residuals by that amount gives
+         * the most correct stations and the smallest error anywhere in the cell at the same depth.
+         * The slack is 2 * radius / 5 s, hundreds of seconds for the coarse cells, so the bound only starts
+         * to prune once the cells are a few tens of km wide.
+         */
+        boolean canContainBetter(PreliminaryHypocenter best, HypocenterFinderSettings finderSettings) {
+            long slack = (long) (2 * radius * MAX_P_SLOWNESS * 1000);
+            double threshold = finderSettings.pWaveInaccuracyThreshold();
+            double err = 0;
+            int acc = 0;
+
+            for (long residual : residuals) {
+                if (residual < 0) {
+                    acc++;
+                    continue;
+                }
+
+                double _err = Math.max(0, residual - slack);
+                if (_err < threshold) {
+                    acc++;
+                } else {
+                    _err = (_err - threshold) * 0.2 + threshold;
+                }
+
+                _err /= 1000;
+                err += _err * _err;
+            }
+
+            PreliminaryHypocenter bound = new PreliminaryHypocenter(hypocenter.lat, hypocenter.lon, hypocenter.depth, hypocenter.origin, err, acc);
+            return selectBetterHypocenter(bound, best) == bound;
+        }
+    }
+
+    /**
+     * Coarse-to-fine alternative to the fixed phases of {@link #scanArea}. Evaluates a coarse spiral of points,
+     * then repeatedly splits the cells into seven cells of half the radius. This is a beam search: only the best
+     * adaptiveFrontier cells by heuristic are split in every round, so a hypocenter in a cell that falls out of the beam
+     * is lost. Before that, cells whose bound can't beat the best hypocenter are dropped, which saves evaluations
+     * at fine radii but doesn't guarantee anything at the coarse ones, see {@link SearchCell#canContainBetter}.
+     * The search stops once the heuristic of the best hypocenter stabilises at a fine enough radius or the minimal
+     * radius is reached. The bound ignores the depth, which is searched again at every point.
+     */
+    private PreliminaryHypocenter scanAreaAdaptive(List<PickedEvent> events, double maxDist, double _lat, double _lon, int depthIterations,
+                                                   double maxDepth, double minRadius, HypocenterFinderSettings finderSettings) {
+        int points = HypocsSettings.getOrDefaultInt("adaptiveCoarsePoints", 400);
+        int frontierLimit = HypocsSettings.getOrDefaultInt("adaptiveFrontier", 24);
+
+        double c = maxDist / Math.sqrt(points);
+        List<double[]> positions = new ArrayList<>(points);
+        for (int n = 0; n < points; n++) {
+            positions.add(GeoUtils.moveOnGlobe(_lat, _lon, Math.sqrt(n) * c, 360.0 / (PHI * PHI) * n));
+        }
+
+        // spacing of the spiral, so the disks around its points cover the whole area
+        double radius = c * Math.sqrt(Math.PI);
+        List<SearchCell> cells = evaluateCells(events, positions, radius, depthIterations, maxDepth, finderSettings);
+        PreliminaryHypocenter best = cells.stream().map(SearchCell::hypocenter).reduce(EarthquakeAnalysis::selectBetterHypocenter).orElse(null);
+
+        int stableRounds = 0;
+        int evaluated = points;
+        int pruned = 0;
+        int outOfBeam = 0;
+        int round = 0;
+        while (best != null && radius > minRadius) {
+            PreliminaryHypocenter currentBest = best;
+            List<SearchCell> candidates = cells.stream()
+                    .filter(cell -> cell.hypocenter() == currentBest || cell.canContainBetter(currentBest, finderSettings))
+                    .toList();
+            List<SearchCell> frontier = candidates.stream()
+                    .sorted(Comparator.comparingDouble((SearchCell cell) -> calculateHeuristic(cell.hypocenter())).reversed())
+                    .limit(frontierLimit).toList();
+            pruned += cells.size() - candidates.size();
+            outOfBeam += candidates.size() - frontier.size();
+
+            radius /= 2.0;
+            round++;
+
+            positions = new ArrayList<>(frontier.size() * 6);
+            cells = new ArrayList<>(frontier.size() * 7);
+            for (SearchCell cell : frontier) {
+                // the center needs no new evaluation
+                cells.add(cell.withRadius(radius));
+                for (int i = 0; i < 6; i++) {
+                    positions.add(GeoUtils.moveOnGlobe(cell.hypocenter().lat, cell.hypocenter().lon, radius * Math.sqrt(3), 60.0 * i + 30.0 * (round % 2)));
+                }
+            }
+
+            cells.addAll(evaluateCells(events, positions, radius, depthIterations, maxDepth, finderSettings));
+            evaluated += positions.size();
+
+            PreliminaryHypocenter newBest = cells.stream().map(SearchCell::hypocenter).reduce(best, EarthquakeAnalysis::selectBetterHypocenter);
+            double improvement = calculateHeuristic(newBest) / calculateHeuristic(best) - 1.0;
+            stableRounds = newBest == best || improvement < ADAPTIVE_TOLERANCE ? stableRounds + 1 : 0;
+            best = newBest;
+
+            if (stableRounds >= ADAPTIVE_STABLE_ROUNDS && radius < ADAPTIVE_STOP_RADIUS) {
+                break;
+            }
+        }
+
+        Logger.tag("Hypocs").debug("Adaptive beam search evaluated %d points in %d rounds down to %.1f km, %d cells pruned by the bound, %d out of the beam"
+                .formatted(evaluated, round, radius, pruned, outOfBeam));
+
+        return best;
+    }
+
+    private List<SearchCell> evaluateCells(List<PickedEvent> events, List<double[]> positions, double radius, int depthIterations,
+                                           double maxDepth, HypocenterFinderSettings finderSettings) {
+        int CPUS = Runtime.getRuntime().availableProcessors();
+        double one = positions.size() / (double) CPUS;
+
+        List<Integer> integerList = IntStream.range(0, CPUS).boxed().toList();
+        return StagePool.LOCATION.invoke(() -> (Settings.parallelHypocenterLocations ? integerList.parallelStream() : integerList.stream()).flatMap(
+                cpu -> {
+                    ExactPickedEvents pickedEvents = new ExactPickedEvents(events);
+                    HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
+                    List<SearchCell> result = new ArrayList<>();
+
+                    for (int n = (int) (cpu * one); n < (int) ((cpu + 1) * one); n++) {
+                        double lat = positions.get(n)[0];
+                        double lon = positions.get(n)[1];
+
+                        // reset
+                        threadData.bestHypocenter.err = Double.MAX_VALUE;
+                        threadData.bestHypocenter.correctStations = 0;
+
+                        pickedEvents.calculateAngles(lat, lon);
+                        getBestAtDepth(depthIterations, maxDepth, finderSettings, 0, lat, lon, pickedEvents, threadData);
+
+                        PreliminaryHypocenter hypocenter = new PreliminaryHypocenter();
+                        hypocenter.lat = lat;
+                        hypocenter.lon = lon;
+                        hypocenter.depth = threadData.bestHypocenter.depth;
+                        hypocenter.origin = threadData.bestHypocenter.origin;
+                        hypocenter.err = threadData.bestHypocenter.err;
+                        hypocenter.correctStations = threadData.bestHypocenter.correctStations;
+
+                        result.add(new SearchCell(hypocenter, calculateResiduals(lat, lon, hypocenter.depth, pickedEvents, finderSettings, threadData), radius));
+                    }
+
+                    return result.stream();
+                }
+        ).toList());
+    }
+
+    private static long[] calculateResiduals(double lat, double lon, double depth, ExactPickedEvents pickedEvents,
+                                             HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
+        analyseHypocenter(threadData.hypocenterA, lat, lon, depth, pickedEvents, finderSettings, threadData);
+
+        long[] residuals = new long[threadData.origins.length];
+        long median = threadData.hypocenterA.err == Double.MAX_VALUE ? UNKNOWN_ORIGIN : threadData.hypocenterA.origin;
+        for (int i = 0; i < residuals.length; i++) {
+            long origin = threadData.origins[i];
+            residuals[i] = origin == UNKNOWN_ORIGIN || median == UNKNOWN_ORIGIN ? -1 : Math.abs(origin - median);
+        }
+
+        return residuals;
     }
 
     @SuppressWarnings("unused")
@@ -786,7 +1352,7 @@ public class EarthquakeAnalysis {
 
         return (Settings.parallelHypocenterLocations ? distances.parallelStream() : distances.stream()).map(
                 distance -> {
-                    List<ExactPickedEvent> pickedEvents = createListOfExactPickedEvents(events);
+                    ExactPickedEvents pickedEvents = new ExactPickedEvents(events);
                     HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
                     getBestAtDist(distance, distHorizontal, _lat, _lon, pickedEvents, depthIterations, maxDepth, finderSettings, threadData);
                     return threadData.bestHypocenter;
@@ -794,14 +1360,6 @@ public class EarthquakeAnalysis {
         ).reduce(EarthquakeAnalysis::selectBetterHypocenter).orElse(null);
     }
 
-    private List<ExactPickedEvent> createListOfExactPickedEvents(List<PickedEvent> events) {
-        List<ExactPickedEvent> result = new ArrayList<>(events.size());
-        for (PickedEvent event : events) {
-            result.add(new ExactPickedEvent(event));
-        }
-        return result;
-    }
-
     private static double calculateHeuristic(PreliminaryHypocenter hypocenter) {
         return (hypocenter.correctStations * hypocenter.correctStations) / (hypocenter.err * hypocenter.err);
     }
@@ -823,7 +1381,7 @@ public class EarthquakeAnalysis {
     }
 
     private void getBestAtDist(double distFromAnchor, double distHorizontal, double _lat, double _lon,
-                               List<ExactPickedEvent> events, int depthIterations, double depthEnd,
+                               ExactPickedEvents events, int depthIterations, double depthEnd,
                                HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
         double depthStart = 0;
 
@@ -839,13 +1397,13 @@ public class EarthquakeAnalysis {
             double lat = point2D.x;
             double lon = point2D.y;
 
-            calculateDistances(events, lat, lon);
+            events.calculateAngles(lat, lon);
             getBestAtDepth(depthIterations, depthEnd, finderSettings, depthStart, lat, lon, events, threadData);
         }
     }
 
     private void getBestAtDepth(int depthIterations, double depthEnd, HypocenterFinderSettings finderSettings,
-                                double depthStart, double lat, double lon, List<ExactPickedEvent> pickedEvents,
+                                double depthStart, double lat, double lon, ExactPickedEvents pickedEvents,
                                 HypocenterFinderThreadData threadData) {
         double lowerBound = depthStart; // 0
         double upperBound = depthEnd; // 600
@@ -859,6 +1417,9 @@ public class EarthquakeAnalysis {
         PreliminaryHypocenter upperHypocenter = threadData.hypocenterA;
         PreliminaryHypocenter lowerHypocenter = threadData.hypocenterB;
 
+        threadData.pointBest.err = Double.MAX_VALUE;
+        threadData.pointBest.correctStations = 0;
+
         for (int iteration = 0; iteration < depthIterations; iteration++) {
             PreliminaryHypocenter better = selectBetterHypocenter(upperHypocenter, lowerHypocenter);
             boolean goUp = better == upperHypocenter;
@@ -873,49 +1434,34 @@ public class EarthquakeAnalysis {
 
                 analyseHypocenter(upperHypocenter, lat, lon, depthA, pickedEvents, finderSettings, threadData);
                 threadData.setBest(selectBetterHypocenter(threadData.bestHypocenter, upperHypocenter));
+                threadData.setPointBest(selectBetterHypocenter(threadData.pointBest, upperHypocenter));
             } else {
                 lowerBound = (upperBound + lowerBound) / 2.0;
                 depthB = lowerBound + (upperBound - lowerBound) * (2 / 3.0);
 
                 analyseHypocenter(lowerHypocenter, lat, lon, depthB, pickedEvents, finderSettings, threadData);
                 threadData.setBest(selectBetterHypocenter(threadData.bestHypocenter, lowerHypocenter));
+                threadData.setPointBest(selectBetterHypocenter(threadData.pointBest, lowerHypocenter));
             }
         }
 
         // additionally check 0km and 10 km
         analyseHypocenter(threadData.hypocenterA, lat, lon, 0, pickedEvents, finderSettings, threadData);
         threadData.setBest(selectBetterHypocenter(threadData.bestHypocenter, threadData.hypocenterA));
+        threadData.setPointBest(selectBetterHypocenter(threadData.pointBest, threadData.hypocenterA));
         analyseHypocenter(threadData.hypocenterA, lat, lon, 10, pickedEvents, finderSettings, threadData);
         threadData.setBest(selectBetterHypocenter(threadData.bestHypocenter, threadData.hypocenterA));
+        threadData.setPointBest(selectBetterHypocenter(threadData.pointBest, threadData.hypocenterA));
     }
 
     private static final long UNKNOWN_ORIGIN = Long.MIN_VALUE;
 
-    public static void analyseHypocenter(PreliminaryHypocenter hypocenter, double lat, double lon, double depth, List<ExactPickedEvent> events, HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
-        int c = 0;
-
-        for (ExactPickedEvent event : events) {
-            double travelTime = TauPTravelTimeCalculator.getPWaveTravelTimeFast(depth, event.angle);
-            if (travelTime == TauPTravelTimeCalculator.NO_ARRIVAL) {
-                threadData.origins[c] = UNKNOWN_ORIGIN;
-                c++;
-                continue;
-            }
+    public static void analyseHypocenter(PreliminaryHypocenter hypocenter, double lat, double lon, double depth, ExactPickedEvents events, HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
+        long[] origins = threadData.origins;
+        events.calculateOrigins(depth, origins, UNKNOWN_ORIGIN);
 
-            travelTime += getElevationCorrection(event.elevation());
-
-            long origin = event.pWave() - ((long) (travelTime * 1000));
-            threadData.origins[c] = origin;
-            c++;
-        }
-
-        long bestOrigin;
-        if (USE_MEDIAN_FOR_ORIGIN) {
-            Arrays.sort(threadData.origins);
-            bestOrigin = threadData.origins[(threadData.origins.length - 1) / 2];
-        } else {
-            bestOrigin = threadData.origins[0];
-        }
+        // the same element sorting would put in the middle, the order of the origins doesn't matter below
+        long bestOrigin = USE_MEDIAN_FOR_ORIGIN ? QuickSelect.select(origins, 0, origins.length, (origins.length - 1) / 2) : origins[0];
 
         if(bestOrigin == UNKNOWN_ORIGIN){
             hypocenter.err = Double.MAX_VALUE;
@@ -923,15 +1469,17 @@ public class EarthquakeAnalysis {
             return;
         }
 
+        double threshold = finderSettings.pWaveInaccuracyThreshold();
         double err = 0;
         int acc = 0;
 
-        for (long orign : threadData.origins) {
+        // err and acc in a single pass
+        for (long orign : origins) {
             double _err = Math.abs(orign - bestOrigin);
-            if (_err < finderSettings.pWaveInaccuracyThreshold()) {
+            if (_err < threshold) {
                 acc++;
             } else {
-                _err = (_err - finderSettings.pWaveInaccuracyThreshold()) * 0.2 + finderSettings.pWaveInaccuracyThreshold();
+                _err = (_err - threshold) * 0.2 + threshold;
             }
 
             _err /= 1000;
@@ -951,22 +1499,6 @@ public class EarthquakeAnalysis {
         return elevation / 6000.0;
     }
 
-    private void calculateDistances(List<ExactPickedEvent> pickedEvents, double lat, double lon) {
-        for (ExactPickedEvent event : pickedEvents) {
-            event.angle = TauPTravelTimeCalculator.toAngle(GeoUtils.greatCircleDistance(event.lat(),
-                    event.lon(), lat, lon));
-        }
-    }
-
-    public static final class ExactPickedEvent extends PickedEvent {
-        public double angle;
-
-        public ExactPickedEvent(PickedEvent pickedEvent) {
-            super(pickedEvent.pWave(), pickedEvent.lat(), pickedEvent.lon(), pickedEvent.elevation(), pickedEvent.maxRatio());
-        }
-
-    }
-
     private double getUniversalResolutionMultiplier(HypocenterFinderSettings finderSettings) {
         // 30% when 0.0 (min) selected
         // 100% when 40.0 (default) selected
@@ -1174,8 +1706,9 @@ public class EarthquakeAnalysis {
         double store_minutes = STORE_TABLE[Math.max(0,
                 Math.min(STORE_TABLE.length - 1, (int) ((earthquake.getMag() + getDepthCorrection(earthquake.getDepth())) * 2.0)))]
                 - marginSeconds / 60.0;
-        return GlobalQuake.instance.currentTimeMillis() - earthquake.getOrigin() > (long) store_minutes * 60 * 1000
-                && GlobalQuake.instance.currentTimeMillis() - earthquake.getLastUpdate() > 0.25 * store_minutes * 60 * 1000;
+        long now = GlobalQuake.instance == null ? System.currentTimeMillis() : GlobalQuake.instance.currentTimeMillis();
+        return now - earthquake.getOrigin() > (long) store_minutes * 60 * 1000
+                && now - earthquake.getLastUpdate() > 0.25 * store_minutes * 60 * 1000;
     }
 
     public void second() {
@@ -0,0 +1,92 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.utils.GeoUtils;
+
+import java.util.List;
+
+/**
+ * Picked events of a hypocenter search as a struct of arrays. For every candidate point the angles to all stations
+ * and the origins implied by their P wave travel times are calculated in loops over primitive arrays,
+ * giving the same values as {@link GeoUtils#greatCircleDistance} and
+ * {@link TauPTravelTimeCalculator#getPWaveTravelTimeFast} per event.
+ * <p>
+ * The angles are state of the current point, so every thread needs its own instance.
+ */
+public final class ExactPickedEvents {
+
+    private final int size;
+
+    private final long[] pWaves;
+    private final double[] elevationCorrections;
+
+    // in radians
+    private final double[] lats;
+    private final double[] lons;
+    private final double[] cosLats;
+
+    // to the current point in degrees
+    private final double[] angles;
+    private final double[] travelTimes;
+
+    public ExactPickedEvents(List<PickedEvent> events) {
+        size = events.size();
+        pWaves = new long[size];
+        elevationCorrections = new double[size];
+        lats = new double[size];
+        lons = new double[size];
+        cosLats = new double[size];
+        angles = new double[size];
+        travelTimes = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            PickedEvent event = events.get(i);
+            pWaves[i] = event.pWave();
+            elevationCorrections[i] = EarthquakeAnalysis.getElevationCorrection(event.elevation());
+            lats[i] = Math.toRadians(event.lat());
+            lons[i] = Math.toRadians(event.lon());
+            cosLats[i] = Math.cos(lats[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getAngle(int index) {
+        return angles[index];
+    }
+
+    /**
+     * Haversine distance to the point, in the same order of operations as {@link GeoUtils#greatCircleDistance}
+     */
+    public void calculateAngles(double lat, double lon) {
+        double lat2 = Math.toRadians(lat);
+        double lon2 = Math.toRadians(lon);
+        double cosLat2 = Math.cos(lat2);
+
+        for (int i = 0; i < size; i++) {
+            double sinLat = Math.sin((lat2 - lats[i]) / 2);
+            double sinLon = Math.sin((lon2 - lons[i]) / 2);
+            double a = sinLat * sinLat + cosLats[i] * cosLat2 * (sinLon * sinLon);
+            double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+            angles[i] = TauPTravelTimeCalculator.toAngle(GeoUtils.EARTH_RADIUS * c);
+        }
+    }
+
+    /**
+     * Origins implied by the P wave of every event if the hypocenter was at the current point and the given depth
+     *
+     * @param unknownOrigin stored for events without P arrival
+     */
+    public void calculateOrigins(double depth, long[] origins, long unknownOrigin) {
+        TauPTravelTimeCalculator.getPWaveTravelTimesFast(depth, angles, travelTimes, size);
+
+        for (int i = 0; i < size; i++) {
+            double travelTime = travelTimes[i];
+            origins[i] = travelTime == TauPTravelTimeCalculator.NO_ARRIVAL ? unknownOrigin
+                    : pWaves[i] - ((long) ((travelTime + elevationCorrections[i]) * 1000));
+        }
+    }
+}
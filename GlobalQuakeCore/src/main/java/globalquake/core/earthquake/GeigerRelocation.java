@@ -0,0 +1,210 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.earthquake.data.HypocenterFinderSettings;
+import globalquake.core.earthquake.data.HypocenterFinderThreadData;
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.earthquake.data.PreliminaryHypocenter;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.utils.GeoUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Relocates a known hypocenter by the Geiger method, a damped least-squares iteration on the linearised P arrival times.
+ * <p>
+ * The unknowns are the shift of the origin time, the shift to the north and to the east and the shift in depth.
+ * The derivatives by distance and depth come from the cells of the travel table, picks off by more than the
+ * P wave inaccuracy threshold are down-weighted like in {@link EarthquakeAnalysis#analyseHypocenter}.
+ * The relocation only stands in for the grid search while the picks still fit the starting hypocenter,
+ * otherwise it gives null and the caller has to search the area again.
+ */
+public class GeigerRelocation {
+
+    private static final int MAX_ITERATIONS = 20;
+
+    // Marquardt damping of the diagonal of the normal equations
+    private static final double DAMPING = 0.01;
+
+    private static final double MAX_STEP = 50.0;
+    private static final double CONVERGED_STEP = 0.1;
+    private static final double MAX_SHIFT = 100.0;
+
+    // how much worse the fit of the picks may be than the fit of the previous hypocenter
+    private static final double MAX_CORRECTNESS_DROP = 0.05;
+
+    private static final double KM_TO_ANGLE = 360.0 / GeoUtils.EARTH_CIRCUMFERENCE;
+
+    /**
+     * @param start          hypocenter to start from, usually the previous hypocenter of the cluster
+     * @param minCorrectness ratio of picks that matched the start hypocenter when it was located
+     * @return relocated hypocenter with the median origin, err and correct stations like the grid search,
+     * or null if the residuals jumped, the iteration didn't converge or the hypocenter moved too far
+     */
+    public static PreliminaryHypocenter relocate(List<PickedEvent> events, PreliminaryHypocenter start, double minCorrectness,
+                                                 HypocenterFinderSettings finderSettings) {
+        if (events.size() < 4) {
+            return null;
+        }
+
+        ExactPickedEvents pickedEvents = new ExactPickedEvents(events);
+        HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(pickedEvents.size());
+        double minCorrect = (minCorrectness - MAX_CORRECTNESS_DROP) * events.size();
+
+        // the new picks have to fit the old hypocenter, otherwise it's a job for the grid search
+        PreliminaryHypocenter before = evaluate(start.lat, start.lon, start.depth, pickedEvents, finderSettings, threadData);
+        if (before.correctStations < minCorrect) {
+            return null;
+        }
+
+        double threshold = finderSettings.pWaveInaccuracyThreshold() / 1000.0;
+
+        double lat = start.lat;
+        double lon = start.lon;
+        double depth = start.depth;
+        double origin = before.origin / 1000.0;
+
+        double[] gradient = new double[2];
+        double[] row = new double[4];
+        double[][] normal = new double[4][4];
+        double[] rhs = new double[4];
+        double[] step = new double[4];
+
+        boolean converged = false;
+        for (int iteration = 0; iteration < MAX_ITERATIONS && !converged; iteration++) {
+            for (double[] r : normal) {
+                Arrays.fill(r, 0);
+            }
+            Arrays.fill(rhs, 0);
+
+            int used = 0;
+            for (PickedEvent event : events) {
+                double distance = GeoUtils.greatCircleDistance(lat, lon, event.lat(), event.lon());
+                double angle = distance * KM_TO_ANGLE;
+                double travelTime = TauPTravelTimeCalculator.getPWaveTravelTime(depth, angle);
+                if (travelTime == TauPTravelTimeCalculator.NO_ARRIVAL
+                        || !TauPTravelTimeCalculator.getPWaveGradient(depth, angle, gradient)) {
+                    continue;
+                }
+
+                double residual = event.pWave() / 1000.0 - origin - travelTime - EarthquakeAnalysis.getElevationCorrection(event.elevation());
+                double weight = Math.abs(residual) <= threshold ? 1.0 : threshold / Math.abs(residual);
+
+                // moving the source towards the station shortens the distance
+                double azimuth = Math.toRadians(GeoUtils.calculateAngle(lat, lon, event.lat(), event.lon()));
+                double slowness = gradient[1] * KM_TO_ANGLE;
+                row[0] = 1.0;
+                row[1] = -slowness * Math.cos(azimuth);
+                row[2] = -slowness * Math.sin(azimuth);
+                row[3] = gradient[0];
+
+                for (int i = 0; i < 4; i++) {
+                    for (int j = 0; j < 4; j++) {
+                        normal[i][j] += weight * row[i] * row[j];
+                    }
+                    rhs[i] += weight * row[i] * residual;
+                }
+                used++;
+            }
+
+            if (used < 4) {
+                return null;
+            }
+
+            for (int i = 0; i < 4; i++) {
+                normal[i][i] *= 1.0 + DAMPING;
+            }
+
+            if (!solve(normal, rhs, step)) {
+                return null;
+            }
+
+            double north = step[1];
+            double east = step[2];
+            double horizontal = Math.hypot(north, east);
+            if (horizontal > MAX_STEP) {
+                north *= MAX_STEP / horizontal;
+                east *= MAX_STEP / horizontal;
+                horizontal = MAX_STEP;
+            }
+            double down = Math.max(-MAX_STEP, Math.min(MAX_STEP, step[3]));
+
+            if (horizontal > 0) {
+                double[] latLon = GeoUtils.moveOnGlobe(lat, lon, horizontal, Math.toDegrees(Math.atan2(east, north)));
+                lat = latLon[0];
+                lon = latLon[1];
+            }
+
+            double newDepth = Math.max(0, Math.min(TauPTravelTimeCalculator.MAX_DEPTH - 1.0, depth + down));
+            origin += step[0];
+
+            converged = horizontal < CONVERGED_STEP && Math.abs(newDepth - depth) < CONVERGED_STEP;
+            depth = newDepth;
+        }
+
+        if (!converged || GeoUtils.greatCircleDistance(start.lat, start.lon, lat, lon) > MAX_SHIFT) {
+            return null;
+        }
+
+        PreliminaryHypocenter result = evaluate(lat, lon, depth, pickedEvents, finderSettings, threadData);
+        if (result.correctStations < minCorrect || result.err == Double.MAX_VALUE) {
+            return null;
+        }
+
+        return result;
+    }
+
+    private static PreliminaryHypocenter evaluate(double lat, double lon, double depth, ExactPickedEvents pickedEvents,
+                                                  HypocenterFinderSettings finderSettings, HypocenterFinderThreadData threadData) {
+        PreliminaryHypocenter result = new PreliminaryHypocenter();
+        pickedEvents.calculateAngles(lat, lon);
+        EarthquakeAnalysis.analyseHypocenter(result, lat, lon, depth, pickedEvents, finderSettings, threadData);
+        return result;
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting, the matrix and the right side are overwritten
+     *
+     * @return false if the matrix is singular
+     */
+    static boolean solve(double[][] matrix, double[] rhs, double[] result) {
+        int n = rhs.length;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < n; r++) {
+                if (Math.abs(matrix[r][col]) > Math.abs(matrix[pivot][col])) {
+                    pivot = r;
+                }
+            }
+
+            if (Math.abs(matrix[pivot][col]) < 1e-12) {
+                return false;
+            }
+
+            double[] tmpRow = matrix[col];
+            matrix[col] = matrix[pivot];
+            matrix[pivot] = tmpRow;
+            double tmp = rhs[col];
+            rhs[col] = rhs[pivot];
+            rhs[pivot] = tmp;
+
+            for (int r = col + 1; r < n; r++) {
+                double factor = matrix[r][col] / matrix[col][col];
+                for (int c = col; c < n; c++) {
+                    matrix[r][c] -= factor * matrix[col][c];
+                }
+                rhs[r] -= factor * rhs[col];
+            }
+        }
+
+        for (int r = n - 1; r >= 0; r--) {
+            double sum = rhs[r];
+            for (int c = r + 1; c < n; c++) {
+                sum -= matrix[r][c] * result[c];
+            }
+            result[r] = sum / matrix[r][r];
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,282 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.Settings;
+import globalquake.core.StagePool;
+import globalquake.core.earthquake.data.Cluster;
+import globalquake.core.earthquake.data.HypocenterFinderSettings;
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.earthquake.data.PreliminaryHypocenter;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import org.tinylog.Logger;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CPU port of the CUDA hypocenter search in GQHypocenterSearch/src/hypocenter_search.cu, with the same
+ * contract as {@link GQHypocs#findHypocenter}.
+ * <p>
+ * Every iteration spreads the points of its profile on a spiral around the previous result and evaluates them at
+ * all depths of its depth profile, using flat station arrays in radians, a travel table fitted to
+ * {@link #TABLE_SIZE} angles per depth row and the origin of a single station that changes with the depth row.
+ * The points are split between the threads of the {@link StagePool#LOCATION} pool in blocks of
+ * {@link #BLOCK} points, like the thread blocks of the kernel.
+ */
+public class JavaHypocs {
+
+    private static final float RADIANS = (float) (Math.PI / 180.0);
+
+    private static final float[] depth_profiles = new float[]{50.0f, 10.0f, 5.0f, 2.0f, 0.5f};
+    private static final int[] point_profiles = new int[]{40_000, 8_000, 4_000, 1600, 400};
+    private static final float[] dist_profiles = new float[]{135.0f, 30.0f, 4.0f, 0.8f, 0.2f};
+
+    private static final int TABLE_SIZE = 2048;
+    private static final float MAX_ANG = 150.0f;
+    private static final float ANGLE_TO_INDEX = (TABLE_SIZE - 1.0f) / MAX_ANG;
+    private static final float PHI2 = 2.618033989f;
+
+    private static final int BLOCK = 512;
+
+    private static volatile float[][] travelTables;
+
+    public static PreliminaryHypocenter findHypocenter(List<PickedEvent> pickedEventList, Cluster cluster, int from, HypocenterFinderSettings finderSettings) {
+        int stationCount = pickedEventList.size();
+        if (stationCount < 3) {
+            Logger.tag("Hypocs").error("At least 3 stations are needed!");
+            return null;
+        }
+
+        float[][] tables = getTravelTables();
+
+        float[] stations = new float[stationCount * 3];
+        long time = pickedEventList.get(0).pWave();
+
+        for (int i = 0; i < stationCount; i++) {
+            PickedEvent pickedEvent = pickedEventList.get(i);
+            stations[i] = (float) pickedEvent.lat() * RADIANS;
+            stations[i + stationCount] = (float) pickedEvent.lon() * RADIANS;
+            stations[i + 2 * stationCount] = (float) ((pickedEvent.pWave() - time) / 1000.0);
+        }
+
+        float lat = (float) ((cluster.getPreviousHypocenter() != null ? cluster.getPreviousHypocenter().lat : cluster.getRootLat()) * RADIANS);
+        float lon = (float) ((cluster.getPreviousHypocenter() != null ? cluster.getPreviousHypocenter().lon : cluster.getRootLon()) * RADIANS);
+        float pWaveThreshold = (float) (finderSettings.pWaveInaccuracyThreshold() / 1000.0);
+        double pointMultiplier = getPointMultiplier(finderSettings);
+
+        Result result = null;
+        for (int i = from; i < depth_profiles.length; i++) {
+            int points = Math.max(2, (int) (point_profiles[i] * pointMultiplier));
+            Search search = new Search(stations, stationCount, tables[i], getRows(depth_profiles[i]), points,
+                    dist_profiles[i] * RADIANS, lat, lon, pWaveThreshold);
+
+            SearchTask task = new SearchTask(search, 0, points);
+            result = Settings.parallelHypocenterLocations ? StagePool.LOCATION.invoke(task::invoke) : task.compute();
+
+            float[] latLon = search.point(result.point);
+            lat = latLon[0];
+            lon = latLon[1];
+        }
+
+        if (result == null) {
+            return null;
+        }
+
+        return new PreliminaryHypocenter(lat / RADIANS, lon / RADIANS, result.depth, (long) (result.origin * 1000.0 + time), 0, 0);
+    }
+
+    /**
+     * Same scaling of the point counts as the GPU resolution in {@link GQHypocs}, but by the CPU resolution
+     */
+    private static double getPointMultiplier(HypocenterFinderSettings finderSettings) {
+        double pointMultiplier = finderSettings.resolution();
+        return (pointMultiplier * pointMultiplier + 600) / 2200.0;
+    }
+
+    private static int getRows(float depthResolution) {
+        return (int) Math.ceil(TauPTravelTimeCalculator.MAX_DEPTH / depthResolution) + 1;
+    }
+
+    private static float[][] getTravelTables() {
+        float[][] result = travelTables;
+        if (result != null) {
+            return result;
+        }
+
+        synchronized (JavaHypocs.class) {
+            if (travelTables == null) {
+                float[][] tables = new float[depth_profiles.length][];
+                for (int i = 0; i < depth_profiles.length; i++) {
+                    tables[i] = prepareTravelTable(getRows(depth_profiles[i]));
+                }
+                travelTables = tables;
+            }
+            return travelTables;
+        }
+    }
+
+    private static float[] prepareTravelTable(int rows) {
+        float[] result = new float[rows * TABLE_SIZE];
+        for (int row = 0; row < rows; row++) {
+            double depth = (row / (rows - 1.0)) * TauPTravelTimeCalculator.MAX_DEPTH;
+            for (int column = 0; column < TABLE_SIZE; column++) {
+                result[row * TABLE_SIZE + column] = (float) TauPTravelTimeCalculator.getPWaveTravelTime(depth, column / (TABLE_SIZE - 1.0) * MAX_ANG);
+            }
+        }
+        return result;
+    }
+
+    private static float interpolate(float[] table, int offset, float index) {
+        // if we are out of bounds, then return some arbitrary value
+        if (index >= TABLE_SIZE - 1.0f) {
+            return table[offset + TABLE_SIZE - 1];
+        }
+
+        int index1 = (int) index;
+        float t = index - index1;
+        return (1.0f - t) * table[offset + index1] + t * table[offset + index1 + 1];
+    }
+
+    private static float heuristic(float correct, float err) {
+        return (correct * correct) / (err * err);
+    }
+
+    private record Result(float heuristic, int point, float origin, float depth) {
+
+        Result better(Result other) {
+            return other.heuristic > heuristic ? other : this;
+        }
+    }
+
+    private record Search(float[] stations, int stationCount, float[] travelTable, int rows, int points, float maxDist,
+                          float fromLat, float fromLon, float pWaveThreshold) {
+
+        /**
+         * Position of the point on the spiral, in radians
+         */
+        float[] point(int index) {
+            float ang = (float) ((2.0f * Math.PI * index) / PHI2);
+            float dist = (float) (Math.sqrt(index) * (maxDist / Math.sqrt(points - 1.0f)));
+            return moveOnGlobe(fromLat, fromLon, ang, dist);
+        }
+
+        /**
+         * Best point in [from, to) at any depth
+         */
+        Result evaluate(int from, int to) {
+            int n = to - from;
+            float[] indices = new float[stationCount * n];
+            for (int p = 0; p < n; p++) {
+                float[] latLon = point(from + p);
+                for (int i = 0; i < stationCount; i++) {
+                    float angDist = haversine(latLon[0], latLon[1], stations[i], stations[i + stationCount]) / RADIANS;
+                    indices[i * n + p] = angDist * ANGLE_TO_INDEX;
+                }
+            }
+
+            float[] origins = new float[n];
+            float[] errs = new float[n];
+            int[] correct = new int[n];
+
+            Result best = null;
+            for (int row = 0; row < rows; row++) {
+                int offset = row * TABLE_SIZE;
+                float depth = (float) (TauPTravelTimeCalculator.MAX_DEPTH * (row / (rows - 1.0f)));
+
+                // trick with changing station that is being used for origin calculation
+                int j = row % stationCount;
+                float pWaveJ = stations[j + 2 * stationCount];
+                for (int p = 0; p < n; p++) {
+                    origins[p] = pWaveJ - interpolate(travelTable, offset, indices[j * n + p]);
+                    errs[p] = 0.0f;
+                    correct[p] = stationCount;
+                }
+
+                for (int i = 0; i < stationCount; i++) {
+                    float pWave = stations[i + 2 * stationCount];
+                    int base = i * n;
+                    for (int p = 0; p < n; p++) {
+                        float predictedOrigin = pWave - interpolate(travelTable, offset, indices[base + p]);
+                        float err = Math.abs(predictedOrigin - origins[p]);
+
+                        if (err > pWaveThreshold) {
+                            correct[p]--;
+                            err = (err - pWaveThreshold) * 0.1f + pWaveThreshold;
+                        }
+
+                        errs[p] += err * err;
+                    }
+                }
+
+                for (int p = 0; p < n; p++) {
+                    float heuristic = heuristic(correct[p], errs[p]);
+                    if (best == null || heuristic > best.heuristic) {
+                        best = new Result(heuristic, from + p, origins[p], depth);
+                    }
+                }
+            }
+
+            return best;
+        }
+    }
+
+    private static final class SearchTask extends RecursiveTask<Result> {
+
+        private final Search search;
+        private final int from;
+        private final int to;
+
+        SearchTask(Search search, int from, int to) {
+            this.search = search;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= BLOCK || !Settings.parallelHypocenterLocations) {
+                Result best = null;
+                for (int start = from; start < to; start += BLOCK) {
+                    Result result = search.evaluate(start, Math.min(to, start + BLOCK));
+                    best = best == null ? result : best.better(result);
+                }
+                return best;
+            }
+
+            int blocks = (to - from + BLOCK - 1) / BLOCK;
+            int middle = from + (blocks / 2) * BLOCK;
+            SearchTask left = new SearchTask(search, from, middle);
+            left.fork();
+            Result right = new SearchTask(search, middle, to).compute();
+            return left.join().better(right);
+        }
+    }
+
+    // everything is in radians
+    private static float haversine(float lat1, float lon1, float lat2, float lon2) {
+        float dlat = lat2 - lat1;
+        float dlon = lon2 - lon1;
+
+        float v1 = (float) Math.sin(dlat / 2.0f);
+        float v2 = (float) Math.sin(dlon / 2.0f);
+        float a = (float) (v1 * v1 + Math.cos(lat1) * Math.cos(lat2) * v2 * v2);
+
+        return (float) (Math.atan2(Math.sqrt(a), Math.sqrt(1.0f - a)) * 2.0);
+    }
+
+    private static float[] moveOnGlobe(float fromLat, float fromLon, float angle, float angularDistance) {
+        double cTheta = Math.cos(fromLat);
+        double sTheta = Math.sin(fromLat);
+        double cPhi = Math.cos(fromLon);
+        double sPhi = Math.sin(fromLon);
+        double cDelta = Math.cos(angularDistance);
+        double sDelta = Math.sin(angularDistance);
+        double cGamma = Math.cos(angle);
+        double sGamma = Math.sin(angle);
+
+        double x = cDelta * cTheta * cPhi - sDelta * (sTheta * cPhi * cGamma + sPhi * sGamma);
+        double y = cDelta * cTheta * sPhi - sDelta * (sTheta * sPhi * cGamma - cPhi * sGamma);
+        double z = sDelta * cTheta * cGamma + cDelta * sTheta;
+
+        return new float[]{(float) Math.asin(z), (float) Math.atan2(y, x)};
+    }
+}
@@ -0,0 +1,165 @@
+package globalquake.core.earthquake;
+
+import globalquake.utils.GeoUtils;
+
+import java.util.Arrays;
+
+/**
+ * Points evaluated by the last phases of the hypocenter search with the heuristic and the origin of their best depth,
+ * in flat arrays, so the confidence polygons can be read from the misfit surface instead of evaluated again.
+ */
+final class MisfitSamples {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private double[] lats = new double[INITIAL_CAPACITY];
+    private double[] lons = new double[INITIAL_CAPACITY];
+    private double[] heuristics = new double[INITIAL_CAPACITY];
+    private long[] origins = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(double lat, double lon, double heuristic, long origin) {
+        if (size == lats.length) {
+            grow(size * 2);
+        }
+
+        lats[size] = lat;
+        lons[size] = lon;
+        heuristics[size] = heuristic;
+        origins[size] = origin;
+        size++;
+    }
+
+    /**
+     * Adds the samples of one thread of the search
+     */
+    public synchronized void addAll(MisfitSamples other) {
+        if (size + other.size > lats.length) {
+            grow(Math.max(size + other.size, size * 2));
+        }
+
+        System.arraycopy(other.lats, 0, lats, size, other.size);
+        System.arraycopy(other.lons, 0, lons, size, other.size);
+        System.arraycopy(other.heuristics, 0, heuristics, size, other.size);
+        System.arraycopy(other.origins, 0, origins, size, other.size);
+        size += other.size;
+    }
+
+    private void grow(int capacity) {
+        lats = Arrays.copyOf(lats, capacity);
+        lons = Arrays.copyOf(lons, capacity);
+        heuristics = Arrays.copyOf(heuristics, capacity);
+        origins = Arrays.copyOf(origins, capacity);
+    }
+
+    /**
+     * Splits the samples into the sectors of the rays of a polygon around the center, the sector of a ray
+     * spans half the angle to the neighbouring rays on both sides
+     */
+    public Ray[] toRays(double lat, double lon, int edges, double offset) {
+        Ray[] rays = new Ray[edges];
+        for (int i = 0; i < edges; i++) {
+            rays[i] = new Ray();
+        }
+
+        for (int i = 0; i < size; i++) {
+            double dist = GeoUtils.greatCircleDistance(lat, lon, lats[i], lons[i]);
+            double angle = GeoUtils.calculateAngle(lat, lon, lats[i], lons[i]);
+            int ray = Math.floorMod((int) Math.round((angle - offset) / 360.0 * edges), edges);
+            rays[ray].add(dist, heuristics[i], origins[i]);
+        }
+
+        for (Ray ray : rays) {
+            ray.sort();
+        }
+
+        return rays;
+    }
+
+    /**
+     * Samples of one ray sorted by the distance from the center
+     */
+    static final class Ray {
+
+        private double[] distances = new double[16];
+        private double[] heuristics = new double[16];
+        private long[] origins = new long[16];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public double getDistance(int index) {
+            return distances[index];
+        }
+
+        public double getHeuristic(int index) {
+            return heuristics[index];
+        }
+
+        public long getOrigin(int index) {
+            return origins[index];
+        }
+
+        private void add(double distance, double heuristic, long origin) {
+            if (size == distances.length) {
+                distances = Arrays.copyOf(distances, size * 2);
+                heuristics = Arrays.copyOf(heuristics, size * 2);
+                origins = Arrays.copyOf(origins, size * 2);
+            }
+
+            distances[size] = distance;
+            heuristics[size] = heuristic;
+            origins[size] = origin;
+            size++;
+        }
+
+        private void sort() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+            double[] sortedDistances = new double[distances.length];
+            double[] sortedHeuristics = new double[distances.length];
+            long[] sortedOrigins = new long[distances.length];
+            for (int i = 0; i < size; i++) {
+                sortedDistances[i] = distances[order[i]];
+                sortedHeuristics[i] = heuristics[order[i]];
+                sortedOrigins[i] = origins[order[i]];
+            }
+
+            distances = sortedDistances;
+            heuristics = sortedHeuristics;
+            origins = sortedOrigins;
+        }
+
+        /**
+         * Adds a point evaluated exactly on the ray, keeping the order
+         */
+        public void insert(double distance, double heuristic, long origin) {
+            add(distance, heuristic, origin);
+            int i = size - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                distances[i] = distances[i - 1];
+                heuristics[i] = heuristics[i - 1];
+                origins[i] = origins[i - 1];
+                i--;
+            }
+
+            distances[i] = distance;
+            heuristics[i] = heuristic;
+            origins[i] = origin;
+        }
+    }
+}
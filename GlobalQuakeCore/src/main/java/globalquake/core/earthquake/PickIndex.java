@@ -0,0 +1,233 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.analysis.Event;
+import globalquake.core.geo.taup.TauPTravelTable;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.utils.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Index of picks bucketed by geographic cell and P wave time, answering "which picks could be arrivals of a quake
+ * at lat/lon/depth/origin" without checking every pick.
+ * <p>
+ * For every non-empty cell the distance to the quake is bounded by the distance to the cell center and the radius
+ * of the cell. The travel times of all phases are tabulated per degree for the depth of the quake, which bounds the
+ * arrival time of every pick in the cell, and only that time range of the picks of the cell is visited.
+ * The candidates still have to be confirmed with {@link ClusterAnalysis#couldBeArrival}.
+ */
+public class PickIndex {
+
+    public static final double CELL_SIZE = 2.0;
+
+    /**
+     * Covers the P window of {@link ClusterAnalysis#couldBeArrival} with increasingPWindow together with the
+     * 1 % that is always added, and the PKP and PKIKP windows.
+     */
+    public static final long INCREASING_P_WINDOW = 11_000;
+
+    private static final int LAT_CELLS = (int) Math.ceil(180.0 / CELL_SIZE);
+    private static final int LON_CELLS = (int) Math.ceil(360.0 / CELL_SIZE);
+
+    // angles of the travel table nodes are multiples of this
+    private static final int NODES_PER_DEGREE = (int) Math.round(1.0 / TauPTravelTimeCalculator.ANG_RESOLUTION);
+
+    // PKIKP is used only beyond this distance, see couldBeArrival
+    private static final int PKIKP_MIN_ANGLE = 100;
+
+    // distance from the center of a cell to its farthest point, which is one of its corners
+    private static final double[] RADIUS = new double[LAT_CELLS];
+
+    static {
+        for (int latIndex = 0; latIndex < LAT_CELLS; latIndex++) {
+            double latFrom = latIndex * CELL_SIZE - 90.0;
+            double lat = latFrom + CELL_SIZE / 2.0;
+            double latTo = Math.min(90.0, latFrom + CELL_SIZE);
+            RADIUS[latIndex] = Math.max(GeoUtils.greatCircleDistance(lat, 0, latFrom, CELL_SIZE / 2.0),
+                    GeoUtils.greatCircleDistance(lat, 0, latTo, CELL_SIZE / 2.0)) + 1.0;
+        }
+    }
+
+    private static final class Cell {
+        final double lat;
+        final double lon;
+        final double radius;
+
+        // picks sorted by their P wave
+        long[] pWaves = new long[4];
+        Event[] events = new Event[4];
+        int size;
+
+        double minCorrection = Double.MAX_VALUE;
+        double maxCorrection = -Double.MAX_VALUE;
+
+        Cell(int latIndex, int lonIndex) {
+            lat = latIndex * CELL_SIZE - 90.0 + CELL_SIZE / 2.0;
+            lon = lonIndex * CELL_SIZE - 180.0 + CELL_SIZE / 2.0;
+            radius = RADIUS[latIndex];
+        }
+
+        void add(Event event, long pWave) {
+            if (size == events.length) {
+                pWaves = Arrays.copyOf(pWaves, size * 2);
+                events = Arrays.copyOf(events, size * 2);
+            }
+            int index = upperBound(pWave);
+            System.arraycopy(pWaves, index, pWaves, index + 1, size - index);
+            System.arraycopy(events, index, events, index + 1, size - index);
+            pWaves[index] = pWave;
+            events[index] = event;
+            size++;
+        }
+
+        /**
+         * @return index of the first pick with P wave after the given time
+         */
+        int upperBound(long time) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (pWaves[mid] <= time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private final Cell[] cells = new Cell[LAT_CELLS * LON_CELLS];
+    private final List<Cell> usedCells = new ArrayList<>();
+    private int size;
+
+    public void clear() {
+        for (Cell cell : usedCells) {
+            cells[cellIndex(cell.lat, cell.lon)] = null;
+        }
+        usedCells.clear();
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int cellIndex(double lat, double lon) {
+        int latIndex = Math.max(0, Math.min(LAT_CELLS - 1, (int) Math.floor((lat + 90.0) / CELL_SIZE)));
+        int lonIndex = Math.floorMod((int) Math.floor((lon + 180.0) / CELL_SIZE), LON_CELLS);
+        return latIndex * LON_CELLS + lonIndex;
+    }
+
+    /**
+     * Events without a P wave are ignored
+     */
+    public void add(Event event) {
+        long pWave = event.getpWave();
+        if (pWave <= 0) {
+            return;
+        }
+
+        int cellIndex = cellIndex(event.getLatFromStation(), event.getLonFromStation());
+        Cell cell = cells[cellIndex];
+        if (cell == null) {
+            cells[cellIndex] = cell = new Cell(cellIndex / LON_CELLS, cellIndex % LON_CELLS);
+            usedCells.add(cell);
+        }
+
+        double correction = EarthquakeAnalysis.getElevationCorrection(event.getElevationFromStation());
+        cell.minCorrection = Math.min(cell.minCorrection, correction);
+        cell.maxCorrection = Math.max(cell.maxCorrection, correction);
+        cell.add(event, pWave);
+        size++;
+    }
+
+    /**
+     * @param window    half width of the arrival window in milliseconds, 1 % of the travel time is added to it.
+     *                  It has to cover the tolerance of every phase that is considered.
+     * @param pWaveOnly only consider P waves, otherwise PKP and PKIKP as well
+     * @param consumer  receives every pick that could be an arrival, possibly more than one per station
+     */
+    public void forEachCandidate(double lat, double lon, double depth, long origin, boolean pWaveOnly, long window,
+                                 Consumer<Event> consumer) {
+        if (usedCells.isEmpty()) {
+            return;
+        }
+
+        double[] min = new double[180];
+        double[] max = new double[180];
+        createTravelTimeBounds(depth, pWaveOnly, min, max);
+
+        for (Cell cell : usedCells) {
+            double dist = GeoUtils.greatCircleDistance(lat, lon, cell.lat, cell.lon);
+            int fromDegree = (int) TauPTravelTimeCalculator.toAngle(Math.max(0, dist - cell.radius));
+            int toDegree = Math.min(179, (int) TauPTravelTimeCalculator.toAngle(dist + cell.radius));
+
+            double minTravel = Double.MAX_VALUE;
+            double maxTravel = -Double.MAX_VALUE;
+            for (int degree = fromDegree; degree <= toDegree; degree++) {
+                minTravel = Math.min(minTravel, min[degree]);
+                maxTravel = Math.max(maxTravel, max[degree]);
+            }
+
+            if (minTravel > maxTravel) {
+                continue; // no arrival possible
+            }
+
+            long slack = window + (long) ((maxTravel + Math.abs(cell.maxCorrection)) * 10) + 1;
+            long from = origin + (long) ((minTravel + cell.minCorrection) * 1000) - slack;
+            long to = origin + (long) ((maxTravel + cell.maxCorrection) * 1000) + slack;
+
+            for (int i = cell.upperBound(from - 1); i < cell.size && cell.pWaves[i] <= to; i++) {
+                consumer.accept(cell.events[i]);
+            }
+        }
+    }
+
+    /**
+     * Fills the range of travel times of all considered phases between each whole degree and the next one.
+     * Travel times are interpolated linearly between the nodes of the travel table, so the nodes alone bound them.
+     */
+    private static void createTravelTimeBounds(double depth, boolean pWaveOnly, double[] min, double[] max) {
+        Arrays.fill(min, Double.MAX_VALUE);
+        Arrays.fill(max, -Double.MAX_VALUE);
+
+        for (int node = 0; node <= 180 * NODES_PER_DEGREE; node++) {
+            double angle = node / (double) NODES_PER_DEGREE;
+            if (angle <= TauPTravelTable.P_S_MAX_ANGLE) {
+                include(min, max, node, TauPTravelTimeCalculator.getPWaveTravelTime(depth, angle));
+            }
+            if (pWaveOnly) {
+                continue;
+            }
+            if (angle >= TauPTravelTable.PKP_MIN_ANGLE) {
+                include(min, max, node, TauPTravelTimeCalculator.getPKPWaveTravelTime(depth, angle));
+            }
+            if (angle >= PKIKP_MIN_ANGLE) {
+                include(min, max, node, TauPTravelTimeCalculator.getPKIKPWaveTravelTime(depth, angle));
+            }
+        }
+    }
+
+    /**
+     * Nodes at whole degrees belong to both neighbouring ranges
+     */
+    private static void include(double[] min, double[] max, int node, double time) {
+        if (time < 0) {
+            return;
+        }
+        int degree = node / NODES_PER_DEGREE;
+        if (degree < 180) {
+            min[degree] = Math.min(min[degree], time);
+            max[degree] = Math.max(max[degree], time);
+        }
+        if (node % NODES_PER_DEGREE == 0 && degree > 0) {
+            min[degree - 1] = Math.min(min[degree - 1], time);
+            max[degree - 1] = Math.max(max[degree - 1], time);
+        }
+    }
+}
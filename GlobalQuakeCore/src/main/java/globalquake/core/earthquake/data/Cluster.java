@@ -7,6 +7,7 @@ import globalquake.core.analysis.Event;
 import globalquake.core.training.EarthquakeAnalysisTraining;
 import globalquake.utils.GeoUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.awt.*;
 import java.util.Map;
@@ -14,6 +15,8 @@ import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Cluster implements Warnable {
 
@@ -22,13 +25,13 @@ public class Cluster implements Warnable {
 	private final Map<AbstractStation, Event> assignedEvents;
 	private double rootLat;
 	private double rootLon;
-	public int updateCount;
+	public volatile int updateCount;
 	private long lastUpdate;
 
-	private Earthquake earthquake;
-	private Hypocenter previousHypocenter;
+	private volatile Earthquake earthquake;
+	private volatile Hypocenter previousHypocenter;
 
-	private Hypocenter lastValidHypocenter;
+	private volatile Hypocenter lastValidHypocenter;
 	private int level;
 
 	public int lastEpicenterUpdate;
@@ -48,6 +51,11 @@ public class Cluster implements Warnable {
 
 	private static final AtomicInteger nextID = new AtomicInteger(0);
 
+	// guards the assigned events and the results of the hypocenter search, so that clustering and location
+	// of different clusters don't wait for each other
+	private final Lock lock = new ReentrantLock();
+	private volatile boolean removed;
+
 	private Color randomColor() {
 		Random random = new Random();
 
@@ -92,6 +100,46 @@ public class Cluster implements Warnable {
 		return lastValidHypocenter;
 	}
 
+	public Lock getLock() {
+		return lock;
+	}
+
+	/**
+	 * Only called with the lock held, once the cluster was merged into another one or removed.
+	 * Hypocenters found for it afterwards are dropped.
+	 */
+	public void markRemoved() {
+		removed = true;
+	}
+
+	public boolean isRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return valid P wave picks of the cluster as they are now, or null if the cluster was removed
+	 */
+	public ClusterSnapshot createSnapshot() {
+		lock.lock();
+		try {
+			if (removed) {
+				return null;
+			}
+
+			List<PickedEvent> pickedEvents = new ArrayList<>();
+			for (Event event : assignedEvents.values()) {
+				if (event.isValid() && !event.isSWave()) {
+					pickedEvents.add(new PickedEvent(event.getpWave(), event.getLatFromStation(), event.getLonFromStation(),
+							event.getElevationFromStation(), event.maxRatio));
+				}
+			}
+
+			return new ClusterSnapshot(this, updateCount, List.copyOf(pickedEvents));
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	public UUID getUuid() {
 		return uuid;
 	}
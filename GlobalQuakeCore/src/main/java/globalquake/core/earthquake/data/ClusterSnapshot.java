@@ -0,0 +1,11 @@
+package globalquake.core.earthquake.data;
+
+import java.util.List;
+
+/**
+ * Immutable picks of a cluster, taken so that its hypocenter can be searched for without holding its lock
+ *
+ * @param version the update count of the cluster when the snapshot was taken
+ */
+public record ClusterSnapshot(Cluster cluster, int version, List<PickedEvent> pickedEvents) {
+}
@@ -8,19 +8,34 @@ public class HypocenterFinderThreadData {
     public final PreliminaryHypocenter hypocenterB;
     public final PreliminaryHypocenter bestHypocenter;
 
+    // best depth of the last point, bestHypocenter is the best of all points
+    public final PreliminaryHypocenter pointBest;
+
     public HypocenterFinderThreadData(int size) {
         origins = new long[size];
         hypocenterA = new PreliminaryHypocenter();
         hypocenterB = new PreliminaryHypocenter();
         bestHypocenter = new PreliminaryHypocenter();
+        pointBest = new PreliminaryHypocenter();
     }
 
     public void setBest(PreliminaryHypocenter preliminaryHypocenter) {
-        bestHypocenter.lat = preliminaryHypocenter.lat;
-        bestHypocenter.lon = preliminaryHypocenter.lon;
-        bestHypocenter.depth = preliminaryHypocenter.depth;
-        bestHypocenter.origin = preliminaryHypocenter.origin;
-        bestHypocenter.correctStations = preliminaryHypocenter.correctStations;
-        bestHypocenter.err = preliminaryHypocenter.err;
+        copy(preliminaryHypocenter, bestHypocenter);
+    }
+
+    public void setPointBest(PreliminaryHypocenter preliminaryHypocenter) {
+        copy(preliminaryHypocenter, pointBest);
+    }
+
+    private static void copy(PreliminaryHypocenter from, PreliminaryHypocenter to) {
+        if (from == to) {
+            return;
+        }
+        to.lat = from.lat;
+        to.lon = from.lon;
+        to.depth = from.depth;
+        to.origin = from.origin;
+        to.correctStations = from.correctStations;
+        to.err = from.err;
     }
 }
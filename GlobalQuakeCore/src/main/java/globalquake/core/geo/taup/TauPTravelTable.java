@@ -5,12 +5,16 @@ import edu.sc.seis.TauP.TauModelException;
 import edu.sc.seis.TauP.TauP_Time;
 
 import java.io.IOException;
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 public class TauPTravelTable implements Serializable {
 
+    // the value computed for the tables serialized before it was declared
+    @Serial
+    private static final long serialVersionUID = -8563433145593774989L;
 
     public static final double P_S_MIN_ANGLE = 0;
     public static final double P_S_MAX_ANGLE = 150;
@@ -28,6 +32,13 @@ public class TauPTravelTable implements Serializable {
     public float[][] pkikp_travel_table;
     public float[][] pkp_travel_table;
 
+    public TauPTravelTable(float[][] p_travel_table, float[][] s_travel_table, float[][] pkikp_travel_table, float[][] pkp_travel_table) {
+        this.p_travel_table = p_travel_table;
+        this.s_travel_table = s_travel_table;
+        this.pkikp_travel_table = pkikp_travel_table;
+        this.pkp_travel_table = pkp_travel_table;
+    }
+
     public TauPTravelTable() throws TauModelException, IOException {
         TauP_Time timeToolGlobal = new TauP_Time();
         timeToolGlobal.loadTauModel(MODEL_NAME);
@@ -3,8 +3,10 @@ package globalquake.core.geo.taup;
 import globalquake.core.exception.FatalApplicationException;
 import globalquake.core.exception.FatalIOException;
 import globalquake.utils.GeoUtils;
+import org.tinylog.Logger;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.function.Function;
 
 @SuppressWarnings("unused")
@@ -15,15 +17,37 @@ public class TauPTravelTimeCalculator {
 
     public static final double MAX_DEPTH = 750.0;
     public static final float NO_ARRIVAL = -999.0f;
-    private static TauPTravelTable travelTable;
 
-    public static TauPTravelTable getTravelTable() {
-        return travelTable;
+    public static final String TRAVEL_TABLE_PATH = "travel_table/travel_table.bin";
+    public static final String SERIALIZED_TRAVEL_TABLE_PATH = "travel_table/travel_table.dat";
+
+    private static TravelTimeGrid pWaveGrid;
+    private static TravelTimeGrid sWaveGrid;
+    private static TravelTimeGrid pkikpWaveGrid;
+    private static TravelTimeGrid pkpWaveGrid;
+
+    public static TravelTimeGrid getPWaveGrid() {
+        return pWaveGrid;
     }
 
-    public static void init() throws FatalApplicationException {
+    /**
+     * Loads the travel table once, later calls return immediately
+     */
+    public static synchronized void init() throws FatalApplicationException {
+        if(pWaveGrid != null){
+            return;
+        }
+
         try {
-            travelTable = loadTravelTable("travel_table/travel_table.dat");
+            long start = System.nanoTime();
+            TauPTravelTable travelTable = loadTravelTable();
+            long loaded = System.nanoTime();
+            pWaveGrid = new TravelTimeGrid(travelTable.p_travel_table, TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE);
+            sWaveGrid = new TravelTimeGrid(travelTable.s_travel_table, TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE);
+            pkikpWaveGrid = new TravelTimeGrid(travelTable.pkikp_travel_table, TauPTravelTable.PKIKP_MIN_ANGLE, TauPTravelTable.PKIKP_MAX_ANGLE);
+            pkpWaveGrid = new TravelTimeGrid(travelTable.pkp_travel_table, TauPTravelTable.PKP_MIN_ANGLE, TauPTravelTable.PKP_MAX_ANGLE);
+            Logger.info("Travel table loaded in %.1f ms and interpolation grids built in %.1f ms".formatted(
+                    (loaded - start) / 1e6, (System.nanoTime() - loaded) / 1e6));
         }catch(Exception e){
             throw new FatalApplicationException(e);
         }
@@ -39,11 +63,20 @@ public class TauPTravelTimeCalculator {
         ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream("travel_table.dat"));
         out.writeObject(travelTable);
         out.close();
+        TravelTableFile.write(travelTable, Path.of("travel_table.bin"));
     }
 
-    @SuppressWarnings("SameParameterValue")
-    private static TauPTravelTable loadTravelTable(String path) throws FatalIOException {
-        var url = ClassLoader.getSystemClassLoader().getResource(path);
+    /**
+     * Loads the binary table, or the serialized one if only that is available
+     */
+    private static TauPTravelTable loadTravelTable() throws FatalIOException {
+        var url = ClassLoader.getSystemClassLoader().getResource(TRAVEL_TABLE_PATH);
+        if(url != null){
+            return TravelTableFile.read(url);
+        }
+
+        Logger.warn("%s not found, loading the slower %s".formatted(TRAVEL_TABLE_PATH, SERIALIZED_TRAVEL_TABLE_PATH));
+        url = ClassLoader.getSystemClassLoader().getResource(SERIALIZED_TRAVEL_TABLE_PATH);
         if(url == null){
             throw new FatalIOException("Unable to load travel table!", new NullPointerException());
         }
@@ -62,32 +95,52 @@ public class TauPTravelTimeCalculator {
 
 
     public static double getPWaveTravelTime(double depth, double angle){
-        return interpolateWaves(travelTable.p_travel_table, TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE, depth, angle, false);
+        return pWaveGrid.get(depth, angle);
     }
 
+    /**
+     * Same as {@link #getPWaveTravelTime}, both check for missing arrivals through the precomputed cells
+     */
     public static double getPWaveTravelTimeFast(double depth, double angle){
-        return interpolateWaves(travelTable.p_travel_table, TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE, depth, angle, true);
+        return pWaveGrid.get(depth, angle);
+    }
+
+    /**
+     * {@link #getPWaveTravelTimeFast} of the first count angles, all at the same depth
+     *
+     * @param result travel times in seconds, {@link #NO_ARRIVAL} where the angle or the depth is out of the table
+     */
+    public static void getPWaveTravelTimesFast(double depth, double[] angles, double[] result, int count){
+        pWaveGrid.get(depth, angles, result, count);
+    }
+
+    /**
+     * @param result derivative of the P wave travel time by depth in s/km and by angle in s/deg
+     * @return false if there is no P arrival
+     */
+    public static boolean getPWaveGradient(double depth, double angle, double[] result){
+        return pWaveGrid.getGradient(depth, angle, result);
     }
 
     public static double getSWaveTravelTime(double depth, double angle){
-        return interpolateWaves(travelTable.s_travel_table, TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE, depth, angle, false);
+        return sWaveGrid.get(depth, angle);
     }
 
     public static double getPKIKPWaveTravelTime(double depth, double angle){
-        return interpolateWaves(travelTable.pkikp_travel_table, TauPTravelTable.PKIKP_MIN_ANGLE, TauPTravelTable.PKIKP_MAX_ANGLE, depth, angle, false);
+        return pkikpWaveGrid.get(depth, angle);
     }
 
     public static double getPKPWaveTravelTime(double depth, double angle){
-        return interpolateWaves(travelTable.pkp_travel_table, TauPTravelTable.PKP_MIN_ANGLE, TauPTravelTable.PKP_MAX_ANGLE, depth, angle, false);
+        return pkpWaveGrid.get(depth, angle);
     }
 
-    private static double getMaxTime(float[][] table) {
-        return table[0][table[0].length - 1];
+    private static double getMaxTime(TravelTimeGrid grid) {
+        return grid.get(0, grid.getMaxAngle());
     }
 
     public static double getPWaveTravelAngle(double depth, double timeSeconds) {
         if(timeSeconds < 0 ||
-                timeSeconds > getMaxTime(travelTable.p_travel_table)){
+                timeSeconds > getMaxTime(pWaveGrid)){
             return  NO_ARRIVAL;
         }
         return binarySearchTime((angle) -> getPWaveTravelTime(depth, angle), timeSeconds, 1e-4,
@@ -95,7 +148,7 @@ public class TauPTravelTimeCalculator {
     }
 
     public static double getSWaveTravelAngle(double depth, double timeSeconds) {
-        if(timeSeconds < 0 || timeSeconds > getMaxTime(travelTable.s_travel_table)){
+        if(timeSeconds < 0 || timeSeconds > getMaxTime(sWaveGrid)){
             return  NO_ARRIVAL;
         }
         return binarySearchTime((angle) -> getSWaveTravelTime(depth, angle), timeSeconds, 1e-4,
@@ -141,61 +194,6 @@ public class TauPTravelTimeCalculator {
     }
 
 
-    private static double interpolateWaves(float[][] array, double minAng, double maxAng, double depth, double angle, boolean fast) {
-        double x = (depth / MAX_DEPTH) * (array.length - 1);
-        double y = ((angle - minAng) / (maxAng - minAng)) * (array[0].length - 1);
-        if(x < 0 || y < 0 || x > array.length - 1 || y > array[0].length - 1){
-            return NO_ARRIVAL;
-        }
-        return fast? fastbilinearInterpolation(array, x, y) : bilinearInterpolation(array, x, y);
-    }
-
-    private static double fastbilinearInterpolation(float[][] array, double x, double y) {
-        int x0 = (int) x;
-        int x1 = x0 + 1;
-        int y0 = (int) y;
-        int y1 = y0 + 1;
-
-        float q11 = array[x0][y0];
-        float q21 = array[x1][y0];
-        float q12 = array[x0][y1];
-        float q22 = array[x1][y1];
-
-        double tx = x - x0;
-        double ty = y - y0;
-
-        return (1 - tx) * (1 - ty) * q11 + tx * (1 - ty) * q21 + (1 - tx) * ty * q12 + tx * ty * q22;
-    }
-
-    private static double bilinearInterpolation(float[][] array, double x, double y) {
-        if(x < 0 || y < 0){
-            return NO_ARRIVAL;
-        }
-
-        int x0 = (int) x;
-        int x1 = x0 == array.length - 1 ? x0 : x0 + 1;
-        int y0 = (int) y;
-        int y1 = y0 == array[0].length - 1 ? y0 : y0 + 1;
-
-        if (x1 >= array.length || y1 >= array[0].length) {
-            return NO_ARRIVAL;
-        }
-
-        float q11 = array[x0][y0];
-        float q21 = array[x1][y0];
-        float q12 = array[x0][y1];
-        float q22 = array[x1][y1];
-
-        if (q11 < 0 || q21 < 0 || q12 < 0 || q22 < 0) {
-            return NO_ARRIVAL;
-        }
-
-        double tx = x - x0;
-        double ty = y - y0;
-
-        return (1 - tx) * (1 - ty) * q11 + tx * (1 - ty) * q21 + (1 - tx) * ty * q12 + tx * ty * q22;
-    }
-
     public static double toAngle(double km) {
         return (km / GeoUtils.EARTH_CIRCUMFERENCE) * 360.0;
     }
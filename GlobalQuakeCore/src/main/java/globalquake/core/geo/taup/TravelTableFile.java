@@ -0,0 +1,170 @@
+package globalquake.core.geo.taup;
+
+import globalquake.core.exception.FatalIOException;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary format of {@link TauPTravelTable}, little-endian:
+ * <pre>
+ * int   magic "GQTT"
+ * int   version
+ * int   table count
+ * per table: int depths, int angles, double min angle, double max angle, float[depths * angles] depth-major
+ * </pre>
+ * The tables are in the order P, S, PKIKP, PKP. Loading from a file maps it with {@link FileChannel#map},
+ * so no object stream and no per-row deserialization is involved.
+ */
+public final class TravelTableFile {
+
+    public static final int MAGIC = 0x47515454;
+    public static final int VERSION = 1;
+
+    private static final int TABLES = 4;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final int TABLE_HEADER_BYTES = 2 * Integer.BYTES + 2 * Double.BYTES;
+
+    private static final double[][] ANGLE_RANGES = {
+            {TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE},
+            {TauPTravelTable.P_S_MIN_ANGLE, TauPTravelTable.P_S_MAX_ANGLE},
+            {TauPTravelTable.PKIKP_MIN_ANGLE, TauPTravelTable.PKIKP_MAX_ANGLE},
+            {TauPTravelTable.PKP_MIN_ANGLE, TauPTravelTable.PKP_MAX_ANGLE}
+    };
+
+    private TravelTableFile() {
+    }
+
+    /**
+     * Converts a serialized travel table into the binary format
+     * <p>
+     * Usage: TravelTableFile [input.dat] [output.bin]
+     */
+    public static void main(String[] args) throws Exception {
+        File input = new File(args.length > 0 ? args[0] : "travel_table.dat");
+        File output = new File(args.length > 1 ? args[1] : "travel_table.bin");
+
+        TauPTravelTable travelTable;
+        try (ObjectInput in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(input)))) {
+            travelTable = (TauPTravelTable) in.readObject();
+        }
+
+        write(travelTable, output.toPath());
+        System.out.printf("Converted %s to %s (%,d bytes)%n", input, output, output.length());
+    }
+
+    public static void write(TauPTravelTable travelTable, Path path) throws IOException {
+        float[][][] tables = tables(travelTable);
+
+        long size = HEADER_BYTES;
+        for (float[][] table : tables) {
+            size += TABLE_HEADER_BYTES + (long) table.length * table[0].length * Float.BYTES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(TABLES);
+
+        for (int i = 0; i < TABLES; i++) {
+            float[][] table = tables[i];
+            buffer.putInt(table.length);
+            buffer.putInt(table[0].length);
+            buffer.putDouble(ANGLE_RANGES[i][0]);
+            buffer.putDouble(ANGLE_RANGES[i][1]);
+
+            FloatBuffer floats = buffer.asFloatBuffer();
+            for (float[] row : table) {
+                floats.put(row);
+            }
+            buffer.position(buffer.position() + floats.position() * Float.BYTES);
+        }
+
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Maps the table if the url is a file. Otherwise, e.g. from inside a jar, the table is read into a single
+     * buffer, the tables are copied out of it in both cases.
+     */
+    public static TauPTravelTable read(URL url) throws FatalIOException {
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return read(Path.of(url.toURI()));
+            }
+
+            try (InputStream in = url.openStream()) {
+                return read(ByteBuffer.wrap(in.readAllBytes()));
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new FatalIOException("Unable to load travel table!", e);
+        }
+    }
+
+    private static TauPTravelTable read(Path path) throws IOException, FatalIOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static TauPTravelTable read(ByteBuffer buffer) throws FatalIOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new FatalIOException("Travel table has an unknown format!", null);
+            }
+
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new FatalIOException("Travel table has version %d but %d is required!".formatted(version, VERSION), null);
+            }
+
+            int count = buffer.getInt();
+            if (count != TABLES) {
+                throw new FatalIOException("Travel table has %d tables instead of %d!".formatted(count, TABLES), null);
+            }
+
+            float[][][] tables = new float[TABLES][][];
+            for (int i = 0; i < TABLES; i++) {
+                int depths = buffer.getInt();
+                int angles = buffer.getInt();
+                double minAngle = buffer.getDouble();
+                double maxAngle = buffer.getDouble();
+
+                if (minAngle != ANGLE_RANGES[i][0] || maxAngle != ANGLE_RANGES[i][1] || depths < 2 || angles < 2) {
+                    throw new FatalIOException("Travel table #%d has unexpected dimensions!".formatted(i), null);
+                }
+
+                FloatBuffer floats = buffer.asFloatBuffer();
+                float[][] table = new float[depths][angles];
+                for (float[] row : table) {
+                    floats.get(row);
+                }
+                buffer.position(buffer.position() + floats.position() * Float.BYTES);
+                tables[i] = table;
+            }
+
+            return new TauPTravelTable(tables[0], tables[1], tables[2], tables[3]);
+        } catch (RuntimeException e) {
+            throw new FatalIOException("Travel table is corrupted!", e);
+        }
+    }
+
+    private static float[][][] tables(TauPTravelTable travelTable) {
+        return new float[][][]{travelTable.p_travel_table, travelTable.s_travel_table,
+                travelTable.pkikp_travel_table, travelTable.pkp_travel_table};
+    }
+}
@@ -0,0 +1,168 @@
+package globalquake.core.geo.taup;
+
+import java.util.Arrays;
+
+/**
+ * Travel times of one phase in a single depth-major array. Every node stores its travel time together with
+ * the differences to the next node in depth and in angle and the cross term of its cell, so a bilinear
+ * interpolation reads four adjacent floats and is a short multiply-add sequence.
+ * <p>
+ * A cell with any corner without arrival is marked by a NaN cross term and gives {@link TauPTravelTimeCalculator#NO_ARRIVAL}.
+ */
+public final class TravelTimeGrid {
+
+    private static final int STRIDE = 4;
+
+    private final int depths;
+    private final int angles;
+    private final double minAngle;
+    private final double maxAngle;
+
+    private final float[] cells;
+
+    /**
+     * @param table travel times by depth index and angle index, the last depth is {@link TauPTravelTimeCalculator#MAX_DEPTH}
+     */
+    public TravelTimeGrid(float[][] table, double minAngle, double maxAngle) {
+        this.depths = table.length;
+        this.angles = table[0].length;
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+        this.cells = new float[depths * angles * STRIDE];
+
+        for (int x0 = 0; x0 < depths; x0++) {
+            int x1 = Math.min(x0 + 1, depths - 1);
+            for (int y0 = 0; y0 < angles; y0++) {
+                int y1 = Math.min(y0 + 1, angles - 1);
+                float q11 = table[x0][y0];
+                float q21 = table[x1][y0];
+                float q12 = table[x0][y1];
+                float q22 = table[x1][y1];
+
+                int index = (x0 * angles + y0) * STRIDE;
+                cells[index] = q11;
+                if (q11 < 0 || q21 < 0 || q12 < 0 || q22 < 0) {
+                    cells[index + 3] = Float.NaN;
+                    continue;
+                }
+
+                cells[index + 1] = q21 - q11;
+                cells[index + 2] = q12 - q11;
+                cells[index + 3] = q22 - q21 - q12 + q11;
+            }
+        }
+    }
+
+    public double getMinAngle() {
+        return minAngle;
+    }
+
+    public double getMaxAngle() {
+        return maxAngle;
+    }
+
+    public float getNode(int depthIndex, int angleIndex) {
+        return cells[(depthIndex * angles + angleIndex) * STRIDE];
+    }
+
+    /**
+     * @return interpolated travel time in seconds or {@link TauPTravelTimeCalculator#NO_ARRIVAL}
+     */
+    public double get(double depth, double angle) {
+        double x = (depth / TauPTravelTimeCalculator.MAX_DEPTH) * (depths - 1);
+        double y = ((angle - minAngle) / (maxAngle - minAngle)) * (angles - 1);
+        if (x < 0 || y < 0 || x > depths - 1 || y > angles - 1) {
+            return TauPTravelTimeCalculator.NO_ARRIVAL;
+        }
+
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int index = (x0 * angles + y0) * STRIDE;
+
+        float cross = cells[index + 3];
+        if (Float.isNaN(cross)) {
+            return TauPTravelTimeCalculator.NO_ARRIVAL;
+        }
+
+        double tx = x - x0;
+        double ty = y - y0;
+        return cells[index] + tx * cells[index + 1] + ty * (cells[index + 2] + tx * cross);
+    }
+
+    /**
+     * Partial derivatives of the interpolated travel time, taken from the differences stored in the cell
+     *
+     * @param result derivative by depth in s/km and by angle in s/deg
+     * @return false if there is no arrival, the result is then unchanged
+     */
+    public boolean getGradient(double depth, double angle, double[] result) {
+        double depthScale = (depths - 1) / TauPTravelTimeCalculator.MAX_DEPTH;
+        double angleScale = (angles - 1) / (maxAngle - minAngle);
+        double x = depth * depthScale;
+        double y = (angle - minAngle) * angleScale;
+        if (x < 0 || y < 0 || x > depths - 1 || y > angles - 1) {
+            return false;
+        }
+
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int index = (x0 * angles + y0) * STRIDE;
+
+        float cross = cells[index + 3];
+        if (Float.isNaN(cross)) {
+            return false;
+        }
+
+        result[0] = (cells[index + 1] + (y - y0) * cross) * depthScale;
+        result[1] = (cells[index + 2] + (x - x0) * cross) * angleScale;
+        return true;
+    }
+
+    /**
+     * {@link #get} of the first count angles at the same depth
+     */
+    public void get(double depth, double[] angles, double[] result, int count) {
+        double x = (depth / TauPTravelTimeCalculator.MAX_DEPTH) * (depths - 1);
+        if (x < 0 || x > depths - 1) {
+            Arrays.fill(result, 0, count, TauPTravelTimeCalculator.NO_ARRIVAL);
+            return;
+        }
+
+        int x0 = (int) x;
+        double tx = x - x0;
+        int row = x0 * this.angles;
+        int last = this.angles - 1;
+
+        for (int i = 0; i < count; i++) {
+            double y = ((angles[i] - minAngle) / (maxAngle - minAngle)) * last;
+            if (y < 0 || y > last) {
+                result[i] = TauPTravelTimeCalculator.NO_ARRIVAL;
+                continue;
+            }
+
+            int y0 = (int) y;
+            int index = (row + y0) * STRIDE;
+            float cross = cells[index + 3];
+            if (Float.isNaN(cross)) {
+                result[i] = TauPTravelTimeCalculator.NO_ARRIVAL;
+                continue;
+            }
+
+            double ty = y - y0;
+            result[i] = cells[index] + tx * cells[index + 1] + ty * (cells[index + 2] + tx * cross);
+        }
+    }
+
+    /**
+     * @return the travel times of the nodes as depth index x angle index
+     */
+    public float[][] toArray() {
+        float[][] result = new float[depths][angles];
+        for (int x = 0; x < depths; x++) {
+            for (int y = 0; y < angles; y++) {
+                result[x][y] = getNode(x, y);
+            }
+        }
+        return result;
+    }
+}
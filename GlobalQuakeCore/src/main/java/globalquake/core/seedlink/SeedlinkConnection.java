@@ -0,0 +1,231 @@
+package globalquake.core.seedlink;
+
+import globalquake.core.database.SeedlinkNetwork;
+import globalquake.core.database.SeedlinkStatus;
+import globalquake.core.station.AbstractStation;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * State of a single non-blocking SeedLink connection. All methods are called from the I/O thread that owns the
+ * connection, so no synchronization is needed here.
+ */
+class SeedlinkConnection {
+
+    enum State {
+        CONNECTING, HANDSHAKE, STREAMING, CLOSED
+    }
+
+    // a single command and the number of response lines the server sends back
+    record Command(String text, int responseLines, AbstractStation station) {
+    }
+
+    private static final int READ_BUFFER_FRAMES = 64;
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    private final SeedlinkNetwork seedlinkNetwork;
+    private final InetSocketAddress address;
+    private final int reconnectDelay;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(SeedlinkFrameDecoder.FRAME_SIZE * READ_BUFFER_FRAMES);
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final Deque<Command> commands = new ArrayDeque<>();
+    private final SeedlinkFrameDecoder decoder = new SeedlinkFrameDecoder();
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+
+    private Command pendingCommand;
+    private int pendingLines;
+    private boolean pendingFailed;
+
+    private int errors;
+    private long lastActivity;
+    private boolean greeted;
+
+    SeedlinkConnection(SeedlinkNetwork seedlinkNetwork, InetSocketAddress address, int reconnectDelay) {
+        this.seedlinkNetwork = seedlinkNetwork;
+        this.address = address;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    void prepareHandshake(Collection<AbstractStation> stations) {
+        commands.add(new Command("HELLO", 2, null));
+        for (AbstractStation station : stations) {
+            commands.add(new Command("STATION %s %s".formatted(station.getStationCode(), station.getNetworkCode()), 1, station));
+            commands.add(new Command("SELECT %s%s.D".formatted(station.getLocationCode(), station.getChannelName()), 1, station));
+            commands.add(new Command("DATA", 1, station));
+        }
+    }
+
+    void attach(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+    }
+
+    void onConnected(long now) {
+        state = State.HANDSHAKE;
+        seedlinkNetwork.status = SeedlinkStatus.CONNECTING;
+        seedlinkNetwork.connectedStations = 0;
+        touch(now);
+        sendNextCommand();
+    }
+
+    /**
+     * Consumes the response line of the command that is currently in flight
+     *
+     * @return false if the handshake cannot continue and the connection should be reset
+     */
+    boolean onLine(String line) {
+        if (pendingCommand == null) {
+            return true;
+        }
+
+        if (pendingCommand.responseLines() == 1 && !line.trim().equals("OK")) {
+            pendingFailed = true;
+        }
+
+        pendingLines--;
+        if (pendingLines > 0) {
+            return true;
+        }
+
+        Command finished = pendingCommand;
+        pendingCommand = null;
+
+        if (finished.station() == null) {
+            greeted = true;
+        } else {
+            if (pendingFailed) {
+                errors++;
+                skipRemainingStationCommands(finished.station());
+                if (errors > seedlinkNetwork.selectedStations * 0.1) {
+                    return false;
+                }
+            } else if (finished.text().equals("DATA")) {
+                seedlinkNetwork.connectedStations++;
+            }
+        }
+
+        pendingFailed = false;
+        sendNextCommand();
+        return true;
+    }
+
+    private void skipRemainingStationCommands(AbstractStation station) {
+        while (!commands.isEmpty() && commands.peekFirst().station() == station) {
+            commands.removeFirst();
+        }
+    }
+
+    private void sendNextCommand() {
+        Command next = commands.pollFirst();
+        if (next == null) {
+            if (seedlinkNetwork.connectedStations > 0) {
+                send("END");
+                state = State.STREAMING;
+                seedlinkNetwork.status = SeedlinkStatus.RUNNING;
+            }
+            return;
+        }
+
+        pendingCommand = next;
+        pendingLines = next.responseLines();
+        send(next.text());
+    }
+
+    boolean isHandshakeFinished() {
+        return pendingCommand == null && commands.isEmpty();
+    }
+
+    void send(String command) {
+        writeQueue.add(ByteBuffer.wrap((command + "\r").getBytes(StandardCharsets.US_ASCII)));
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Reads the next CR LF terminated line from the read buffer (which must be in read mode)
+     *
+     * @return the line or null if the buffer does not contain a whole line yet
+     */
+    String pollLine() {
+        int start = readBuffer.position();
+        for (int i = start; i < readBuffer.limit(); i++) {
+            if (readBuffer.get(i) == '\n') {
+                byte[] bytes = new byte[i - start];
+                readBuffer.get(bytes);
+                readBuffer.get(); // \n
+                String line = new String(bytes, StandardCharsets.US_ASCII);
+                return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+            }
+        }
+
+        if (readBuffer.remaining() > MAX_LINE_LENGTH) {
+            throw new IllegalStateException("SeedLink response line is too long!");
+        }
+
+        return null;
+    }
+
+    boolean isGreeted() {
+        return greeted;
+    }
+
+    void touch(long now) {
+        lastActivity = now;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    Deque<ByteBuffer> getWriteQueue() {
+        return writeQueue;
+    }
+
+    SeedlinkFrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    SeedlinkNetwork getSeedlinkNetwork() {
+        return seedlinkNetwork;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    int getReconnectDelay() {
+        return reconnectDelay;
+    }
+}
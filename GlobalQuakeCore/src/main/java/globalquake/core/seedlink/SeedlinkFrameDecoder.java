@@ -0,0 +1,75 @@
+package globalquake.core.seedlink;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+import edu.sc.seis.seisFile.mseed.SeedRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the SeedLink byte stream into 520 byte frames ("SL" + 6 hex digit sequence number + 512 byte miniSEED record)
+ * directly from the socket buffer. The record bytes are copied into a single reusable array before parsing.
+ */
+class SeedlinkFrameDecoder {
+
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 512;
+    public static final int FRAME_SIZE = HEADER_SIZE + RECORD_SIZE;
+
+    private static final byte[] INFO_SIGNATURE = "SLINFO".getBytes();
+
+    private final byte[] recordBytes = new byte[RECORD_SIZE];
+
+    /**
+     * @param buffer buffer in read mode
+     * @return true if the buffer contains at least one whole frame
+     */
+    public static boolean hasFrame(ByteBuffer buffer) {
+        return buffer.remaining() >= FRAME_SIZE;
+    }
+
+    /**
+     * Decodes one frame from the buffer, which must contain at least {@link #FRAME_SIZE} bytes
+     *
+     * @return the data record or null if the frame was an INFO packet
+     * @throws SeedFormatException if the frame signature is broken and the stream cannot be trusted anymore
+     */
+    public DataRecord decode(ByteBuffer buffer) throws SeedFormatException, IOException {
+        int start = buffer.position();
+        if (buffer.get(start) != 'S' || buffer.get(start + 1) != 'L') {
+            throw new SeedFormatException("Invalid SeedLink frame signature!");
+        }
+
+        if (isInfo(buffer, start)) {
+            buffer.position(start + FRAME_SIZE);
+            return null;
+        }
+
+        buffer.position(start + HEADER_SIZE);
+        buffer.get(recordBytes);
+
+        SeedRecord record = SeedRecord.read(recordBytes);
+        if (!(record instanceof DataRecord dataRecord)) {
+            return null;
+        }
+
+        return dataRecord;
+    }
+
+    private static boolean isInfo(ByteBuffer buffer, int start) {
+        for (int i = 0; i < INFO_SIGNATURE.length; i++) {
+            if (buffer.get(start + i) != INFO_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return raw bytes of the last decoded record, overwritten by the next call to {@link #decode}
+     */
+    public byte[] getRecordBytes() {
+        return recordBytes;
+    }
+}
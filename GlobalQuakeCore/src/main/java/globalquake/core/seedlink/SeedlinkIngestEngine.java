@@ -0,0 +1,423 @@
+package globalquake.core.seedlink;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+import globalquake.core.database.SeedlinkNetwork;
+import globalquake.core.database.SeedlinkStatus;
+import globalquake.core.station.AbstractStation;
+import globalquake.utils.NamedThreadFactory;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Multiplexes all SeedLink connections over a small fixed number of selector threads instead of using one blocking
+ * thread per network. Decoded records are handed to the consumer on the I/O thread that read them, so the consumer
+ * must be fast and thread safe.
+ */
+public class SeedlinkIngestEngine {
+
+    public static final int DEFAULT_RECONNECT_DELAY = 10;
+    public static final int MAX_RECONNECT_DELAY = 60 * 5;
+    public static final int DEFAULT_TIMEOUT = 90;
+
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    private final Function<SeedlinkNetwork, Collection<AbstractStation>> stationSupplier;
+    private final RecordHandler recordHandler;
+    private final int initialReconnectDelay;
+    private final int timeoutSeconds;
+
+    private final IOThread[] ioThreads;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger nextThread = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    /**
+     * Receives every decoded record together with its raw 512 bytes. The array is reused for the next record.
+     */
+    public interface RecordHandler {
+        void handle(byte[] rawRecord, DataRecord dataRecord);
+    }
+
+    public SeedlinkIngestEngine(Function<SeedlinkNetwork, Collection<AbstractStation>> stationSupplier,
+                                Consumer<DataRecord> recordConsumer) {
+        this(stationSupplier, (rawRecord, dataRecord) -> recordConsumer.accept(dataRecord));
+    }
+
+    public SeedlinkIngestEngine(Function<SeedlinkNetwork, Collection<AbstractStation>> stationSupplier,
+                                RecordHandler recordHandler) {
+        this(stationSupplier, recordHandler, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)),
+                DEFAULT_RECONNECT_DELAY, DEFAULT_TIMEOUT);
+    }
+
+    public SeedlinkIngestEngine(Function<SeedlinkNetwork, Collection<AbstractStation>> stationSupplier,
+                                Consumer<DataRecord> recordConsumer, int ioThreadCount,
+                                int reconnectDelay, int timeoutSeconds) {
+        this(stationSupplier, (rawRecord, dataRecord) -> recordConsumer.accept(dataRecord), ioThreadCount,
+                reconnectDelay, timeoutSeconds);
+    }
+
+    private SeedlinkIngestEngine(Function<SeedlinkNetwork, Collection<AbstractStation>> stationSupplier,
+                                 RecordHandler recordHandler, int ioThreadCount,
+                                 int reconnectDelay, int timeoutSeconds) {
+        this.stationSupplier = stationSupplier;
+        this.recordHandler = recordHandler;
+        this.initialReconnectDelay = reconnectDelay;
+        this.timeoutSeconds = timeoutSeconds;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Seedlink Reconnect Scheduler"));
+
+        ioThreads = new IOThread[ioThreadCount];
+        for (int i = 0; i < ioThreadCount; i++) {
+            try {
+                ioThreads[i] = new IOThread("Seedlink I/O Thread #%d".formatted(i));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to open selector!", e);
+            }
+            ioThreads[i].start();
+        }
+    }
+
+    public void connect(SeedlinkNetwork seedlinkNetwork) {
+        scheduleConnect(seedlinkNetwork, initialReconnectDelay, 0);
+    }
+
+    private void scheduleConnect(SeedlinkNetwork seedlinkNetwork, int reconnectDelay, long delaySeconds) {
+        if (!running) {
+            return;
+        }
+        scheduler.schedule(() -> openConnection(seedlinkNetwork, reconnectDelay), delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void openConnection(SeedlinkNetwork seedlinkNetwork, int reconnectDelay) {
+        if (!running) {
+            return;
+        }
+
+        seedlinkNetwork.status = SeedlinkStatus.CONNECTING;
+        seedlinkNetwork.connectedStations = 0;
+
+        Logger.info("Connecting to seedlink server \"" + seedlinkNetwork.getName() + "\"");
+
+        Collection<AbstractStation> stations = stationSupplier.apply(seedlinkNetwork);
+        if (stations.isEmpty()) {
+            Logger.info("No stations connected to " + seedlinkNetwork.getName());
+            seedlinkNetwork.status = SeedlinkStatus.DISCONNECTED;
+            return;
+        }
+
+        // resolving can block, so it is done here rather than on the selector thread
+        InetSocketAddress address = new InetSocketAddress(seedlinkNetwork.getHost(), seedlinkNetwork.getPort());
+        if (address.isUnresolved()) {
+            Logger.warn("Seedlink reader failed for seedlink `%s`: unable to resolve %s".formatted(seedlinkNetwork.getName(), seedlinkNetwork.getHost()));
+            reconnect(seedlinkNetwork, reconnectDelay);
+            return;
+        }
+
+        SeedlinkConnection connection = new SeedlinkConnection(seedlinkNetwork, address, reconnectDelay);
+        connection.prepareHandshake(stations);
+
+        IOThread ioThread = ioThreads[Math.floorMod(nextThread.getAndIncrement(), ioThreads.length)];
+        ioThread.register(connection);
+    }
+
+    private void reconnect(SeedlinkNetwork seedlinkNetwork, int reconnectDelay) {
+        seedlinkNetwork.status = SeedlinkStatus.DISCONNECTED;
+        seedlinkNetwork.connectedStations = 0;
+
+        if (!running) {
+            return;
+        }
+
+        Logger.warn("%s Disconnected, Reconnecting after %d seconds...".formatted(seedlinkNetwork.getName(), reconnectDelay));
+        int nextDelay = reconnectDelay < MAX_RECONNECT_DELAY ? reconnectDelay * 2 : reconnectDelay;
+        scheduleConnect(seedlinkNetwork, nextDelay, reconnectDelay);
+    }
+
+    public int getConnectionCount() {
+        int result = 0;
+        for (IOThread ioThread : ioThreads) {
+            result += ioThread.connections.size();
+        }
+        return result;
+    }
+
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+
+        for (IOThread ioThread : ioThreads) {
+            ioThread.selector.wakeup();
+        }
+
+        for (IOThread ioThread : ioThreads) {
+            try {
+                ioThread.join(10_000);
+                if (ioThread.isAlive()) {
+                    Logger.error("Unable to terminate %s!".formatted(ioThread.getName()));
+                }
+            } catch (InterruptedException e) {
+                Logger.error(e);
+            }
+        }
+
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                Logger.error("Unable to terminate seedlink reconnect scheduler!");
+            }
+        } catch (InterruptedException e) {
+            Logger.error(e);
+        }
+    }
+
+    private final class IOThread extends Thread {
+
+        private final Selector selector;
+        private final Queue<SeedlinkConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private final List<SeedlinkConnection> connections = new CopyOnWriteArrayList<>();
+
+        IOThread(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void register(SeedlinkConnection connection) {
+            pendingRegistrations.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    processRegistrations();
+                    selector.select(SELECT_TIMEOUT_MS);
+
+                    long now = System.currentTimeMillis();
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        handle(key, now);
+                    }
+                    selector.selectedKeys().clear();
+
+                    checkTimeouts(now);
+                }
+            } catch (Exception e) {
+                Logger.error(e);
+            } finally {
+                for (SeedlinkConnection connection : connections) {
+                    close(connection, true);
+                }
+                pendingRegistrations.clear();
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    Logger.error(e);
+                }
+            }
+        }
+
+        private void processRegistrations() {
+            SeedlinkConnection connection;
+            while ((connection = pendingRegistrations.poll()) != null) {
+                try {
+                    SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                    connection.attach(channel, key);
+                    connection.touch(System.currentTimeMillis());
+                    connections.add(connection);
+
+                    if (channel.connect(connection.getAddress())) {
+                        finishConnect(connection, System.currentTimeMillis());
+                    }
+                } catch (IOException e) {
+                    fail(connection, e);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key, long now) {
+            SeedlinkConnection connection = (SeedlinkConnection) key.attachment();
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isConnectable() && connection.getChannel().finishConnect()) {
+                    finishConnect(connection, now);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write(connection);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(connection, now);
+                }
+            } catch (Exception e) {
+                fail(connection, e);
+            }
+        }
+
+        private void finishConnect(SeedlinkConnection connection, long now) {
+            connection.getKey().interestOps(SelectionKey.OP_READ);
+            connection.onConnected(now);
+        }
+
+        private void write(SeedlinkConnection connection) throws IOException {
+            var queue = connection.getWriteQueue();
+            while (!queue.isEmpty()) {
+                ByteBuffer buffer = queue.peekFirst();
+                connection.getChannel().write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                queue.removeFirst();
+            }
+
+            SelectionKey key = connection.getKey();
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        private void read(SeedlinkConnection connection, long now) throws IOException, SeedFormatException {
+            ByteBuffer buffer = connection.getReadBuffer();
+            int count = connection.getChannel().read(buffer);
+            if (count < 0) {
+                throw new IOException("Connection closed by server");
+            }
+
+            if (count == 0) {
+                return;
+            }
+
+            connection.touch(now);
+            buffer.flip();
+            try {
+                if (connection.getState() == SeedlinkConnection.State.HANDSHAKE) {
+                    processHandshake(connection);
+                }
+
+                if (connection.getState() == SeedlinkConnection.State.STREAMING) {
+                    processFrames(connection, buffer);
+                }
+            } finally {
+                buffer.compact();
+            }
+        }
+
+        private void processHandshake(SeedlinkConnection connection) {
+            SeedlinkNetwork seedlinkNetwork = connection.getSeedlinkNetwork();
+            String line;
+            while (connection.getState() == SeedlinkConnection.State.HANDSHAKE && (line = connection.pollLine()) != null) {
+                if (!connection.onLine(line)) {
+                    Logger.warn("Too many errors in seedlink network %s, resetting!".formatted(seedlinkNetwork.getName()));
+                    throw new IllegalStateException("Too many errors");
+                }
+
+                if (connection.isHandshakeFinished() && connection.getState() == SeedlinkConnection.State.HANDSHAKE) {
+                    // nothing was selected successfully
+                    Logger.info("No stations connected to " + seedlinkNetwork.getName());
+                    close(connection, true);
+                    seedlinkNetwork.status = SeedlinkStatus.DISCONNECTED;
+                    return;
+                }
+            }
+        }
+
+        private void processFrames(SeedlinkConnection connection, ByteBuffer buffer) throws SeedFormatException, IOException {
+            SeedlinkFrameDecoder decoder = connection.getDecoder();
+            while (SeedlinkFrameDecoder.hasFrame(buffer)) {
+                DataRecord dataRecord;
+                int start = buffer.position();
+                try {
+                    dataRecord = decoder.decode(buffer);
+                } catch (SeedFormatException e) {
+                    if (buffer.position() == start) {
+                        // the frame boundary is lost, the stream has to be reset
+                        throw e;
+                    }
+                    Logger.trace(e);
+                    continue;
+                }
+
+                if (dataRecord == null) {
+                    continue;
+                }
+
+                try {
+                    recordHandler.handle(decoder.getRecordBytes(), dataRecord);
+                } catch (Exception e) {
+                    Logger.error(e);
+                }
+            }
+        }
+
+        private void checkTimeouts(long now) {
+            for (SeedlinkConnection connection : connections) {
+                if (now - connection.getLastActivity() > timeoutSeconds * 1000L) {
+                    fail(connection, new IOException("Timed out after %d seconds".formatted(timeoutSeconds)));
+                }
+            }
+        }
+
+        private void fail(SeedlinkConnection connection, Exception e) {
+            if (connection.getState() == SeedlinkConnection.State.CLOSED) {
+                return;
+            }
+            Logger.warn("Seedlink reader failed for seedlink `%s`: %s".formatted(connection.getSeedlinkNetwork().getName(), e.getMessage()));
+
+            // if connect succeeded then reset the delay
+            int delay = connection.isGreeted() ? initialReconnectDelay : connection.getReconnectDelay();
+            close(connection, false);
+            reconnect(connection.getSeedlinkNetwork(), delay);
+        }
+
+        private void close(SeedlinkConnection connection, boolean sayBye) {
+            if (connection.getState() == SeedlinkConnection.State.CLOSED) {
+                return;
+            }
+
+            SocketChannel channel = connection.getChannel();
+            if (sayBye && channel != null && channel.isConnected()) {
+                try {
+                    channel.write(ByteBuffer.wrap("BYE\r".getBytes()));
+                } catch (IOException e) {
+                    Logger.trace(e);
+                }
+            }
+
+            connection.setState(SeedlinkConnection.State.CLOSED);
+            connections.remove(connection);
+
+            if (connection.getKey() != null) {
+                connection.getKey().cancel();
+            }
+
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    Logger.trace(e);
+                }
+            }
+
+            connection.getSeedlinkNetwork().status = SeedlinkStatus.DISCONNECTED;
+            connection.getSeedlinkNetwork().connectedStations = 0;
+        }
+    }
+}
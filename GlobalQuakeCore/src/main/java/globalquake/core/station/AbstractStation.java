@@ -22,6 +22,7 @@ public abstract class AbstractStation {
 	private final String stationCode;
 	private final String channelName;
 	private final String locationCode;
+	private final String identifier;
 	private final double lat;
 	private final double lon;
 	private final double alt;
@@ -44,13 +45,14 @@ public abstract class AbstractStation {
 		this.stationCode = stationCode;
 		this.channelName = channelName;
 		this.locationCode = locationCode;
+		this.identifier = "%s %s %s %s".formatted(networkCode, stationCode, channelName, locationCode);
 		this.lat = lat;
 		this.lon = lon;
 		this.alt = alt;
-		this.analysis = new BetterAnalysis(this);
 		this.id = id;
 		this.seedlinkNetwork = seedlinkNetwork;
 		this.sensitivity = sensitivity;
+		this.analysis = new BetterAnalysis(this);
 	}
 
 	public StationState getStateAt(long time) {
@@ -193,7 +195,7 @@ public abstract class AbstractStation {
 	}
 
 	public String getIdentifier(){
-		return "%s %s %s %s".formatted(getNetworkCode(), getStationCode(), getChannelName(), getLocationCode());
+		return identifier;
 	}
 
 	public double getSensitivity() {
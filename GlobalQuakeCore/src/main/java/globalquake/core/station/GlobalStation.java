@@ -10,67 +10,63 @@ import gqserver.api.packets.station.InputType;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Comparator;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GlobalStation extends AbstractStation {
 
-	private static final long MAX_STRETCH_SECONDS = 60;
-	private final Object recordsQueueLock = new Object();
-
-	private final SortedSet<DataRecord> records;
+	private final RecordReorderBuffer records = new RecordReorderBuffer();
+	private final AtomicInteger analysisState = new AtomicInteger();
 	private final InputType inputType;
 
-	private Instant nextExpectedLog = null;
-
 
 	public GlobalStation(String networkCode, String stationCode, String channelName,
 						 String locationCode, double lat, double lon, double alt,
 						 int id, SeedlinkNetwork seedlinkNetwork, double sensitivity, InputType inputType) {
 		super(networkCode, stationCode, channelName, locationCode, lat, lon, alt, id, seedlinkNetwork, sensitivity);
-		this.records = new TreeSet<>(Comparator.comparing(dataRecord -> dataRecord.getStartBtime().toInstant().toEpochMilli()));
 		this.inputType = inputType;
 	}
 
+	/**
+	 * Must be called from a single thread at a time (the seedlink thread that owns this station's connection)
+	 */
 	public void addRecord(DataRecord dr) {
-		synchronized (recordsQueueLock) {
-			records.add(dr);
+		records.offer(dr);
+
+		StationAnalysisScheduler scheduler = getAnalysisScheduler();
+		if(scheduler != null){
+			scheduler.markDirty(this);
+		}
+	}
+
+	private static StationAnalysisScheduler getAnalysisScheduler() {
+		if(GlobalQuake.instance == null || GlobalQuake.instance.getGlobalQuakeRuntime() == null){
+			return null;
 		}
+		return GlobalQuake.instance.getGlobalQuakeRuntime().getAnalysisScheduler();
 	}
 
 	@Override
 	public void analyse() {
-		synchronized (recordsQueueLock){
-			while(!records.isEmpty()){
-				DataRecord oldest = records.first();
-
-				Instant startTime = oldest.getStartBtime().toInstant();
-
-				if(nextExpectedLog == null){
-					records.remove(oldest);
-					process(oldest);
-					continue;
-				}
-
-				if(Math.abs(ChronoUnit.MILLIS.between(startTime, nextExpectedLog)) < 60) {
-					records.remove(oldest);
-					process(oldest);
-				}else if(startTime.isBefore(nextExpectedLog)){
-					records.remove(oldest);
-                } else {
-					long gapSeconds = nextExpectedLog.until(startTime, ChronoUnit.SECONDS);
-					long stretchSeconds = startTime.until(records.last().getPredictedNextStartBtime().toInstant(), ChronoUnit.SECONDS);
-					if(gapSeconds > MAX_STRETCH_SECONDS || stretchSeconds > MAX_STRETCH_SECONDS){
-						records.remove(oldest);
-						process(oldest);
-						continue;
-					}
-
-					break;
-				}
-			}
-		}
+		processRecords();
+	}
+
+	/**
+	 * @return number of records that were passed to the analysis
+	 */
+	int processRecords() {
+		return records.drain(this::process);
+	}
+
+	boolean hasPendingRecords() {
+		return records.size() > 0;
+	}
+
+	long getLastReleasedRecordEnd() {
+		return records.getLastReleasedEnd();
+	}
+
+	AtomicInteger getAnalysisState() {
+		return analysisState;
 	}
 
 	@Override
@@ -79,8 +75,6 @@ public class GlobalStation extends AbstractStation {
 	}
 
 	private void process(DataRecord record) {
-		nextExpectedLog = record.getPredictedNextStartBtime().toInstant();
-
 		if (!isTimeValid(record)) {
 			return;
 		}
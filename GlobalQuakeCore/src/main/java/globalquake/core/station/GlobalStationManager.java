@@ -1,5 +1,7 @@
 package globalquake.core.station;
 
+import globalquake.core.Settings;
+import globalquake.core.analysis.AnalysisStateTable;
 import globalquake.core.database.*;
 import globalquake.utils.GeoUtils;
 import globalquake.utils.monitorable.MonitorableConcurrentLinkedQueue;
@@ -12,12 +14,15 @@ public class GlobalStationManager {
 
     private static final int RAYS = 9;
     private static final int STATIONS_PER_RAY = 3;
+    private static final double MAX_DISTANCE = 4000;
     protected Collection<AbstractStation> stations = new MonitorableConcurrentLinkedQueue<>();
 
 
     protected final AtomicInteger nextID = new AtomicInteger(0);
     protected UUID indexing;
 
+    private volatile StationRegistry registry = StationRegistry.EMPTY;
+
     public void initStations(StationDatabaseManager databaseManager) {
         if(databaseManager == null){
             return;
@@ -28,6 +33,10 @@ public class GlobalStationManager {
 
         databaseManager.getStationDatabase().getDatabaseReadLock().lock();
         try {
+            // one slot for every station that can be selected, the table must not grow once the analysis runs
+            AnalysisStateTable.initShared(Boolean.TRUE.equals(Settings.columnarAnalysis) ?
+                    databaseManager.getStationDatabase().getNetworks().stream().mapToInt(n -> n.getStations().size()).sum() : 0);
+
             databaseManager.getStationDatabase().getSeedlinkNetworks().forEach(seedlinkNetwork -> seedlinkNetwork.selectedStations = 0);
             for (Network n : databaseManager.getStationDatabase().getNetworks()) {
                 for (Station s : n.getStations()) {
@@ -43,63 +52,80 @@ public class GlobalStationManager {
             databaseManager.getStationDatabase().getDatabaseReadLock().unlock();
         }
 
+        updateRegistry();
         createListOfClosestStations(stations);
         Logger.info("Initialized " + stations.size() + " Stations.");
     }
 
     public static void createListOfClosestStations(Collection<AbstractStation> stations){
-        stations.parallelStream().forEach(station -> {
-            @SuppressWarnings("unchecked") Queue<NearbyStationDistanceInfo>[] rays = new Queue[RAYS];
-            for (int i = 0; i < RAYS; i++) {
-                rays[i] = new PriorityQueue<>(Comparator.comparing(NearbyStationDistanceInfo::dist));
-            }
-
-            for (AbstractStation station2 : stations) {
-                if (!(station2.getId() == station.getId())) {
-                    double dist = GeoUtils.greatCircleDistance(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
-                            station2.getLongitude());
-
-                    if(dist > 4000){
-                        continue;
-                    }
+        StationSpatialIndex index = new StationSpatialIndex(stations);
+        stations.parallelStream().forEach(station -> station.setNearbyStations(findNearbyStations(index, station)));
+    }
 
-                    double ang = GeoUtils.calculateAngle(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
-                            station2.getLongitude());
-                    int ray = (int) ((ang / 360.0) * (RAYS - 1.0));
+    /**
+     * Each of the {@link #RAYS} rays takes the closest stations whose azimuth falls into it or into one of the two
+     * neighbouring rays, so only that sector of the index is searched.
+     */
+    private static Set<NearbyStationDistanceInfo> findNearbyStations(StationSpatialIndex index, AbstractStation station) {
+        Set<NearbyStationDistanceInfo> result = new HashSet<>();
+        for (int ray = 0; ray < RAYS; ray++) {
+            final int finalRay = ray;
+            // the sector is slightly wider than the rays, the filter decides exactly
+            double fromAzimuth = rayStart(ray - 1) - 1.0;
+            double toAzimuth = rayStart(ray - 1) + 3 * 360.0 / (RAYS - 1.0) + 1.0;
+
+            // stations already in the result do not count, so at most this many are ever looked at
+            List<AbstractStation> nearest = index.findNearest(station.getLatitude(), station.getLongitude(),
+                    fromAzimuth, toAzimuth, MAX_DISTANCE, result.size() + STATIONS_PER_RAY,
+                    station2 -> station2.getId() != station.getId() && isInRay(station, station2, finalRay));
+
+            List<NearbyStationDistanceInfo> candidates = new ArrayList<>(nearest.size());
+            for (AbstractStation station2 : nearest) {
+                double dist = GeoUtils.greatCircleDistance(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
+                        station2.getLongitude());
+                double ang = GeoUtils.calculateAngle(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
+                        station2.getLongitude());
+                candidates.add(new NearbyStationDistanceInfo(station2, (float) dist, (float) ang));
+            }
+            candidates.sort(Comparator.comparing(NearbyStationDistanceInfo::dist));
 
-                    NearbyStationDistanceInfo nearbyStationDistanceInfo = new NearbyStationDistanceInfo(station2, (float) dist, (float) ang);
+            int count = 0;
+            for (NearbyStationDistanceInfo stationDistanceInfo : candidates) {
+                if (count >= STATIONS_PER_RAY) {
+                    break;
+                }
+                if (result.add(stationDistanceInfo)) {
+                    count++;
+                }
 
-                    rays[ray].add(nearbyStationDistanceInfo);
-                    int ray2 = ray + 1;
-                    if (ray2 == RAYS) {
-                        ray2 = 0;
-                    }
-                    int ray3 = ray - 1;
-                    if (ray3 == -1) {
-                        ray3 = RAYS - 1;
-                    }
-                    rays[ray2].add(nearbyStationDistanceInfo);
-                    rays[ray3].add(nearbyStationDistanceInfo);
+                if (stationDistanceInfo.dist() > 1000) {
+                    break; // only 1 station furher than 1000km allowed
                 }
             }
+        }
 
-            Set<NearbyStationDistanceInfo> result = new HashSet<>();
-            for(Queue<NearbyStationDistanceInfo> ray : rays){
-                int count = 0;
-                while(count < STATIONS_PER_RAY && !ray.isEmpty()) {
-                    NearbyStationDistanceInfo stationDistanceInfo = ray.remove();
-                    if(result.add(stationDistanceInfo)){
-                        count++;
-                    }
+        return result;
+    }
 
-                    if(stationDistanceInfo.dist() > 1000){
-                        break; // only 1 station furher than 1000km allowed
-                    }
-                }
-            }
+    private static double rayStart(int ray) {
+        return ray * 360.0 / (RAYS - 1.0);
+    }
+
+    /**
+     * @return true if station2 belongs to the given ray or one of its two neighbours, as seen from station
+     */
+    private static boolean isInRay(AbstractStation station, AbstractStation station2, int ray) {
+        double dist = GeoUtils.greatCircleDistance(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
+                station2.getLongitude());
+        if (dist > MAX_DISTANCE) {
+            return false;
+        }
 
-            station.setNearbyStations(result);
-        });
+        double ang = GeoUtils.calculateAngle(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
+                station2.getLongitude());
+        int ray2 = (int) ((ang / 360.0) * (RAYS - 1.0));
+        int diff = Math.abs(ray2 - ray);
+        return diff <= 1 || diff == RAYS - 1;
     }
 
     private GlobalStation createGlobalStation(Station station, Channel ch) {
@@ -117,8 +143,23 @@ public class GlobalStationManager {
         return indexing;
     }
 
+    /**
+     * Has to be called whenever the list of stations changes
+     */
+    protected void updateRegistry() {
+        registry = new StationRegistry(stations);
+    }
+
+    public StationRegistry getRegistry() {
+        return registry;
+    }
+
     public AbstractStation getStationByIdentifier(String identifier) {
-        return stations.stream().filter(station -> station.getIdentifier().equals(identifier)).findFirst().orElse(null);
+        return registry.getByIdentifier(identifier);
+    }
+
+    public AbstractStation getStationById(int id) {
+        return registry.getById(id);
     }
 
 
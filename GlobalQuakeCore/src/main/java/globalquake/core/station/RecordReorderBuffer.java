@@ -0,0 +1,208 @@
+package globalquake.core.station;
+
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Single producer / single consumer jitter buffer for the incoming records of one station.
+ * The producer (seedlink I/O thread) only writes into a lock-free ring. The consumer (analysis thread) moves
+ * the records into a small array sorted by their cached start time, drops duplicates and releases them in order.
+ * Start and predicted end times are converted to epoch millis exactly once per record.
+ */
+public class RecordReorderBuffer {
+
+    public static final int DEFAULT_CAPACITY = 128;
+    public static final long MAX_STRETCH_MS = 60 * 1000;
+    private static final long TOLERANCE_MS = 60;
+
+    // ring written by the producer
+    private final DataRecord[] ring;
+    private final long[] ringStart;
+    private final long[] ringEnd;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong(); // next slot to be read, written by consumer
+    private final AtomicLong tail = new AtomicLong(); // next slot to be written, written by producer
+    private long cachedHead; // producer's view of head
+
+    // records waiting for reordering, owned by the consumer, sorted by start time
+    private final DataRecord[] pending;
+    private final long[] pendingStart;
+    private final long[] pendingEnd;
+    private int pendingCount;
+
+    private long nextExpected = Long.MIN_VALUE;
+    private long dropped;
+
+    public RecordReorderBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RecordReorderBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = new DataRecord[size];
+        ringStart = new long[size];
+        ringEnd = new long[size];
+        mask = size - 1;
+
+        pending = new DataRecord[size];
+        pendingStart = new long[size];
+        pendingEnd = new long[size];
+    }
+
+    /**
+     * Producer side. Never blocks.
+     *
+     * @return false if the ring was full and the record was dropped
+     */
+    public boolean offer(DataRecord dataRecord) {
+        long t = tail.get();
+        if (t - cachedHead >= ring.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= ring.length) {
+                dropped++;
+                return false;
+            }
+        }
+
+        int slot = (int) (t & mask);
+        long start = toEpochMillis(dataRecord.getStartBtime());
+        double sampleRate = dataRecord.getSampleRate();
+        ringStart[slot] = start;
+        ringEnd[slot] = sampleRate > 0 ? start + Math.round(dataRecord.getHeader().getNumSamples() * 1000.0 / sampleRate) : start;
+        ring[slot] = dataRecord;
+        tail.lazySet(t + 1); // publishes the slot
+        return true;
+    }
+
+    /**
+     * Consumer side. Passes all records that are ready to the processor in the order of their start time.
+     * Records that arrive after the stream has already moved past them are dropped. A gap is waited for unless
+     * it is longer than {@link #MAX_STRETCH_MS} or the buffered data already spans more than that.
+     *
+     * @return number of records passed to the processor
+     */
+    public int drain(Consumer<DataRecord> processor) {
+        int processed = transferFromRing(processor);
+
+        int index = 0;
+        while (index < pendingCount) {
+            long start = pendingStart[index];
+            boolean release;
+
+            if (nextExpected == Long.MIN_VALUE || Math.abs(start - nextExpected) < TOLERANCE_MS) {
+                release = true;
+            } else if (start < nextExpected) {
+                pending[index++] = null;
+                continue;
+            } else {
+                long gap = start - nextExpected;
+                long stretch = pendingEnd[pendingCount - 1] - start;
+                release = gap > MAX_STRETCH_MS || stretch > MAX_STRETCH_MS;
+            }
+
+            if (!release) {
+                break;
+            }
+
+            DataRecord dataRecord = pending[index];
+            pending[index++] = null;
+            nextExpected = pendingEnd[index - 1];
+            processor.accept(dataRecord);
+            processed++;
+        }
+
+        compactPending(index);
+        return processed;
+    }
+
+    private int transferFromRing(Consumer<DataRecord> processor) {
+        int processed = 0;
+        long h = head.get();
+        long t = tail.get();
+        while (h < t) {
+            int slot = (int) (h & mask);
+            DataRecord dataRecord = ring[slot];
+            ring[slot] = null;
+
+            if (pendingCount == pending.length) {
+                // cannot hold more, the oldest record is forced out
+                DataRecord oldest = pending[0];
+                nextExpected = pendingEnd[0];
+                compactPending(1);
+                processor.accept(oldest);
+                processed++;
+            }
+
+            insertPending(dataRecord, ringStart[slot], ringEnd[slot]);
+            h++;
+        }
+        head.lazySet(h);
+        return processed;
+    }
+
+    private void insertPending(DataRecord dataRecord, long start, long end) {
+        // records mostly arrive in order, so search from the end
+        int pos = pendingCount;
+        while (pos > 0 && pendingStart[pos - 1] > start) {
+            pos--;
+        }
+
+        if (pos > 0 && pendingStart[pos - 1] == start) {
+            return; // duplicate
+        }
+
+        System.arraycopy(pending, pos, pending, pos + 1, pendingCount - pos);
+        System.arraycopy(pendingStart, pos, pendingStart, pos + 1, pendingCount - pos);
+        System.arraycopy(pendingEnd, pos, pendingEnd, pos + 1, pendingCount - pos);
+
+        pending[pos] = dataRecord;
+        pendingStart[pos] = start;
+        pendingEnd[pos] = end;
+        pendingCount++;
+    }
+
+    private void compactPending(int from) {
+        if (from == 0) {
+            return;
+        }
+        int remaining = pendingCount - from;
+        System.arraycopy(pending, from, pending, 0, remaining);
+        System.arraycopy(pendingStart, from, pendingStart, 0, remaining);
+        System.arraycopy(pendingEnd, from, pendingEnd, 0, remaining);
+        for (int i = remaining; i < pendingCount; i++) {
+            pending[i] = null;
+        }
+        pendingCount = remaining;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get()) + pendingCount;
+    }
+
+    /**
+     * @return predicted end time of the last record passed to the processor
+     */
+    public long getLastReleasedEnd() {
+        return nextExpected;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public static long toEpochMillis(Btime btime) {
+        long days = daysFromCivil(btime.year) + btime.jday - 1;
+        long seconds = days * 86400L + btime.hour * 3600L + btime.min * 60L + btime.sec;
+        return seconds * 1000L + btime.tenthMilli / 10;
+    }
+
+    // days between 1970-01-01 and January 1st of the given year
+    private static long daysFromCivil(int year) {
+        long y = year - 1;
+        return 365L * (year - 1970) + (y / 4 - y / 100 + y / 400) - 477;
+    }
+}
@@ -0,0 +1,155 @@
+package globalquake.core.station;
+
+import globalquake.core.GlobalQuake;
+import globalquake.core.StagePool;
+import org.tinylog.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs station analysis only for stations that received new records. A station is queued at most once
+ * and is never analysed by two workers at the same time. By default the analysis runs in {@link StagePool#ANALYSIS},
+ * together with the one-second station updates, so its threads and utilisation are reported with the other stages.
+ */
+public class StationAnalysisScheduler {
+
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int RUNNING_DIRTY = 3;
+
+    public record Stats(int queueDepth, int maxQueueDepth, long analysedStations,
+                        double avgAnalysisMicros, double maxAnalysisMicros,
+                        double avgDelayMs, long maxDelayMs) {
+    }
+
+    private final Executor executor;
+    private volatile boolean stopped = false;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder analysedStations = new LongAdder();
+    private final LongAdder analysisNanos = new LongAdder();
+    private final AtomicLong maxAnalysisNanos = new AtomicLong();
+    private final LongAdder delayMs = new LongAdder();
+    private final LongAdder delaySamples = new LongAdder();
+    private final AtomicLong maxDelayMs = new AtomicLong();
+
+    public StationAnalysisScheduler() {
+        this(StagePool.ANALYSIS);
+    }
+
+    public StationAnalysisScheduler(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Called whenever the station receives new data
+     */
+    public void markDirty(GlobalStation station) {
+        AtomicInteger state = station.getAnalysisState();
+        while (true) {
+            int current = state.get();
+            if (current == IDLE) {
+                if (state.compareAndSet(IDLE, QUEUED)) {
+                    submit(station);
+                    return;
+                }
+            } else if (current == RUNNING) {
+                if (state.compareAndSet(RUNNING, RUNNING_DIRTY)) {
+                    return;
+                }
+            } else {
+                return; // already queued or will be re-queued
+            }
+        }
+    }
+
+    /**
+     * Safety net for records that were added without a wakeup, e.g. before the scheduler was started
+     */
+    public void scheduleIfPending(GlobalStation station) {
+        if (station.hasPendingRecords()) {
+            markDirty(station);
+        }
+    }
+
+    private void submit(GlobalStation station) {
+        // the stage pool would be created again after it was stopped
+        if (stopped) {
+            station.getAnalysisState().set(IDLE);
+            return;
+        }
+
+        int depth = queueDepth.incrementAndGet();
+        try {
+            executor.execute(() -> runAnalysis(station));
+        } catch (RejectedExecutionException e) {
+            // executor is shut down
+            queueDepth.decrementAndGet();
+            station.getAnalysisState().set(IDLE);
+            return;
+        }
+
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    private void runAnalysis(GlobalStation station) {
+        queueDepth.decrementAndGet();
+        AtomicInteger state = station.getAnalysisState();
+        state.set(RUNNING);
+
+        long a = System.nanoTime();
+        try {
+            if (station.processRecords() > 0) {
+                long delay = GlobalQuake.instance == null ? 0 :
+                        GlobalQuake.instance.currentTimeMillis() - station.getLastReleasedRecordEnd();
+                delayMs.add(delay);
+                delaySamples.increment();
+                maxDelayMs.accumulateAndGet(delay, Math::max);
+            }
+        } catch (Exception e) {
+            Logger.error("Exception occurred in station analysis");
+            GlobalQuake.getErrorHandler().handleException(e);
+        } finally {
+            long nanos = System.nanoTime() - a;
+            analysedStations.increment();
+            analysisNanos.add(nanos);
+            maxAnalysisNanos.accumulateAndGet(nanos, Math::max);
+
+            if (!state.compareAndSet(RUNNING, IDLE)) {
+                // new data arrived while running, queue the station again
+                state.set(QUEUED);
+                submit(station);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return statistics since the last call
+     */
+    public Stats getStatsAndReset() {
+        long count = analysedStations.sumThenReset();
+        long nanos = analysisNanos.sumThenReset();
+        long delays = delaySamples.sumThenReset();
+        long delaySum = delayMs.sumThenReset();
+        return new Stats(getQueueDepth(), maxQueueDepth.getAndSet(0), count,
+                count == 0 ? 0 : nanos / (count * 1000.0), maxAnalysisNanos.getAndSet(0) / 1000.0,
+                delays == 0 ? 0 : delaySum / (double) delays, maxDelayMs.getAndSet(0));
+    }
+
+    /**
+     * Stops scheduling new analysis, the executor is shut down by its owner
+     */
+    public void stop() {
+        stopped = true;
+    }
+}
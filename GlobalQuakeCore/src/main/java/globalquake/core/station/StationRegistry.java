@@ -0,0 +1,170 @@
+package globalquake.core.station;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable lookup tables of the stations of a {@link GlobalStationManager}, by id, by identifier and by the
+ * network and station codes of a miniSEED record. A new registry is created whenever the list of stations changes.
+ * <p>
+ * Network and station codes are packed into a single long (7 ASCII characters without the padding spaces),
+ * so a record can be matched to its station straight from the header bytes without creating any string.
+ */
+public class StationRegistry {
+
+    public static final StationRegistry EMPTY = new StationRegistry(List.of());
+
+    // offsets in the fixed section of the data header
+    private static final int STATION_OFFSET = 8;
+    private static final int STATION_LENGTH = 5;
+    private static final int NETWORK_OFFSET = 18;
+    private static final int NETWORK_LENGTH = 2;
+
+    private static final long NO_KEY = -1;
+
+    private final AbstractStation[] byId;
+    private final Map<String, AbstractStation> byIdentifier;
+
+    // open addressing, linear probing
+    private final long[] keys;
+    private final AbstractStation[] values;
+    private final int mask;
+
+    public StationRegistry(Collection<AbstractStation> stations) {
+        int maxId = -1;
+        for (AbstractStation station : stations) {
+            maxId = Math.max(maxId, station.getId());
+        }
+        byId = new AbstractStation[maxId + 1];
+        byIdentifier = new HashMap<>(stations.size() * 2);
+
+        int capacity = Integer.highestOneBit(Math.max(16, stations.size() * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new AbstractStation[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, NO_KEY);
+
+        for (AbstractStation station : stations) {
+            if (station.getId() >= 0) {
+                byId[station.getId()] = station;
+            }
+            byIdentifier.put(station.getIdentifier(), station);
+            long key = createKey(station.getNetworkCode(), station.getStationCode());
+            if (key != NO_KEY) {
+                put(key, station);
+            }
+        }
+    }
+
+    private void put(long key, AbstractStation station) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != NO_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = station;
+    }
+
+    private AbstractStation get(long key) {
+        if (key == NO_KEY) {
+            return null;
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != NO_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * @return the key of the network and station codes or -1 if they cannot be packed
+     */
+    public static long createKey(String network, String station) {
+        long networkPart = pack(network, NETWORK_LENGTH);
+        long stationPart = pack(station, STATION_LENGTH);
+        if (networkPart < 0 || stationPart < 0) {
+            return NO_KEY;
+        }
+        return networkPart << (8 * STATION_LENGTH) | stationPart;
+    }
+
+    /**
+     * @param record miniSEED record starting with the fixed section of the data header
+     * @return the key of the network and station codes of the record or -1 if they cannot be packed
+     */
+    public static long createKey(byte[] record, int offset) {
+        long networkPart = pack(record, offset + NETWORK_OFFSET, NETWORK_LENGTH);
+        long stationPart = pack(record, offset + STATION_OFFSET, STATION_LENGTH);
+        if (networkPart < 0 || stationPart < 0) {
+            return NO_KEY;
+        }
+        return networkPart << (8 * STATION_LENGTH) | stationPart;
+    }
+
+    private static long pack(String code, int length) {
+        long result = 0;
+        int count = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            if (c > 0x7F || ++count > length) {
+                return NO_KEY;
+            }
+            result = result << 8 | c;
+        }
+        return result << (8 * (length - count));
+    }
+
+    private static long pack(byte[] bytes, int offset, int length) {
+        long result = 0;
+        int count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b == ' ') {
+                continue;
+            }
+            if (b < 0) {
+                return NO_KEY;
+            }
+            count++;
+            result = result << 8 | b;
+        }
+        return result << (8 * (length - count));
+    }
+
+    public AbstractStation getById(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    public AbstractStation getByIdentifier(String identifier) {
+        return byIdentifier.get(identifier);
+    }
+
+    public AbstractStation getByCodes(String network, String station) {
+        return get(createKey(network, station));
+    }
+
+    /**
+     * Finds the station of a raw miniSEED record, does not allocate
+     */
+    public AbstractStation getByRecord(byte[] record) {
+        return get(createKey(record, 0));
+    }
+
+    public int size() {
+        return byIdentifier.size();
+    }
+}
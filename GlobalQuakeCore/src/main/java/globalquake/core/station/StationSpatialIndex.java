@@ -0,0 +1,327 @@
+package globalquake.core.station;
+
+import globalquake.utils.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Static k-d tree of station positions as unit vectors, answering "k nearest stations within a distance and an azimuth
+ * sector" without looking at every station.
+ * <p>
+ * Distances are compared as chords of the unit sphere, which have the same order as great circle distances.
+ * The azimuth from a station to a point is atan2(q·east, q·north) of the local east and north vectors, so a sector of
+ * at most 180° is the intersection of two half-spaces and whole subtrees outside of it can be skipped.
+ */
+public class StationSpatialIndex {
+
+    private static final double EPS = 1e-9;
+
+    // stations in tree order, the node covering [lo, hi) has its point at (lo + hi) / 2
+    private final AbstractStation[] stations;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final byte[] axis;
+
+    // bounding box of the subtree of each node
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] minZ;
+    private final double[] maxX;
+    private final double[] maxY;
+    private final double[] maxZ;
+
+    public StationSpatialIndex(Collection<AbstractStation> stations) {
+        this.stations = stations.toArray(new AbstractStation[0]);
+        int n = this.stations.length;
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        axis = new byte[n];
+        minX = new double[n];
+        minY = new double[n];
+        minZ = new double[n];
+        maxX = new double[n];
+        maxY = new double[n];
+        maxZ = new double[n];
+
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = toUnitVector(this.stations[i].getLatitude(), this.stations[i].getLongitude());
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        build(order, points, 0, n);
+
+        AbstractStation[] original = this.stations.clone();
+        for (int i = 0; i < n; i++) {
+            this.stations[i] = original[order[i]];
+            x[i] = points[order[i]][0];
+            y[i] = points[order[i]][1];
+            z[i] = points[order[i]][2];
+        }
+        computeBounds(0, n);
+    }
+
+    public int size() {
+        return stations.length;
+    }
+
+    static double[] toUnitVector(double lat, double lon) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        return new double[]{Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    private void build(Integer[] order, double[][] points, int lo, int hi) {
+        if (hi - lo <= 1) {
+            return;
+        }
+
+        // split along the axis with the largest spread
+        double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = lo; i < hi; i++) {
+            for (int d = 0; d < 3; d++) {
+                min[d] = Math.min(min[d], points[order[i]][d]);
+                max[d] = Math.max(max[d], points[order[i]][d]);
+            }
+        }
+        int splitAxis = 0;
+        for (int d = 1; d < 3; d++) {
+            if (max[d] - min[d] > max[splitAxis] - min[splitAxis]) {
+                splitAxis = d;
+            }
+        }
+
+        final int finalAxis = splitAxis;
+        Arrays.sort(order, lo, hi, Comparator.comparingDouble(i -> points[i][finalAxis]));
+
+        int mid = (lo + hi) >>> 1;
+        axis[mid] = (byte) splitAxis;
+        build(order, points, lo, mid);
+        build(order, points, mid + 1, hi);
+    }
+
+    private void computeBounds(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        computeBounds(lo, mid);
+        computeBounds(mid + 1, hi);
+
+        minX[mid] = maxX[mid] = x[mid];
+        minY[mid] = maxY[mid] = y[mid];
+        minZ[mid] = maxZ[mid] = z[mid];
+        if (lo < mid) {
+            include(mid, (lo + mid) >>> 1);
+        }
+        if (mid + 1 < hi) {
+            include(mid, (mid + 1 + hi) >>> 1);
+        }
+    }
+
+    private void include(int node, int child) {
+        minX[node] = Math.min(minX[node], minX[child]);
+        minY[node] = Math.min(minY[node], minY[child]);
+        minZ[node] = Math.min(minZ[node], minZ[child]);
+        maxX[node] = Math.max(maxX[node], maxX[child]);
+        maxY[node] = Math.max(maxY[node], maxY[child]);
+        maxZ[node] = Math.max(maxZ[node], maxZ[child]);
+    }
+
+    /**
+     * State of one query, kept as a max-heap of the best candidates so far
+     */
+    private static final class Query {
+        final double qx, qy, qz;
+        // normals of the two half-spaces of the sector, null for all azimuths
+        final double[] from;
+        final double[] to;
+        final Predicate<AbstractStation> filter;
+        final int k;
+        final int[] heap;
+        final double[] heapDist;
+        double maxDist2;
+        int count;
+
+        Query(double[] q, double[] from, double[] to, Predicate<AbstractStation> filter, int k, double maxDist2) {
+            this.qx = q[0];
+            this.qy = q[1];
+            this.qz = q[2];
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            this.k = k;
+            this.heap = new int[k];
+            this.heapDist = new double[k];
+            this.maxDist2 = maxDist2;
+        }
+
+        double bound() {
+            return count == k ? heapDist[0] : maxDist2;
+        }
+
+        void add(int index, double dist2) {
+            if (count < k) {
+                int i = count++;
+                heap[i] = index;
+                heapDist[i] = dist2;
+                while (i > 0 && heapDist[(i - 1) / 2] < heapDist[i]) {
+                    swap(i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else {
+                heap[0] = index;
+                heapDist[0] = dist2;
+                int i = 0;
+                while (true) {
+                    int largest = i;
+                    int l = 2 * i + 1;
+                    int r = l + 1;
+                    if (l < count && heapDist[l] > heapDist[largest]) {
+                        largest = l;
+                    }
+                    if (r < count && heapDist[r] > heapDist[largest]) {
+                        largest = r;
+                    }
+                    if (largest == i) {
+                        break;
+                    }
+                    swap(i, largest);
+                    i = largest;
+                }
+            }
+        }
+
+        private void swap(int a, int b) {
+            int tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+            double tmpD = heapDist[a];
+            heapDist[a] = heapDist[b];
+            heapDist[b] = tmpD;
+        }
+    }
+
+    /**
+     * @param lat         latitude of the origin
+     * @param lon         longitude of the origin
+     * @param fromAzimuth start of the azimuth sector in degrees, clockwise from north
+     * @param toAzimuth   end of the azimuth sector, at most 180° clockwise from fromAzimuth.
+     *                    Pass fromAzimuth == toAzimuth for all azimuths.
+     * @param maxDistKm   maximum great circle distance
+     * @param k           maximum number of stations
+     * @param filter      only stations matching it are returned
+     * @return up to k nearest matching stations, nearest first
+     */
+    public List<AbstractStation> findNearest(double lat, double lon, double fromAzimuth, double toAzimuth,
+                                             double maxDistKm, int k, Predicate<AbstractStation> filter) {
+        if (k <= 0 || stations.length == 0) {
+            return List.of();
+        }
+
+        double[] q = toUnitVector(lat, lon);
+        double[] from = null;
+        double[] to = null;
+        if (fromAzimuth != toAzimuth) {
+            double[] north = {-Math.sin(Math.toRadians(lat)) * Math.cos(Math.toRadians(lon)),
+                    -Math.sin(Math.toRadians(lat)) * Math.sin(Math.toRadians(lon)), Math.cos(Math.toRadians(lat))};
+            double[] east = {-Math.sin(Math.toRadians(lon)), Math.cos(Math.toRadians(lon)), 0};
+
+            // azimuth >= from: q·(east cos(from) - north sin(from)) >= 0
+            double a = Math.toRadians(fromAzimuth);
+            from = new double[]{east[0] * Math.cos(a) - north[0] * Math.sin(a), east[1] * Math.cos(a) - north[1] * Math.sin(a),
+                    east[2] * Math.cos(a) - north[2] * Math.sin(a)};
+
+            // azimuth <= to: q·(north sin(to) - east cos(to)) >= 0
+            double b = Math.toRadians(toAzimuth);
+            to = new double[]{north[0] * Math.sin(b) - east[0] * Math.cos(b), north[1] * Math.sin(b) - east[1] * Math.cos(b),
+                    north[2] * Math.sin(b) - east[2] * Math.cos(b)};
+        }
+
+        double chord = 2 * Math.sin(Math.min(Math.PI, maxDistKm / GeoUtils.EARTH_RADIUS) / 2);
+        Query query = new Query(q, from, to, filter, k, chord * chord * (1 + EPS) + EPS);
+        search(query, 0, stations.length);
+
+        Integer[] found = new Integer[query.count];
+        for (int i = 0; i < query.count; i++) {
+            found[i] = i;
+        }
+        Arrays.sort(found, Comparator.comparingDouble(i -> query.heapDist[i]));
+
+        List<AbstractStation> result = new ArrayList<>(query.count);
+        for (int i : found) {
+            result.add(stations[query.heap[i]]);
+        }
+        return result;
+    }
+
+    private void search(Query query, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int node = (lo + hi) >>> 1;
+
+        if (boxDistance2(query, node) > query.bound() || outside(query.from, node) || outside(query.to, node)) {
+            return;
+        }
+
+        double dx = x[node] - query.qx;
+        double dy = y[node] - query.qy;
+        double dz = z[node] - query.qz;
+        double dist2 = dx * dx + dy * dy + dz * dz;
+        if (dist2 <= query.bound() && inside(query.from, node) && inside(query.to, node)
+                && (query.filter == null || query.filter.test(stations[node]))) {
+            query.add(node, dist2);
+        }
+
+        double delta = switch (axis[node]) {
+            case 0 -> query.qx - x[node];
+            case 1 -> query.qy - y[node];
+            default -> query.qz - z[node];
+        };
+
+        // nearer half first, so that the bound shrinks sooner
+        if (delta < 0) {
+            search(query, lo, node);
+            search(query, node + 1, hi);
+        } else {
+            search(query, node + 1, hi);
+            search(query, lo, node);
+        }
+    }
+
+    private double boxDistance2(Query query, int node) {
+        double dx = Math.max(0, Math.max(minX[node] - query.qx, query.qx - maxX[node]));
+        double dy = Math.max(0, Math.max(minY[node] - query.qy, query.qy - maxY[node]));
+        double dz = Math.max(0, Math.max(minZ[node] - query.qz, query.qz - maxZ[node]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private boolean inside(double[] normal, int node) {
+        return normal == null || normal[0] * x[node] + normal[1] * y[node] + normal[2] * z[node] >= -EPS;
+    }
+
+    /**
+     * @return true if no point of the bounding box of the subtree is in the half-space
+     */
+    private boolean outside(double[] normal, int node) {
+        if (normal == null) {
+            return false;
+        }
+        double max = Math.max(normal[0] * minX[node], normal[0] * maxX[node])
+                + Math.max(normal[1] * minY[node], normal[1] * maxY[node])
+                + Math.max(normal[2] * minZ[node], normal[2] * maxZ[node]);
+        return max < -EPS;
+    }
+}
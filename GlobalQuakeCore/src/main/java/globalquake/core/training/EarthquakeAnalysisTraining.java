@@ -5,9 +5,12 @@ import globalquake.core.HypocsSettings;
 import globalquake.core.Settings;
 import globalquake.core.earthquake.EarthquakeAnalysis;
 import globalquake.core.earthquake.GQHypocs;
+import globalquake.core.earthquake.GeigerRelocation;
 import globalquake.core.earthquake.data.Cluster;
 import globalquake.core.earthquake.data.Hypocenter;
+import globalquake.core.earthquake.data.HypocenterFinderSettings;
 import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.earthquake.data.PreliminaryHypocenter;
 import globalquake.core.geo.taup.TauPTravelTimeCalculator;
 import globalquake.ui.ProgressUpdateFunction;
 import globalquake.utils.GeoUtils;
@@ -38,6 +41,22 @@ public class EarthquakeAnalysisTraining {
         Settings.hypocenterDetectionResolution = 0.0;
         Settings.pWaveInaccuracyThreshold = 4000.0;
         Settings.parallelHypocenterLocations = true;
+
+        if (args.length > 0 && args[0].equals("modes")) {
+            compareSearchModes(40);
+            System.exit(0);
+        }
+
+        if (args.length > 0 && args[0].equals("backends")) {
+            compareBackends(40);
+            System.exit(0);
+        }
+
+        if (args.length > 0 && args[0].equals("revisions")) {
+            compareRevisions(40);
+            System.exit(0);
+        }
+
         long sum = 0;
         long n = 0;
         long a  = System.currentTimeMillis();
@@ -67,6 +86,216 @@ public class EarthquakeAnalysisTraining {
     }
 
 
+    public record SearchResult(long duration, double distanceError, double depthError, long originError) {
+
+    }
+
+    /**
+     * Prints the accuracy against the time of the fixed and the adaptive CPU hypocenter search for increasing resolutions
+     */
+    public static void compareSearchModes(int seeds) {
+        boolean adaptive = EarthquakeAnalysis.ADAPTIVE_SEARCH;
+        double resolution = Settings.hypocenterDetectionResolution;
+
+        System.err.println("mode, resolution, time [ms], distance error [km], depth error [km], origin error [ms]");
+        for (boolean mode : new boolean[]{false, true}) {
+            EarthquakeAnalysis.ADAPTIVE_SEARCH = mode;
+            for (int res = 0; res <= 100; res += 20) {
+                Settings.hypocenterDetectionResolution = (double) res;
+                runSearch(0, STATIONS); // warmup
+
+                long duration = 0;
+                double dist = 0;
+                double depth = 0;
+                long origin = 0;
+                for (int seed = 1; seed <= seeds; seed++) {
+                    SearchResult result = runSearch(seed, STATIONS);
+                    duration += result.duration();
+                    dist += result.distanceError();
+                    depth += result.depthError();
+                    origin += result.originError();
+                }
+
+                System.err.printf("%s, %d, %.1f, %.1f, %.1f, %,d%n", mode ? "adaptive" : "fixed", res,
+                        duration / (double) seeds, dist / seeds, depth / seeds, origin / seeds);
+            }
+        }
+
+        EarthquakeAnalysis.ADAPTIVE_SEARCH = adaptive;
+        Settings.hypocenterDetectionResolution = resolution;
+    }
+
+    /**
+     * Prints the accuracy against the time of the CPU scan of the area, of {@link globalquake.core.earthquake.JavaHypocs}
+     * and of CUDA if it is loaded, for increasing resolutions
+     */
+    public static void compareBackends(int seeds) {
+        boolean javaHypocs = EarthquakeAnalysis.JAVA_HYPOCS;
+        double resolution = Settings.hypocenterDetectionResolution;
+        double resolutionGPU = Settings.hypocenterDetectionResolutionGPU;
+
+        List<String> backends = new ArrayList<>(List.of("scan", "java"));
+        if (GQHypocs.isCudaLoaded()) {
+            backends.add("cuda");
+        }
+
+        System.err.println("backend, resolution, time [ms], distance error [km], depth error [km], origin error [ms]");
+        for (String backend : backends) {
+            EarthquakeAnalysis.JAVA_HYPOCS = backend.equals("java");
+            boolean cuda = backend.equals("cuda");
+            for (int res = 0; res <= 100; res += 20) {
+                Settings.hypocenterDetectionResolution = (double) res;
+                Settings.hypocenterDetectionResolutionGPU = (double) res;
+                runSearch(0, STATIONS, cuda); // warmup
+
+                long duration = 0;
+                double dist = 0;
+                double depth = 0;
+                long origin = 0;
+                for (int seed = 1; seed <= seeds; seed++) {
+                    SearchResult result = runSearch(seed, STATIONS, cuda);
+                    duration += result.duration();
+                    dist += result.distanceError();
+                    depth += result.depthError();
+                    origin += result.originError();
+                }
+
+                System.err.printf("%s, %d, %.1f, %.1f, %.1f, %,d%n", backend, res,
+                        duration / (double) seeds, dist / seeds, depth / seeds, origin / seeds);
+            }
+        }
+
+        EarthquakeAnalysis.JAVA_HYPOCS = javaHypocs;
+        Settings.hypocenterDetectionResolution = resolution;
+        Settings.hypocenterDetectionResolutionGPU = resolutionGPU;
+    }
+
+    public static SearchResult runSearch(long seed, int stations) {
+        return runSearch(seed, stations, false);
+    }
+
+    /**
+     * Searches the hypocenter of a quake inside a random network with noisy picks, without any of the checks that follow
+     */
+    public static SearchResult runSearch(long seed, int stations, boolean cuda) {
+        Random r = new Random(seed);
+
+        List<FakeStation> fakeStations = new ArrayList<>();
+        List<PickedEvent> pickedEvents = new ArrayList<>();
+        Hypocenter correct = createSearchQuake(r, stations, fakeStations, pickedEvents);
+
+        Cluster cluster = new Cluster();
+        cluster.calculateRoot(fakeStations);
+
+        long start = System.nanoTime();
+        PreliminaryHypocenter result = new EarthquakeAnalysis().runHypocenterFinder(pickedEvents, cluster,
+                EarthquakeAnalysis.createSettings(cuda), true);
+        long duration = (System.nanoTime() - start) / 1_000_000;
+
+        return new SearchResult(duration, GeoUtils.greatCircleDistance(result.lat, result.lon, correct.lat, correct.lon),
+                Math.abs(result.depth - correct.depth), Math.abs(result.origin - correct.origin));
+    }
+
+    /**
+     * Prints the time and the accuracy of a late revision, when the last fifth of the picks arrives after the first
+     * location, by the search of the whole area and by {@link GeigerRelocation} from the first location
+     */
+    public static void compareRevisions(int seeds) {
+        HypocenterFinderSettings finderSettings = EarthquakeAnalysis.createSettings(false);
+
+        long searchTime = 0;
+        long relocationTime = 0;
+        double searchDist = 0;
+        double relocationDist = 0;
+        double searchDepth = 0;
+        double relocationDepth = 0;
+        int relocated = 0;
+
+        System.err.println("seed, search [ms], relocation [ms], search distance error [km], relocation distance error [km]");
+        for (int seed = 0; seed <= seeds; seed++) {
+            Random r = new Random(seed);
+            List<FakeStation> fakeStations = new ArrayList<>();
+            List<PickedEvent> pickedEvents = new ArrayList<>();
+            Hypocenter correct = createSearchQuake(r, STATIONS * 4, fakeStations, pickedEvents);
+
+            Cluster cluster = new Cluster();
+            cluster.calculateRoot(fakeStations);
+
+            EarthquakeAnalysis earthquakeAnalysis = new EarthquakeAnalysis();
+            List<PickedEvent> first = pickedEvents.subList(0, pickedEvents.size() * 4 / 5);
+            PreliminaryHypocenter previous = earthquakeAnalysis.runHypocenterFinder(first, cluster, finderSettings, true);
+
+            long start = System.nanoTime();
+            PreliminaryHypocenter search = earthquakeAnalysis.runHypocenterFinder(pickedEvents, cluster, finderSettings, true);
+            long searchDuration = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            PreliminaryHypocenter relocation = GeigerRelocation.relocate(pickedEvents, previous,
+                    previous.correctStations / (double) first.size(), finderSettings);
+            long relocationDuration = (System.nanoTime() - start) / 1_000_000;
+
+            if (seed == 0) {
+                continue; // warmup
+            }
+
+            double dist = GeoUtils.greatCircleDistance(search.lat, search.lon, correct.lat, correct.lon);
+            searchTime += searchDuration;
+            searchDist += dist;
+            searchDepth += Math.abs(search.depth - correct.depth);
+
+            if (relocation == null) {
+                System.err.printf("%d, %d, fallback, %.1f, -%n", seed, searchDuration, dist);
+                relocationTime += searchDuration;
+                relocationDist += dist;
+                relocationDepth += Math.abs(search.depth - correct.depth);
+                continue;
+            }
+
+            relocated++;
+            double relocationError = GeoUtils.greatCircleDistance(relocation.lat, relocation.lon, correct.lat, correct.lon);
+            System.err.printf("%d, %d, %d, %.1f, %.1f%n", seed, searchDuration, relocationDuration, dist, relocationError);
+            relocationTime += relocationDuration;
+            relocationDist += relocationError;
+            relocationDepth += Math.abs(relocation.depth - correct.depth);
+        }
+
+        System.err.printf("search: %.1f ms, %.1f km, depth %.1f km%n", searchTime / (double) seeds, searchDist / seeds, searchDepth / seeds);
+        System.err.printf("incremental (%d of %d relocated): %.1f ms, %.1f km, depth %.1f km%n", relocated, seeds,
+                relocationTime / (double) seeds, relocationDist / seeds, relocationDepth / seeds);
+    }
+
+    /**
+     * Random network around 0, 0 with noisy picks of a random quake, 20% of the picks are way off
+     *
+     * @return the correct hypocenter
+     */
+    private static Hypocenter createSearchQuake(Random r, int stations, List<FakeStation> fakeStations, List<PickedEvent> pickedEvents) {
+        for (int i = 0; i < stations; i++) {
+            double[] latLon = GeoUtils.moveOnGlobe(0, 0, r.nextDouble() * DIST, r.nextDouble() * 360.0);
+            fakeStations.add(new FakeStation(latLon[0], latLon[1]));
+        }
+
+        double[] epicenter = GeoUtils.moveOnGlobe(0, 0, r.nextDouble() * DIST * 0.5, r.nextDouble() * 360.0);
+        Hypocenter correct = new Hypocenter(epicenter[0], epicenter[1], r.nextDouble() * 300, 0, 0, 0, null, null);
+
+        for (FakeStation fakeStation : fakeStations) {
+            double distGC = GeoUtils.greatCircleDistance(correct.lat, correct.lon, fakeStation.lat, fakeStation.lon);
+            double travelTime = TauPTravelTimeCalculator.getPWaveTravelTime(correct.depth, TauPTravelTimeCalculator.toAngle(distGC));
+            if (travelTime < 0) {
+                continue;
+            }
+
+            long time = correct.origin + (long) (travelTime * 1000.0) + (long) ((r.nextDouble() - 0.5) * 1000);
+            if (r.nextDouble() < 0.2) {
+                time += (long) ((r.nextDouble() * 10.0 - 5.0) * INACCURACY);
+            }
+
+            pickedEvents.add(new PickedEvent(time, fakeStation.lat, fakeStation.lon, 0, 100));
+        }
+
+        return correct;
+    }
+
     public static void calibrateResolution(ProgressUpdateFunction progressUpdateFunction, JSlider slider, boolean cpu) {
         double resolution = 0.0;
         long lastTime;
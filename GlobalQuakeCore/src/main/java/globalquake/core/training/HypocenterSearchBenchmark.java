@@ -0,0 +1,210 @@
+package globalquake.core.training;
+
+import globalquake.core.Settings;
+import globalquake.core.earthquake.EarthquakeAnalysis;
+import globalquake.core.earthquake.ExactPickedEvents;
+import globalquake.core.earthquake.data.HypocenterFinderSettings;
+import globalquake.core.earthquake.data.HypocenterFinderThreadData;
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.earthquake.data.PreliminaryHypocenter;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.utils.GeoUtils;
+import globalquake.utils.QuickSelect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the throughput of the hypocenter search, in points per second, for 16, 60 and 200 picks.
+ * Every point calculates the angles to all stations and evaluates as many depths as the ternary depth search
+ * of the fixed search at the default resolution.
+ * Compares the previous implementation (an object per event and a lookup per event), with sorting all origins
+ * and with {@link QuickSelect}, to {@link ExactPickedEvents} and {@link EarthquakeAnalysis#analyseHypocenter}.
+ */
+@SuppressWarnings("unused")
+public class HypocenterSearchBenchmark {
+
+    private static final int[] PICKS = {16, 60, 200};
+    private static final int POINTS = 20_000;
+
+    // 2 initial depths, 8 iterations of the ternary search at resolution 40 and the 0 and 10 km checks
+    private static final int DEPTHS_PER_POINT = 12;
+
+    private static double sink;
+
+    public static void main(String[] args) throws Exception {
+        TauPTravelTimeCalculator.init();
+
+        HypocenterFinderSettings finderSettings = new HypocenterFinderSettings(Settings.pWaveInaccuracyThresholdDefault,
+                Settings.hypocenterCorrectThresholdDefault, 40.0, 40.0, 4, false);
+
+        for (int picks : PICKS) {
+            List<PickedEvent> events = createEvents(picks, new Random(picks));
+            double[][] points = createPoints(new Random(-picks));
+
+            check(events, points, finderSettings);
+
+            for (int i = 0; i < 3; i++) {
+                runLegacy("sort", events, points, finderSettings, true);
+                runLegacy("scalar", events, points, finderSettings, false);
+                run(events, points, finderSettings);
+            }
+        }
+    }
+
+    private static void runLegacy(String name, List<PickedEvent> events, double[][] points, HypocenterFinderSettings finderSettings, boolean sort) {
+        List<LegacyEvent> legacyEvents = events.stream().map(LegacyEvent::new).toList();
+        HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(events.size());
+        long a = System.nanoTime();
+        for (double[] point : points) {
+            calculateDistances(legacyEvents, point[0], point[1]);
+            for (int d = 0; d < DEPTHS_PER_POINT; d++) {
+                legacyAnalyseHypocenter(threadData.hypocenterA, point[0], point[1], d * 50.0, legacyEvents, finderSettings, threadData, sort);
+                sink += threadData.hypocenterA.err;
+            }
+        }
+        print(name, events.size(), points.length, System.nanoTime() - a);
+    }
+
+    private static void run(List<PickedEvent> events, double[][] points, HypocenterFinderSettings finderSettings) {
+        ExactPickedEvents exactPickedEvents = new ExactPickedEvents(events);
+        HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(events.size());
+        long a = System.nanoTime();
+        for (double[] point : points) {
+            exactPickedEvents.calculateAngles(point[0], point[1]);
+            for (int d = 0; d < DEPTHS_PER_POINT; d++) {
+                EarthquakeAnalysis.analyseHypocenter(threadData.hypocenterA, point[0], point[1], d * 50.0, exactPickedEvents, finderSettings, threadData);
+                sink += threadData.hypocenterA.err;
+            }
+        }
+        print("batched", events.size(), points.length, System.nanoTime() - a);
+    }
+
+    private static void print(String name, int picks, int points, long nanos) {
+        System.out.printf("%3d picks %-10s %,12.0f points/s%n", picks, name, points / (nanos / 1e9));
+    }
+
+    private static void check(List<PickedEvent> events, double[][] points, HypocenterFinderSettings finderSettings) {
+        List<LegacyEvent> legacyEvents = events.stream().map(LegacyEvent::new).toList();
+        ExactPickedEvents exactPickedEvents = new ExactPickedEvents(events);
+        HypocenterFinderThreadData threadData = new HypocenterFinderThreadData(events.size());
+        for (int p = 0; p < 500; p++) {
+            calculateDistances(legacyEvents, points[p][0], points[p][1]);
+            exactPickedEvents.calculateAngles(points[p][0], points[p][1]);
+            for (int d = 0; d < DEPTHS_PER_POINT; d++) {
+                legacyAnalyseHypocenter(threadData.hypocenterA, 0, 0, d * 50.0, legacyEvents, finderSettings, threadData, true);
+                EarthquakeAnalysis.analyseHypocenter(threadData.hypocenterB, 0, 0, d * 50.0, exactPickedEvents, finderSettings, threadData);
+                PreliminaryHypocenter a = threadData.hypocenterA;
+                PreliminaryHypocenter b = threadData.hypocenterB;
+                // the errors are summed in a different order
+                boolean same = a.correctStations == b.correctStations && (a.err == Double.MAX_VALUE ? b.err == Double.MAX_VALUE
+                        : a.origin == b.origin && Math.abs(a.err - b.err) <= 1e-9 * a.err);
+                if (!same) {
+                    throw new IllegalStateException("Hypocenters differ!");
+                }
+            }
+        }
+    }
+
+    private static List<PickedEvent> createEvents(int picks, Random r) {
+        List<PickedEvent> result = new ArrayList<>();
+        for (int i = 0; i < picks; i++) {
+            double[] latLon = GeoUtils.moveOnGlobe(0, 0, r.nextDouble() * 3000, r.nextDouble() * 360);
+            double travel = TauPTravelTimeCalculator.getPWaveTravelTime(10, TauPTravelTimeCalculator.toAngle(
+                    GeoUtils.greatCircleDistance(0, 0, latLon[0], latLon[1])));
+            long pWave = (long) (travel * 1000) + r.nextLong(2000) - 1000;
+            result.add(new PickedEvent(pWave, latLon[0], latLon[1], r.nextDouble() * 2000, 100));
+        }
+        return result;
+    }
+
+    /**
+     * Random points of a search around the epicenter
+     */
+    private static double[][] createPoints(Random r) {
+        double[][] result = new double[POINTS][];
+        for (int p = 0; p < POINTS; p++) {
+            result[p] = GeoUtils.moveOnGlobe(0, 0, r.nextDouble() * 2500, r.nextDouble() * 360);
+        }
+        return result;
+    }
+
+    private static final class LegacyEvent {
+        final PickedEvent event;
+        double angle;
+
+        LegacyEvent(PickedEvent event) {
+            this.event = event;
+        }
+    }
+
+    private static void calculateDistances(List<LegacyEvent> pickedEvents, double lat, double lon) {
+        for (LegacyEvent event : pickedEvents) {
+            event.angle = TauPTravelTimeCalculator.toAngle(GeoUtils.greatCircleDistance(event.event.lat(),
+                    event.event.lon(), lat, lon));
+        }
+    }
+
+    /**
+     * The implementation before {@link ExactPickedEvents}, sorting all origins before {@link QuickSelect}
+     */
+    private static void legacyAnalyseHypocenter(PreliminaryHypocenter hypocenter, double lat, double lon, double depth,
+                                                List<LegacyEvent> events, HypocenterFinderSettings finderSettings,
+                                                HypocenterFinderThreadData threadData, boolean sort) {
+        int c = 0;
+
+        for (LegacyEvent event : events) {
+            double travelTime = TauPTravelTimeCalculator.getPWaveTravelTimeFast(depth, event.angle);
+            if (travelTime == TauPTravelTimeCalculator.NO_ARRIVAL) {
+                threadData.origins[c] = Long.MIN_VALUE;
+                c++;
+                continue;
+            }
+
+            travelTime += EarthquakeAnalysis.getElevationCorrection(event.event.elevation());
+
+            long origin = event.event.pWave() - ((long) (travelTime * 1000));
+            threadData.origins[c] = origin;
+            c++;
+        }
+
+        long bestOrigin;
+        if (sort) {
+            Arrays.sort(threadData.origins);
+            bestOrigin = threadData.origins[(threadData.origins.length - 1) / 2];
+        } else {
+            bestOrigin = QuickSelect.select(threadData.origins, 0, threadData.origins.length, (threadData.origins.length - 1) / 2);
+        }
+
+        if (bestOrigin == Long.MIN_VALUE) {
+            hypocenter.err = Double.MAX_VALUE;
+            hypocenter.correctStations = 0;
+            return;
+        }
+
+        double err = 0;
+        int acc = 0;
+
+        for (long orign : threadData.origins) {
+            double _err = Math.abs(orign - bestOrigin);
+            if (_err < finderSettings.pWaveInaccuracyThreshold()) {
+                acc++;
+            } else {
+                _err = (_err - finderSettings.pWaveInaccuracyThreshold()) * 0.2 + finderSettings.pWaveInaccuracyThreshold();
+            }
+
+            _err /= 1000;
+
+            err += _err * _err;
+        }
+
+        hypocenter.lat = lat;
+        hypocenter.lon = lon;
+        hypocenter.depth = depth;
+        hypocenter.origin = bestOrigin;
+        hypocenter.err = err;
+        hypocenter.correctStations = acc;
+    }
+}
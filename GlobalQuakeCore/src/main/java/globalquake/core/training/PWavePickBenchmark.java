@@ -0,0 +1,130 @@
+package globalquake.core.training;
+
+import globalquake.core.analysis.Event;
+import globalquake.core.analysis.PWavePicker;
+import globalquake.core.analysis.WaveformBuffer;
+import globalquake.core.analysis.WaveformView;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the P wave picker over synthetic event windows at every recalculation level and compares
+ * the previous implementation (boxed list and full sort) with {@link PWavePicker}.
+ * <p>
+ * No recorded data is used, the windows are generated: 40 and 100 sps stations with noise and an emergent P arrival.
+ */
+@SuppressWarnings("unused")
+public class PWavePickBenchmark {
+
+    private static final int EVENTS = 500;
+    private static final int ROUNDS = 10;
+
+    private record SyntheticEvent(WaveformView view, long start) {
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        List<SyntheticEvent> events = createEvents();
+
+        for (SyntheticEvent event : events) {
+            for (int level = 0; level < Event.RECALCULATE_P_WAVE_THRESHOLDS.length; level++) {
+                if (legacyPick(event.view(), event.start(), level) != PWavePicker.get().pick(event.view(), event.start(), level)) {
+                    throw new IllegalStateException("Picks differ!");
+                }
+            }
+        }
+
+        for (int i = 0; i < 5; i++) {
+            run("sort", events, PWavePickBenchmark::legacyPick);
+            run("quickselect", events, (view, start, level) -> PWavePicker.get().pick(view, start, level));
+        }
+    }
+
+    interface Picker {
+        long pick(WaveformView view, long start, int level);
+    }
+
+    private static void run(String name, List<SyntheticEvent> events, Picker picker) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long a = System.nanoTime();
+        long picks = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (SyntheticEvent event : events) {
+                for (int level = 0; level < Event.RECALCULATE_P_WAVE_THRESHOLDS.length; level++) {
+                    sink += picker.pick(event.view(), event.start(), level);
+                    picks++;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - a;
+        allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+        System.out.printf("%-12s %8.1f us/pick, %9.1f bytes allocated/pick%n", name, nanos / 1000.0 / picks, allocated / (double) picks);
+    }
+
+    private static List<SyntheticEvent> createEvents() {
+        Random random = new Random(0);
+        List<SyntheticEvent> result = new ArrayList<>();
+        for (int i = 0; i < EVENTS; i++) {
+            double sps = i % 2 == 0 ? 40 : 100;
+            WaveformBuffer buffer = new WaveformBuffer(sps, 300, true);
+            long pWave = 200_000 + random.nextInt(20_000);
+            double amplitude = 2 + random.nextDouble() * 50;
+            for (long sample = 0; sample < 230 * sps; sample++) {
+                long time = (long) (sample * 1000 / sps);
+                double noise = 1 + Math.abs(random.nextGaussian()) * 0.3;
+                double signal = time < pWave ? 0 : amplitude * Math.min(1, (time - pWave) / 2000.0);
+                buffer.log(time, 0, 0, (float) (noise + signal), (float) (1 + signal * 0.3), 1, (float) (2 + signal + noise), false);
+            }
+
+            long start = pWave + 500 + random.nextInt(3000);
+            result.add(new SyntheticEvent(buffer.createView(start - 90_000), start));
+        }
+        return result;
+    }
+
+    private static long legacyPick(WaveformView view, long start, int strengthLevel) {
+        long lookBack = (start - (long) ((60.0 / strengthLevel) * 1000));
+        List<Double> slows = new ArrayList<>();
+        double maxSpecial = -Double.MAX_VALUE;
+        double minSpecial = Double.MAX_VALUE;
+
+        long seqLookBack = view.getClosestSeq(lookBack);
+        long lookBackTime = view.getTime(seqLookBack);
+        while (seqLookBack != view.getEndSeq() && lookBackTime <= start) {
+            slows.add(view.getMediumRatio(seqLookBack));
+            double spec = view.getSpecialRatio(seqLookBack);
+            if (spec > 0) {
+                maxSpecial = Math.max(maxSpecial, spec);
+                minSpecial = Math.min(minSpecial, spec);
+            }
+            seqLookBack++;
+            lookBackTime = view.getTime(seqLookBack);
+        }
+
+        maxSpecial = Math.max(minSpecial * 5.0, maxSpecial);
+        Collections.sort(slows);
+        double slow15Pct = slows.get((int) ((slows.size() - 1) * 0.175));
+        double mul = Event.SPECIAL_PERCENTILE[strengthLevel] * 1.1;
+        double specialThreshold = maxSpecial * mul + (1 - mul) * minSpecial;
+
+        long seq = view.getClosestSeq(start);
+        long time = view.getTime(seq);
+        while (seq != view.getStartSeq() && time >= lookBack) {
+            boolean ratioOK = view.getRatio(seq) <= slow15Pct * (Event.SLOW_THRESHOLD_MULTIPLIERS[strengthLevel] * 1.25);
+            boolean specialOK = view.getSpecialRatio(seq) <= specialThreshold;
+            if (time <= start && ratioOK && specialOK) {
+                return time;
+            }
+            seq--;
+            time = view.getTime(seq);
+        }
+        return -1;
+    }
+}
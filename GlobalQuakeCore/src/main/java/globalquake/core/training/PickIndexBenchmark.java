@@ -0,0 +1,110 @@
+package globalquake.core.training;
+
+import globalquake.core.analysis.Event;
+import globalquake.core.earthquake.ClusterAnalysis;
+import globalquake.core.earthquake.PickIndex;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.core.station.AbstractStation;
+import globalquake.utils.GeoUtils;
+
+import java.util.*;
+
+/**
+ * Measures the association of picks to quakes during a swarm of three quakes, checking every pick of every station
+ * against every quake compared to querying a {@link PickIndex} and confirming only its candidates.
+ */
+@SuppressWarnings("unused")
+public class PickIndexBenchmark {
+
+    private static final int STATIONS = 10_000;
+    private static final int QUAKES = 3;
+    private static final int NOISE_PICKS_PER_STATION = 2;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        TauPTravelTimeCalculator.init();
+
+        Random r = new Random(0);
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(STATIONS, r);
+
+        // three quakes within a minute in the same region
+        double[][] quakes = new double[QUAKES][];
+        long start = 1_000_000;
+        for (int i = 0; i < QUAKES; i++) {
+            double[] pos = GeoUtils.moveOnGlobe(35, 139, r.nextDouble() * 200, r.nextDouble() * 360);
+            quakes[i] = new double[]{pos[0], pos[1], r.nextDouble() * 50, start + i * 20_000L};
+        }
+
+        List<Event> events = new ArrayList<>();
+        for (AbstractStation station : stations) {
+            double[] quake = quakes[r.nextInt(QUAKES)];
+            double dist = GeoUtils.greatCircleDistance(quake[0], quake[1], station.getLatitude(), station.getLongitude());
+            double travel = TauPTravelTimeCalculator.getPWaveTravelTime(quake[2], TauPTravelTimeCalculator.toAngle(dist));
+            if (travel >= 0 && dist < 3000) {
+                events.add(createEvent(station, (long) quake[3] + (long) (travel * 1000) + r.nextLong(2000) - 1000));
+            }
+            for (int i = 0; i < NOISE_PICKS_PER_STATION; i++) {
+                events.add(createEvent(station, start - 600_000 + r.nextLong(1_200_000)));
+            }
+        }
+
+        System.out.printf("%d stations, %d picks, %d quakes%n", STATIONS, events.size(), QUAKES);
+
+        long bruteForce = 0;
+        long indexed = 0;
+        long build = 0;
+        PickIndex pickIndex = new PickIndex();
+        for (int round = 0; round < ROUNDS; round++) {
+            long a = System.nanoTime();
+            List<Set<Event>> expected = new ArrayList<>();
+            for (double[] quake : quakes) {
+                Set<Event> set = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Event event : events) {
+                    if (couldBeArrival(event, quake)) {
+                        set.add(event);
+                    }
+                }
+                expected.add(set);
+            }
+            bruteForce += System.nanoTime() - a;
+
+            a = System.nanoTime();
+            pickIndex.clear();
+            for (Event event : events) {
+                pickIndex.add(event);
+            }
+            long b = System.nanoTime();
+            build += b - a;
+
+            List<Set<Event>> actual = new ArrayList<>();
+            for (double[] quake : quakes) {
+                Set<Event> set = Collections.newSetFromMap(new IdentityHashMap<>());
+                pickIndex.forEachCandidate(quake[0], quake[1], quake[2], (long) quake[3], false, PickIndex.INCREASING_P_WINDOW, event -> {
+                    if (couldBeArrival(event, quake)) {
+                        set.add(event);
+                    }
+                });
+                actual.add(set);
+            }
+            indexed += System.nanoTime() - a;
+
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Associated picks differ!");
+            }
+        }
+
+        System.out.printf("brute force %.2f ms, index %.2f ms (build %.2f ms) per pass%n",
+                bruteForce / 1e6 / ROUNDS, indexed / 1e6 / ROUNDS, build / 1e6 / ROUNDS);
+    }
+
+    private static Event createEvent(AbstractStation station, long pWave) {
+        Event event = new Event(station.getAnalysis());
+        event.setpWave(pWave);
+        return event;
+    }
+
+    private static boolean couldBeArrival(Event event, double[] quake) {
+        return ClusterAnalysis.couldBeArrival(event.getLatFromStation(), event.getLonFromStation(), event.getElevationFromStation(),
+                event.getpWave(), quake[0], quake[1], quake[2], (long) quake[3], 0, false, true, false);
+    }
+}
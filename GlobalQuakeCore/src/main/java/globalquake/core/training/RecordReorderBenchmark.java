@@ -0,0 +1,166 @@
+package globalquake.core.training;
+
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import globalquake.core.station.RecordReorderBuffer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Compares the old synchronized TreeSet record queue of GlobalStation with {@link RecordReorderBuffer}.
+ * Several producer threads feed records of their own stations while one consumer drains all stations in a loop,
+ * like the seedlink I/O threads and the station analysis thread do.
+ */
+@SuppressWarnings("unused")
+public class RecordReorderBenchmark {
+
+    private static final int STATIONS = 4000;
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS_PER_STATION = 200;
+
+    interface Queue {
+        void add(DataRecord dataRecord);
+
+        void drain(Consumer<DataRecord> consumer);
+    }
+
+    static class LegacyQueue implements Queue {
+        private final Object lock = new Object();
+        private final SortedSet<DataRecord> records = new TreeSet<>(Comparator.comparing(dataRecord -> dataRecord.getStartBtime().toInstant().toEpochMilli()));
+
+        @Override
+        public void add(DataRecord dataRecord) {
+            synchronized (lock) {
+                records.add(dataRecord);
+            }
+        }
+
+        @Override
+        public void drain(Consumer<DataRecord> consumer) {
+            synchronized (lock) {
+                while (!records.isEmpty()) {
+                    DataRecord oldest = records.first();
+                    oldest.getStartBtime().toInstant();
+                    records.last().getPredictedNextStartBtime().toInstant();
+                    records.remove(oldest);
+                    consumer.accept(oldest);
+                }
+            }
+        }
+    }
+
+    static class RingQueue implements Queue {
+        private final RecordReorderBuffer buffer = new RecordReorderBuffer();
+
+        @Override
+        public void add(DataRecord dataRecord) {
+            while (!buffer.offer(dataRecord)) {
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public void drain(Consumer<DataRecord> consumer) {
+            buffer.drain(consumer);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<DataRecord> records = createRecords();
+        for (int i = 0; i < 3; i++) {
+            run("synchronized TreeSet", LegacyQueue::new, records);
+            run("lock-free ring", RingQueue::new, records);
+        }
+    }
+
+    private static List<DataRecord> createRecords() {
+        List<DataRecord> result = new ArrayList<>();
+        Instant start = Instant.now();
+        for (int i = 0; i < RECORDS_PER_STATION; i++) {
+            DataHeader header = new DataHeader(i, 'D', false);
+            header.setStationIdentifier("TEST");
+            header.setNetworkCode("XX");
+            header.setChannelIdentifier("BHZ");
+            header.setLocationIdentifier("00");
+            // swap neighbours to simulate jitter
+            int index = i % 8 == 3 ? i + 1 : i % 8 == 4 ? i - 1 : i;
+            header.setStartBtime(new Btime(start.plusMillis(index * 5000L)));
+            header.setNumSamples((short) 100);
+            header.setSampleRate(20.0);
+            result.add(new DataRecord(header));
+        }
+        return result;
+    }
+
+    private static void run(String name, java.util.function.Supplier<Queue> factory, List<DataRecord> records) throws Exception {
+        Queue[] queues = new Queue[STATIONS];
+        for (int i = 0; i < STATIONS; i++) {
+            queues[i] = factory.get();
+        }
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        boolean contentionMonitoring = threadMXBean.isThreadContentionMonitoringSupported();
+        if (contentionMonitoring) {
+            threadMXBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        AtomicLong consumed = new AtomicLong();
+        AtomicLong producerNanos = new AtomicLong();
+        AtomicLong blockedCount = new AtomicLong();
+        AtomicLong blockedMs = new AtomicLong();
+
+        Thread consumer = new Thread(() -> {
+            Consumer<DataRecord> sink = dataRecord -> consumed.incrementAndGet();
+            while (producing.get() || consumed.get() < (long) STATIONS * RECORDS_PER_STATION) {
+                for (Queue queue : queues) {
+                    queue.drain(sink);
+                }
+            }
+        }, "Consumer");
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int offset = p;
+            producers.add(new Thread(() -> {
+                long a = System.nanoTime();
+                for (DataRecord dataRecord : records) {
+                    for (int s = offset; s < STATIONS; s += PRODUCERS) {
+                        queues[s].add(dataRecord);
+                    }
+                }
+                producerNanos.addAndGet(System.nanoTime() - a);
+
+                ThreadInfo info = threadMXBean.getThreadInfo(Thread.currentThread().getId());
+                blockedCount.addAndGet(info.getBlockedCount());
+                blockedMs.addAndGet(Math.max(0, info.getBlockedTime()));
+            }, "Producer #" + p));
+        }
+
+        long a = System.nanoTime();
+        consumer.start();
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        producing.set(false);
+        consumer.join(60_000);
+        long total = System.nanoTime() - a;
+
+        long adds = (long) STATIONS * RECORDS_PER_STATION;
+        System.out.printf("%-22s total %6.1f ms, %6.1f ns/add per producer, consumed %d/%d, producer blocked %d times (%d ms)%n",
+                name, total / 1e6, producerNanos.get() / (double) adds, consumed.get(), adds, blockedCount.get(), blockedMs.get());
+    }
+}
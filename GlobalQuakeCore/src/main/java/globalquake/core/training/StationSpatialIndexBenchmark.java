@@ -0,0 +1,113 @@
+package globalquake.core.training;
+
+import globalquake.core.station.AbstractStation;
+import globalquake.core.station.GlobalStationManager;
+import globalquake.core.station.NearbyStationDistanceInfo;
+import globalquake.utils.GeoUtils;
+
+import java.util.*;
+
+/**
+ * Compares {@link GlobalStationManager#createListOfClosestStations(Collection)} with the previous implementation,
+ * which measured the distance between every pair of stations.
+ * <p>
+ * Stations are placed like the real networks: most of them in a few dense regions and the rest spread over the globe.
+ */
+@SuppressWarnings("unused")
+public class StationSpatialIndexBenchmark {
+
+    private static final int RAYS = 9;
+    private static final int STATIONS_PER_RAY = 3;
+
+    public static void main(String[] args) {
+        for (int numStations : new int[]{5_000, 20_000, 50_000}) {
+            List<AbstractStation> stations = createStations(numStations, new Random(numStations));
+
+            long a = System.currentTimeMillis();
+            GlobalStationManager.createListOfClosestStations(stations);
+            long indexed = System.currentTimeMillis() - a;
+
+            Map<AbstractStation, Set<NearbyStationDistanceInfo>> expected = new HashMap<>();
+            a = System.currentTimeMillis();
+            createListOfClosestStationsBruteForce(stations, expected);
+            long bruteForce = System.currentTimeMillis() - a;
+
+            for (AbstractStation station : stations) {
+                if (!new HashSet<>(station.getNearbyStations()).equals(expected.get(station))) {
+                    throw new IllegalStateException("Nearby stations differ!");
+                }
+            }
+
+            System.out.printf("%d stations: brute force %d ms, index %d ms%n", numStations, bruteForce, indexed);
+        }
+    }
+
+    public static List<AbstractStation> createStations(int numStations, Random r) {
+        List<AbstractStation> stations = new ArrayList<>();
+        double[][] regions = {{35, 139}, {37, -120}, {46, 10}, {-33, -71}, {38, 23}, {-41, 174}};
+        for (int i = 0; i < numStations; i++) {
+            double[] vals;
+            if (i % 4 == 0) {
+                vals = new double[]{Math.toDegrees(Math.asin(r.nextDouble() * 2 - 1)), r.nextDouble() * 360 - 180};
+            } else {
+                double[] region = regions[r.nextInt(regions.length)];
+                vals = GeoUtils.moveOnGlobe(region[0], region[1], Math.abs(r.nextGaussian()) * 600, r.nextDouble() * 360.0);
+            }
+            stations.add(new ClusterAnalysisTraining.SimulatedStation(vals[0], vals[1], 0));
+        }
+        return stations;
+    }
+
+    /**
+     * The previous implementation, O(N²)
+     */
+    public static void createListOfClosestStationsBruteForce(Collection<AbstractStation> stations,
+                                                             Map<AbstractStation, Set<NearbyStationDistanceInfo>> output) {
+        Map<AbstractStation, Set<NearbyStationDistanceInfo>> results = new java.util.concurrent.ConcurrentHashMap<>();
+        stations.parallelStream().forEach(station -> {
+            @SuppressWarnings("unchecked") Queue<NearbyStationDistanceInfo>[] rays = new Queue[RAYS];
+            for (int i = 0; i < RAYS; i++) {
+                rays[i] = new PriorityQueue<>(Comparator.comparing(NearbyStationDistanceInfo::dist));
+            }
+
+            for (AbstractStation station2 : stations) {
+                if (!(station2.getId() == station.getId())) {
+                    double dist = GeoUtils.greatCircleDistance(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
+                            station2.getLongitude());
+
+                    if (dist > 4000) {
+                        continue;
+                    }
+
+                    double ang = GeoUtils.calculateAngle(station.getLatitude(), station.getLongitude(), station2.getLatitude(),
+                            station2.getLongitude());
+                    int ray = (int) ((ang / 360.0) * (RAYS - 1.0));
+
+                    NearbyStationDistanceInfo nearbyStationDistanceInfo = new NearbyStationDistanceInfo(station2, (float) dist, (float) ang);
+
+                    rays[ray].add(nearbyStationDistanceInfo);
+                    rays[(ray + 1) % RAYS].add(nearbyStationDistanceInfo);
+                    rays[(ray + RAYS - 1) % RAYS].add(nearbyStationDistanceInfo);
+                }
+            }
+
+            Set<NearbyStationDistanceInfo> result = new HashSet<>();
+            for (Queue<NearbyStationDistanceInfo> ray : rays) {
+                int count = 0;
+                while (count < STATIONS_PER_RAY && !ray.isEmpty()) {
+                    NearbyStationDistanceInfo stationDistanceInfo = ray.remove();
+                    if (result.add(stationDistanceInfo)) {
+                        count++;
+                    }
+
+                    if (stationDistanceInfo.dist() > 1000) {
+                        break;
+                    }
+                }
+            }
+
+            results.put(station, result);
+        });
+        output.putAll(results);
+    }
+}
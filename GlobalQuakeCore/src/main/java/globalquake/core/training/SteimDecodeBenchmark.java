@@ -0,0 +1,164 @@
+package globalquake.core.training;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim2;
+import edu.iris.dmc.seedcodec.SteimFrameBlock;
+import edu.sc.seis.seisFile.mseed.Blockette1000;
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedRecord;
+import globalquake.core.analysis.SteimDecoder;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the old per-record decode path (decompress() into a new array, per-sample time and clock) with
+ * {@link SteimDecoder} writing into a reused buffer.
+ * <p>
+ * Pass a miniSEED file as the first argument to benchmark recorded data, otherwise synthetic Steim2 records are used.
+ */
+@SuppressWarnings("unused")
+public class SteimDecodeBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        List<DataRecord> records = args.length > 0 ? readRecords(new File(args[0])) : createRecords(5000);
+        long samples = records.stream().mapToLong(dataRecord -> dataRecord.getHeader().getNumSamples()).sum();
+        System.out.printf("%d records, %d samples%n", records.size(), samples);
+
+        for (int i = 0; i < 5; i++) {
+            run("decompress()", records, samples, SteimDecodeBenchmark::legacy);
+            run("SteimDecoder", records, samples, SteimDecodeBenchmark::batched);
+        }
+    }
+
+    interface Decoder {
+        void decode(List<DataRecord> records) throws Exception;
+    }
+
+    private static void run(String name, List<DataRecord> records, long samples, Decoder decoder) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long a = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            decoder.decode(records);
+        }
+        long nanos = System.nanoTime() - a;
+        allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+        System.out.printf("%-14s %6.2f ns/sample, %8.1f bytes allocated/record%n", name,
+                nanos / (double) (samples * ROUNDS), allocated / (double) (records.size() * ROUNDS));
+    }
+
+    private static void legacy(List<DataRecord> records) throws Exception {
+        for (DataRecord dataRecord : records) {
+            long startTime = dataRecord.getStartBtime().toInstant().toEpochMilli();
+            int[] data = dataRecord.decompress().getAsInt();
+            int i = 0;
+            for (int v : data) {
+                long time = startTime + (long) (i * (1000.0 / dataRecord.getSampleRate()));
+                consume(v, time, System.currentTimeMillis());
+                i++;
+            }
+        }
+    }
+
+    private static final int[] buffer = new int[4096];
+
+    private static void batched(List<DataRecord> records) throws Exception {
+        for (DataRecord dataRecord : records) {
+            long startTime = dataRecord.getStartBtime().toInstant().toEpochMilli();
+            Blockette1000 b1000 = (Blockette1000) dataRecord.getUniqueBlockette(1000);
+            int count = SteimDecoder.decode(b1000.getEncodingFormat(), dataRecord.getData(),
+                    dataRecord.getHeader().getNumSamples(), b1000.isLittleEndian(), buffer);
+            long currentTime = System.currentTimeMillis();
+            double step = 1000.0 / dataRecord.getSampleRate();
+            for (int i = 0; i < count; i++) {
+                consume(buffer[i], startTime + (long) (i * step), currentTime);
+            }
+        }
+    }
+
+    private static void consume(int v, long time, long currentTime) {
+        sink += v + time + currentTime;
+    }
+
+    private static List<DataRecord> readRecords(File file) throws Exception {
+        List<DataRecord> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            while (true) {
+                SeedRecord seedRecord = SeedRecord.read(in);
+                if (seedRecord instanceof DataRecord dataRecord) {
+                    Blockette1000 b1000 = (Blockette1000) dataRecord.getUniqueBlockette(1000);
+                    if (b1000 != null && SteimDecoder.isSupported(b1000.getEncodingFormat())) {
+                        result.add(dataRecord);
+                    }
+                }
+            }
+        } catch (EOFException ignored) {
+        }
+        return result;
+    }
+
+    /**
+     * Records shaped like a broadband channel: microseism, noise and a few bursts
+     */
+    private static List<DataRecord> createRecords(int count) throws Exception {
+        Random random = new Random(0);
+        List<DataRecord> result = new ArrayList<>();
+        Instant time = Instant.parse("2024-01-01T00:00:00Z");
+        double sps = 40.0;
+        int[] pending = new int[0];
+        long sample = 0;
+
+        while (result.size() < count) {
+            int[] data = Arrays.copyOf(pending, 2000);
+            for (int i = pending.length; i < data.length; i++, sample++) {
+                double t = sample / sps;
+                double burst = (sample / 4000) % 10 == 0 ? 20000 * Math.sin(t * 12) : 0;
+                data[i] = (int) (3000 * Math.sin(t * 2 * Math.PI / 6.0) + 200 * random.nextGaussian() + burst);
+            }
+
+            SteimFrameBlock block = Steim2.encode(data, 7);
+            int n = block.getNumSamples();
+
+            DataHeader header = new DataHeader(result.size() + 1, 'D', false);
+            header.setStationIdentifier("TEST");
+            header.setNetworkCode("XX");
+            header.setChannelIdentifier("BHZ");
+            header.setLocationIdentifier("00");
+            header.setStartBtime(new Btime(time));
+            header.setNumSamples((short) n);
+            header.setSampleRate(sps);
+
+            Blockette1000 b1000 = new Blockette1000();
+            b1000.setEncodingFormat((byte) B1000Types.STEIM2);
+            b1000.setWordOrder((byte) 1);
+            b1000.setDataRecordLength((byte) 9);
+
+            DataRecord dataRecord = new DataRecord(header);
+            dataRecord.addBlockette(b1000);
+            dataRecord.setData(block.getEncodedData());
+            dataRecord.setRecordSize(512);
+            // round trip so that the record looks exactly like one read from the network
+            result.add((DataRecord) SeedRecord.read(dataRecord.toByteArray()));
+
+            time = time.plusMillis((long) (n * 1000.0 / sps));
+            pending = Arrays.copyOfRange(data, n, data.length);
+        }
+        return result;
+    }
+}
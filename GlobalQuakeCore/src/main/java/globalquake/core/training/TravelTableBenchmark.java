@@ -0,0 +1,97 @@
+package globalquake.core.training;
+
+import globalquake.core.geo.taup.TauPTravelTable;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.core.geo.taup.TravelTimeGrid;
+
+import java.util.Random;
+
+/**
+ * Measures P wave travel time lookups per second of the interpolation in the nested float[depth][angle] table
+ * and of {@link TravelTimeGrid}, one lookup at a time and in batches of angles at the same depth.
+ */
+@SuppressWarnings("unused")
+public class TravelTableBenchmark {
+
+    private static final int LOOKUPS = 4_000_000;
+    private static final int BATCH = 200;
+
+    private static double sink;
+
+    public static void main(String[] args) throws Exception {
+        TauPTravelTimeCalculator.init();
+        TravelTimeGrid grid = TauPTravelTimeCalculator.getPWaveGrid();
+        float[][] table = grid.toArray();
+
+        Random r = new Random(0);
+        double[] depths = new double[LOOKUPS / BATCH];
+        double[] angles = new double[LOOKUPS];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = r.nextDouble() * 700;
+        }
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = r.nextDouble() * 100;
+        }
+
+        double[] batchAngles = new double[BATCH];
+        double[] result = new double[BATCH];
+
+        for (int run = 0; run < 5; run++) {
+            long a = System.nanoTime();
+            for (int i = 0; i < angles.length; i++) {
+                sink += interpolate(table, depths[i / BATCH], angles[i]);
+            }
+            print("array", System.nanoTime() - a);
+
+            a = System.nanoTime();
+            for (int i = 0; i < angles.length; i++) {
+                sink += grid.get(depths[i / BATCH], angles[i]);
+            }
+            print("grid", System.nanoTime() - a);
+
+            a = System.nanoTime();
+            for (int d = 0; d < depths.length; d++) {
+                System.arraycopy(angles, d * BATCH, batchAngles, 0, BATCH);
+                grid.get(depths[d], batchAngles, result, BATCH);
+                sink += result[BATCH - 1];
+            }
+            print("grid batch", System.nanoTime() - a);
+        }
+
+        System.out.println(sink);
+    }
+
+    private static void print(String name, long nanos) {
+        System.out.printf("%-12s %,14.0f lookups/s%n", name, LOOKUPS / (nanos / 1e9));
+    }
+
+    /**
+     * The interpolation before {@link TravelTimeGrid}
+     */
+    private static double interpolate(float[][] array, double depth, double angle) {
+        double x = (depth / TauPTravelTimeCalculator.MAX_DEPTH) * (array.length - 1);
+        double y = ((angle - TauPTravelTable.P_S_MIN_ANGLE) / (TauPTravelTable.P_S_MAX_ANGLE - TauPTravelTable.P_S_MIN_ANGLE)) * (array[0].length - 1);
+        if (x < 0 || y < 0 || x > array.length - 1 || y > array[0].length - 1) {
+            return TauPTravelTimeCalculator.NO_ARRIVAL;
+        }
+
+        int x0 = (int) x;
+        int x1 = Math.min(x0 + 1, array.length - 1);
+        int y0 = (int) y;
+        int y1 = Math.min(y0 + 1, array[0].length - 1);
+
+        float q11 = array[x0][y0];
+        float q21 = array[x1][y0];
+        float q12 = array[x0][y1];
+        float q22 = array[x1][y1];
+
+        if (q11 < 0 || q21 < 0 || q12 < 0 || q22 < 0) {
+            return TauPTravelTimeCalculator.NO_ARRIVAL;
+        }
+
+        double tx = x - x0;
+        double ty = y - y0;
+
+        return (1 - tx) * (1 - ty) * q11 + tx * (1 - ty) * q21 + (1 - tx) * ty * q12 + tx * ty * q22;
+    }
+}
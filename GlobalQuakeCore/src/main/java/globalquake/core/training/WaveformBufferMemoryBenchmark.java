@@ -0,0 +1,98 @@
+package globalquake.core.training;
+
+import globalquake.core.analysis.WaveformBuffer;
+import globalquake.core.analysis.WaveformStorage;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills full retention waveform buffers of many stations with each {@link WaveformStorage.Type} and reports
+ * heap usage, off-heap usage and garbage collection time.
+ * <p>
+ * Arguments: [stations] [retention minutes] [sample rate], defaults to 100 stations, 30 minutes and 100 sps.
+ * Off-heap buffers are limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+ */
+@SuppressWarnings("unused")
+public class WaveformBufferMemoryBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int stations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        double sps = args.length > 2 ? Double.parseDouble(args[2]) : 100.0;
+
+        System.out.printf("%d stations, %d minutes, %.0f sps, max heap %d MB%n", stations, minutes, sps,
+                Runtime.getRuntime().maxMemory() / (1024 * 1024));
+
+        for (WaveformStorage.Type type : WaveformStorage.Type.values()) {
+            run(type, stations, minutes, sps);
+        }
+    }
+
+    private static void run(WaveformStorage.Type type, int stations, int minutes, double sps) throws InterruptedException {
+        // let the cleaners release the buffers of the previous run
+        System.gc();
+        Thread.sleep(500);
+
+        long heapBefore = usedHeap();
+        long offHeapBefore = usedOffHeap();
+        long gcBefore = gcMillis();
+        long a = System.nanoTime();
+
+        List<WaveformBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < stations; i++) {
+            buffers.add(new WaveformBuffer(sps, minutes * 60, false, type));
+        }
+
+        long samples = (long) (minutes * 60 * sps);
+        double step = 1000.0 / sps;
+        for (WaveformBuffer buffer : buffers) {
+            for (long i = 0; i < samples; i++) {
+                float value = (float) Math.sin(i * 0.01);
+                buffer.log((long) (i * step), (int) (value * 1000), value, 1.0f + value, 1.0f, 1.0f, 2.0f, false);
+            }
+        }
+
+        long nanos = System.nanoTime() - a;
+        long gc = gcMillis() - gcBefore;
+        long heap = usedHeap() - heapBefore;
+        long offHeap = usedOffHeap() - offHeapBefore;
+
+        // touch the data so that nothing is optimized away
+        double sum = 0;
+        for (WaveformBuffer buffer : buffers) {
+            sum += buffer.getRatio(buffer.getNewestDataSlot());
+        }
+
+        System.out.printf("%-20s heap %8.1f MB, off-heap %8.1f MB, fill %6.1f ns/sample, GC %5d ms (%.1f)%n",
+                type, heap / (1024.0 * 1024.0), offHeap / (1024.0 * 1024.0),
+                nanos / (double) (samples * stations), gc, sum);
+
+        buffers.clear();
+        System.gc();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedOffHeap() {
+        long result = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            result += pool.getMemoryUsed();
+        }
+        return result;
+    }
+
+    private static long gcMillis() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+}
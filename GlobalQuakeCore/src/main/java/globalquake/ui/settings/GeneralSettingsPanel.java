@@ -2,6 +2,7 @@ package globalquake.ui.settings;
 
 
 import globalquake.core.Settings;
+import globalquake.core.analysis.WaveformStorage;
 import globalquake.core.geo.DistanceUnit;
 import globalquake.core.intensity.IntensityScale;
 import globalquake.core.intensity.IntensityScales;
@@ -26,6 +27,7 @@ public class GeneralSettingsPanel extends SettingsPanel {
 	private JComboBox<ZoneId> timezoneCombobox;
 
 	private JSlider sliderStoreTime;
+	private JComboBox<WaveformStorage.Type> waveformStorageComboBox;
 
 	public GeneralSettingsPanel(SettingsFrame settingsFrame) {
 		setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
@@ -107,8 +109,18 @@ public class GeneralSettingsPanel extends SettingsPanel {
 
 		row2.add(timezoneCombobox);
 
+		JPanel row3 = new JPanel();
+
+		row3.add(new JLabel("Waveform storage (applies after restart): "));
+
+		waveformStorageComboBox = new JComboBox<>(WaveformStorage.Type.values());
+		waveformStorageComboBox.setSelectedIndex(Math.max(0, Math.min(waveformStorageComboBox.getItemCount() - 1, Settings.waveformStorageIndex)));
+
+		row3.add(waveformStorageComboBox);
+
 		panel.add(row1);
 		panel.add(row2);
+		panel.add(row3);
 
 		add(panel);
 	}
@@ -212,7 +224,13 @@ public class GeneralSettingsPanel extends SettingsPanel {
 		Settings.displayHomeLocation = chkBoxHomeLoc.isSelected();
 		Settings.distanceUnitsIndex = distanceUnitJComboBox.getSelectedIndex();
 		Settings.timezoneStr = ((ZoneId) Objects.requireNonNull(timezoneCombobox.getSelectedItem())).getId();
-		Settings.logsStoreTimeMinutes = sliderStoreTime.getValue();
+		// longer storage times can only be set in the properties file, keep them unless the slider was moved
+		// or the java heap, which allows at most an hour, was selected
+		if (Settings.logsStoreTimeMinutes <= sliderStoreTime.getMaximum() || sliderStoreTime.getValue() != sliderStoreTime.getMaximum()) {
+			Settings.logsStoreTimeMinutes = sliderStoreTime.getValue();
+		}
+		Settings.waveformStorageIndex = waveformStorageComboBox.getSelectedIndex();
+		Settings.logsStoreTimeMinutes = Math.min(Settings.logsStoreTimeMinutes, Settings.getMaxLogsStoreTimeMinutes());
 	}
 
 	@Override
@@ -0,0 +1,161 @@
+package globalquake.utils;
+
+/**
+ * In place selection of the k-th smallest value, the same value sorting would put at index k, in linear expected time.
+ * The range is reordered.
+ */
+public final class QuickSelect {
+
+    private QuickSelect() {
+    }
+
+    /**
+     * @param values values, reordered in [from, to)
+     * @param from   first index of the range
+     * @param to     end of the range, exclusive
+     * @param k      index within the range, 0 for the smallest value
+     * @return the k-th smallest value of the range
+     */
+    public static double select(double[] values, int from, int to, int k) {
+        if (k < 0 || k >= to - from) {
+            throw new IndexOutOfBoundsException("k = %d, size = %d".formatted(k, to - from));
+        }
+
+        int left = from;
+        int right = to - 1;
+        int target = from + k;
+
+        while (right > left) {
+            // median of three as the pivot, so that sorted input is not quadratic
+            int mid = (left + right) >>> 1;
+            if (values[mid] < values[left]) {
+                swap(values, mid, left);
+            }
+            if (values[right] < values[left]) {
+                swap(values, right, left);
+            }
+            if (values[right] < values[mid]) {
+                swap(values, right, mid);
+            }
+            double pivot = values[mid];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (target <= j) {
+                right = j;
+            } else if (target >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+
+        return values[target];
+    }
+
+    /**
+     * Same as {@link #select(double[], int, int, int)} for longs
+     */
+    public static long select(long[] values, int from, int to, int k) {
+        if (k < 0 || k >= to - from) {
+            throw new IndexOutOfBoundsException("k = %d, size = %d".formatted(k, to - from));
+        }
+
+        int left = from;
+        int right = to - 1;
+        int target = from + k;
+
+        while (right > left) {
+            int mid = (left + right) >>> 1;
+            if (values[mid] < values[left]) {
+                swap(values, mid, left);
+            }
+            if (values[right] < values[left]) {
+                swap(values, right, left);
+            }
+            if (values[right] < values[mid]) {
+                swap(values, right, mid);
+            }
+            long pivot = values[mid];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (target <= j) {
+                right = j;
+            } else if (target >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+
+        return values[target];
+    }
+
+    /**
+     * @return the k-th smallest value of the first n values
+     */
+    public static double select(double[] values, int n, int k) {
+        return select(values, 0, n, k);
+    }
+
+    /**
+     * Median of the first n values, the mean of the two middle values for even n
+     */
+    public static double median(double[] values, int n) {
+        if (n == 0) {
+            throw new IllegalArgumentException("Median of no values");
+        }
+        double upper = select(values, 0, n, n / 2);
+        if (n % 2 == 1) {
+            return upper;
+        }
+
+        // after the selection everything below n / 2 is smaller or equal, so the lower middle is its maximum
+        double lower = values[0];
+        for (int i = 1; i < n / 2; i++) {
+            lower = Math.max(lower, values[i]);
+        }
+        return (lower + upper) * 0.5;
+    }
+
+    private static void swap(double[] values, int a, int b) {
+        double tmp = values[a];
+        values[a] = values[b];
+        values[b] = tmp;
+    }
+
+    private static void swap(long[] values, int a, int b) {
+        long tmp = values[a];
+        values[a] = values[b];
+        values[b] = tmp;
+    }
+}
@@ -0,0 +1,65 @@
+package globalquake.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class StagePoolTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    @Test
+    public void testParallelStreamStaysInPool() {
+        List<String> threads = StagePool.CONFIDENCE.invoke(() -> IntStream.range(0, 64).parallel()
+                .mapToObj(i -> Thread.currentThread().getName()).distinct().toList());
+
+        assertFalse(threads.isEmpty());
+        for (String thread : threads) {
+            assertTrue(thread, thread.startsWith(StagePool.CONFIDENCE.getName()));
+        }
+    }
+
+    @Test
+    public void testNestedInvokeRunsDirectly() {
+        StagePool.LOCATION.getStatsAndReset();
+
+        String[] names = StagePool.LOCATION.invoke(() -> new String[]{Thread.currentThread().getName(),
+                StagePool.LOCATION.invoke(() -> Thread.currentThread().getName())});
+
+        assertEquals(names[0], names[1]);
+        assertEquals(1, StagePool.LOCATION.getStatsAndReset().tasks());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        StagePool.CLUSTERING.getStatsAndReset();
+        for (int i = 0; i < 5; i++) {
+            StagePool.CLUSTERING.invoke(() -> {
+            });
+        }
+
+        StagePool.Stats stats = StagePool.CLUSTERING.getStatsAndReset();
+        assertEquals(StagePool.CLUSTERING.getName(), stats.name());
+        assertEquals(5, stats.tasks());
+        assertTrue(stats.threads() >= 1);
+        assertTrue(stats.maxQueueMs() >= stats.avgQueueMs());
+
+        assertEquals(0, StagePool.CLUSTERING.getStatsAndReset().tasks());
+    }
+
+    @Test
+    public void testRestartAfterStop() {
+        StagePool.ANALYSIS.invoke(() -> {
+        });
+        StagePool.ANALYSIS.stop();
+
+        assertEquals(Integer.valueOf(1), StagePool.ANALYSIS.invoke(() -> 1));
+    }
+}
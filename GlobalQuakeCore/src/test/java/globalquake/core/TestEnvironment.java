@@ -0,0 +1,74 @@
+package globalquake.core;
+
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.utils.GeoUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Setup shared by the tests and synthetic picks of earthquakes
+ */
+public final class TestEnvironment {
+
+    private TestEnvironment() {
+    }
+
+    /**
+     * Loads the travel table and, unless already done, points the settings into a temporary folder
+     * that is deleted when the tests finish
+     */
+    public static synchronized void prepare() throws Exception {
+        TauPTravelTimeCalculator.init();
+        if (GlobalQuake.mainFolder == null) {
+            Path folder = Files.createTempDirectory("globalquake-test");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(folder)));
+            GlobalQuake.prepare(folder.toFile(), null);
+        }
+    }
+
+    private static void delete(Path folder) {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * P wave picks of an earthquake at stations placed randomly between minDist and maxDist km from the epicenter
+     *
+     * @param noise picks are off by up to this many ms in both directions
+     */
+    public static List<PickedEvent> createQuakePicks(Random r, int count, double lat, double lon, double depth, long origin,
+                                                     double minDist, double maxDist, long noise) {
+        List<PickedEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double[] latLon = GeoUtils.moveOnGlobe(lat, lon, minDist + r.nextDouble() * (maxDist - minDist), r.nextDouble() * 360);
+            double travelTime = TauPTravelTimeCalculator.getPWaveTravelTime(depth,
+                    TauPTravelTimeCalculator.toAngle(GeoUtils.greatCircleDistance(lat, lon, latLon[0], latLon[1])));
+            long pWave = origin + (long) (travelTime * 1000) + (noise == 0 ? 0 : r.nextLong(2 * noise) - noise);
+            events.add(new PickedEvent(pWave, latLon[0], latLon[1], 0, 100));
+        }
+        return events;
+    }
+
+    /**
+     * Picks that don't belong to any earthquake, anywhere on Earth with elevations from -500 to 2500 m
+     */
+    public static List<PickedEvent> createRandomPicks(Random r, int count) {
+        List<PickedEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new PickedEvent(r.nextLong(2_000_000), r.nextDouble() * 180 - 90, r.nextDouble() * 360 - 180,
+                    r.nextDouble() * 3000 - 500, 100));
+        }
+        return events;
+    }
+}
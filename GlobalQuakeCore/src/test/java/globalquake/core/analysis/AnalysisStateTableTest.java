@@ -0,0 +1,210 @@
+package globalquake.core.analysis;
+
+import globalquake.core.GlobalQuake;
+import globalquake.core.TestEnvironment;
+import globalquake.core.station.GlobalStation;
+import gqserver.api.packets.station.InputType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AnalysisStateTableTest {
+
+    private static final double SAMPLE_RATE = 20.0;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    @Test
+    public void testTriggerCondition() {
+        // ratio above 1.3 * threshold, but the ratio has to hold for more than 200 ms
+        assertFalse(AnalysisStateTable.isTriggered(7.0, 1.0, 1.0, 1200, 1000));
+        assertTrue(AnalysisStateTable.isTriggered(7.0, 1.0, 1.0, 1201, 1000));
+
+        // ratio above 2.05 * threshold needs only 100 ms
+        assertTrue(AnalysisStateTable.isTriggered(10.0, 1.0, 1.0, 1101, 1000));
+
+        // short average has to be 3 times the third average as well
+        assertFalse(AnalysisStateTable.isTriggered(10.0, 1.0, 4.0, 5000, 1000));
+    }
+
+    @Test
+    public void testScan() {
+        AnalysisStateTable table = new AnalysisStateTable(4);
+        for (int slot = 0; slot < 4; slot++) {
+            assertFalse(table.isPending(slot));
+        }
+
+        table.startTrigger(1, 1000);
+        table.startTrigger(3, 2000);
+        assertTrue(table.isPending(1));
+        assertEquals(1000, table.triggerTime[1]);
+        assertEquals(0, table.triggerEnd[1]);
+        assertFalse(table.isPending(2));
+
+        // slots without an analysis are never triggered
+        assertEquals(0, table.triggerEvents());
+
+        table.clearTrigger(1);
+        assertFalse(table.isPending(1));
+        assertTrue(table.isPending(3));
+    }
+
+    @Test
+    public void testShared() {
+        AnalysisStateTable.initShared(16);
+        try {
+            AnalysisStateTable table = AnalysisStateTable.getShared();
+            assertTrue(AnalysisStateTable.isColumnar());
+            assertEquals(16, table.getCapacity());
+
+            // a new table starts with all slots cleared
+            AnalysisStateTable.initShared(16);
+            assertNotSame(table, AnalysisStateTable.getShared());
+            for (int slot = 0; slot < 16; slot++) {
+                assertFalse(AnalysisStateTable.getShared().isPending(slot));
+            }
+        } finally {
+            AnalysisStateTable.initShared(0);
+        }
+
+        assertFalse(AnalysisStateTable.isColumnar());
+        assertNull(AnalysisStateTable.getShared());
+    }
+
+    /**
+     * Feeds noise with bursts of a strong 3 Hz signal decaying in 4 seconds, in records of the given length
+     *
+     * @param bursts start and end second of each burst
+     * @param scan   called after each record
+     */
+    private static void feed(BetterAnalysis analysis, long start, int seconds, int[][] bursts, int recordSeconds, Runnable scan) {
+        Random r = new Random(0);
+        int[] buf = new int[(int) (SAMPLE_RATE * recordSeconds)];
+        analysis.setSampleRate(SAMPLE_RATE);
+        for (int record = 0; record < seconds / recordSeconds; record++) {
+            for (int i = 0; i < buf.length; i++) {
+                double t = record * recordSeconds + i / SAMPLE_RATE;
+                double signal = 0;
+                for (int[] burst : bursts) {
+                    if (t >= burst[0] && t < burst[1]) {
+                        signal = 5000 * Math.exp((burst[0] - t) / 4.0) * Math.sin(2 * Math.PI * 3.0 * t);
+                    }
+                }
+                buf[i] = (int) (r.nextGaussian() * 10 + signal);
+            }
+            analysis.nextSamples(buf, buf.length, start + record * recordSeconds * 1000L, SAMPLE_RATE);
+            scan.run();
+        }
+    }
+
+    /**
+     * Feeds 40 seconds of noise and then 5 seconds of a strong 3 Hz signal
+     */
+    private static void feedQuake(BetterAnalysis analysis, long start) {
+        feed(analysis, start, 45, new int[][]{{40, 45}}, 1, () -> {
+        });
+    }
+
+    private static GlobalQuake createGlobalQuake() {
+        return new GlobalQuake() {
+            @Override
+            public boolean limitedSettings() {
+                return false;
+            }
+
+            @Override
+            public boolean limitedWaveformBuffers() {
+                return false;
+            }
+        };
+    }
+
+    @Test
+    public void testColumnarTrigger() {
+        GlobalQuake previous = GlobalQuake.instance;
+        createGlobalQuake();
+
+        long start = System.currentTimeMillis() - 45_000;
+        try {
+            // the same data triggers the event after the sample without the shared table
+            AnalysisStateTable.initShared(0);
+            BetterAnalysis single = new BetterAnalysis(new GlobalStation("XX", "ONE", "BHZ", "", 0, 0, 0, 0, null, 1.0, InputType.VELOCITY));
+            feedQuake(single, start);
+            assertEquals(AnalysisStatus.EVENT, single.getStatus());
+
+            AnalysisStateTable.initShared(4);
+            AnalysisStateTable table = AnalysisStateTable.getShared();
+            BetterAnalysis columnar = new BetterAnalysis(new GlobalStation("XX", "TWO", "BHZ", "", 0, 0, 0, 2, null, 1.0, InputType.VELOCITY));
+            feedQuake(columnar, start);
+
+            // only the scan of the table creates the event, starting at the same sample
+            assertEquals(AnalysisStatus.IDLE, columnar.getStatus());
+            assertTrue(table.isPending(2));
+            assertEquals(1, table.triggerEvents());
+            assertEquals(AnalysisStatus.EVENT, columnar.getStatus());
+            assertEquals(1, columnar.getDetectedEvents().size());
+            assertEquals(single.getDetectedEvents().get(0).getStart(), columnar.getDetectedEvents().get(0).getStart());
+            assertEquals(single.getDetectedEvents().get(0).getMaxRatio(), columnar.getDetectedEvents().get(0).getMaxRatio(), 0.0);
+
+            // the trigger was consumed
+            assertFalse(table.isPending(2));
+            assertEquals(0, table.triggerEvents());
+
+            // stations outside the table get their own
+            BetterAnalysis outside = new BetterAnalysis(new GlobalStation("XX", "SIX", "BHZ", "", 0, 0, 0, 6, null, 1.0, InputType.VELOCITY));
+            feedQuake(outside, start);
+            assertEquals(AnalysisStatus.EVENT, outside.getStatus());
+        } finally {
+            AnalysisStateTable.initShared(0);
+            GlobalQuake.instance = previous;
+        }
+    }
+
+    /**
+     * Invalid events stop recording, so only their start and end are compared
+     */
+    private static String describe(Event event) {
+        String result = "start %d end %d valid %s".formatted(event.getStart(), event.getEnd(), event.isValid());
+        return event.isValid() ? result + " ratio %.6f pWave %d".formatted(event.getMaxRatio(), event.getpWave()) : result;
+    }
+
+    /**
+     * Records of 10 seconds with the table scanned only after each record, so several events start, end
+     * and even follow each other between two scans
+     */
+    @Test
+    public void testSameEventsAsSampleTrigger() {
+        GlobalQuake previous = GlobalQuake.instance;
+        createGlobalQuake();
+
+        int[][] bursts = {{60, 62}, {63, 64}, {90, 105}, {130, 131}, {150, 175}};
+        long start = System.currentTimeMillis() - 200_000;
+        try {
+            AnalysisStateTable.initShared(0);
+            BetterAnalysis single = new BetterAnalysis(new GlobalStation("XX", "ONE", "BHZ", "", 0, 0, 0, 0, null, 1.0, InputType.VELOCITY));
+            feed(single, start, 200, bursts, 10, () -> {
+            });
+
+            AnalysisStateTable.initShared(4);
+            AnalysisStateTable table = AnalysisStateTable.getShared();
+            BetterAnalysis columnar = new BetterAnalysis(new GlobalStation("XX", "TWO", "BHZ", "", 0, 0, 0, 1, null, 1.0, InputType.VELOCITY));
+            feed(columnar, start, 200, bursts, 10, table::triggerEvents);
+
+            List<String> expected = single.getDetectedEvents().stream().map(AnalysisStateTableTest::describe).toList();
+            List<String> actual = columnar.getDetectedEvents().stream().map(AnalysisStateTableTest::describe).toList();
+            assertTrue(expected.size() >= 3);
+            assertEquals(expected, actual);
+            assertEquals(single.getStatus(), columnar.getStatus());
+        } finally {
+            AnalysisStateTable.initShared(0);
+            GlobalQuake.instance = previous;
+        }
+    }
+}
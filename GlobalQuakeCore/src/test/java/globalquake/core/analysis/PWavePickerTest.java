@@ -0,0 +1,85 @@
+package globalquake.core.analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PWavePickerTest {
+
+    /**
+     * The picker as it was before, with a sorted list of boxed values
+     */
+    private static long legacyPick(WaveformView view, long start, int strengthLevel) {
+        long lookBack = (start - (long) ((60.0 / strengthLevel) * 1000));
+        List<Double> slows = new ArrayList<>();
+        double maxSpecial = -Double.MAX_VALUE;
+        double minSpecial = Double.MAX_VALUE;
+
+        long seqLookBack = view.getClosestSeq(lookBack);
+        long lookBackTime = view.getTime(seqLookBack);
+        while (seqLookBack != view.getEndSeq() && lookBackTime <= start) {
+            slows.add(view.getMediumRatio(seqLookBack));
+            double spec = view.getSpecialRatio(seqLookBack);
+            if (spec > 0) {
+                maxSpecial = Math.max(maxSpecial, spec);
+                minSpecial = Math.min(minSpecial, spec);
+            }
+            seqLookBack++;
+            lookBackTime = view.getTime(seqLookBack);
+        }
+
+        maxSpecial = Math.max(minSpecial * 5.0, maxSpecial);
+        Collections.sort(slows);
+        double slow15Pct = slows.get((int) ((slows.size() - 1) * 0.175));
+        double mul = Event.SPECIAL_PERCENTILE[strengthLevel] * 1.1;
+        double specialThreshold = maxSpecial * mul + (1 - mul) * minSpecial;
+
+        long seq = view.getClosestSeq(start);
+        long time = view.getTime(seq);
+        while (seq != view.getStartSeq() && time >= lookBack) {
+            boolean ratioOK = view.getRatio(seq) <= slow15Pct * (Event.SLOW_THRESHOLD_MULTIPLIERS[strengthLevel] * 1.25);
+            boolean specialOK = view.getSpecialRatio(seq) <= specialThreshold;
+            if (time <= start && ratioOK && specialOK) {
+                return time;
+            }
+            seq--;
+            time = view.getTime(seq);
+        }
+        return -1;
+    }
+
+    @Test
+    public void testSameAsSorting() {
+        Random random = new Random(0);
+        int found = 0;
+        for (int i = 0; i < 200; i++) {
+            double sps = i % 2 == 0 ? 40 : 100;
+            WaveformBuffer buffer = new WaveformBuffer(sps, 300, true);
+            long pWave = 200_000 + random.nextInt(20_000);
+            double amplitude = 2 + random.nextDouble() * 50;
+            for (long sample = 0; sample < 220 * sps; sample++) {
+                long time = (long) (sample * 1000 / sps);
+                double noise = 1 + Math.abs(random.nextGaussian()) * 0.3;
+                double signal = time < pWave ? 0 : amplitude * Math.min(1, (time - pWave) / 2000.0);
+                buffer.log(time, 0, 0, (float) (noise + signal), (float) (1 + signal * 0.3), 1, (float) (2 + signal + noise), false);
+            }
+
+            long start = pWave + 500 + random.nextInt(3000);
+            WaveformView view = buffer.createView(start - 90_000);
+            for (int level = 0; level < Event.RECALCULATE_P_WAVE_THRESHOLDS.length; level++) {
+                long expected = legacyPick(view, start, level);
+                assertEquals(expected, PWavePicker.get().pick(view, start, level));
+                if (expected != -1) {
+                    found++;
+                }
+            }
+        }
+
+        assertTrue(found > 600);
+    }
+}
@@ -0,0 +1,94 @@
+package globalquake.core.analysis;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim1;
+import edu.iris.dmc.seedcodec.Steim2;
+import edu.iris.dmc.seedcodec.SteimFrameBlock;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SteimDecoderTest {
+
+    private static int[] createData(Random random, int length, int maxDiff) {
+        int[] data = new int[length];
+        int value = random.nextInt(1000) - 500;
+        for (int i = 0; i < length; i++) {
+            // mix of small and large differences so that every Steim word type is used
+            int limit = switch (i % 5) {
+                case 0 -> 4;
+                case 1 -> 60;
+                case 2 -> 1000;
+                case 3 -> maxDiff;
+                default -> 16;
+            };
+            value += random.nextInt(2 * limit + 1) - limit;
+            data[i] = value;
+        }
+        return data;
+    }
+
+    @Test
+    public void testSteim2() throws Exception {
+        Random random = new Random(0);
+        int[] out = new int[4096];
+        for (int i = 0; i < 200; i++) {
+            int[] data = createData(random, 50 + random.nextInt(400), 1 << (10 + random.nextInt(18)));
+            SteimFrameBlock block = Steim2.encode(data, 63);
+            int numSamples = block.getNumSamples();
+            byte[] encoded = block.getEncodedData();
+
+            int[] expected = Steim2.decode(encoded, numSamples, false);
+            int count = SteimDecoder.decode(B1000Types.STEIM2, encoded, numSamples, false, out);
+
+            assertEquals(numSamples, count);
+            assertArrayEquals(expected, Arrays.copyOf(out, count));
+            assertArrayEquals(Arrays.copyOf(data, numSamples), Arrays.copyOf(out, count));
+        }
+    }
+
+    @Test
+    public void testSteim1() throws Exception {
+        Random random = new Random(1);
+        int[] out = new int[4096];
+        for (int i = 0; i < 200; i++) {
+            int[] data = createData(random, 50 + random.nextInt(400), 1 << (10 + random.nextInt(20)));
+            SteimFrameBlock block = Steim1.encode(data, 63);
+            int numSamples = block.getNumSamples();
+            byte[] encoded = block.getEncodedData();
+
+            int[] expected = Steim1.decode(encoded, numSamples, false);
+            int count = SteimDecoder.decode(B1000Types.STEIM1, encoded, numSamples, false, out);
+
+            assertEquals(numSamples, count);
+            assertArrayEquals(expected, Arrays.copyOf(out, count));
+        }
+    }
+
+    @Test
+    public void testLittleEndian() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < 50; i++) {
+            // arbitrary words, only the decoders have to agree
+            int[] data = createData(random, 300, 1 << 20);
+            SteimFrameBlock block = (i % 2 == 0 ? Steim2.encode(data, 63) : Steim1.encode(data, 63));
+            byte[] encoded = block.getEncodedData();
+
+            byte[] swapped = new byte[encoded.length];
+            for (int j = 0; j < encoded.length; j += 4) {
+                for (int k = 0; k < 4; k++) {
+                    swapped[j + k] = encoded[j + 3 - k];
+                }
+            }
+
+            int numSamples = block.getNumSamples();
+            int[] expected = i % 2 == 0 ? Steim2.decode(swapped, numSamples, true) : Steim1.decode(swapped, numSamples, true);
+            int[] out = new int[numSamples];
+            int count = SteimDecoder.decode(i % 2 == 0 ? B1000Types.STEIM2 : B1000Types.STEIM1, swapped, numSamples, true, out);
+            assertArrayEquals(expected, Arrays.copyOf(out, count));
+        }
+    }
+}
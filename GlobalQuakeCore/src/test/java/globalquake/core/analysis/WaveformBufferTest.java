@@ -1,11 +1,22 @@
 package globalquake.core.analysis;
 
+import globalquake.core.GlobalQuake;
+import globalquake.core.TestEnvironment;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class WaveformBufferTest {
 
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
     @Test
     public void testSize() {
         double sps = 30.0;
@@ -99,4 +110,115 @@ public class WaveformBufferTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testStorageTypes() {
+        for (boolean server : new boolean[]{false, true}) {
+            WaveformBuffer heap = new WaveformBuffer(20, 10, server, WaveformStorage.Type.HEAP);
+            WaveformBuffer offHeap = new WaveformBuffer(20, 10, server, WaveformStorage.Type.OFF_HEAP);
+            WaveformBuffer mapped = new WaveformBuffer(20, 10, server, WaveformStorage.Type.MAPPED);
+            assertEquals(0, offHeap.getHeapBytes());
+            assertEquals(0, mapped.getHeapBytes());
+
+            for (int i = 0; i < 500; i++) {
+                for (WaveformBuffer buffer : new WaveformBuffer[]{heap, offHeap, mapped}) {
+                    buffer.log(i * 50L, i * 3, i * 0.5f, i, i * 2, 1, i * 4, i > 400);
+                    if (i == 300) {
+                        buffer.resize(5);
+                    }
+                }
+            }
+
+            for (WaveformBuffer buffer : new WaveformBuffer[]{offHeap, mapped}) {
+                assertEquals(heap.getSize(), buffer.getSize());
+                assertEquals(heap.getOldestDataSlot(), buffer.getOldestDataSlot());
+                assertEquals(heap.getNextSlot(), buffer.getNextSlot());
+                for (int i = 0; i < heap.getSize(); i++) {
+                    assertEquals(heap.getTime(i), buffer.getTime(i));
+                    assertEquals(heap.getRatio(i), buffer.getRatio(i), 0.0);
+                    assertEquals(heap.getMediumRatio(i), buffer.getMediumRatio(i), 0.0);
+                    assertEquals(heap.getSpecialRatio(i), buffer.getSpecialRatio(i), 0.0);
+                    if (!server) {
+                        assertEquals(heap.getRaw(i), buffer.getRaw(i));
+                        assertEquals(heap.toLog(i), buffer.toLog(i));
+                    }
+                }
+                assertEquals(heap.getClosestIndex(20000), buffer.getClosestIndex(20000));
+            }
+        }
+    }
+
+    @Test
+    public void testStorageSize() {
+        assertEquals(7 * 1000 * Integer.BYTES, WaveformStorage.getBytes(7, 1000));
+        assertTrue(WaveformStorage.getMappedFolder().toPath().startsWith(GlobalQuake.mainFolder.toPath()));
+
+        // 24 hours at 1000 sps no longer fit into an int
+        assertThrows(IllegalArgumentException.class, () -> WaveformStorage.create(WaveformStorage.Type.OFF_HEAP, 7, 24 * 60 * 60 * 1000));
+        assertThrows(IllegalArgumentException.class, () -> WaveformStorage.create(WaveformStorage.Type.MAPPED, 7, 24 * 60 * 60 * 1000));
+        assertThrows(IllegalArgumentException.class, () -> WaveformStorage.getBytes(Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testTimeSegments() {
+        double sps = 40.0;
+        WaveformBuffer waveformBuffer = new WaveformBuffer(sps, 60, true);
+        List<Long> times = new ArrayList<>();
+
+        // records of 100 samples, every 5th record after a gap
+        long recordStart = 1_700_000_000_000L;
+        for (int record = 0; record < 40; record++) {
+            for (int i = 0; i < 100; i++) {
+                long time = recordStart + (long) (i * (1000.0 / sps));
+                waveformBuffer.log(time, 0, 0, 1, 1, 1, 1, false);
+                times.add(time);
+            }
+            recordStart += 2500 + (record % 5 == 4 ? 1234 : 0);
+        }
+
+        // 2400 samples fit, the first 1600 were overwritten
+        List<Long> stored = times.subList(times.size() - waveformBuffer.getSize(), times.size());
+        int index = waveformBuffer.getOldestDataSlot();
+        for (long time : stored) {
+            assertEquals(time, waveformBuffer.getTime(index));
+            index = (index + 1) % waveformBuffer.getSize();
+        }
+
+        // only runs after a gap need a segment
+        assertTrue(waveformBuffer.getTimeSegmentCount() <= 6);
+
+        for (long time = stored.get(0) - 100; time <= stored.get(stored.size() - 1) + 100; time += 7) {
+            assertEquals(time + "", expectedClosestIndex(waveformBuffer, time), waveformBuffer.getClosestIndex(time));
+        }
+    }
+
+    private static int expectedClosestIndex(WaveformBuffer waveformBuffer, long time) {
+        // first sample after the oldest one that is newer than the time, otherwise the newest one
+        int index = (waveformBuffer.getOldestDataSlot() + 1) % waveformBuffer.getSize();
+        while (index != waveformBuffer.getNewestDataSlot() && waveformBuffer.getTime(index) <= time) {
+            index = (index + 1) % waveformBuffer.getSize();
+        }
+        return index;
+    }
+
+    @Test
+    public void testTimeSegmentsResize() {
+        WaveformBuffer waveformBuffer = new WaveformBuffer(10, 10, false);
+        for (int i = 0; i < 250; i++) {
+            waveformBuffer.log(i * 100L + (i >= 120 ? 5000 : 0), i, i, i, i, 1, i, false);
+        }
+
+        waveformBuffer.resize(4);
+        assertEquals(40, waveformBuffer.getSize());
+        assertEquals(210 * 100L + 5000, waveformBuffer.getTime(waveformBuffer.getOldestDataSlot()));
+        assertEquals(249 * 100L + 5000, waveformBuffer.getTime(waveformBuffer.getNewestDataSlot()));
+        assertEquals(1, waveformBuffer.getTimeSegmentCount());
+
+        waveformBuffer.resize(20);
+        for (int i = 250; i < 300; i++) {
+            waveformBuffer.log(i * 100L + 5000, i, i, i, i, 1, i, false);
+        }
+        assertEquals(299 * 100L + 5000, waveformBuffer.getTime(waveformBuffer.getNewestDataSlot()));
+        assertEquals(297, waveformBuffer.toLog(waveformBuffer.getClosestIndex(296 * 100L + 5000)).rawValue());
+    }
+
+}
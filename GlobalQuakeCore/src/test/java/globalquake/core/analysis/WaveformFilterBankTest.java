@@ -0,0 +1,99 @@
+package globalquake.core.analysis;
+
+import gqserver.api.packets.station.InputType;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WaveformFilterBankTest {
+
+    private static final double[] MIN_FREQS = {BetterAnalysis.minFreqDefault, BetterAnalysis.minFreqLow, BetterAnalysis.minFreqUltraLow};
+    private static final double[] MAX_FREQS = {BetterAnalysis.maxFreqDefault, BetterAnalysis.maxFreqLow, BetterAnalysis.maxFreqUltraLow};
+
+    private static int[] createSignal(Random random, int length, double sampleRate) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            double t = i / sampleRate;
+            result[i] = (int) (5000 + 3000 * Math.sin(t * 2 * Math.PI / 7.0) + 800 * Math.sin(t * 2 * Math.PI * 3.0)
+                    + 300 * random.nextGaussian() + (i % 3000 > 2500 ? 20000 * Math.sin(t * 40) : 0));
+        }
+        return result;
+    }
+
+    private static WaveformTransformator[] createReference(double sampleRate, InputType inputType) {
+        WaveformTransformator[] result = new WaveformTransformator[MIN_FREQS.length];
+        for (int band = 0; band < result.length; band++) {
+            result[band] = new WaveformTransformator(MIN_FREQS[band], MAX_FREQS[band], 1E8, sampleRate, inputType);
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameAsIirj() {
+        Random random = new Random(0);
+        for (double sampleRate : new double[]{20.0, 40.0, 50.0, 100.0, 200.0}) {
+            for (InputType inputType : InputType.values()) {
+                int[] signal = createSignal(random, 10000, sampleRate);
+                WaveformTransformator[] reference = createReference(sampleRate, inputType);
+                WaveformFilterBank bank = new WaveformFilterBank(MIN_FREQS, MAX_FREQS, 1E8, sampleRate, inputType);
+
+                for (int i = 0; i < signal.length; i++) {
+                    double in = signal[i] - 5000.0;
+                    bank.accept(in);
+                    for (int band = 0; band < reference.length; band++) {
+                        reference[band].accept(in);
+                        assertEquals(reference[band].getCurrentValue(), bank.getCurrentValue(band), 0.0);
+                        assertEquals(reference[band].getVelocity(), bank.getVelocity(band), 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBlockSameAsIirj() {
+        Random random = new Random(1);
+        double sampleRate = 40.0;
+        for (InputType inputType : InputType.values()) {
+            int[] signal = createSignal(random, 8000, sampleRate);
+            WaveformTransformator[] reference = createReference(sampleRate, inputType);
+            WaveformFilterBank bank = new WaveformFilterBank(MIN_FREQS, MAX_FREQS, 1E8, sampleRate, inputType);
+
+            int from = 0;
+            while (from < signal.length) {
+                int to = Math.min(signal.length, from + 1 + random.nextInt(700));
+                bank.processBlock(signal, from, to, 5000.0);
+                for (int i = from; i < to; i++) {
+                    for (int band = 0; band < reference.length; band++) {
+                        reference[band].accept(signal[i] - 5000.0);
+                        assertEquals(reference[band].getCurrentValue(), bank.getBlockValue(band, i - from), 0.0);
+                        assertEquals(reference[band].getVelocity(), bank.getBlockVelocity(band, i - from), 0.0);
+                    }
+                }
+                from = to;
+            }
+        }
+    }
+
+    @Test
+    public void testReset() {
+        WaveformFilterBank bank = new WaveformFilterBank(MIN_FREQS, MAX_FREQS, 1E8, 40.0, InputType.VELOCITY);
+        WaveformTransformator reference = new WaveformTransformator(MIN_FREQS[0], MAX_FREQS[0], 1E8, 40.0, InputType.VELOCITY);
+
+        for (int i = 0; i < 100; i++) {
+            bank.accept(i);
+            reference.accept(i);
+        }
+
+        bank.reset();
+        reference.reset();
+
+        for (int i = 0; i < 100; i++) {
+            bank.accept(-i);
+            reference.accept(-i);
+            assertEquals(reference.getCurrentValue(), bank.getCurrentValue(0), 0.0);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package globalquake.core.analysis;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WaveformViewTest {
+
+    private static final int STATIONS = 5000;
+    private static final double SPS = 10.0;
+    private static final int RETENTION_SECONDS = 120;
+    private static final long WINDOW = BetterAnalysis.EVENT_EXTENSION_TIME * 1000;
+
+    private static void log(WaveformBuffer buffer, int station, long sample) {
+        float value = (float) Math.sin(sample * 0.1 + station);
+        buffer.log(sample * 100, 0, 0, 2.0f + value, 1.5f + value, 1.0f, 3.0f + value, false);
+    }
+
+    private static void assertSame(WaveformBuffer expected, WaveformView view) {
+        int index = expected.getOldestDataSlot();
+        long seq = view.getStartSeq();
+        int count = 0;
+        while (index != expected.getNextSlot()) {
+            assertEquals(expected.getTime(index), view.getTime(seq));
+            assertEquals(expected.getRatio(index), view.getRatio(seq), 0.0);
+            assertEquals(expected.getMediumRatio(index), view.getMediumRatio(seq), 0.0);
+            assertEquals(expected.getSpecialRatio(index), view.getSpecialRatio(seq), 0.0);
+            index = (index + 1) % expected.getSize();
+            seq++;
+            count++;
+        }
+        assertEquals(seq, view.getEndSeq());
+        assertTrue(count > 0);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testSimultaneousTrigger() {
+        List<WaveformBuffer> buffers = new ArrayList<>();
+        long sample = 0;
+        for (int station = 0; station < STATIONS; station++) {
+            WaveformBuffer buffer = new WaveformBuffer(SPS, RETENTION_SECONDS, true);
+            for (sample = 0; sample < RETENTION_SECONDS * SPS * 1.5; sample++) {
+                log(buffer, station, sample);
+            }
+            buffers.add(buffer);
+        }
+
+        long triggerTime = (sample - 1) * 100;
+
+        // all stations trigger at once
+        WaveformView[] views = new WaveformView[STATIONS];
+        long allocated = allocatedBytes();
+        for (int station = 0; station < STATIONS; station++) {
+            views[station] = buffers.get(station).createView(triggerTime - WINDOW);
+        }
+        long viewBytes = allocatedBytes() - allocated;
+
+        WaveformBuffer[] copies = new WaveformBuffer[STATIONS];
+        allocated = allocatedBytes();
+        for (int station = 0; station < STATIONS; station++) {
+            copies[station] = buffers.get(station).extract(triggerTime - WINDOW, triggerTime);
+        }
+        long copyBytes = allocatedBytes() - allocated;
+
+        assertTrue("views allocated %d bytes, copies %d bytes".formatted(viewBytes, copyBytes), viewBytes * 20 < copyBytes);
+
+        for (int station = 0; station < STATIONS; station++) {
+            assertFalse(views[station].isDetached());
+            assertEquals(1, buffers.get(station).getViewCount());
+            assertSame(copies[station], views[station]);
+            assertEquals(copies[station].getTime(copies[station].getClosestIndex(triggerTime - 30_000)),
+                    views[station].getTime(views[station].getClosestSeq(triggerTime - 30_000)));
+        }
+
+        // the event continues until the ring overwrites the start of the window
+        long end = sample + (long) ((RETENTION_SECONDS - WINDOW / 1000 + 10) * SPS);
+        for (int station = 0; station < STATIONS; station++) {
+            WaveformBuffer buffer = buffers.get(station);
+            for (long s = sample; s < end; s++) {
+                log(buffer, station, s);
+                float value = (float) Math.sin(s * 0.1 + station);
+                views[station].log(s * 100, 0, 0, 2.0f + value, 1.5f + value, 1.0f, 3.0f + value);
+                copies[station].log(s * 100, 0, 0, 2.0f + value, 1.5f + value, 1.0f, 3.0f + value, true);
+            }
+        }
+
+        for (int station = 0; station < STATIONS; station++) {
+            assertTrue(views[station].isDetached());
+            assertEquals(0, buffers.get(station).getViewCount());
+            assertSame(copies[station], views[station]);
+        }
+    }
+
+    @Test
+    public void testRelease() {
+        WaveformBuffer buffer = new WaveformBuffer(SPS, 20, false);
+        for (long sample = 0; sample < 100; sample++) {
+            log(buffer, 0, sample);
+        }
+
+        WaveformView view = buffer.createView(5000);
+        assertEquals(1, buffer.getViewCount());
+        view.release();
+        assertEquals(0, buffer.getViewCount());
+
+        // released views are not copied
+        for (long sample = 100; sample < 500; sample++) {
+            log(buffer, 0, sample);
+        }
+        assertFalse(view.isDetached());
+    }
+
+    @Test
+    public void testResizeDetaches() {
+        WaveformBuffer buffer = new WaveformBuffer(SPS, 20, false);
+        for (long sample = 0; sample < 150; sample++) {
+            log(buffer, 0, sample);
+        }
+
+        WaveformView view = buffer.createView(5000);
+        WaveformBuffer expected = buffer.extract(5000, 15000);
+
+        buffer.resize(5);
+        assertTrue(view.isDetached());
+        assertSame(expected, view);
+    }
+
+    @Test
+    public void testDetachAll() {
+        WaveformBuffer buffer = new WaveformBuffer(SPS, 20, false);
+        for (long sample = 0; sample < 150; sample++) {
+            log(buffer, 0, sample);
+        }
+
+        WaveformView view = buffer.createView(5000);
+        WaveformView later = buffer.createView(12000);
+        long start = view.getTime(view.getStartSeq());
+        buffer.detachAllViews();
+        assertTrue(view.isDetached());
+        assertTrue(later.isDetached());
+        assertEquals(0, buffer.getViewCount());
+
+        // samples logged through the views after the buffer was replaced stay in the copies
+        for (long sample = 150; sample < 160; sample++) {
+            view.log(sample * 100, 0, 0, 1.0f, 1.0f, 1.0f, 1.0f);
+        }
+        assertEquals(15900, view.getTime(view.getEndSeq() - 1));
+        assertEquals(start, view.getTime(view.getStartSeq()));
+        assertEquals(160, view.getEndSeq());
+    }
+}
@@ -0,0 +1,314 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.TestEnvironment;
+import globalquake.core.analysis.Event;
+import globalquake.core.earthquake.data.Cluster;
+import globalquake.core.earthquake.data.Earthquake;
+import globalquake.core.earthquake.data.Hypocenter;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.core.station.AbstractStation;
+import globalquake.core.station.GlobalStationManager;
+import globalquake.core.training.StationSpatialIndexBenchmark;
+import globalquake.utils.GeoUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays generated pick scenarios through the full and the incremental cluster analysis and checks that both
+ * produce the same clusters after every pass. Clusters get the earthquake that caused most of their picks,
+ * so the passes that work against a hypocenter (S waves, stealing events, expanding P waves) run as well.
+ */
+public class ClusterAnalysisReplayTest {
+
+    private static final int STATIONS = 2000;
+    private static final long STEP = 1000;
+    private static final int STEPS = 600;
+
+    // the clusters are located once they have this many picks, so that the located ones have more than
+    // 7 correct events and expand their P waves
+    private static final int LOCATE_MIN_EVENTS = 16;
+
+    private enum Type {PICK, UPDATE, INVALIDATE, REMOVE}
+
+    /**
+     * @param index event of the station the action applies to
+     */
+    private record Action(Type type, int station, int index, long pWave) {
+    }
+
+    private record Quake(double lat, double lon, double depth, long origin, double magnitude) {
+    }
+
+    private record Scenario(List<List<Action>> steps, List<Quake> quakes) {
+    }
+
+    private record Arrival(int station, long time) {
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    /**
+     * Quakes with P and S wave picks from the travel table, often two at once with overlapping areas, later
+     * corrections of some picks, invalid events, noise picks and events expiring after two minutes.
+     * A station can have several events at a time.
+     */
+    private static Scenario generateScenario(List<AbstractStation> stations, Random r) {
+        List<List<Action>> steps = new ArrayList<>();
+        List<Quake> quakes = new ArrayList<>();
+        Map<Integer, List<Long>> events = new HashMap<>();
+        List<Arrival> pending = new ArrayList<>();
+
+        for (int step = 0; step < STEPS; step++) {
+            long time = step * STEP;
+            List<Action> actions = new ArrayList<>();
+
+            if (step % 40 == 5 || (step % 40 == 12 && r.nextBoolean())) {
+                AbstractStation center = stations.get(r.nextInt(stations.size()));
+                double[] latLon = GeoUtils.moveOnGlobe(center.getLatitude(), center.getLongitude(), r.nextDouble() * 100, r.nextDouble() * 360);
+                Quake quake = new Quake(latLon[0], latLon[1], 5 + r.nextDouble() * 40, time, 5.0 + r.nextDouble() * 2.0);
+                quakes.add(quake);
+
+                double radius = 300 + r.nextDouble() * 1500;
+                for (int i = 0; i < stations.size(); i++) {
+                    AbstractStation station = stations.get(i);
+                    double dist = GeoUtils.greatCircleDistance(quake.lat(), quake.lon(), station.getLatitude(), station.getLongitude());
+                    if (dist > radius || r.nextDouble() > 0.8) {
+                        continue;
+                    }
+
+                    double angle = TauPTravelTimeCalculator.toAngle(dist);
+                    double correction = EarthquakeAnalysis.getElevationCorrection(station.getAlt());
+                    double pTravel = TauPTravelTimeCalculator.getPWaveTravelTime(quake.depth(), angle);
+                    if (pTravel >= 0) {
+                        pending.add(new Arrival(i, time + (long) ((pTravel + correction) * 1000) + r.nextLong(2000) - 1000));
+                    }
+
+                    double sTravel = TauPTravelTimeCalculator.getSWaveTravelTime(quake.depth(), angle);
+                    if (sTravel >= 0 && r.nextDouble() < 0.5) {
+                        pending.add(new Arrival(i, time + (long) ((sTravel + correction * 1.5) * 1000) + r.nextLong(2000) - 1000));
+                    }
+                }
+            }
+
+            for (Iterator<Arrival> iterator = pending.iterator(); iterator.hasNext(); ) {
+                Arrival arrival = iterator.next();
+                if (arrival.time() <= time) {
+                    iterator.remove();
+                    List<Long> stationEvents = events.computeIfAbsent(arrival.station(), k -> new ArrayList<>());
+                    if (stationEvents.size() < 3) {
+                        actions.add(new Action(Type.PICK, arrival.station(), stationEvents.size(), arrival.time()));
+                        stationEvents.add(arrival.time());
+                    }
+                }
+            }
+
+            for (int i = 0; i < 3; i++) {
+                int station = r.nextInt(stations.size());
+                List<Long> stationEvents = events.computeIfAbsent(station, k -> new ArrayList<>());
+                if (stationEvents.isEmpty()) {
+                    actions.add(new Action(Type.PICK, station, 0, time));
+                    stationEvents.add(time);
+                }
+            }
+
+            for (var entry : new ArrayList<>(events.entrySet())) {
+                int station = entry.getKey();
+                List<Long> stationEvents = entry.getValue();
+                if (stationEvents.isEmpty()) {
+                    events.remove(station);
+                    continue;
+                }
+
+                int index = r.nextInt(stationEvents.size());
+                double rand = r.nextDouble();
+                if (time - stationEvents.get(0) > 120_000) {
+                    actions.add(new Action(Type.REMOVE, station, 0, 0));
+                    events.remove(station);
+                } else if (rand < 0.01) {
+                    long newPWave = stationEvents.get(index) + r.nextLong(4000) - 2000;
+                    actions.add(new Action(Type.UPDATE, station, index, newPWave));
+                    stationEvents.set(index, newPWave);
+                } else if (rand < 0.012) {
+                    actions.add(new Action(Type.INVALIDATE, station, index, 0));
+                }
+            }
+
+            steps.add(actions);
+        }
+        return new Scenario(steps, quakes);
+    }
+
+    private static void apply(List<AbstractStation> stations, Action action) {
+        AbstractStation station = stations.get(action.station());
+        List<Event> detectedEvents = station.getAnalysis().getDetectedEvents();
+        switch (action.type()) {
+            case PICK -> {
+                Event event = new Event(station.getAnalysis());
+                event.maxRatio = 100;
+                event.setpWave(action.pWave());
+                detectedEvents.add(event);
+            }
+            case UPDATE -> detectedEvents.get(action.index()).setpWave(action.pWave());
+            case INVALIDATE -> detectedEvents.get(action.index()).endBadly();
+            case REMOVE -> detectedEvents.clear();
+        }
+    }
+
+    private static Hypocenter toHypocenter(Quake quake, int correctEvents) {
+        Hypocenter hypocenter = new Hypocenter(quake.lat(), quake.lon(), quake.depth(), quake.origin(), 0, correctEvents, null, null);
+        hypocenter.magnitude = quake.magnitude();
+        return hypocenter;
+    }
+
+    /**
+     * Stands in for the hypocenter search: a cluster with enough picks gets the quake that explains most of them
+     */
+    private static void locate(ClusterAnalysis clusterAnalysis, List<Earthquake> earthquakes, List<Quake> quakes,
+                               Map<Cluster, Integer> located, long time) {
+        for (Cluster cluster : clusterAnalysis.getClusters()) {
+            if (cluster.getEarthquake() != null || cluster.getAssignedEvents().size() < LOCATE_MIN_EVENTS) {
+                continue;
+            }
+
+            int best = -1;
+            int bestCorrect = 0;
+            for (int i = 0; i < quakes.size(); i++) {
+                Quake quake = quakes.get(i);
+                if (quake.origin() > time) {
+                    break;
+                }
+
+                Hypocenter hypocenter = toHypocenter(quake, 0);
+                int correct = 0;
+                for (Event event : cluster.getAssignedEvents().values()) {
+                    if (ClusterAnalysis.couldBeArrival(event, hypocenter, false, false, true)) {
+                        correct++;
+                    }
+                }
+                if (correct > bestCorrect) {
+                    best = i;
+                    bestCorrect = correct;
+                }
+            }
+
+            if (bestCorrect * 2 < cluster.getAssignedEvents().size()) {
+                continue;
+            }
+
+            cluster.setPreviousHypocenter(toHypocenter(quakes.get(best), bestCorrect));
+            Earthquake earthquake = new Earthquake(cluster);
+            cluster.setEarthquake(earthquake);
+            earthquakes.add(earthquake);
+            located.put(cluster, best);
+        }
+    }
+
+    private static List<Set<String>> snapshot(ClusterAnalysis clusterAnalysis, List<AbstractStation> stations,
+                                              Map<Cluster, Integer> located) {
+        Map<AbstractStation, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < stations.size(); i++) {
+            indices.put(stations.get(i), i);
+        }
+
+        List<Set<String>> result = new ArrayList<>();
+        for (Cluster cluster : clusterAnalysis.getClusters()) {
+            Set<String> events = new TreeSet<>();
+            events.add("quake %s".formatted(located.get(cluster)));
+            for (var entry : cluster.getAssignedEvents().entrySet()) {
+                events.add("%d@%d".formatted(indices.get(entry.getKey()), entry.getValue().getpWave()));
+            }
+            result.add(events);
+        }
+
+        // S waves are marked on the events, not on the clusters
+        Set<String> sWaves = new TreeSet<>();
+        for (int i = 0; i < stations.size(); i++) {
+            for (Event event : stations.get(i).getAnalysis().getDetectedEvents()) {
+                if (event.isSWave()) {
+                    sWaves.add("S %d@%d".formatted(i, event.getpWave()));
+                }
+            }
+        }
+        result.add(sWaves);
+        return result;
+    }
+
+    private record Result(List<List<Set<String>>> steps, int located, int sWaves, int stolen) {
+    }
+
+    private static Result replay(List<AbstractStation> stations, Scenario scenario, boolean incremental) {
+        for (AbstractStation station : stations) {
+            station.getAnalysis().getDetectedEvents().clear();
+        }
+
+        List<Earthquake> earthquakes = new CopyOnWriteArrayList<>();
+        ClusterAnalysis clusterAnalysis = new ClusterAnalysis(earthquakes, stations, incremental);
+        Map<Cluster, Integer> located = new IdentityHashMap<>();
+        Map<Event, Cluster> assigned = new IdentityHashMap<>();
+        List<List<Set<String>>> result = new ArrayList<>();
+        int sWaves = 0;
+        int stolen = 0;
+        for (int step = 0; step < scenario.steps().size(); step++) {
+            for (Action action : scenario.steps().get(step)) {
+                apply(stations, action);
+            }
+
+            clusterAnalysis.run();
+            locate(clusterAnalysis, earthquakes, scenario.quakes(), located, step * STEP);
+
+            List<Set<String>> snapshot = snapshot(clusterAnalysis, stations, located);
+            result.add(snapshot);
+            sWaves += snapshot.get(snapshot.size() - 1).size();
+
+            // events that moved between two clusters which both still exist
+            for (Cluster cluster : clusterAnalysis.getClusters()) {
+                for (Event event : cluster.getAssignedEvents().values()) {
+                    Cluster previous = assigned.put(event, cluster);
+                    if (previous != null && previous != cluster && !previous.isRemoved()) {
+                        stolen++;
+                    }
+                }
+            }
+        }
+        return new Result(result, located.size(), sWaves, stolen);
+    }
+
+    /**
+     * Both analyses run over the same station objects, because the order in which clusters are expanded
+     * depends on their identity hash codes
+     */
+    private void replay(long seed) {
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(STATIONS, new Random(seed));
+        GlobalStationManager.createListOfClosestStations(stations);
+        Scenario scenario = generateScenario(stations, new Random(seed));
+
+        Result expected = replay(stations, scenario, false);
+        Result actual = replay(stations, scenario, true);
+
+        int maxClusters = 0;
+        for (int step = 0; step < scenario.steps().size(); step++) {
+            assertEquals("step %d".formatted(step), expected.steps().get(step), actual.steps().get(step));
+            maxClusters = Math.max(maxClusters, expected.steps().get(step).size() - 1);
+        }
+
+        assertTrue(maxClusters > 1);
+        assertTrue("no cluster was located", expected.located() > 0);
+        assertTrue("no S wave was marked", expected.sWaves() > 0);
+        assertTrue("no event was stolen", expected.stolen() > 0);
+        assertEquals(expected.stolen(), actual.stolen());
+    }
+
+    @Test
+    public void testReplaySameClusters() {
+        replay(0);
+        replay(1);
+    }
+}
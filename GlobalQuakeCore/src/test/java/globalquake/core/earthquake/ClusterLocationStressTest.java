@@ -0,0 +1,181 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.Settings;
+import globalquake.core.TestEnvironment;
+import globalquake.core.analysis.Event;
+import globalquake.core.earthquake.data.Cluster;
+import globalquake.core.earthquake.data.Earthquake;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.core.station.AbstractStation;
+import globalquake.core.station.GlobalStationManager;
+import globalquake.core.training.StationSpatialIndexBenchmark;
+import globalquake.utils.GeoUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs clustering passes while the clusters are being located on other threads, one of which is stuck the whole
+ * time like a very slow hypocenter search would be.
+ */
+public class ClusterLocationStressTest {
+
+    private static final int STATIONS = 1500;
+    private static final int STEPS = 240;
+    private static final long STEP = 1000;
+    private static final int LOCATION_THREADS = 3;
+
+    private double resolution;
+    private boolean parallel;
+
+    @Before
+    public void setUp() throws Exception {
+        TestEnvironment.prepare();
+        resolution = Settings.hypocenterDetectionResolution;
+        parallel = Settings.parallelHypocenterLocations;
+        Settings.hypocenterDetectionResolution = 0.0;
+        Settings.parallelHypocenterLocations = false;
+    }
+
+    @After
+    public void tearDown() {
+        Settings.hypocenterDetectionResolution = resolution;
+        Settings.parallelHypocenterLocations = parallel;
+    }
+
+    private static Event addPick(AbstractStation station, long pWave) {
+        Event event = new Event(station.getAnalysis());
+        event.maxRatio = 100;
+        event.setpWave(pWave);
+        station.getAnalysis().getDetectedEvents().add(event);
+        return event;
+    }
+
+    @Test
+    public void testConcurrentClusteringAndLocation() throws Exception {
+        Random r = new Random(0);
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(STATIONS, r);
+        GlobalStationManager.createListOfClosestStations(stations);
+
+        List<Earthquake> earthquakes = new CopyOnWriteArrayList<>();
+        ClusterAnalysis clusterAnalysis = new ClusterAnalysis(earthquakes, stations, true);
+        EarthquakeAnalysis earthquakeAnalysis = new EarthquakeAnalysis(clusterAnalysis, earthquakes);
+        // simulated stations have no waveforms to calculate magnitudes from
+        earthquakeAnalysis.testing = true;
+
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(LOCATION_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "Location Stress Thread");
+            thread.setUncaughtExceptionHandler((t, e) -> errors.add(e));
+            return thread;
+        });
+
+        CountDownLatch release = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // picks by station index, ordered by time
+        TreeMap<Long, List<Integer>> pending = new TreeMap<>();
+        Map<Integer, Long> picks = new HashMap<>();
+        AtomicInteger located = new AtomicInteger();
+        int locatedWhileStuck = 0;
+
+        try {
+            long start = System.currentTimeMillis();
+            for (int step = 0; step < STEPS; step++) {
+                long time = start + step * STEP;
+
+                if (step % 12 == 0) {
+                    AbstractStation center = stations.get(r.nextInt(stations.size()));
+                    for (int i = 0; i < stations.size(); i++) {
+                        AbstractStation station = stations.get(i);
+                        double dist = GeoUtils.greatCircleDistance(center.getLatitude(), center.getLongitude(),
+                                station.getLatitude(), station.getLongitude());
+                        double travel = TauPTravelTimeCalculator.getPWaveTravelTime(10, TauPTravelTimeCalculator.toAngle(dist));
+                        if (dist < 1500 && travel >= 0 && r.nextDouble() < 0.8) {
+                            long pWave = time + (long) (travel * 1000) + r.nextLong(1000) - 500;
+                            pending.computeIfAbsent(pWave, k -> new ArrayList<>()).add(i);
+                        }
+                    }
+                }
+
+                for (int i = 0; i < 2; i++) {
+                    pending.computeIfAbsent(time, k -> new ArrayList<>()).add(r.nextInt(stations.size()));
+                }
+
+                while (!pending.isEmpty() && pending.firstKey() <= time) {
+                    var entry = pending.pollFirstEntry();
+                    for (int station : entry.getValue()) {
+                        if (!picks.containsKey(station)) {
+                            addPick(stations.get(station), entry.getKey());
+                            picks.put(station, entry.getKey());
+                        }
+                    }
+                }
+
+                for (Iterator<Map.Entry<Integer, Long>> iterator = picks.entrySet().iterator(); iterator.hasNext(); ) {
+                    var entry = iterator.next();
+                    if (time - entry.getValue() > 90_000) {
+                        stations.get(entry.getKey()).getAnalysis().getDetectedEvents().clear();
+                        iterator.remove();
+                    }
+                }
+
+                clusterAnalysis.run();
+
+                // what EarthquakeAnalysis does outside of testing
+                for (Cluster cluster : clusterAnalysis.getClusters()) {
+                    Earthquake earthquake = cluster.getEarthquake();
+                    if (earthquake != null && !earthquakes.contains(earthquake)) {
+                        earthquakes.add(earthquake);
+                    }
+                }
+
+                earthquakeAnalysis.submit(command -> pool.execute(() -> {
+                    command.run();
+                    located.incrementAndGet();
+                }));
+            }
+
+            // the searches of the last steps may still be running
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (located.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            locatedWhileStuck = located.get();
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.MINUTES));
+        }
+
+        assertEquals(List.of(), errors);
+        assertTrue("no cluster was located while one location thread was stuck", locatedWhileStuck > 0);
+
+        clusterAnalysis.run();
+        earthquakeAnalysis.run();
+
+        Set<Event> assigned = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Cluster cluster : clusterAnalysis.getClusters()) {
+            assertFalse(cluster.isRemoved());
+            if (cluster.getEarthquake() != null) {
+                assertSame(cluster, cluster.getEarthquake().getCluster());
+            }
+            for (var entry : cluster.getAssignedEvents().entrySet()) {
+                assertSame(entry.getKey(), entry.getValue().getAnalysis().getStation());
+                assertTrue("event assigned to two clusters", assigned.add(entry.getValue()));
+            }
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package globalquake.core.earthquake;
 
-import globalquake.core.earthquake.data.MagnitudeReading;
+import globalquake.core.Settings;
+import globalquake.core.TestEnvironment;
+import globalquake.core.earthquake.data.*;
+import globalquake.utils.GeoUtils;
 import gqserver.api.packets.station.InputType;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 
 import static org.junit.Assert.*;
 
 public class EarthquakeAnalysisTest {
 
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
     @Test
     public void testMagnitudeSelectionEmptyList(){
         List<MagnitudeReading> mags = new ArrayList<>();
@@ -95,4 +106,195 @@ public class EarthquakeAnalysisTest {
         assertEquals(EarthquakeAnalysis.selectMagnitude(mags), 4.0, 0.1);
     }
 
-}
\ No newline at end of file
+    /**
+     * The selection of the events before {@link EarthquakeAnalysis#findGoodEvents}
+     */
+    private static void findGoodEventsReference(List<PickedEvent> events, List<PickedEvent> selectedEvents, int maxEvents) {
+        while (selectedEvents.size() < maxEvents) {
+            double maxDist = 0;
+            PickedEvent furthest = null;
+            for (PickedEvent event : events) {
+                if (!selectedEvents.contains(event)) {
+                    double closest = Double.MAX_VALUE;
+                    for (PickedEvent event2 : selectedEvents) {
+                        double dist = GeoUtils.greatCircleDistance(event.lat(), event.lon(),
+                                event2.lat(), event2.lon());
+                        if (dist < closest) {
+                            closest = dist;
+                        }
+                    }
+                    if (closest > maxDist) {
+                        maxDist = closest;
+                        furthest = event;
+                    }
+                }
+            }
+
+            if (furthest == null) {
+                break;
+            }
+
+            selectedEvents.add(furthest);
+
+            if (selectedEvents.size() == events.size()) {
+                break;
+            }
+        }
+    }
+
+    private static void assertSameSelection(List<PickedEvent> events, int maxEvents) {
+        List<PickedEvent> expected = new ArrayList<>(List.of(events.get(0)));
+        findGoodEventsReference(events, expected, maxEvents);
+
+        List<PickedEvent> actual = new ArrayList<>(List.of(events.get(0)));
+        EarthquakeAnalysis.findGoodEvents(events, actual, maxEvents);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testGoodEventsSameAsReference(){
+        Random r = new Random(0);
+        for (int cluster = 0; cluster < 50; cluster++) {
+            double lat = r.nextDouble() * 170 - 85;
+            double lon = r.nextDouble() * 360 - 180;
+            double radius = cluster % 5 == 0 ? 15000 : 50 + r.nextDouble() * 3000;
+
+            List<PickedEvent> events = new ArrayList<>();
+            int count = 5 + r.nextInt(cluster % 10 == 0 ? 2000 : 300);
+            for (int i = 0; i < count; i++) {
+                double[] latLon = GeoUtils.moveOnGlobe(lat, lon, r.nextDouble() * radius, r.nextDouble() * 360);
+                events.add(new PickedEvent(r.nextLong(1000), latLon[0], latLon[1], 0, r.nextDouble() * 100));
+            }
+
+            assertSameSelection(events, 1 + r.nextInt(80));
+        }
+    }
+
+    @Test
+    public void testGoodEventsSameLocations(){
+        Random r = new Random(1);
+        List<PickedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            double lat = r.nextDouble() * 20;
+            double lon = r.nextDouble() * 20;
+            events.add(new PickedEvent(0, lat, lon, 0, 10));
+            // a copy of the same event and another one at the same station
+            events.add(new PickedEvent(0, lat, lon, 0, 10));
+            events.add(new PickedEvent(500, lat, lon, 0, 20));
+        }
+
+        for (int maxEvents : new int[]{1, 10, 40, 60, 200}) {
+            assertSameSelection(events, maxEvents);
+        }
+
+        List<PickedEvent> selected = new ArrayList<>(List.of(events.get(0)));
+        EarthquakeAnalysis.findGoodEvents(events, selected, 200);
+        assertEquals(40, selected.size());
+    }
+
+    @Test
+    public void testAdaptiveSearch() {
+        HypocenterFinderSettings finderSettings = new HypocenterFinderSettings(Settings.pWaveInaccuracyThresholdDefault,
+                Settings.hypocenterCorrectThresholdDefault, Settings.hypocenterDetectionResolutionDefault, 0.0, 4, false);
+        boolean adaptive = EarthquakeAnalysis.ADAPTIVE_SEARCH;
+        EarthquakeAnalysis.ADAPTIVE_SEARCH = true;
+        try {
+            Random r = new Random(0);
+            for (int i = 0; i < 3; i++) {
+                double lat = r.nextDouble() * 120 - 60;
+                double lon = r.nextDouble() * 360 - 180;
+                double depth = 5 + r.nextDouble() * 100;
+                long origin = 1_700_000_000_000L + r.nextLong(1_000_000);
+
+                List<PickedEvent> events = TestEnvironment.createQuakePicks(r, 60, lat, lon, depth, origin, 50, 1250, 100);
+
+                // the search starts at the anchor, away from the hypocenter
+                double[] anchor = GeoUtils.moveOnGlobe(lat, lon, 300, r.nextDouble() * 360);
+                Cluster cluster = new Cluster(UUID.randomUUID(), anchor[0], anchor[1], 0);
+                cluster.updateAnchor(new Hypocenter(anchor[0], anchor[1], 0, origin, 0, 0, null, null));
+
+                PreliminaryHypocenter result = new EarthquakeAnalysis().runHypocenterFinder(events, cluster, finderSettings, false);
+                assertNotNull(result);
+                assertEquals(0, GeoUtils.greatCircleDistance(lat, lon, result.lat, result.lon), 5.0);
+                assertEquals(depth, result.depth, 20.0);
+                assertEquals(origin, result.origin, 1000.0);
+            }
+        } finally {
+            EarthquakeAnalysis.ADAPTIVE_SEARCH = adaptive;
+        }
+    }
+
+    /**
+     * The bounds a sweep over all depths finds
+     */
+    private static int[] sweepDepthInterval(boolean[] inside, int aboveBest, int belowBest) {
+        int upper = aboveBest + 1;
+        int lower = belowBest - 1;
+        for (int index = 0; index < inside.length; index++) {
+            if (inside[index] && index <= aboveBest && index < upper) {
+                upper = index;
+            }
+            if (inside[index] && index >= belowBest) {
+                lower = index;
+            }
+        }
+        return new int[]{upper, lower};
+    }
+
+    private static void assertDepthInterval(boolean[] inside, int best) {
+        int[] evaluated = new int[1];
+        int[] bounds = EarthquakeAnalysis.findDepthInterval(index -> {
+            evaluated[0]++;
+            return inside[index];
+        }, inside.length - 1, best - 1, best + 1);
+
+        assertArrayEquals(sweepDepthInterval(inside, best - 1, best + 1), bounds);
+        assertTrue(evaluated[0] < inside.length / 3);
+    }
+
+    private static void fill(boolean[] inside, int from, int to) {
+        for (int index = Math.max(0, from); index <= Math.min(inside.length - 1, to); index++) {
+            inside[index] = true;
+        }
+    }
+
+    @Test
+    public void testDepthIntervalTwoMinima() {
+        // a second minimum above the best depth, with bands narrower than the coarse step between its outermost
+        // coarse depth and the coarse depth before it, and right next to the best depth
+        boolean[] inside = new boolean[750];
+        fill(inside, 296, 304);
+        fill(inside, 123, 140);
+        fill(inside, 121, 121);
+        fill(inside, 290, 291);
+        assertDepthInterval(inside, 300);
+
+        // a second minimum below the best depth, not aligned with the coarse depths counted from the bottom
+        inside = new boolean[750];
+        fill(inside, 60, 61);
+        fill(inside, 403, 409);
+        fill(inside, 411, 411);
+        assertDepthInterval(inside, 60);
+
+        // no depth other than the best one inside
+        inside = new boolean[750];
+        assertDepthInterval(inside, 0);
+        assertDepthInterval(inside, 300);
+        assertDepthInterval(inside, 749);
+
+        Random r = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            inside = new boolean[200 + r.nextInt(600)];
+            int best = r.nextInt(inside.length);
+            fill(inside, best - r.nextInt(8), best + r.nextInt(8));
+
+            int second = r.nextInt(inside.length);
+            fill(inside, second, second + 7 + r.nextInt(20));
+            assertDepthInterval(inside, best);
+        }
+    }
+}
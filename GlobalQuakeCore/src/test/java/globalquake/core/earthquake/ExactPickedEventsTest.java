@@ -0,0 +1,88 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.TestEnvironment;
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.utils.GeoUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ExactPickedEventsTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    @Test
+    public void testSameAsScalarPath() {
+        Random r = new Random(0);
+        List<PickedEvent> events = TestEnvironment.createRandomPicks(r, 200);
+        ExactPickedEvents exactPickedEvents = new ExactPickedEvents(events);
+        long[] origins = new long[events.size()];
+
+        int arrivals = 0;
+        int noArrivals = 0;
+        for (int point = 0; point < 200; point++) {
+            double lat = r.nextDouble() * 180 - 90;
+            double lon = r.nextDouble() * 360 - 180;
+            exactPickedEvents.calculateAngles(lat, lon);
+
+            for (int i = 0; i < events.size(); i++) {
+                PickedEvent event = events.get(i);
+                double angle = TauPTravelTimeCalculator.toAngle(GeoUtils.greatCircleDistance(event.lat(), event.lon(), lat, lon));
+                assertEquals(angle, exactPickedEvents.getAngle(i), 1e-9);
+            }
+
+            for (double depth : new double[]{0, 10, r.nextDouble() * 750, 749.99}) {
+                exactPickedEvents.calculateOrigins(depth, origins, Long.MIN_VALUE);
+
+                for (int i = 0; i < events.size(); i++) {
+                    PickedEvent event = events.get(i);
+                    double travelTime = TauPTravelTimeCalculator.getPWaveTravelTimeFast(depth, exactPickedEvents.getAngle(i));
+                    if (travelTime == TauPTravelTimeCalculator.NO_ARRIVAL) {
+                        noArrivals++;
+                        assertEquals(Long.MIN_VALUE, origins[i]);
+                    } else {
+                        arrivals++;
+                        long origin = event.pWave() - (long) ((travelTime + EarthquakeAnalysis.getElevationCorrection(event.elevation())) * 1000);
+                        assertEquals(origin, origins[i]);
+                    }
+                }
+            }
+        }
+
+        assertTrue(arrivals > 0);
+        assertTrue(noArrivals > 0);
+    }
+
+    @Test
+    public void testBatchedTravelTimes() {
+        Random r = new Random(1);
+        double[] angles = new double[1000];
+        double[] result = new double[angles.length];
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = r.nextDouble() * 200 - 10;
+        }
+        angles[0] = 0;
+        angles[1] = 150;
+
+        for (double depth : new double[]{0, 33.3, 100, 749.5}) {
+            TauPTravelTimeCalculator.getPWaveTravelTimesFast(depth, angles, result, angles.length);
+            for (int i = 0; i < angles.length; i++) {
+                assertEquals(TauPTravelTimeCalculator.getPWaveTravelTimeFast(depth, angles[i]), result[i], 0.0);
+            }
+        }
+
+        // only count values are written
+        result[5] = 123;
+        TauPTravelTimeCalculator.getPWaveTravelTimesFast(-1, angles, result, 5);
+        assertEquals(TauPTravelTimeCalculator.NO_ARRIVAL, result[4], 0.0);
+        assertEquals(123, result[5], 0.0);
+    }
+}
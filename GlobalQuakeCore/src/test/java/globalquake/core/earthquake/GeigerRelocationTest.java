@@ -0,0 +1,95 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.Settings;
+import globalquake.core.TestEnvironment;
+import globalquake.core.earthquake.data.HypocenterFinderSettings;
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.earthquake.data.PreliminaryHypocenter;
+import globalquake.utils.GeoUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeigerRelocationTest {
+
+    private static final HypocenterFinderSettings finderSettings = new HypocenterFinderSettings(Settings.pWaveInaccuracyThresholdDefault,
+            Settings.hypocenterCorrectThresholdDefault, 0.0, 0.0, 4, false);
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    @Test
+    public void testRelocatesFromNearbyStart() {
+        Random r = new Random(0);
+        for (int i = 0; i < 10; i++) {
+            double lat = r.nextDouble() * 120 - 60;
+            double lon = r.nextDouble() * 360 - 180;
+            double depth = 5 + r.nextDouble() * 200;
+            long origin = 1_700_000_000_000L + r.nextLong(1_000_000);
+
+            List<PickedEvent> events = TestEnvironment.createQuakePicks(r, 60, lat, lon, depth, origin, 50, 1250, 100);
+
+            // the previous hypocenter is a bit off
+            double[] start = GeoUtils.moveOnGlobe(lat, lon, 5 + r.nextDouble() * 10, r.nextDouble() * 360);
+            PreliminaryHypocenter previous = new PreliminaryHypocenter(start[0], start[1], Math.max(0, depth + r.nextDouble() * 20 - 10),
+                    origin + r.nextLong(1000) - 500, 0, 0);
+
+            PreliminaryHypocenter result = GeigerRelocation.relocate(events, previous, 0.9, finderSettings);
+            assertNotNull(result);
+            assertEquals(0, GeoUtils.greatCircleDistance(lat, lon, result.lat, result.lon), 5.0);
+            assertEquals(depth, result.depth, 15.0);
+            assertEquals(origin, result.origin, 500.0);
+            assertTrue(result.correctStations >= 54);
+        }
+    }
+
+    @Test
+    public void testExactWithoutNoise() {
+        Random r = new Random(1);
+        List<PickedEvent> events = TestEnvironment.createQuakePicks(r, 40, 35.0, 139.0, 40.0, 1_700_000_000_000L, 50, 1250, 0);
+        double[] start = GeoUtils.moveOnGlobe(35.0, 139.0, 10, 45);
+
+        PreliminaryHypocenter result = GeigerRelocation.relocate(events,
+                new PreliminaryHypocenter(start[0], start[1], 30.0, 1_700_000_001_000L, 0, 0), 1.0, finderSettings);
+        assertNotNull(result);
+        assertEquals(0, GeoUtils.greatCircleDistance(35.0, 139.0, result.lat, result.lon), 1.0);
+        assertEquals(40.0, result.depth, 3.0);
+    }
+
+    @Test
+    public void testFallbackWhenResidualsJump() {
+        Random r = new Random(2);
+        long origin = 1_700_000_000_000L;
+        List<PickedEvent> events = TestEnvironment.createQuakePicks(r, 40, 0, 0, 10, origin, 50, 1250, 100);
+
+        // the previous hypocenter is far away from the picks
+        double[] start = GeoUtils.moveOnGlobe(0, 0, 800, 90);
+        assertNull(GeigerRelocation.relocate(events, new PreliminaryHypocenter(start[0], start[1], 10, origin, 0, 0), 0.9, finderSettings));
+
+        assertNull(GeigerRelocation.relocate(events.subList(0, 3), new PreliminaryHypocenter(0, 0, 10, origin, 0, 0), 0.9, finderSettings));
+    }
+
+    @Test
+    public void testSolve() {
+        double[][] matrix = {{4, 1, 0, 0}, {1, 3, 1, 0}, {0, 1, 2, 1}, {0, 0, 1, 5}};
+        double[] expected = {1, -2, 3, 0.5};
+        double[] rhs = new double[4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                rhs[i] += matrix[i][j] * expected[j];
+            }
+        }
+
+        double[] result = new double[4];
+        assertTrue(GeigerRelocation.solve(matrix, rhs, result));
+        assertArrayEquals(expected, result, 1e-9);
+
+        assertFalse(GeigerRelocation.solve(new double[4][4], new double[4], result));
+    }
+}
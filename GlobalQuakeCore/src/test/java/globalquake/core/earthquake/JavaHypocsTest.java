@@ -0,0 +1,60 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.Settings;
+import globalquake.core.TestEnvironment;
+import globalquake.core.earthquake.data.Cluster;
+import globalquake.core.earthquake.data.HypocenterFinderSettings;
+import globalquake.core.earthquake.data.PickedEvent;
+import globalquake.core.earthquake.data.PreliminaryHypocenter;
+import globalquake.utils.GeoUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class JavaHypocsTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    @Test
+    public void testFindsHypocenter() {
+        Random r = new Random(0);
+        HypocenterFinderSettings finderSettings = new HypocenterFinderSettings(Settings.pWaveInaccuracyThresholdDefault,
+                Settings.hypocenterCorrectThresholdDefault, 0.0, 0.0, 4, false);
+
+        for (int i = 0; i < 3; i++) {
+            double lat = r.nextDouble() * 120 - 60;
+            double lon = r.nextDouble() * 360 - 180;
+            double depth = r.nextDouble() * 300;
+            long origin = 1_700_000_000_000L + r.nextLong(1_000_000);
+
+            List<PickedEvent> events = TestEnvironment.createQuakePicks(r, 40, lat, lon, depth, origin, 100, 1600, 100);
+
+            // the search starts at the root, away from the hypocenter
+            double[] root = GeoUtils.moveOnGlobe(lat, lon, 300, r.nextDouble() * 360);
+            Cluster cluster = new Cluster(UUID.randomUUID(), root[0], root[1], 0);
+
+            PreliminaryHypocenter result = JavaHypocs.findHypocenter(events, cluster, 0, finderSettings);
+            assertNotNull(result);
+            assertEquals(0, GeoUtils.greatCircleDistance(lat, lon, result.lat, result.lon), 20.0);
+            assertEquals(depth, result.depth, 30.0);
+            assertEquals(origin, result.origin, 2000.0);
+        }
+    }
+
+    @Test
+    public void testTooFewStations() {
+        HypocenterFinderSettings finderSettings = new HypocenterFinderSettings(Settings.pWaveInaccuracyThresholdDefault,
+                Settings.hypocenterCorrectThresholdDefault, 0.0, 0.0, 4, false);
+        List<PickedEvent> events = TestEnvironment.createQuakePicks(new Random(1), 40, 0, 0, 10, 0, 100, 1600, 100).subList(0, 2);
+
+        assertNull(JavaHypocs.findHypocenter(events, new Cluster(UUID.randomUUID(), 0, 0, 0), 0, finderSettings));
+    }
+}
@@ -0,0 +1,73 @@
+package globalquake.core.earthquake;
+
+import globalquake.utils.GeoUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MisfitSamplesTest {
+
+    @Test
+    public void testRays() {
+        MisfitSamples samples = new MisfitSamples();
+        MisfitSamples threadSamples = new MisfitSamples();
+
+        // 8 rays, every sample is exactly on one of them, added from the farthest
+        for (int dist = 2000; dist >= 1; dist--) {
+            for (int ray = 0; ray < 8; ray++) {
+                double[] latLon = GeoUtils.moveOnGlobe(10, 20, dist / 10.0, ray * 45.0);
+                (ray % 2 == 0 ? samples : threadSamples).add(latLon[0], latLon[1], ray * 10000 + dist, dist);
+            }
+        }
+
+        samples.addAll(threadSamples);
+        assertEquals(16000, samples.size());
+
+        MisfitSamples.Ray[] rays = samples.toRays(10, 20, 8, 0);
+        assertEquals(8, rays.length);
+        for (int ray = 0; ray < 8; ray++) {
+            assertEquals(2000, rays[ray].size());
+            for (int i = 0; i < rays[ray].size(); i++) {
+                assertEquals((i + 1) / 10.0, rays[ray].getDistance(i), 1e-6);
+                assertEquals(ray * 10000 + i + 1, rays[ray].getHeuristic(i), 0.0);
+                assertEquals(i + 1, rays[ray].getOrigin(i));
+            }
+        }
+
+        samples.clear();
+        assertEquals(0, samples.size());
+        assertEquals(0, samples.toRays(10, 20, 8, 0)[3].size());
+    }
+
+    @Test
+    public void testSectors() {
+        MisfitSamples samples = new MisfitSamples();
+        for (double angle : new double[]{0, 22, 23, 350, 338, 337}) {
+            double[] latLon = GeoUtils.moveOnGlobe(0, 0, 50, angle);
+            samples.add(latLon[0], latLon[1], angle, 0);
+        }
+
+        MisfitSamples.Ray[] rays = samples.toRays(0, 0, 8, 0);
+        // the sector of the first ray spans from 337.5 to 22.5 degrees
+        assertEquals(4, rays[0].size());
+        assertEquals(1, rays[1].size());
+        assertEquals(23, rays[1].getHeuristic(0), 0.0);
+        assertEquals(1, rays[7].size());
+        assertEquals(337, rays[7].getHeuristic(0), 0.0);
+    }
+
+    @Test
+    public void testInsert() {
+        MisfitSamples.Ray ray = new MisfitSamples().toRays(0, 0, 1, 0)[0];
+        double[] distances = {5, 1, 3, 40, 2, 0.5, 100, 4, 3.5, 6, 7, 8, 9, 10, 11, 12, 13, 14};
+        for (double distance : distances) {
+            ray.insert(distance, distance * 2, (long) distance);
+        }
+
+        assertEquals(distances.length, ray.size());
+        for (int i = 1; i < ray.size(); i++) {
+            assertTrue(ray.getDistance(i - 1) <= ray.getDistance(i));
+            assertEquals(ray.getDistance(i) * 2, ray.getHeuristic(i), 0.0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package globalquake.core.earthquake;
+
+import globalquake.core.analysis.Event;
+import globalquake.core.geo.taup.TauPTravelTimeCalculator;
+import globalquake.core.station.AbstractStation;
+import globalquake.core.training.StationSpatialIndexBenchmark;
+import globalquake.utils.GeoUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PickIndexTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        TauPTravelTimeCalculator.init();
+    }
+
+    private static boolean couldBeArrival(Event event, double lat, double lon, double depth, long origin, boolean pWaveOnly) {
+        return ClusterAnalysis.couldBeArrival(event.getLatFromStation(), event.getLonFromStation(), event.getElevationFromStation(),
+                event.getpWave(), lat, lon, depth, origin, 0, false, true, pWaveOnly);
+    }
+
+    @Test
+    public void testCandidatesContainAllArrivals() {
+        Random r = new Random(0);
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(3000, r);
+
+        List<Event> events = new ArrayList<>();
+        PickIndex pickIndex = new PickIndex();
+        for (AbstractStation station : stations) {
+            Event event = new Event(station.getAnalysis());
+            event.setpWave(1_000_000 + r.nextLong(1_800_000));
+            events.add(event);
+            pickIndex.add(event);
+        }
+
+        assertEquals(events.size(), pickIndex.size());
+
+        for (int i = 0; i < 40; i++) {
+            AbstractStation epicenter = stations.get(r.nextInt(stations.size()));
+            double lat = epicenter.getLatitude() + r.nextGaussian();
+            double lon = epicenter.getLongitude() + r.nextGaussian();
+            double depth = r.nextDouble() * 600;
+            long origin = 1_000_000 + r.nextLong(1_200_000);
+            boolean pWaveOnly = r.nextBoolean();
+
+            Set<Event> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+            pickIndex.forEachCandidate(lat, lon, depth, origin, pWaveOnly, PickIndex.INCREASING_P_WINDOW, candidates::add);
+
+            int arrivals = 0;
+            for (Event event : events) {
+                if (couldBeArrival(event, lat, lon, depth, origin, pWaveOnly)) {
+                    arrivals++;
+                    assertTrue("missed pick at %.1f km".formatted(GeoUtils.greatCircleDistance(lat, lon,
+                            event.getLatFromStation(), event.getLonFromStation())), candidates.contains(event));
+                }
+            }
+
+            assertTrue(arrivals > 0);
+            assertTrue(candidates.size() < events.size());
+        }
+    }
+
+    @Test
+    public void testIgnoresEventsWithoutPWave() {
+        AbstractStation station = StationSpatialIndexBenchmark.createStations(1, new Random(0)).get(0);
+        PickIndex pickIndex = new PickIndex();
+        pickIndex.add(new Event(station.getAnalysis()));
+        assertEquals(0, pickIndex.size());
+
+        Event event = new Event(station.getAnalysis());
+        event.setpWave(10_000);
+        pickIndex.add(event);
+        assertEquals(1, pickIndex.size());
+
+        pickIndex.clear();
+        assertEquals(0, pickIndex.size());
+    }
+}
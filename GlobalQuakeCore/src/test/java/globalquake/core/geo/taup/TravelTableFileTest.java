@@ -0,0 +1,103 @@
+package globalquake.core.geo.taup;
+
+import globalquake.core.exception.FatalIOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TravelTableFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float[][] createTable(Random r, int depths, int angles) {
+        float[][] table = new float[depths][angles];
+        for (float[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = r.nextDouble() < 0.05 ? TauPTravelTimeCalculator.NO_ARRIVAL : r.nextFloat() * 1200;
+            }
+        }
+        return table;
+    }
+
+    @Test
+    public void testWriteAndMap() throws Exception {
+        Random r = new Random(0);
+        TauPTravelTable travelTable = new TauPTravelTable(createTable(r, 11, 16), createTable(r, 11, 16),
+                createTable(r, 11, 19), createTable(r, 11, 5));
+
+        File file = folder.newFile("travel_table.bin");
+        TravelTableFile.write(travelTable, file.toPath());
+
+        TauPTravelTable result = TravelTableFile.read(file.toURI().toURL());
+        assertArrayEquals(travelTable.p_travel_table, result.p_travel_table);
+        assertArrayEquals(travelTable.s_travel_table, result.s_travel_table);
+        assertArrayEquals(travelTable.pkikp_travel_table, result.pkikp_travel_table);
+        assertArrayEquals(travelTable.pkp_travel_table, result.pkp_travel_table);
+
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(TravelTableFile.MAGIC, header.getInt());
+        assertEquals(TravelTableFile.VERSION, header.getInt());
+    }
+
+    @Test
+    public void testReadFromJar() throws Exception {
+        Random r = new Random(2);
+        TauPTravelTable travelTable = new TauPTravelTable(createTable(r, 5, 7), createTable(r, 5, 7),
+                createTable(r, 5, 9), createTable(r, 5, 4));
+
+        File file = folder.newFile("travel_table.bin");
+        TravelTableFile.write(travelTable, file.toPath());
+
+        File jar = folder.newFile("travel_table.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(TauPTravelTimeCalculator.TRAVEL_TABLE_PATH));
+            out.write(Files.readAllBytes(file.toPath()));
+            out.closeEntry();
+        }
+
+        URL url = new URL("jar:" + jar.toURI() + "!/" + TauPTravelTimeCalculator.TRAVEL_TABLE_PATH);
+        TauPTravelTable result = TravelTableFile.read(url);
+        assertArrayEquals(travelTable.p_travel_table, result.p_travel_table);
+        assertArrayEquals(travelTable.pkp_travel_table, result.pkp_travel_table);
+    }
+
+    @Test
+    public void testWrongVersion() throws Exception {
+        Random r = new Random(1);
+        TauPTravelTable travelTable = new TauPTravelTable(createTable(r, 3, 3), createTable(r, 3, 3),
+                createTable(r, 3, 3), createTable(r, 3, 3));
+
+        File file = folder.newFile("travel_table.bin");
+        TravelTableFile.write(travelTable, file.toPath());
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(4, TravelTableFile.VERSION + 1);
+        assertThrows(FatalIOException.class, () -> TravelTableFile.read(buffer));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        Random r = new Random(2);
+        TauPTravelTable travelTable = new TauPTravelTable(createTable(r, 3, 3), createTable(r, 3, 3),
+                createTable(r, 3, 3), createTable(r, 3, 3));
+
+        File file = folder.newFile("travel_table.bin");
+        TravelTableFile.write(travelTable, file.toPath());
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertThrows(FatalIOException.class, () -> TravelTableFile.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice()));
+    }
+}
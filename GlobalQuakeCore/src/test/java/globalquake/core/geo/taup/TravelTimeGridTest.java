@@ -0,0 +1,150 @@
+package globalquake.core.geo.taup;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TravelTimeGridTest {
+
+    private static final double MIN_ANGLE = 140;
+    private static final double MAX_ANGLE = 180;
+
+    private static float[][] createTable(Random r) {
+        float[][] table = new float[31][41];
+        for (int x = 0; x < table.length; x++) {
+            for (int y = 0; y < table[0].length; y++) {
+                table[x][y] = r.nextDouble() < 0.1 ? TauPTravelTimeCalculator.NO_ARRIVAL : (float) (1000 + x * 0.5 + y * 2 + r.nextDouble());
+            }
+        }
+        return table;
+    }
+
+    /**
+     * The interpolation of the travel time tables before {@link TravelTimeGrid}
+     */
+    private static double bilinearInterpolation(float[][] array, double depth, double angle) {
+        double x = (depth / TauPTravelTimeCalculator.MAX_DEPTH) * (array.length - 1);
+        double y = ((angle - MIN_ANGLE) / (MAX_ANGLE - MIN_ANGLE)) * (array[0].length - 1);
+        if (x < 0 || y < 0 || x > array.length - 1 || y > array[0].length - 1) {
+            return TauPTravelTimeCalculator.NO_ARRIVAL;
+        }
+
+        int x0 = (int) x;
+        int x1 = x0 == array.length - 1 ? x0 : x0 + 1;
+        int y0 = (int) y;
+        int y1 = y0 == array[0].length - 1 ? y0 : y0 + 1;
+
+        float q11 = array[x0][y0];
+        float q21 = array[x1][y0];
+        float q12 = array[x0][y1];
+        float q22 = array[x1][y1];
+
+        if (q11 < 0 || q21 < 0 || q12 < 0 || q22 < 0) {
+            return TauPTravelTimeCalculator.NO_ARRIVAL;
+        }
+
+        double tx = x - x0;
+        double ty = y - y0;
+
+        return (1 - tx) * (1 - ty) * q11 + tx * (1 - ty) * q21 + (1 - tx) * ty * q12 + tx * ty * q22;
+    }
+
+    @Test
+    public void testSameAsBilinearInterpolation() {
+        Random r = new Random(0);
+        float[][] table = createTable(r);
+        TravelTimeGrid grid = new TravelTimeGrid(table, MIN_ANGLE, MAX_ANGLE);
+
+        int arrivals = 0;
+        int noArrivals = 0;
+        for (int i = 0; i < 100_000; i++) {
+            double depth = r.nextDouble() * 800 - 25;
+            double angle = r.nextDouble() * 50 + 135;
+            if (i % 10 == 0) {
+                // exactly on the nodes and the edges
+                depth = r.nextInt(31) * 25.0;
+                angle = MIN_ANGLE + r.nextInt(41);
+            }
+
+            double expected = bilinearInterpolation(table, depth, angle);
+            double actual = grid.get(depth, angle);
+            if (expected == TauPTravelTimeCalculator.NO_ARRIVAL) {
+                noArrivals++;
+                assertEquals(TauPTravelTimeCalculator.NO_ARRIVAL, actual, 0.0);
+            } else {
+                arrivals++;
+                assertEquals(expected, actual, 1e-3);
+            }
+        }
+
+        assertTrue(arrivals > 0);
+        assertTrue(noArrivals > 0);
+    }
+
+    @Test
+    public void testBatchedSameAsScalar() {
+        Random r = new Random(1);
+        TravelTimeGrid grid = new TravelTimeGrid(createTable(r), MIN_ANGLE, MAX_ANGLE);
+
+        double[] angles = new double[1000];
+        double[] result = new double[angles.length];
+        for (int i = 0; i < angles.length; i++) {
+            angles[i] = r.nextDouble() * 50 + 135;
+        }
+
+        for (double depth : new double[]{-1, 0, 33.3, 749.5, 750, 751}) {
+            grid.get(depth, angles, result, angles.length);
+            for (int i = 0; i < angles.length; i++) {
+                assertEquals(grid.get(depth, angles[i]), result[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testGradientSameAsFiniteDifferences() {
+        Random r = new Random(3);
+        TravelTimeGrid grid = new TravelTimeGrid(createTable(r), MIN_ANGLE, MAX_ANGLE);
+
+        double h = 1e-4;
+        double[] gradient = new double[2];
+        int checked = 0;
+        for (int i = 0; i < 10_000; i++) {
+            double depth = r.nextDouble() * 740 + 5;
+            double angle = MIN_ANGLE + 0.5 + r.nextDouble() * 39;
+
+            boolean arrival = grid.getGradient(depth, angle, gradient);
+            assertEquals(grid.get(depth, angle) != TauPTravelTimeCalculator.NO_ARRIVAL, arrival);
+
+            double t = grid.get(depth, angle);
+            double tDepth = grid.get(depth + h, angle);
+            double tAngle = grid.get(depth, angle + h);
+            if (!arrival || tDepth == TauPTravelTimeCalculator.NO_ARRIVAL || tAngle == TauPTravelTimeCalculator.NO_ARRIVAL
+                    || (int) ((depth + h) / 25.0) != (int) (depth / 25.0) || (int) (angle + h) != (int) angle) {
+                // the derivative is not continuous across the cells
+                continue;
+            }
+
+            checked++;
+            assertEquals((tDepth - t) / h, gradient[0], 1e-3);
+            assertEquals((tAngle - t) / h, gradient[1], 1e-3);
+        }
+
+        assertTrue(checked > 1000);
+        assertFalse(grid.getGradient(-1, MIN_ANGLE + 1, gradient));
+        assertFalse(grid.getGradient(10, MAX_ANGLE + 1, gradient));
+    }
+
+    @Test
+    public void testToArray() {
+        float[][] table = createTable(new Random(2));
+        float[][] result = new TravelTimeGrid(table, MIN_ANGLE, MAX_ANGLE).toArray();
+
+        for (int x = 0; x < table.length; x++) {
+            for (int y = 0; y < table[0].length; y++) {
+                assertEquals(table[x][y], result[x][y], 0.0);
+            }
+        }
+    }
+}
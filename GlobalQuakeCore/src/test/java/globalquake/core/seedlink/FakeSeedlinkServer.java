@@ -0,0 +1,170 @@
+package globalquake.core.seedlink;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim2;
+import edu.iris.dmc.seedcodec.SteimFrameBlock;
+import edu.sc.seis.seisFile.mseed.Blockette1000;
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal SeedLink server for tests. It accepts the HELLO/STATION/SELECT/DATA/END handshake and then streams the
+ * given miniSEED records to every client.
+ */
+public class FakeSeedlinkServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final List<byte[]> records;
+    private final Set<String> rejectedStations;
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Thread acceptThread;
+
+    private volatile boolean dropAfterStreaming;
+
+    public FakeSeedlinkServer(List<byte[]> records, Set<String> rejectedStations) throws IOException {
+        this.records = records;
+        this.rejectedStations = rejectedStations;
+        this.serverSocket = new ServerSocket(0);
+        acceptThread = new Thread(this::acceptLoop, "Fake Seedlink Server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public void setDropAfterStreaming(boolean dropAfterStreaming) {
+        this.dropAfterStreaming = dropAfterStreaming;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                clients.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "Fake Seedlink Client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException ignored) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = socket.getOutputStream();
+
+            String station = null;
+            String line;
+            while ((line = readCommand(reader)) != null) {
+                if (line.equals("HELLO")) {
+                    out.write("SeedLink v3.1 (Fake)\r\nGlobalQuake test\r\n".getBytes(StandardCharsets.US_ASCII));
+                } else if (line.startsWith("STATION")) {
+                    station = line.split(" ")[1];
+                    out.write((rejectedStations.contains(station) ? "ERROR\r\n" : "OK\r\n").getBytes(StandardCharsets.US_ASCII));
+                } else if (line.startsWith("SELECT") || line.equals("DATA")) {
+                    out.write((rejectedStations.contains(station) ? "ERROR\r\n" : "OK\r\n").getBytes(StandardCharsets.US_ASCII));
+                } else if (line.equals("END")) {
+                    break;
+                } else if (line.equals("BYE")) {
+                    return;
+                }
+                out.flush();
+            }
+
+            int sequence = 0;
+            for (byte[] record : records) {
+                out.write("SL%06X".formatted(sequence++).getBytes(StandardCharsets.US_ASCII));
+                out.write(record);
+            }
+            out.flush();
+
+            if (dropAfterStreaming) {
+                return;
+            }
+
+            // keep the connection open until the client leaves
+            //noinspection StatementWithEmptyBody
+            while (readCommand(reader) != null) {
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String readCommand(BufferedReader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '\r') {
+                return sb.toString();
+            }
+            if (c != '\n') {
+                sb.append((char) c);
+            }
+        }
+        return null;
+    }
+
+    public static byte[] createRecord(String network, String station, String channel, String location,
+                                      Instant start, double sampleRate, int[] data, int sequence) throws Exception {
+        SteimFrameBlock block = Steim2.encode(data, 7);
+        if (block.getNumSamples() != data.length) {
+            throw new IllegalArgumentException("Data does not fit into one record!");
+        }
+
+        DataHeader header = new DataHeader(sequence, 'D', false);
+        header.setNetworkCode(network);
+        header.setStationIdentifier(station);
+        header.setChannelIdentifier(channel);
+        header.setLocationIdentifier(location);
+        header.setStartBtime(new Btime(start));
+        header.setNumSamples((short) data.length);
+        header.setSampleRate(sampleRate);
+
+        Blockette1000 blockette1000 = new Blockette1000();
+        blockette1000.setEncodingFormat((byte) B1000Types.STEIM2);
+        blockette1000.setWordOrder((byte) 1);
+        blockette1000.setDataRecordLength((byte) 9);
+
+        DataRecord record = new DataRecord(header);
+        record.addBlockette(blockette1000);
+        record.setData(block.getEncodedData());
+        record.setRecordSize(SeedlinkFrameDecoder.RECORD_SIZE);
+        return record.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : clients) {
+            socket.close();
+        }
+        try {
+            acceptThread.join(1000);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package globalquake.core.seedlink;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import globalquake.core.database.SeedlinkNetwork;
+import globalquake.core.database.SeedlinkStatus;
+import globalquake.core.station.AbstractStation;
+import globalquake.core.station.GlobalStation;
+import gqserver.api.packets.station.InputType;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class SeedlinkIngestEngineTest {
+
+    private static final int RECORDS = 50;
+
+    private static List<byte[]> createRecords(String network, String station) throws Exception {
+        List<byte[]> result = new ArrayList<>();
+        Instant start = Instant.parse("2023-10-01T00:00:00Z");
+        for (int i = 0; i < RECORDS; i++) {
+            int[] data = new int[100];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (int) (Math.sin((i * 100 + j) * 0.1) * 1000);
+            }
+            result.add(FakeSeedlinkServer.createRecord(network, station, "BHZ", "00", start.plusSeconds(i * 5L), 20.0, data, i + 1));
+        }
+        return result;
+    }
+
+    private static GlobalStation createStation(String network, String station, SeedlinkNetwork seedlinkNetwork, int id) {
+        return new GlobalStation(network, station, "BHZ", "00", 0, 0, 0, id, seedlinkNetwork, 1.0, InputType.VELOCITY);
+    }
+
+    private static void waitFor(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            //noinspection BusyWait
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testMultipleNetworksSingleThread() throws Exception {
+        try (FakeSeedlinkServer serverA = new FakeSeedlinkServer(createRecords("AA", "STA1"), Set.of());
+             FakeSeedlinkServer serverB = new FakeSeedlinkServer(createRecords("BB", "STB1"), Set.of())) {
+            SeedlinkNetwork networkA = new SeedlinkNetwork("A", "localhost", serverA.getPort());
+            SeedlinkNetwork networkB = new SeedlinkNetwork("B", "localhost", serverB.getPort());
+            networkA.selectedStations = 1;
+            networkB.selectedStations = 1;
+
+            Map<SeedlinkNetwork, Collection<AbstractStation>> stations = Map.of(
+                    networkA, List.of(createStation("AA", "STA1", networkA, 0)),
+                    networkB, List.of(createStation("BB", "STB1", networkB, 1)));
+
+            Map<String, List<DataRecord>> received = new ConcurrentHashMap<>();
+            SeedlinkIngestEngine engine = new SeedlinkIngestEngine(stations::get,
+                    dataRecord -> received.computeIfAbsent(dataRecord.getHeader().getNetworkCode().trim(),
+                            k -> new CopyOnWriteArrayList<>()).add(dataRecord), 1, 1, 90);
+            try {
+                engine.connect(networkA);
+                engine.connect(networkB);
+
+                waitFor(() -> received.getOrDefault("AA", List.of()).size() == RECORDS
+                        && received.getOrDefault("BB", List.of()).size() == RECORDS, 10_000);
+
+                assertEquals(RECORDS, received.get("AA").size());
+                assertEquals(RECORDS, received.get("BB").size());
+                assertEquals(SeedlinkStatus.RUNNING, networkA.status);
+                assertEquals(SeedlinkStatus.RUNNING, networkB.status);
+                assertEquals(1, networkA.connectedStations);
+                assertEquals(2, engine.getConnectionCount());
+
+                for (List<DataRecord> records : received.values()) {
+                    for (int i = 0; i < records.size(); i++) {
+                        assertEquals(i + 1, records.get(i).getHeader().getSequenceNum());
+                        assertEquals(100, records.get(i).decompress().getAsInt().length);
+                    }
+                }
+            } finally {
+                engine.stop();
+            }
+
+            assertEquals(SeedlinkStatus.DISCONNECTED, networkA.status);
+            assertEquals(0, engine.getConnectionCount());
+        }
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        try (FakeSeedlinkServer server = new FakeSeedlinkServer(createRecords("AA", "STA1"), Set.of())) {
+            server.setDropAfterStreaming(true);
+            SeedlinkNetwork network = new SeedlinkNetwork("A", "localhost", server.getPort());
+            network.selectedStations = 1;
+
+            List<AbstractStation> stations = List.of(createStation("AA", "STA1", network, 0));
+            List<DataRecord> received = new CopyOnWriteArrayList<>();
+            SeedlinkIngestEngine engine = new SeedlinkIngestEngine(n -> stations, received::add, 1, 1, 90);
+            try {
+                engine.connect(network);
+                waitFor(() -> server.getConnections() >= 2 && received.size() >= RECORDS * 2, 10_000);
+                assertTrue(server.getConnections() >= 2);
+                assertTrue(received.size() >= RECORDS * 2);
+            } finally {
+                engine.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testRejectedStations() throws Exception {
+        try (FakeSeedlinkServer server = new FakeSeedlinkServer(createRecords("AA", "STA1"), Set.of("BAD"))) {
+            SeedlinkNetwork network = new SeedlinkNetwork("A", "localhost", server.getPort());
+
+            List<AbstractStation> stations = new ArrayList<>();
+            stations.add(createStation("AA", "BAD", network, 0));
+            for (int i = 0; i < 20; i++) {
+                stations.add(createStation("AA", "STA%d".formatted(i), network, i + 1));
+            }
+            network.selectedStations = stations.size();
+
+            List<DataRecord> received = new CopyOnWriteArrayList<>();
+            SeedlinkIngestEngine engine = new SeedlinkIngestEngine(n -> stations, received::add, 1, 1, 90);
+            try {
+                engine.connect(network);
+                waitFor(() -> received.size() == RECORDS, 10_000);
+                assertEquals(RECORDS, received.size());
+                assertEquals(20, network.connectedStations);
+            } finally {
+                engine.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testNoStationsConnected() throws Exception {
+        try (FakeSeedlinkServer server = new FakeSeedlinkServer(createRecords("AA", "STA1"), Set.of("BAD"))) {
+            SeedlinkNetwork network = new SeedlinkNetwork("A", "localhost", server.getPort());
+            network.selectedStations = 100;
+
+            List<AbstractStation> stations = List.of(createStation("AA", "BAD", network, 0));
+            SeedlinkIngestEngine engine = new SeedlinkIngestEngine(n -> stations, dataRecord -> fail(), 1, 1, 90);
+            try {
+                engine.connect(network);
+                waitFor(() -> server.getConnections() == 1 && engine.getConnectionCount() == 0
+                        && network.status == SeedlinkStatus.DISCONNECTED, 5_000);
+                Thread.sleep(1500);
+                assertEquals(1, server.getConnections());
+                assertEquals(SeedlinkStatus.DISCONNECTED, network.status);
+            } finally {
+                engine.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package globalquake.core.station;
+
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordReorderBufferTest {
+
+    private static final Instant START = Instant.parse("2024-02-29T23:59:50.1234Z");
+
+    // 100 samples at 20 sps = 5 seconds per record
+    private static DataRecord record(int index) {
+        DataHeader header = new DataHeader(index, 'D', false);
+        header.setStationIdentifier("TEST");
+        header.setNetworkCode("XX");
+        header.setChannelIdentifier("BHZ");
+        header.setLocationIdentifier("00");
+        header.setStartBtime(new Btime(START.plusMillis(index * 5000L)));
+        header.setNumSamples((short) 100);
+        header.setSampleRate(20.0);
+        return new DataRecord(header);
+    }
+
+    private static List<Integer> drain(RecordReorderBuffer buffer) {
+        List<Integer> result = new ArrayList<>();
+        buffer.drain(dataRecord -> result.add(dataRecord.getHeader().getSequenceNum()));
+        return result;
+    }
+
+    @Test
+    public void testEpochMillis() {
+        for (int i = 0; i < 1000; i++) {
+            Btime btime = new Btime(START.plusSeconds(i * 86400L * 17 + i));
+            assertEquals(btime.toInstant().toEpochMilli(), RecordReorderBuffer.toEpochMillis(btime));
+        }
+    }
+
+    @Test
+    public void testInOrder() {
+        RecordReorderBuffer buffer = new RecordReorderBuffer();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.offer(record(i)));
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4), drain(buffer));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testOutOfOrderAndDuplicates() {
+        RecordReorderBuffer buffer = new RecordReorderBuffer();
+        buffer.offer(record(0));
+        assertEquals(List.of(0), drain(buffer));
+
+        buffer.offer(record(2));
+        buffer.offer(record(3));
+        buffer.offer(record(3));
+        // waiting for 1
+        assertEquals(List.of(), drain(buffer));
+        assertEquals(2, buffer.size());
+
+        buffer.offer(record(1));
+        buffer.offer(record(2));
+        assertEquals(List.of(1, 2, 3), drain(buffer));
+
+        // too late
+        buffer.offer(record(1));
+        assertEquals(List.of(), drain(buffer));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testGapIsSkippedAfterStretch() {
+        RecordReorderBuffer buffer = new RecordReorderBuffer();
+        buffer.offer(record(0));
+        drain(buffer);
+
+        // record 1 never arrives
+        for (int i = 2; i < 13; i++) {
+            buffer.offer(record(i));
+        }
+        assertEquals(List.of(), drain(buffer));
+
+        buffer.offer(record(13));
+        assertEquals(List.of(), drain(buffer));
+
+        // buffered data now spans more than a minute
+        buffer.offer(record(14));
+        List<Integer> result = drain(buffer);
+        assertEquals(13, result.size());
+        assertEquals(2, (int) result.get(0));
+        assertEquals(14, (int) result.get(12));
+    }
+
+    @Test
+    public void testFull() {
+        RecordReorderBuffer buffer = new RecordReorderBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(record(i + 1)));
+        }
+        assertFalse(buffer.offer(record(10)));
+        assertEquals(1, buffer.getDropped());
+
+        assertEquals(List.of(1, 2, 3, 4), drain(buffer));
+        assertTrue(buffer.offer(record(5)));
+    }
+}
@@ -0,0 +1,132 @@
+package globalquake.core.station;
+
+import globalquake.core.StagePool;
+import globalquake.core.TestEnvironment;
+import gqserver.api.packets.station.InputType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StationAnalysisSchedulerTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestEnvironment.prepare();
+    }
+
+    static class CountingStation extends GlobalStation {
+
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger inside = new AtomicInteger();
+        volatile boolean overlapped;
+        volatile String thread;
+
+        CountingStation(int id) {
+            super("XX", "S%d".formatted(id), "BHZ", "00", 0, 0, 0, id, null, 1.0, InputType.VELOCITY);
+        }
+
+        @Override
+        int processRecords() {
+            if (inside.incrementAndGet() > 1) {
+                overlapped = true;
+            }
+            runs.incrementAndGet();
+            thread = Thread.currentThread().getName();
+            Thread.yield();
+            inside.decrementAndGet();
+            return 0;
+        }
+    }
+
+    @Test
+    public void testNoConcurrentAnalysisOfOneStation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        StationAnalysisScheduler scheduler = new StationAnalysisScheduler(executor);
+        List<CountingStation> stations = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stations.add(new CountingStation(i));
+        }
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    for (CountingStation station : stations) {
+                        scheduler.markDirty(station);
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && stations.stream().anyMatch(s -> s.getAnalysisState().get() != 0)) {
+            //noinspection BusyWait
+            Thread.sleep(10);
+        }
+
+        StationAnalysisScheduler.Stats stats = scheduler.getStatsAndReset();
+        scheduler.stop();
+        executor.shutdown();
+
+        long total = 0;
+        for (CountingStation station : stations) {
+            assertFalse(station.overlapped);
+            assertEquals(0, station.getAnalysisState().get());
+            assertTrue(station.runs.get() >= 1);
+            total += station.runs.get();
+        }
+
+        // coalesced, far fewer runs than wakeups
+        assertTrue(total < 4 * 1000 * 100);
+        assertEquals(total, stats.analysedStations());
+        assertTrue(stats.maxQueueDepth() <= stations.size());
+        assertEquals(0, stats.queueDepth());
+    }
+
+    @Test
+    public void testIdleStationsNotAnalysed() throws Exception {
+        StagePool.ANALYSIS.getStatsAndReset();
+        StationAnalysisScheduler scheduler = new StationAnalysisScheduler();
+        CountingStation idle = new CountingStation(0);
+        CountingStation busy = new CountingStation(1);
+
+        scheduler.scheduleIfPending(idle);
+        scheduler.markDirty(busy);
+
+        Thread.sleep(200);
+        scheduler.stop();
+
+        assertEquals(0, idle.runs.get());
+        assertEquals(1, busy.runs.get());
+
+        // the analysis runs in the stage pool and is counted in its statistics
+        assertTrue(busy.thread, busy.thread.startsWith(StagePool.ANALYSIS.getName()));
+        assertEquals(1, StagePool.ANALYSIS.getStatsAndReset().tasks());
+    }
+
+    @Test
+    public void testNothingScheduledAfterStop() throws Exception {
+        StationAnalysisScheduler scheduler = new StationAnalysisScheduler();
+        CountingStation station = new CountingStation(0);
+        scheduler.stop();
+
+        scheduler.markDirty(station);
+        Thread.sleep(100);
+
+        assertEquals(0, station.runs.get());
+        assertEquals(0, station.getAnalysisState().get());
+    }
+}
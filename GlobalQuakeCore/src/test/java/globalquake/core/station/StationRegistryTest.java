@@ -0,0 +1,95 @@
+package globalquake.core.station;
+
+import gqserver.api.packets.station.InputType;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StationRegistryTest {
+
+    private static byte[] createHeader(String network, String station, String location, String channel) {
+        byte[] record = new byte[512];
+        Arrays.fill(record, (byte) ' ');
+        put(record, 8, station, 5);
+        put(record, 13, location, 2);
+        put(record, 15, channel, 3);
+        put(record, 18, network, 2);
+        return record;
+    }
+
+    private static void put(byte[] record, int offset, String value, int length) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, record, offset, Math.min(length, bytes.length));
+    }
+
+    private static List<AbstractStation> createStations() {
+        List<AbstractStation> stations = new ArrayList<>();
+        stations.add(new GlobalStation("CZ", "KRUC", "BHZ", "", 49, 16, 0, 0, null, -1, InputType.UNKNOWN));
+        stations.add(new GlobalStation("IU", "ANMO", "BHZ", "00", 34, -106, 0, 1, null, -1, InputType.UNKNOWN));
+        stations.add(new GlobalStation("G", "CAN", "BHZ", "", -35, 149, 0, 2, null, -1, InputType.UNKNOWN));
+        stations.add(new GlobalStation("AK", "D25K", "BHZ", "", 60, -150, 0, 5, null, -1, InputType.UNKNOWN));
+        return stations;
+    }
+
+    @Test
+    public void testLookup() {
+        List<AbstractStation> stations = createStations();
+        StationRegistry registry = new StationRegistry(stations);
+
+        assertEquals(4, registry.size());
+        for (AbstractStation station : stations) {
+            assertSame(station, registry.getById(station.getId()));
+            assertSame(station, registry.getByIdentifier(station.getIdentifier()));
+            assertSame(station, registry.getByCodes(station.getNetworkCode(), station.getStationCode()));
+            assertSame(station, registry.getByRecord(createHeader(station.getNetworkCode(), station.getStationCode(),
+                    station.getLocationCode(), station.getChannelName())));
+        }
+
+        assertNull(registry.getById(3));
+        assertNull(registry.getById(-1));
+        assertNull(registry.getById(100));
+        assertNull(registry.getByIdentifier("CZ KRUC BHZ 00"));
+        assertNull(registry.getByCodes("CZ", "KRU"));
+        assertNull(registry.getByRecord(createHeader("C", "ZKRUC", "", "BHZ")));
+        assertNull(registry.getByRecord(createHeader("XX", "ANMO", "00", "BHZ")));
+    }
+
+    @Test
+    public void testKeys() {
+        assertEquals(StationRegistry.createKey("G", "CAN"), StationRegistry.createKey(createHeader("G", "CAN", "", "BHZ"), 0));
+        assertEquals(StationRegistry.createKey("G ", "CAN  "), StationRegistry.createKey("G", "CAN"));
+        assertNotEquals(StationRegistry.createKey("GC", "AN"), StationRegistry.createKey("G", "CAN"));
+        assertEquals(-1, StationRegistry.createKey("G", "TOOLONG"));
+    }
+
+    @Test
+    public void testRecordLookupDoesNotAllocate() {
+        StationRegistry registry = new StationRegistry(createStations());
+        byte[] record = createHeader("IU", "ANMO", "00", "BHZ");
+        byte[] unknown = createHeader("IU", "COLA", "00", "BHZ");
+
+        int found = 0;
+        // warm up
+        for (int i = 0; i < 100_000; i++) {
+            found += registry.getByRecord(record) != null ? 1 : 0;
+            found += registry.getByRecord(unknown) != null ? 1 : 0;
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) {
+            found += registry.getByRecord(record) != null ? 1 : 0;
+            found += registry.getByRecord(unknown) != null ? 1 : 0;
+        }
+        allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+        assertEquals(200_000, found);
+        assertTrue("allocated %d bytes".formatted(allocated), allocated < 1024);
+    }
+}
@@ -0,0 +1,67 @@
+package globalquake.core.station;
+
+import globalquake.core.training.StationSpatialIndexBenchmark;
+import globalquake.utils.GeoUtils;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class StationSpatialIndexTest {
+
+    @Test
+    public void testSameAsBruteForce() {
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(3000, new Random(0));
+        GlobalStationManager.createListOfClosestStations(stations);
+
+        Map<AbstractStation, Set<NearbyStationDistanceInfo>> expected = new HashMap<>();
+        StationSpatialIndexBenchmark.createListOfClosestStationsBruteForce(stations, expected);
+
+        for (AbstractStation station : stations) {
+            assertEquals(expected.get(station), new HashSet<>(station.getNearbyStations()));
+        }
+    }
+
+    @Test
+    public void testFindNearest() {
+        Random r = new Random(1);
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(2000, r);
+        StationSpatialIndex index = new StationSpatialIndex(stations);
+        assertEquals(stations.size(), index.size());
+
+        for (int i = 0; i < 200; i++) {
+            double lat = r.nextDouble() * 180 - 90;
+            double lon = r.nextDouble() * 360 - 180;
+            double from = r.nextDouble() * 360;
+            double to = from + r.nextDouble() * 180;
+            double maxDist = r.nextDouble() * 5000;
+            int k = 1 + r.nextInt(10);
+
+            List<AbstractStation> expected = new ArrayList<>();
+            for (AbstractStation station : stations) {
+                double dist = GeoUtils.greatCircleDistance(lat, lon, station.getLatitude(), station.getLongitude());
+                double ang = GeoUtils.calculateAngle(lat, lon, station.getLatitude(), station.getLongitude());
+                if (dist <= maxDist && ((ang - from) % 360 + 360) % 360 <= to - from) {
+                    expected.add(station);
+                }
+            }
+            expected.sort(Comparator.comparing(station -> GeoUtils.greatCircleDistance(lat, lon, station.getLatitude(), station.getLongitude())));
+            expected = expected.subList(0, Math.min(k, expected.size()));
+
+            assertEquals(expected, index.findNearest(lat, lon, from, to, maxDist, k, null));
+        }
+    }
+
+    @Test
+    public void testAllAzimuths() {
+        List<AbstractStation> stations = StationSpatialIndexBenchmark.createStations(500, new Random(2));
+        StationSpatialIndex index = new StationSpatialIndex(stations);
+        AbstractStation origin = stations.get(0);
+
+        List<AbstractStation> nearest = index.findNearest(origin.getLatitude(), origin.getLongitude(), 0, 0,
+                GeoUtils.EARTH_CIRCUMFERENCE, stations.size(), station -> station != origin);
+        assertEquals(stations.size() - 1, nearest.size());
+        assertFalse(nearest.contains(origin));
+    }
+}
@@ -0,0 +1,73 @@
+package globalquake.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuickSelectTest {
+
+    @Test
+    public void testSameAsSort() {
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            int n = 1 + random.nextInt(300);
+            double[] values = new double[n];
+            for (int j = 0; j < n; j++) {
+                // plenty of duplicates
+                values[j] = i % 3 == 0 ? random.nextInt(5) : random.nextGaussian();
+            }
+            if (i % 7 == 0) {
+                Arrays.sort(values);
+            }
+
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            int k = random.nextInt(n);
+            assertEquals(sorted[k], QuickSelect.select(values.clone(), n, k), 0.0);
+            assertEquals(sorted[(int) ((n - 1) * 0.175)], QuickSelect.select(values.clone(), n, (int) ((n - 1) * 0.175)), 0.0);
+
+            double median = n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) * 0.5;
+            assertEquals(median, QuickSelect.median(values.clone(), n), 0.0);
+        }
+    }
+
+    @Test
+    public void testLongsSameAsSort() {
+        Random random = new Random(0);
+        for (int i = 0; i < 2000; i++) {
+            int n = 1 + random.nextInt(300);
+            long[] values = new long[n];
+            for (int j = 0; j < n; j++) {
+                values[j] = i % 3 == 0 ? random.nextInt(5) : random.nextLong();
+            }
+            if (i % 5 == 0) {
+                values[random.nextInt(n)] = Long.MIN_VALUE;
+            }
+
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            int k = random.nextInt(n);
+            assertEquals(sorted[k], QuickSelect.select(values.clone(), 0, n, k));
+            assertEquals(sorted[(n - 1) / 2], QuickSelect.select(values, 0, n, (n - 1) / 2));
+        }
+    }
+
+    @Test
+    public void testRange() {
+        double[] values = {9, 9, 5, 1, 3, 2, 9, 9};
+        assertEquals(1, QuickSelect.select(values, 2, 6, 0), 0.0);
+        assertEquals(5, QuickSelect.select(values, 2, 6, 3), 0.0);
+        assertEquals(9, values[0], 0.0);
+        assertEquals(9, values[7], 0.0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfRange() {
+        QuickSelect.select(new double[3], 3, 3);
+    }
+}
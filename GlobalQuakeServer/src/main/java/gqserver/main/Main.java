@@ -21,6 +21,7 @@ import org.apache.commons.cli.*;
 import org.tinylog.Logger;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
@@ -196,6 +197,7 @@ public class Main {
                         }
 
                         updateProgressBar("Done", (int) ((phase++ / PHASES) * 100.0));
+                        Logger.info("Initialised in %,d ms since JVM start".formatted(ManagementFactory.getRuntimeMXBean().getUptime()));
 
                         if(headless){
                             autoStartServer();
@@ -57,7 +57,6 @@ public class DataService extends GlobalQuakeEventListener {
     private final Object stationDataQueueLock = new Object();
 
     private final Map<GlobalStation, Queue<DataRecord>> stationDataQueueMap = new HashMap<>();
-    private final Map<String, GlobalStation> stationMap = new HashMap<>();
     private final Map<ServerClient, Set<DataRequest>> clientDataRequestMap = new ConcurrentHashMap<>();
     private ScheduledExecutorService cleanupService;
 
@@ -374,9 +373,7 @@ public class DataService extends GlobalQuakeEventListener {
     }
 
     private void processDataRequest(ServerClient client, DataRequestPacket packet) throws IOException{
-        stationMap.putIfAbsent(packet.station(), (GlobalStation) GlobalQuake.instance.getStationManager().getStationByIdentifier(packet.station()));
-        GlobalStation station = stationMap.get(packet.station());
-        if(station == null){
+        if(!(GlobalQuake.instance.getStationManager().getStationByIdentifier(packet.station()) instanceof GlobalStation station)){
             Logger.tag("Server").warn("Received data request for non-existing station!");
             return;
         }
@@ -470,7 +467,6 @@ public class DataService extends GlobalQuakeEventListener {
         GlobalQuake.instance.stopService(stationIntensityService);
         GlobalQuake.instance.stopService(cleanupService);
 
-        stationMap.clear();
         clientDataRequestMap.clear();
         stationDataQueueMap.clear();
         stationIntensities.clear();